@@ -0,0 +1,153 @@
+package org.helha.be.sortieappbackend.benchmarks;
+
+import org.helha.be.sortieappbackend.services.EmailService;
+import org.helha.be.sortieappbackend.services.TemplateService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Throughput of the activation emails against a local SMTP stub: one connection per email
+ * ({@code oneByOne}, the former behaviour, as batches of one) or one connection per batch of 50 ({@code bulk}).
+ * {@code handshakeDelayMs} delays the greeting of each connection, standing for the round trips of a remote
+ * server (TCP, EHLO, STARTTLS, AUTH) that the stub does not make.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EmailSendBenchmark {
+
+    private static final int EMAILS = 100;
+
+    @Param({"0", "5"})
+    public int handshakeDelayMs;
+
+    private SmtpStub smtp;
+    private EmailService emailService;
+    private List<EmailService.Activation> emails;
+
+    @Setup
+    public void setUp() throws IOException {
+        smtp = new SmtpStub(handshakeDelayMs);
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("127.0.0.1");
+        mailSender.setPort(smtp.getPort());
+        emailService = new EmailService();
+        BenchmarkSupport.inject(emailService, "mailSender", mailSender);
+        TemplateService templates = new TemplateService("en", List.of("en"));
+        templates.init();
+        BenchmarkSupport.inject(emailService, "templates", templates);
+        BenchmarkSupport.inject(emailService, "batchSize", 50);
+        emails = IntStream.range(0, EMAILS)
+                .mapToObj(i -> new EmailService.Activation("student" + i + "@helha.be", "token-" + i, null))
+                .toList();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        smtp.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EMAILS)
+    public int oneByOne() {
+        int failures = 0;
+        for (EmailService.Activation email : emails) {
+            failures += emailService.sendActivationEmails(List.of(email)).size();
+        }
+        return failures;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EMAILS)
+    public Map<Integer, Exception> bulk() {
+        return emailService.sendActivationEmails(emails);
+    }
+
+    /**
+     * Minimal SMTP server accepting every message, one thread per connection.
+     */
+    static class SmtpStub implements AutoCloseable {
+
+        private final ServerSocket server;
+        private final int handshakeDelayMs;
+
+        SmtpStub(int handshakeDelayMs) throws IOException {
+            this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            this.handshakeDelayMs = handshakeDelayMs;
+            Thread acceptor = new Thread(this::accept, "smtp-stub");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        int getPort() {
+            return server.getLocalPort();
+        }
+
+        private void accept() {
+            while (!server.isClosed()) {
+                try {
+                    Socket socket = server.accept();
+                    Thread session = new Thread(() -> serve(socket), "smtp-stub-session");
+                    session.setDaemon(true);
+                    session.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void serve(Socket socket) {
+            try (socket) {
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                OutputStream out = socket.getOutputStream();
+                if (handshakeDelayMs > 0) {
+                    Thread.sleep(handshakeDelayMs);
+                }
+                reply(out, "220 stub ESMTP");
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String command = line.length() >= 4 ? line.substring(0, 4).toUpperCase() : line.toUpperCase();
+                    switch (command) {
+                        case "DATA" -> {
+                            reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                            while ((line = in.readLine()) != null && !line.equals(".")) {
+                                // Message content, dropped
+                            }
+                            reply(out, "250 OK");
+                        }
+                        case "QUIT" -> {
+                            reply(out, "221 Bye");
+                            return;
+                        }
+                        default -> reply(out, "250 OK");
+                    }
+                }
+            } catch (IOException | InterruptedException e) {
+                // Connection closed
+            }
+        }
+
+        private static void reply(OutputStream out, String line) throws IOException {
+            out.write((line + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.helha.be.sortieappbackend.benchmarks;
+
+import org.helha.be.sortieappbackend.ServiceImpl.QRCodeServiceImpl;
+import org.helha.be.sortieappbackend.models.Autorisation;
+import org.helha.be.sortieappbackend.models.Autorisation_Type;
+import org.helha.be.sortieappbackend.models.ExitRule;
+import org.helha.be.sortieappbackend.models.User;
+import org.helha.be.sortieappbackend.services.ExitRuleService;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the original string-parsing exit check with the compiled {@link ExitRule} path, and
+ * {@link QRCodeServiceImpl#checkIfUserCanLeave(Autorisation, LocalDateTime)} on top of it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ExitRuleBenchmark {
+
+    private Autorisation autorisation;
+    private ExitRuleService exitRuleService;
+    private ExitRule rule;
+    private QRCodeServiceImpl qrCodeService;
+    private LocalDateTime now;
+
+    @Setup
+    public void setUp() {
+        User user = new User();
+        user.setId(1);
+        ZoneId zone = ZoneId.systemDefault();
+        autorisation = new Autorisation(1, Autorisation_Type.Weekly, "midi",
+                Date.from(LocalDate.of(2024, 9, 1).atStartOfDay(zone).toInstant()),
+                Date.from(LocalDate.of(2025, 6, 30).atStartOfDay(zone).toInstant()),
+                "12:00", "13:30", "MONDAY,TUESDAY,THURSDAY,FRIDAY", user);
+        exitRuleService = new ExitRuleService(Clock.systemDefaultZone());
+        rule = exitRuleService.getRule(autorisation, exitRuleService.generation());
+        qrCodeService = new QRCodeServiceImpl();
+        BenchmarkSupport.inject(qrCodeService, "exitRuleService", exitRuleService);
+        now = LocalDateTime.of(2025, 1, 16, 12, 45);
+    }
+
+    @Benchmark
+    public boolean legacyStringParsing() {
+        return legacyCheck(autorisation, now.toLocalDate(), now.toLocalTime());
+    }
+
+    @Benchmark
+    public boolean compiledRuleLookup() {
+        return exitRuleService.getRule(autorisation).allows(now);
+    }
+
+    @Benchmark
+    public boolean compiledRuleOnly() {
+        return rule.allows(now);
+    }
+
+    @Benchmark
+    public boolean checkIfUserCanLeave() {
+        return qrCodeService.checkIfUserCanLeave(autorisation, now);
+    }
+
+    /**
+     * Copy of the check that QRCodeServiceImpl ran on every scan before rules were compiled.
+     */
+    private static boolean legacyCheck(Autorisation autorisation, LocalDate currentDate, LocalTime currentTime) {
+        LocalDate startDate = LocalDate.ofInstant(autorisation.getDate_debut().toInstant(), ZoneId.systemDefault());
+        LocalDate endDate = autorisation.getDate_fin() != null
+                ? LocalDate.ofInstant(autorisation.getDate_fin().toInstant(), ZoneId.systemDefault())
+                : null;
+        LocalTime startTime = LocalTime.parse(autorisation.getHeure_debut(), DateTimeFormatter.ofPattern("HH:mm"));
+        LocalTime endTime = autorisation.getHeure_fin() != null
+                ? LocalTime.parse(autorisation.getHeure_fin(), DateTimeFormatter.ofPattern("HH:mm"))
+                : LocalTime.MAX;
+
+        if (autorisation.getType() == Autorisation_Type.Unique) {
+            if (!currentDate.isEqual(startDate)) {
+                return false;
+            }
+        } else if (currentDate.isBefore(startDate) || (endDate != null && currentDate.isAfter(endDate))) {
+            return false;
+        }
+        if (autorisation.getType() == Autorisation_Type.Weekly) {
+            String jours = autorisation.getJours();
+            if (jours != null && !jours.isEmpty() && !jours.contains(currentDate.getDayOfWeek().toString())) {
+                return false;
+            }
+        }
+        return !currentTime.isBefore(startTime) && !currentTime.isAfter(endTime);
+    }
+}
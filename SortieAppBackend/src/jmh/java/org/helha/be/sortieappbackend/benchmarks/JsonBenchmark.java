@@ -0,0 +1,64 @@
+package org.helha.be.sortieappbackend.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.helha.be.sortieappbackend.models.Role;
+import org.helha.be.sortieappbackend.models.School;
+import org.helha.be.sortieappbackend.models.User;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of the entity graphs returned by the REST controllers, with a Spring-configured
+ * ObjectMapper: a school with its students, and the list of users (without and with pictures).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JsonBenchmark {
+
+    @Param({"200"})
+    public int students;
+
+    private ObjectMapper objectMapper;
+    private School school;
+    private List<User> users;
+    private List<User> usersWithPictures;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        Role role = new Role(3, "STUDENT", null);
+        school = new School(1, "HelHa Montignies", "Rue Trieu Kaisin 136", new ArrayList<>());
+        users = new ArrayList<>();
+        usersWithPictures = new ArrayList<>();
+        // About the size of a 400x400 JPEG in base64
+        String picture = "A".repeat(40_000);
+        for (int i = 0; i < students; i++) {
+            User user = new User(i, "Gallet" + i, "Noah", "ngal" + i + "@helha.be", "$2a$10$abcdefghijklmnopqrstuv",
+                    "Rue Trieu Kaisin 136, 6061 Montignies", school, role, true, null);
+            school.getUsers_school().add(user);
+            users.add(user);
+            usersWithPictures.add(new User(i, "Gallet" + i, "Noah", "ngal" + i + "@helha.be", "$2a$10$abcdefghijklmnopqrstuv",
+                    "Rue Trieu Kaisin 136, 6061 Montignies", school, role, true, picture));
+        }
+    }
+
+    @Benchmark
+    public byte[] school() throws Exception {
+        return objectMapper.writeValueAsBytes(school);
+    }
+
+    @Benchmark
+    public byte[] users() throws Exception {
+        return objectMapper.writeValueAsBytes(users);
+    }
+
+    @Benchmark
+    public byte[] usersWithPictures() throws Exception {
+        return objectMapper.writeValueAsBytes(usersWithPictures);
+    }
+}
@@ -0,0 +1,96 @@
+package org.helha.be.sortieappbackend.benchmarks;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.helha.be.sortieappbackend.models.School;
+import org.helha.be.sortieappbackend.models.User;
+import org.helha.be.sortieappbackend.utils.JWTUtils;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.time.Clock;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the JWT operations done on every authenticated request ({@code JWTFilter}) and at login.
+ * {@code verifiedCacheSize=0} disables the verified token cache, so every parse checks the signature;
+ * {@code parseTokenWithNewParser} is the former implementation, building a parser per call, and
+ * {@code parseLegacyToken} parses a token with the former claims (full {@code roles} list, names, subject).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JwtBenchmark {
+
+    private static final String SECRET = "fjkdfngdbjzebnhubvshubsgdvgbjhn435345fsdnbvxhcbghxcbvxcvxfjkdfngdbjzebnhubvshubsgdvgbjhn435345fsdnbvxhcbghxcbvxcvx";
+
+    @Param({"0", "1024"})
+    private int verifiedCacheSize;
+
+    private JWTUtils jwtUtils;
+    private org.springframework.security.core.userdetails.User springUser;
+    private User user;
+    private String token;
+    private String legacyToken;
+
+    @Setup
+    public void setUp() {
+        jwtUtils = new JWTUtils();
+        BenchmarkSupport.inject(jwtUtils, "secret", SECRET);
+        BenchmarkSupport.inject(jwtUtils, "expirationToken", 3_600_000L);
+        BenchmarkSupport.inject(jwtUtils, "expirationRefreshToken", 604_800_000L);
+        BenchmarkSupport.inject(jwtUtils, "verifiedCacheSize", verifiedCacheSize);
+        BenchmarkSupport.inject(jwtUtils, "clock", Clock.systemDefaultZone());
+        jwtUtils.init();
+
+        springUser = new org.springframework.security.core.userdetails.User("ngal@helha.be", "password",
+                List.of(new SimpleGrantedAuthority("ROLE_STUDENT")));
+        user = new User();
+        user.setId(7);
+        user.setName_user("Noah");
+        user.setLastname_user("Gallet");
+        School school = new School();
+        school.setId_school(1);
+        user.setSchool_user(school);
+        token = jwtUtils.generateAccesToken(springUser, user);
+        legacyToken = Jwts.builder()
+                .subject(springUser.getUsername())
+                .issuedAt(new Date())
+                .expiration(new Date(System.currentTimeMillis() + 3_600_000L))
+                .claim("id", 7)
+                .claim("name", "Noah")
+                .claim("lastname", "Gallet")
+                .claim("roles", springUser.getAuthorities())
+                .signWith(SignatureAlgorithm.HS256, SECRET)
+                .compact();
+    }
+
+    @Benchmark
+    public Claims parseToken() {
+        return jwtUtils.parseToken(token);
+    }
+
+    @Benchmark
+    public Claims parseLegacyToken() {
+        return jwtUtils.parseToken(legacyToken);
+    }
+
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public Claims parseTokenWithNewParser() {
+        return Jwts.parser().setSigningKey(SECRET).build().parseClaimsJws(token).getPayload();
+    }
+
+    @Benchmark
+    public int getUserIdFromToken() {
+        return jwtUtils.getUserIdFromToken(token);
+    }
+
+    @Benchmark
+    public String generateAccessToken() {
+        return jwtUtils.generateAccesToken(springUser, user);
+    }
+}
@@ -0,0 +1,77 @@
+package org.helha.be.sortieappbackend.benchmarks;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.client.j2se.MatrixToImageWriter;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import org.helha.be.sortieappbackend.utils.QRCodeEncoder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.runner.IterationType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the QR code image encoders on a 300x300 gate pass: time per image, and the size of the image in the
+ * {@code bytes} secondary result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QRCodeImageBenchmark {
+
+    private static final String MESSAGE = "G1.AAAABwAATSQAAAAAAQLQAwwC.3q2-7wAAAAAAAAAAAAAAAA";
+
+    private BitMatrix scaled;
+    private BitMatrix modules;
+
+    /**
+     * Size of the image made, in bytes. JMH sums the events of every measured iteration, thread and fork, so each
+     * one counts its share of the size.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Output {
+        public double bytes;
+        private double share;
+
+        @Setup(Level.Iteration)
+        public void next(BenchmarkParams benchmark, IterationParams iteration) {
+            bytes = 0;
+            share = iteration.getType() == IterationType.MEASUREMENT
+                    ? 1.0 / (Math.max(1, benchmark.getForks()) * iteration.getCount() * benchmark.getThreads())
+                    : 0;
+        }
+
+        byte[] count(byte[] image) {
+            bytes = image.length * share;
+            return image;
+        }
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        scaled = new QRCodeWriter().encode(MESSAGE, BarcodeFormat.QR_CODE, 300, 300);
+        modules = new QRCodeWriter().encode(MESSAGE, BarcodeFormat.QR_CODE, 0, 0);
+    }
+
+    @Benchmark
+    public byte[] matrixToImageWriter(Output output) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MatrixToImageWriter.writeToStream(scaled, "PNG", out);
+        return output.count(out.toByteArray());
+    }
+
+    @Benchmark
+    public byte[] onebitPng(Output output) throws IOException {
+        return output.count(QRCodeEncoder.toPng(scaled));
+    }
+
+    @Benchmark
+    public byte[] svg(Output output) throws IOException {
+        return output.count(QRCodeEncoder.toSvg(modules, 300, 300));
+    }
+}
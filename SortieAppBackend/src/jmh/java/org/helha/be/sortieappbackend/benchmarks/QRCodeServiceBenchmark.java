@@ -0,0 +1,39 @@
+package org.helha.be.sortieappbackend.benchmarks;
+
+import org.helha.be.sortieappbackend.ServiceImpl.QRCodeServiceImpl;
+import org.helha.be.sortieappbackend.services.ExitRuleService;
+import org.helha.be.sortieappbackend.services.QRCodeImageCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link QRCodeServiceImpl#generateQRCodeWithMessage} with the image cache disabled (every call renders)
+ * or enabled (every call after the first is a hit).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QRCodeServiceBenchmark {
+
+    private static final String MESSAGE = "G1.AAAABwAATSQAAAAAAQLQAwwC.3q2-7wAAAAAAAAAAAAAAAA";
+
+    @Param({"false", "true"})
+    public boolean cached;
+
+    private QRCodeServiceImpl qrCodeService;
+
+    @Setup
+    public void setUp() {
+        qrCodeService = new QRCodeServiceImpl();
+        BenchmarkSupport.inject(qrCodeService, "exitRuleService", new ExitRuleService(Clock.systemDefaultZone()));
+        BenchmarkSupport.inject(qrCodeService, "qrCodeImageCache", new QRCodeImageCache(cached ? 8 * 1024 * 1024 : 0));
+        BenchmarkSupport.inject(qrCodeService, "clock", Clock.systemDefaultZone());
+    }
+
+    @Benchmark
+    public byte[] generateQRCodeWithMessage() throws Exception {
+        return qrCodeService.generateQRCodeWithMessage(MESSAGE, 300, 300);
+    }
+}
@@ -0,0 +1,85 @@
+package org.helha.be.sortieappbackend.benchmarks;
+
+import org.helha.be.sortieappbackend.utils.RateLimiter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cost of taking a permit from the {@link RateLimiter} with 8 threads, all on one key ({@code hotKey},
+ * the worst case: one client hammering the login) or each on its own key ({@code spreadKeys}).
+ * {@code synchronizedHotKey} is a plain token bucket map behind one lock, for comparison.
+ * The rates are high enough for most permits to be granted.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(8)
+public class RateLimiterBenchmark {
+
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    private RateLimiter limiter;
+    private SynchronizedLimiter synchronizedLimiter;
+
+    @State(Scope.Thread)
+    public static class ThreadKey {
+        String key;
+
+        @Setup
+        public void setUp(RateLimiterBenchmark benchmark) {
+            key = "10.0.0." + benchmark.threadCount.incrementAndGet();
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        limiter = new RateLimiter(1_000_000, Integer.MAX_VALUE, 100_000, 60_000);
+        synchronizedLimiter = new SynchronizedLimiter(1_000_000, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public long hotKey() {
+        return limiter.tryAcquire("10.0.0.1");
+    }
+
+    @Benchmark
+    public long spreadKeys(ThreadKey threadKey) {
+        return limiter.tryAcquire(threadKey.key);
+    }
+
+    @Benchmark
+    public boolean synchronizedHotKey() {
+        return synchronizedLimiter.tryAcquire("10.0.0.1");
+    }
+
+    /**
+     * Token bucket with a token count and a refill date per key, all behind the lock of the limiter.
+     */
+    static final class SynchronizedLimiter {
+
+        private final double capacity;
+        private final double permitsPerNano;
+        private final Map<String, double[]> buckets = new HashMap<>();
+
+        SynchronizedLimiter(int capacity, long permitsPerMinute) {
+            this.capacity = capacity;
+            this.permitsPerNano = permitsPerMinute / (double) TimeUnit.MINUTES.toNanos(1);
+        }
+
+        synchronized boolean tryAcquire(String key) {
+            long now = System.nanoTime();
+            double[] bucket = buckets.computeIfAbsent(key, k -> new double[]{capacity, now});
+            bucket[0] = Math.min(capacity, bucket[0] + (now - bucket[1]) * permitsPerNano);
+            bucket[1] = now;
+            if (bucket[0] < 1) {
+                return false;
+            }
+            bucket[0]--;
+            return true;
+        }
+    }
+}
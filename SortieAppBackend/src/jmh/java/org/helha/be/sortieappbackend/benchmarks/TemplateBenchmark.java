@@ -0,0 +1,63 @@
+package org.helha.be.sortieappbackend.benchmarks;
+
+import org.helha.be.sortieappbackend.services.TemplateService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering of the activation email and form from the precompiled templates, against the former
+ * {@code String.formatted} of the whole email on every send.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TemplateBenchmark {
+
+    private static final String FORMATTED_EMAIL = """
+            <!DOCTYPE html>
+            <html lang="en">
+            <head>
+                <meta charset="UTF-8">
+                <meta name="viewport" content="width=device-width, initial-scale=1.0">
+                <title>Activate Your Account</title>
+            </head>
+            <body>
+                <h1>Welcome to your School!</h1>
+                <p>Please click the link below to set your password and activate your account:</p>
+                <a href="%s">Set Your Password</a>
+            </body>
+            </html>
+        """;
+
+    private TemplateService templateService;
+    private String token;
+    private String link;
+
+    @Setup
+    public void setUp() {
+        templateService = new TemplateService("en", List.of("en", "fr"));
+        templateService.init();
+        token = UUID.randomUUID().toString();
+        link = "http://localhost:8081/users/activate-form?token=" + token;
+    }
+
+    @Benchmark
+    public String formattedEmail() {
+        return FORMATTED_EMAIL.formatted(String.format("http://localhost:8081/users/activate-form?token=%s", token));
+    }
+
+    @Benchmark
+    public String templateEmail() {
+        return templateService.render(TemplateService.ACTIVATION_EMAIL, "fr", Map.of("link", link));
+    }
+
+    @Benchmark
+    public String templateForm() {
+        return templateService.render(TemplateService.ACTIVATION_FORM, "fr", Map.of(
+                "css", "/activation/activation.css", "js", "/activation/activation.js", "token", token));
+    }
+}
@@ -0,0 +1,150 @@
+package org.helha.be.sortieappbackend.benchmarks;
+
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import org.helha.be.sortieappbackend.models.Role;
+import org.helha.be.sortieappbackend.models.School;
+import org.helha.be.sortieappbackend.models.User;
+import org.helha.be.sortieappbackend.models.UserImportReport;
+import org.helha.be.sortieappbackend.repositories.jpa.ActivationTokenRepository;
+import org.helha.be.sortieappbackend.repositories.jpa.RoleRepository;
+import org.helha.be.sortieappbackend.repositories.jpa.SchoolRepository;
+import org.helha.be.sortieappbackend.repositories.jpa.UserRepository;
+import org.helha.be.sortieappbackend.services.*;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.mail.javamail.JavaMailSender;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * User paths with a CPU-heavy part: the CSV import by the {@link UserImporter} (per row, into an in-memory H2
+ * database with the activation emails left in the outbox) and the processing of a profile picture into its 3 sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UserImportBenchmark {
+
+    private static final int ROWS = 100;
+
+    private UserServiceDB userService;
+    private UserImporter userImporter;
+    private JdbcTemplate jdbcTemplate;
+    private String csv;
+    private String picture;
+
+    @Setup
+    public void setUp() throws Exception {
+        School school = new School(1, "HelHa Montignies", "Rue Trieu Kaisin 136", new ArrayList<>());
+        Role student = new Role(3, "STUDENT", null);
+        User stored = new User(7, "Gallet", "Noah", "ngal@helha.be", "password", "Rue Trieu Kaisin 136", school, student, true, null);
+        Session session = Session.getInstance(new Properties());
+
+        RoleServiceDB roleService = new RoleServiceDB();
+        BenchmarkSupport.inject(roleService, "repository", BenchmarkSupport.stub(RoleRepository.class,
+                Map.of("findByNameRole", args -> Optional.of(student), "findById", args -> Optional.of(student))));
+        SchoolServiceDB schoolService = new SchoolServiceDB();
+        BenchmarkSupport.inject(schoolService, "repository", BenchmarkSupport.stub(SchoolRepository.class,
+                Map.of("findById", args -> Optional.of(school))));
+        EmailService emailService = new EmailService();
+        BenchmarkSupport.inject(emailService, "mailSender", BenchmarkSupport.stub(JavaMailSender.class,
+                Map.of("createMimeMessage", args -> new MimeMessage(session))));
+
+        userService = new UserServiceDB();
+        BenchmarkSupport.inject(userService, "repository", BenchmarkSupport.stub(UserRepository.class,
+                Map.of("save", args -> args[0], "findById", args -> Optional.of(stored))));
+        BenchmarkSupport.inject(userService, "activationTokenRepository", BenchmarkSupport.stub(ActivationTokenRepository.class,
+                Map.of("save", args -> args[0])));
+        BenchmarkSupport.inject(userService, "roleServiceDB", roleService);
+        BenchmarkSupport.inject(userService, "schoolServiceDB", schoolService);
+        BenchmarkSupport.inject(userService, "emailService", emailService);
+        BenchmarkSupport.inject(userService, "exitWindowIndex", new ExitWindowIndex());
+        PictureStore pictureStore = new PictureStore(Files.createTempDirectory("pictures").toString());
+        PicturePipeline picturePipeline = new PicturePipeline(List.of(400, 160, 64), 0.85f, 1, 16, 10_000, 2);
+        BenchmarkSupport.inject(picturePipeline, "pictureStore", pictureStore);
+        BenchmarkSupport.inject(userService, "picturePipeline", picturePipeline);
+
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:user_import_benchmark;DB_CLOSE_DELAY=-1;NON_KEYWORDS=USER", "sa", "");
+        // The driver services files of the benchmark jar are not merged: only one driver registers itself
+        dataSource.setDriverClassName("org.h2.Driver");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS user (id_user INT AUTO_INCREMENT PRIMARY KEY, lastname_user VARCHAR(255), name_user VARCHAR(255), "
+                + "email VARCHAR(255) NOT NULL UNIQUE, password_user VARCHAR(255), address_user VARCHAR(255), school_id INT, role_id INT, "
+                + "activated BOOLEAN NOT NULL, picture_user CLOB, picture_hash VARCHAR(64), token_version INT DEFAULT 0 NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS activation_token (id BIGINT AUTO_INCREMENT PRIMARY KEY, token VARCHAR(255) NOT NULL UNIQUE, "
+                + "expiry_date TIMESTAMP, user_id_user INT UNIQUE)");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS email_outbox (id BIGINT AUTO_INCREMENT PRIMARY KEY, type VARCHAR(32) NOT NULL, "
+                + "recipient VARCHAR(255) NOT NULL, payload VARCHAR(255) NOT NULL, locale VARCHAR(16), status VARCHAR(16) NOT NULL, attempts INT NOT NULL, "
+                + "next_attempt_at TIMESTAMP NOT NULL, created_at TIMESTAMP NOT NULL, sent_at TIMESTAMP, last_error VARCHAR(1000))");
+        // Never started: the emails stay in the outbox
+        EmailOutboxDispatcher dispatcher = new EmailOutboxDispatcher(jdbcTemplate, 50, 1000, 8, 5000, 3600000);
+        dispatcher.stop();
+        EmailOutboxService emailOutboxService = new EmailOutboxService(jdbcTemplate);
+        BenchmarkSupport.inject(emailOutboxService, "dispatcher", dispatcher);
+        BenchmarkSupport.inject(emailOutboxService, "clock", Clock.systemDefaultZone());
+        userImporter = new UserImporter(jdbcTemplate, new DataSourceTransactionManager(dataSource), 500);
+        BenchmarkSupport.inject(userImporter, "roleServiceDB", roleService);
+        BenchmarkSupport.inject(userImporter, "schoolServiceDB", schoolService);
+        BenchmarkSupport.inject(userImporter, "emailService", emailService);
+        BenchmarkSupport.inject(userImporter, "emailOutboxService", emailOutboxService);
+        BenchmarkSupport.inject(userImporter, "picturePipeline", picturePipeline);
+        BenchmarkSupport.inject(userImporter, "clock", Clock.systemDefaultZone());
+
+        StringBuilder content = new StringBuilder("lastname_user,name_user,address_user,email,school_id,picture_user\n");
+        for (int i = 0; i < ROWS; i++) {
+            content.append("Gallet").append(i).append(",Noah,\"Rue Trieu Kaisin 136, 6061 Montignies\",ngal")
+                    .append(i).append("@helha.be,1,\n");
+        }
+        csv = content.toString();
+
+        // 1200x900 photo-like JPEG
+        BufferedImage image = new BufferedImage(1200, 900, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, Color.ORANGE, 1200, 900, Color.BLUE));
+        graphics.fillRect(0, 0, 1200, 900);
+        graphics.setColor(Color.WHITE);
+        graphics.fillOval(400, 200, 400, 500);
+        graphics.dispose();
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", jpeg);
+        picture = Base64.getEncoder().encodeToString(jpeg.toByteArray());
+    }
+
+    /**
+     * Empties the tables, so every import inserts all its rows.
+     */
+    @Setup(Level.Invocation)
+    public void clearUsers() {
+        jdbcTemplate.execute("DELETE FROM email_outbox");
+        jdbcTemplate.execute("DELETE FROM activation_token");
+        jdbcTemplate.execute("DELETE FROM user");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public UserImportReport importStudentsPerRow() throws Exception {
+        return userImporter.importStudents(new StringReader(csv), null);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void updateProfilePicture() {
+        userService.updateProfilePicture(7, picture);
+    }
+}
@@ -1,32 +1,47 @@
 package org.helha.be.sortieappbackend.ServiceImpl;
 
 import com.google.zxing.BarcodeFormat;
-import com.google.zxing.client.j2se.MatrixToImageWriter;
 import com.google.zxing.common.BitMatrix;
 import com.google.zxing.qrcode.QRCodeWriter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import org.helha.be.sortieappbackend.models.Autorisation;
-import org.helha.be.sortieappbackend.models.Autorisation_Type;
+import org.helha.be.sortieappbackend.models.ExitRule;
 import org.helha.be.sortieappbackend.models.User;
 import org.helha.be.sortieappbackend.repositories.jpa.UserRepository;
+import org.helha.be.sortieappbackend.services.ExitRuleService;
+import org.helha.be.sortieappbackend.services.QRCodeImageCache;
 import org.helha.be.sortieappbackend.services.QRCodeService;
+import org.helha.be.sortieappbackend.utils.QRCodeEncoder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.io.ByteArrayOutputStream;
-import java.time.DayOfWeek;
-import java.time.LocalDate;
-import java.time.LocalTime;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
-import java.util.Date;
-import java.util.Map;
+import java.time.Clock;
+import java.time.LocalDateTime;
 
 @Service
 public class QRCodeServiceImpl implements QRCodeService {
 
+    /**
+     * Width and height of the gate pass QR codes shown by the student app.
+     */
+    public static final int GATE_PASS_SIZE = 300;
+
+    private static final Timer PNG_RENDER_TIMER = renderTimer("png");
+    private static final Timer SVG_RENDER_TIMER = renderTimer("svg");
+
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private ExitRuleService exitRuleService;
+
+    @Autowired
+    private QRCodeImageCache qrCodeImageCache;
+
+    @Autowired
+    private Clock clock;
+
     @Override
     public byte[] generateQRCodeFromAutorisation(Autorisation autorisation, int width, int height) throws Exception {
         String content;
@@ -50,8 +65,6 @@ public class QRCodeServiceImpl implements QRCodeService {
             content = "Invalid autorisation";
         }
 
-        // Debug pour voir le contenu final
-        System.out.println("QR Code Content: " + content);
         return generateQRCodeWithMessage(content, width, height);
     }
 
@@ -63,14 +76,30 @@ public class QRCodeServiceImpl implements QRCodeService {
 
 
 
+    /**
+     * Returns the PNG image of a QR code encoding the message.
+     * Images are served from {@link QRCodeImageCache} and only rendered on a miss, as 1-bit
+     * grayscale PNGs written straight from the {@link BitMatrix} by {@link QRCodeEncoder}.
+     */
     public byte[] generateQRCodeWithMessage(String message, int width, int height) throws Exception {
-        QRCodeWriter qrCodeWriter = new QRCodeWriter();
-        BitMatrix bitMatrix = qrCodeWriter.encode(message, BarcodeFormat.QR_CODE, width, height);
+        return qrCodeImageCache.get("png", message, width, height, () -> PNG_RENDER_TIMER.recordCallable(
+                () -> QRCodeEncoder.toPng(new QRCodeWriter().encode(message, BarcodeFormat.QR_CODE, width, height))));
+    }
 
-        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
-            MatrixToImageWriter.writeToStream(bitMatrix, "PNG", outputStream);
-            return outputStream.toByteArray();
-        }
+    /**
+     * Returns the SVG image of a QR code encoding the message, displayed at the given size.
+     * The matrix is encoded with one bit per module and scaled by the SVG viewBox.
+     */
+    public byte[] generateQRCodeSvgWithMessage(String message, int width, int height) throws Exception {
+        return qrCodeImageCache.get("svg", message, width, height, () -> SVG_RENDER_TIMER.recordCallable(
+                () -> QRCodeEncoder.toSvg(new QRCodeWriter().encode(message, BarcodeFormat.QR_CODE, 0, 0), width, height)));
+    }
+
+    private static Timer renderTimer(String format) {
+        return Timer.builder("qrcode.render")
+                .tag("format", format)
+                .description("Duration of the QR code encoding and rendering on image cache misses")
+                .register(Metrics.globalRegistry);
     }
 
     private String generateContent(Autorisation autorisation) {
@@ -92,87 +121,19 @@ public class QRCodeServiceImpl implements QRCodeService {
 
 
 
+    /**
+     * Checks whether the Autorisation lets its student leave right now.
+     */
     public boolean checkIfUserCanLeave(Autorisation autorisation) {
-        LocalDate currentDate = LocalDate.now();
-        LocalTime currentTime = LocalTime.now();
-
-        LocalDate startDate = convertToLocalDate(autorisation.getDate_debut());
-        LocalDate endDate = autorisation.getDate_fin() != null
-                ? convertToLocalDate(autorisation.getDate_fin())
-                : null;
-        LocalTime startTime = convertToLocalTime(autorisation.getHeure_debut());
-        LocalTime endTime = autorisation.getHeure_fin() != null
-                ? convertToLocalTime(autorisation.getHeure_fin())
-                : LocalTime.MAX; // Jusqu'à la fin de la journée
-
-        // Vérification de la date pour autorisation de type Unique
-        if (autorisation.getType() == Autorisation_Type.Unique) {
-            if (!currentDate.isEqual(startDate)) {
-                return false;
-            }
-        } else { // Vérification des dates pour les autres types
-            if (currentDate.isBefore(startDate) || (endDate != null && currentDate.isAfter(endDate))) {
-                return false;
-            }
-        }
-
-        // Vérification des jours pour autorisation de type Weekly
-        if (autorisation.getType() == Autorisation_Type.Weekly) {
-            String jours = autorisation.getJours();
-            if (jours != null && !jours.isEmpty()) {
-                String currentDay = currentDate.getDayOfWeek().toString(); // Format anglais
-                if (!jours.contains(currentDay)) {
-                    return false;
-                }
-            }
-        }
-
-        // Vérification des heures
-        if (currentTime.isBefore(startTime) || currentTime.isAfter(endTime)) {
-            return false;
-        }
-
-        // Toutes les vérifications sont passées, l'utilisateur peut sortir
-        return true;
-    }
-
-
-    private boolean checkIfAuthorizedDay(LocalDate currentDate, String jours) {
-        // Mapping des jours de la semaine
-        Map<String, DayOfWeek> dayMapping = Map.of(
-                "MONDAY", DayOfWeek.MONDAY,
-                "TUESDAY", DayOfWeek.TUESDAY,
-                "WEDNESDAY", DayOfWeek.WEDNESDAY,
-                "THURSDAY", DayOfWeek.THURSDAY,
-                "FRIDAY", DayOfWeek.FRIDAY,
-                "SATURDAY", DayOfWeek.SATURDAY,
-                "SUNDAY", DayOfWeek.SUNDAY
-        );
-
-        // Split the jours field and check if the current day matches
-        String[] days = jours.split(",");
-        for (String day : days) {
-            String trimmedDay = day.trim().toUpperCase(); // Normalisation en majuscule
-
-            // Debug pour voir ce qui est comparé
-            System.out.println("Comparing authorized day: " + trimmedDay);
-            System.out.println("Actual current day: " + currentDate.getDayOfWeek().toString());
-
-            // Comparaison avec le mapping des jours
-            if (dayMapping.containsKey(trimmedDay) && dayMapping.get(trimmedDay) == currentDate.getDayOfWeek()) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-
-    private LocalDate convertToLocalDate(Date date) {
-        return LocalDate.ofInstant(date.toInstant(), ZoneId.systemDefault());
+        return checkIfUserCanLeave(autorisation, LocalDateTime.now(clock));
     }
 
-    private LocalTime convertToLocalTime(String heure) {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm");
-        return LocalTime.parse(heure, formatter);
+    /**
+     * Checks whether the Autorisation lets its student leave at the given local date and time.
+     * The Autorisation is evaluated through its compiled {@link ExitRule}, so the dates, hours and
+     * days are only parsed once per Autorisation instead of on every scan.
+     */
+    public boolean checkIfUserCanLeave(Autorisation autorisation, LocalDateTime dateTime) {
+        return exitRuleService.getRule(autorisation).allows(dateTime);
     }
 }
\ No newline at end of file
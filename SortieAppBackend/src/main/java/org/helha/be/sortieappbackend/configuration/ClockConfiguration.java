@@ -0,0 +1,19 @@
+package org.helha.be.sortieappbackend.configuration;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Clock;
+
+/**
+ * Clock used for every "now" of the gate checks, so tests and the exit plan API can evaluate
+ * them at any time.
+ */
+@Configuration
+public class ClockConfiguration {
+
+    @Bean
+    public Clock clock() {
+        return Clock.systemDefaultZone();
+    }
+}
@@ -1,8 +1,10 @@
 package org.helha.be.sortieappbackend.configuration;
 
 
+import org.helha.be.sortieappbackend.security.BoundedPasswordEncoder;
 import org.helha.be.sortieappbackend.security.JWTFilter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -32,29 +34,53 @@ public class SpringSecurityConfig {
                 .authorizeRequests(authorizeRequests -> {
                     //AutentificationController
                     authorizeRequests.requestMatchers("/auth/login").permitAll();
-                    authorizeRequests.requestMatchers("/auth/refresh-token").authenticated();
+                    // The refresh token is checked by the endpoint itself: the access token may have expired
+                    authorizeRequests.requestMatchers("/auth/refresh-token").permitAll();
                     //AutorisationController
                     authorizeRequests.requestMatchers("/Autorisations/**").hasAnyRole("ADMIN", "RESPONSIBLE");
                     //QRCodeController
                     authorizeRequests.requestMatchers("/qrcodes/generateFromUser").hasRole("STUDENT");
-                    authorizeRequests.requestMatchers("/qrcodes/{id}").hasAnyRole("SUPERVISOR", "LOCAL_ADMIN", "RESPONSIBLE");
+                    authorizeRequests.requestMatchers("/qrcodes/verify", "/qrcodes/batch", "/qrcodes/{id}", "/qrcodes/{id}/verdict", "/qrcodes/{id}/photo").hasAnyRole("SUPERVISOR", "LOCAL_ADMIN", "RESPONSIBLE");
+                    //ExitPlanController
+                    authorizeRequests.requestMatchers("/exit-plans/me").hasRole("STUDENT");
+                    authorizeRequests.requestMatchers("/exit-plans/**").hasAnyRole("ADMIN", "SUPERVISOR", "LOCAL_ADMIN", "RESPONSIBLE");
                     //RoleController
                     authorizeRequests.requestMatchers("/roles/**").hasAnyRole("ADMIN", "RESPONSIBLE", "LOCAL_ADMIN");
                     //SchoolController
                     authorizeRequests.requestMatchers("/schools/**").hasAnyRole("ADMIN", "RESPONSIBLE", "LOCAL_ADMIN");
                     //UserController
                     authorizeRequests.requestMatchers("/users/profile","/users/activate-form**", "/users/activate", "/users/set-password").permitAll();
+                    //Static resources of the activation pages
+                    authorizeRequests.requestMatchers("/activation/**").permitAll();
+                    //PictureController: any connected user, students load their own picture from their profile
+                    authorizeRequests.requestMatchers("/pictures/**").authenticated();
                     authorizeRequests.requestMatchers("/users/**").hasAnyRole("ADMIN", "RESPONSIBLE", "LOCAL_ADMIN");
 
+                    //Actuator
+                    authorizeRequests.requestMatchers("/actuator/health").permitAll();
+                    authorizeRequests.requestMatchers("/actuator/**").hasRole("ADMIN");
+
+                    //Error page, so the statuses of the permitted endpoints (e.g. 503 on login) are not turned into 403
+                    authorizeRequests.requestMatchers("/error").permitAll();
+
                     //SWAGGER
                     authorizeRequests.requestMatchers("/swagger-ui/**","/v3/api-docs").permitAll();
                     authorizeRequests.anyRequest().authenticated();
                 }).addFilterBefore(jwtFilter, UsernamePasswordAuthenticationFilter.class).build();
     }
 
+    /**
+     * BCrypt with a configurable cost, run on its own bounded pool (see {@link BoundedPasswordEncoder}).
+     * Hashes made with a lower cost are rehashed at the next login of their user.
+     */
     @Bean
-    public PasswordEncoder passwordEncoder(){
-        return new BCryptPasswordEncoder();
+    public BoundedPasswordEncoder passwordEncoder(@Value("${auth.bcrypt.strength:10}") int strength,
+                                                  @Value("${auth.bcrypt.threads:0}") int threads,
+                                                  @Value("${auth.bcrypt.queue-capacity:64}") int queueCapacity,
+                                                  @Value("${auth.bcrypt.max-wait-ms:2000}") long maxWaitMs,
+                                                  @Value("${auth.bcrypt.retry-after-seconds:2}") long retryAfterSeconds){
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        return new BoundedPasswordEncoder(new BCryptPasswordEncoder(strength), poolSize, queueCapacity, maxWaitMs, retryAfterSeconds);
     }
 
     @Bean
@@ -1,9 +1,13 @@
 package org.helha.be.sortieappbackend.controllers;
 
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.JwtException;
 import jakarta.annotation.security.PermitAll;
 import org.helha.be.sortieappbackend.models.JWT;
 import org.helha.be.sortieappbackend.repositories.jpa.UserRepository;
+import org.helha.be.sortieappbackend.security.RefreshTokenStore;
+import org.helha.be.sortieappbackend.security.TokenVersions;
+import org.helha.be.sortieappbackend.services.UserDetailsServiceImpl;
 import org.helha.be.sortieappbackend.utils.JWTUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -18,7 +22,10 @@ import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 
 @RestController
 @RequestMapping("/auth")
@@ -33,6 +40,15 @@ public class AuthentificationController {
     @Autowired
     UserRepository userRepository;
 
+    @Autowired
+    UserDetailsServiceImpl userDetailsService;
+
+    @Autowired
+    TokenVersions tokenVersions;
+
+    @Autowired
+    RefreshTokenStore refreshTokenStore;
+
     @PostMapping("login")
     public ResponseEntity<?> authenticate(@RequestParam String email, @RequestParam String password){
         try{
@@ -50,14 +66,28 @@ public class AuthentificationController {
         }
     }
 
+    /**
+     * Exchanges a refresh token for a new access token and a new refresh token.
+     * Each refresh token is accepted once: presenting it again revokes every token of the user.
+     */
     @PostMapping("refresh-token")
     public ResponseEntity<?> refreshAccessToken(@RequestParam String refreshToken) {
         try {
-            if (!jwtUtils.validateToken(refreshToken)) {
+            Claims claims = jwtUtils.parseToken(refreshToken);
+            Integer userId = claims.get("id", Integer.class);
+            String jti = claims.getId();
+            if (jti == null && jwtUtils.isLegacy(claims) && jwtUtils.acceptsLegacyTokens()) {
+                // The refresh tokens issued before the jti have their hash as ID
+                jti = sha256(refreshToken);
+            }
+            if (userId == null || jti == null || !tokenVersions.isCurrent(userId, claims.get("ver", Integer.class))) {
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid refresh token");
+            }
+            if (!refreshTokenStore.use(jti, userId, claims.getExpiration().getTime())) {
+                // A refresh token presented twice has leaked: every token of the user is revoked
+                tokenVersions.revoke(userId);
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid refresh token");
             }
-
-            int userId = jwtUtils.getUserIdFromToken(refreshToken);
 
             org.helha.be.sortieappbackend.models.User customUser = userRepository.findById(userId)
                     .orElseThrow(() -> new UsernameNotFoundException("User not found with ID: " + userId));
@@ -66,9 +96,9 @@ public class AuthentificationController {
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Account disabled");
             }
 
+            // The access token carries the authorities used by the JWTFilter: they must be the ones given at login
             User user = new User(customUser.getEmail(), customUser.getPassword_user(),
-                    customUser.getRole_user().getName_role().equals("ROLE_ADMIN") ?
-                            List.of(() -> "ROLE_ADMIN") : List.of(() -> "ROLE_USER"));
+                    userDetailsService.getGrantedAuthorities(customUser.getRole_user().getName_role()));
 
             JWT jwt = new JWT(jwtUtils.generateAccesToken(user, customUser), jwtUtils.generateRefreshToken(user, customUser));
             return ResponseEntity.ok(jwt);
@@ -78,4 +108,8 @@ public class AuthentificationController {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("An error occurred");
         }
     }
+
+    private static String sha256(String token) throws NoSuchAlgorithmException {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII)));
+    }
 }
@@ -21,54 +21,37 @@ public class AutorisationController {
 
     @GetMapping("/{id}")
     public ResponseEntity<Autorisation> getAutorisation(int id){
-        long start = System.currentTimeMillis();
         Autorisation autorisation = autorisationService.getAutorisations().get(id);
-        long end = System.currentTimeMillis();
-        System.out.println("Autorisation took " + (end - start) + "ms");
         return ResponseEntity.ok(autorisation);
     }
 
     @GetMapping("/paged")
     public ResponseEntity<Page<Autorisation>> getAutorisations(Pageable page){
-        long start = System.currentTimeMillis();
         Page autorisations = autorisationService.getAutorisations(page);
-        long end = System.currentTimeMillis();
-        System.out.println("Autorisations took " + (end - start) + "ms");
         return ResponseEntity.ok(autorisations);
     }
 
     @GetMapping
     public ResponseEntity<List<Autorisation>> getAutorisations(){
-        long start = System.currentTimeMillis();
         List autorisations = autorisationService.getAutorisations();
-        long end = System.currentTimeMillis();
-        System.out.println("Autorisations took " + (end - start) + "ms");
         return ResponseEntity.ok(autorisations);
     }
 
     @GetMapping("/user/{userId}")
     public ResponseEntity<List<Autorisation>> getAutorisationByUserId(@PathVariable int userId){
-        long start = System.currentTimeMillis();
         List autorisations = autorisationService.getAutorisationsByUserID(userId);
-        long end = System.currentTimeMillis();
-        System.out.println("Autorisations took " + (end - start) + "ms");
         return ResponseEntity.ok(autorisations);
     }
 
     @GetMapping("/user/{userId}/paged")
     public ResponseEntity<Page<Autorisation>> getAutorisationByUserId(@PathVariable int userId, Pageable page){
-        long start = System.currentTimeMillis();
         Page autorisations = autorisationService.getAutorisationsByUserID(userId,page);
-        long end = System.currentTimeMillis();
-        System.out.println("Autorisations took " + (end - start) + "ms");
         return ResponseEntity.ok(autorisations);
     }
 
     @PostMapping
     public ResponseEntity<?> addAutorisation(@RequestBody Autorisation autorisation){
-        System.out.println("post autorisation");
         try{
-            System.out.println("autorisation add"+autorisation);
             return ResponseEntity.status(HttpStatus.CREATED).body(autorisationService.addAutorisation(autorisation));
         }catch (Exception e){
             e.printStackTrace();
@@ -79,7 +62,6 @@ public class AutorisationController {
     @PutMapping
     public ResponseEntity<?> updateAutorisation(@RequestBody Autorisation autorisation){
         try{
-            System.out.println("autorisation put"+autorisation);
             return ResponseEntity.status(HttpStatus.CREATED).body(autorisationService.updateAutorisation(autorisation));
         }catch (Exception e){
             e.printStackTrace();
@@ -95,10 +77,7 @@ public class AutorisationController {
 
     @GetMapping("/school/{school_id}")
     public ResponseEntity<List<Autorisation>> getAutorisationsBySchool(@PathVariable int school_id){
-        long start = System.currentTimeMillis();
         List<Autorisation> autorisations = autorisationService.getAutorisationsBySchoolId(school_id);
-        long end = System.currentTimeMillis();
-        System.out.println("Autorisations took " + (end - start) + "ms");
         return ResponseEntity.ok(autorisations);
     }
 
@@ -0,0 +1,157 @@
+package org.helha.be.sortieappbackend.controllers;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import org.helha.be.sortieappbackend.models.ExitPlan;
+import org.helha.be.sortieappbackend.models.StudentExitWindows;
+import org.helha.be.sortieappbackend.models.User;
+import org.helha.be.sortieappbackend.repositories.jpa.UserRepository;
+import org.helha.be.sortieappbackend.security.RoleCode;
+import org.helha.be.sortieappbackend.services.ExitWindowIndex;
+import org.helha.be.sortieappbackend.utils.JWTUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Answers "can this student leave at time T, and if not, when next?" for the student home page and the
+ * supervisors' planning views, from the exit window index.
+ * Every endpoint takes an optional {@code at} (ISO date-time with offset); it defaults to now.
+ */
+@RestController
+@RequestMapping(path = "/exit-plans")
+@CrossOrigin(origins = "*")
+public class ExitPlanController {
+
+    @Autowired
+    private ExitWindowIndex exitWindowIndex;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JWTUtils jwtUtils;
+
+    @Autowired
+    private Clock clock;
+
+    /**
+     * Returns the exit plan of the connected student.
+     */
+    @GetMapping("/me")
+    public ResponseEntity<?> getMyExitPlan(@RequestHeader(value = "Authorization", required = false) String authHeader,
+                                           @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime at) {
+        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Authorization header is missing");
+        }
+        int userId;
+        try {
+            userId = jwtUtils.getUserIdFromToken(authHeader.substring(7));
+        } catch (JwtException e) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid token");
+        }
+        StudentExitWindows student = exitWindowIndex.getOrLoad(userId);
+        if (student == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User not found");
+        }
+        return ResponseEntity.ok(ExitPlan.of(student, toLocal(at)));
+    }
+
+    /**
+     * Returns the exit plan of a student.
+     * Only the staff of the student's school and the administrators see it, as for {@code /schools/{schoolId}}.
+     *
+     * @param id the ID of the student.
+     * @return the {@link ExitPlan}, 404 if the user does not exist, or 403 for the staff of another school.
+     */
+    @GetMapping("/users/{id}")
+    public ResponseEntity<?> getExitPlan(@RequestHeader(value = "Authorization", required = false) String authHeader,
+                                         @PathVariable("id") int id,
+                                         @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime at) {
+        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Authorization header is missing");
+        }
+        Claims claims;
+        try {
+            claims = jwtUtils.parseToken(authHeader.substring(7));
+        } catch (JwtException e) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid token");
+        }
+        StudentExitWindows student = exitWindowIndex.getOrLoad(id);
+        if (student == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User not found");
+        }
+        if (!canSeeSchool(claims, student.getSchoolId())) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Not a member of this school");
+        }
+        return ResponseEntity.ok(ExitPlan.of(student, toLocal(at)));
+    }
+
+    /**
+     * Returns the exit plans of every student of a school, sorted by last name and first name.
+     * Students missing from the exit window index are loaded with two set-based queries.
+     * Only the staff of the school, given by the {@code sch} claim of their token, and the administrators see them.
+     *
+     * @param schoolId the ID of the school.
+     * @return the exit plans of the roster, or 403 for the staff of another school.
+     */
+    @GetMapping("/schools/{schoolId}")
+    public ResponseEntity<?> getSchoolExitPlans(@RequestHeader(value = "Authorization", required = false) String authHeader,
+                                                @PathVariable("schoolId") int schoolId,
+                                                @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime at) {
+        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Authorization header is missing");
+        }
+        try {
+            if (!canSeeSchool(jwtUtils.parseToken(authHeader.substring(7)), schoolId)) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Not a member of this school");
+            }
+        } catch (JwtException e) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid token");
+        }
+        LocalDateTime dateTime = toLocal(at);
+        List<Integer> studentIds = userRepository.findIdsBySchoolAndRole(schoolId, "STUDENT");
+        List<ExitPlan> plans = new ArrayList<>(studentIds.size());
+        for (StudentExitWindows student : exitWindowIndex.getOrLoadAll(studentIds).values()) {
+            plans.add(ExitPlan.of(student, dateTime));
+        }
+        plans.sort(Comparator.comparing(ExitPlan::getLastname_user, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER))
+                .thenComparing(ExitPlan::getName_user, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER)));
+        return ResponseEntity.ok(plans);
+    }
+
+    /**
+     * Tells whether a token may see the students of a school: the administrators see every school, the staff
+     * only the one of the {@code sch} claim. Legacy tokens, issued without the claim, are checked against the
+     * role and school of their user in the database.
+     */
+    private boolean canSeeSchool(Claims claims, Integer schoolId) {
+        if (jwtUtils.isLegacy(claims)) {
+            Optional<User> user = userRepository.findById(claims.get("id", Integer.class));
+            if (user.isEmpty()) {
+                return false;
+            }
+            if (user.get().getRole_user() != null && RoleCode.ADMIN.name().equalsIgnoreCase(user.get().getRole_user().getName_role())) {
+                return true;
+            }
+            return user.get().getSchool_user() != null && schoolId != null
+                    && schoolId == user.get().getSchool_user().getId_school();
+        }
+        return RoleCode.ADMIN.getCode().equals(claims.get("rol", String.class))
+                || (schoolId != null && schoolId.equals(claims.get("sch", Integer.class)));
+    }
+
+    private LocalDateTime toLocal(OffsetDateTime at) {
+        return at != null ? at.atZoneSameInstant(clock.getZone()).toLocalDateTime() : LocalDateTime.now(clock);
+    }
+}
@@ -0,0 +1,91 @@
+package org.helha.be.sortieappbackend.controllers;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.helha.be.sortieappbackend.services.PictureStore;
+import org.helha.be.sortieappbackend.utils.PictureUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+@RestController
+@RequestMapping(path = "/pictures")
+@CrossOrigin(origins = "*")
+public class PictureController {
+
+    static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private static final String CACHE_CONTROL = CacheControl.maxAge(Duration.ofDays(365)).cachePrivate().immutable().getHeaderValue();
+    private static final String FALLBACK_CACHE_CONTROL = CacheControl.maxAge(Duration.ofHours(1)).cachePrivate().getHeaderValue();
+
+    @Autowired
+    private PictureStore pictureStore;
+
+    /**
+     * Returns a profile picture of the {@link PictureStore}, by the hash given in {@code User.picture_url}, or one
+     * of its thumbnails when a {@code size} of {@code pictures.thumbnails.sizes} is asked.
+     *
+     * A stored picture never changes: the hash is a strong ETag and the picture can be cached forever. A picture
+     * without the thumbnail asked is sent whole, with a short cache lifetime, so the thumbnail can be served
+     * once it is made.
+     *
+     * The file is sent by the connector with {@code sendfile} when it supports it, and otherwise copied to
+     * the response with {@link FileChannel#transferTo}, so the picture is never loaded in the heap.
+     *
+     * @param hash the SHA-256 of the picture.
+     * @param size the size of the thumbnail, in pixels, or {@code null} for the picture itself.
+     */
+    @GetMapping("/{hash}")
+    public void getPicture(@PathVariable("hash") String hash, @RequestParam(value = "size", required = false) Integer size,
+                           HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Path path = size != null ? pictureStore.path(hash, size) : null;
+        String eTag = "\"" + hash + "-" + size + "\"";
+        String cacheControl = CACHE_CONTROL;
+        if (path == null) {
+            path = pictureStore.path(hash);
+            eTag = "\"" + hash + "\"";
+            cacheControl = size != null ? FALLBACK_CACHE_CONTROL : CACHE_CONTROL;
+        }
+        if (path == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Picture not found");
+            return;
+        }
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        if (new ServletWebRequest(request, response).checkNotModified(eTag)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long length = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(8);
+            channel.read(header, 0);
+            response.setContentType(PictureUtils.sniffMediaType(header.array()).toString());
+            response.setContentLengthLong(length);
+
+            if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+                request.setAttribute(SENDFILE_FILENAME, path.toString());
+                request.setAttribute(SENDFILE_START, 0L);
+                request.setAttribute(SENDFILE_END, length);
+                return;
+            }
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = 0;
+            while (position < length) {
+                position += channel.transferTo(position, length - position, out);
+            }
+        }
+    }
+}
@@ -2,50 +2,114 @@ package org.helha.be.sortieappbackend.controllers;
 
 import io.jsonwebtoken.JwtException;
 import org.helha.be.sortieappbackend.ServiceImpl.QRCodeServiceImpl;
-import org.helha.be.sortieappbackend.models.Autorisation;
+import org.helha.be.sortieappbackend.models.ExitRule;
+import org.helha.be.sortieappbackend.models.GatePass;
+import org.helha.be.sortieappbackend.models.GatePassCheck;
+import org.helha.be.sortieappbackend.models.ScanEvent;
+import org.helha.be.sortieappbackend.models.ScanRequest;
+import org.helha.be.sortieappbackend.models.ScanVerdict;
+import org.helha.be.sortieappbackend.models.StudentExitWindows;
 import org.helha.be.sortieappbackend.models.User;
 import org.helha.be.sortieappbackend.models.UserAutorisation;
 import org.helha.be.sortieappbackend.repositories.jpa.UserRepository;
-import org.helha.be.sortieappbackend.services.IAutorisationService;
+import org.helha.be.sortieappbackend.services.ExitWindowIndex;
+import org.helha.be.sortieappbackend.services.PictureStore;
+import org.helha.be.sortieappbackend.services.QRCodeImageCache;
+import org.helha.be.sortieappbackend.services.ScanEventLog;
+import org.helha.be.sortieappbackend.utils.GatePassUtils;
 import org.helha.be.sortieappbackend.utils.JWTUtils;
+import org.helha.be.sortieappbackend.utils.PictureUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @RestController
 @RequestMapping(path = "/qrcodes")
 @CrossOrigin(origins = "*")
 public class QRCodeController {
 
+    private static final int QR_CODE_SIZE = QRCodeServiceImpl.GATE_PASS_SIZE;
+    private static final int MAX_BATCH_SIZE = 500;
+    private static final MediaType IMAGE_SVG = MediaType.valueOf("image/svg+xml");
+
     @Autowired
     private JWTUtils jwtUtils;
 
+    @Autowired
+    private GatePassUtils gatePassUtils;
+
     @Autowired
     private QRCodeServiceImpl qrCodeServiceImpl;
 
     @Autowired
-    private IAutorisationService autorisationService;
+    private ExitWindowIndex exitWindowIndex;
 
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private ScanEventLog scanEventLog;
+
+    @Autowired
+    private PictureStore pictureStore;
+
+    @Autowired
+    private Clock clock;
+
+    /**
+     * Returns the QR code of the connected student.
+     * The QR code encodes a signed {@link GatePass} with the student's exit windows of the day, so the
+     * scanner can check it offline. The response carries an ETag and a Cache-Control header lasting until
+     * a new pass is issued, so the app can revalidate its copy and get a 304 without body.
+     * The image is a PNG, or an SVG when the client explicitly prefers {@code image/svg+xml}.
+     */
     @GetMapping("/generateFromUser")
-    public ResponseEntity<?> generateQRCode(@RequestHeader(value = "Authorization", required = false) String authHeader) {
+    public ResponseEntity<?> generateQRCode(@RequestHeader(value = "Authorization", required = false) String authHeader,
+                                            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                            WebRequest request) {
         if (authHeader == null || authHeader.isEmpty()) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Authorization header is missing");
         }
         String token = authHeader.startsWith("Bearer ") ? authHeader.substring(7) : authHeader;
         try {
             int userId = jwtUtils.getUserIdFromToken(token);
-            byte[] qrCode = qrCodeServiceImpl.generateQRCodeWithMessage(String.valueOf(userId), 300, 300);
+            StudentExitWindows student = exitWindowIndex.getOrLoad(userId);
+            if (student == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User not found");
+            }
+            ZonedDateTime now = ZonedDateTime.now(clock);
+            GatePass gatePass = gatePassUtils.issue(student, now);
+            boolean svg = prefersSvg(accept);
+            String eTag = QRCodeImageCache.eTag(svg ? "svg" : "png", gatePass.getToken(), QR_CODE_SIZE, QR_CODE_SIZE);
+            if (request.checkNotModified(eTag)) {
+                return null;
+            }
+            byte[] qrCode = svg
+                    ? qrCodeServiceImpl.generateQRCodeSvgWithMessage(gatePass.getToken(), QR_CODE_SIZE, QR_CODE_SIZE)
+                    : qrCodeServiceImpl.generateQRCodeWithMessage(gatePass.getToken(), QR_CODE_SIZE, QR_CODE_SIZE);
             return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"autorisation_qrcode.png\"")
-                    .contentType(MediaType.IMAGE_PNG)
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"autorisation_qrcode." + (svg ? "svg" : "png") + "\"")
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                    .eTag(eTag)
+                    .cacheControl(CacheControl.maxAge(Duration.ofSeconds(Math.max(0, gatePass.getRefreshAt() - now.toEpochSecond()))).cachePrivate())
+                    .contentType(svg ? IMAGE_SVG : MediaType.IMAGE_PNG)
                     .body(qrCode);
 
         } catch (JwtException e) {
@@ -55,26 +119,194 @@ public class QRCodeController {
         }
     }
 
+    /**
+     * Verifies a gate pass read from a QR code, with the same checks the scanner does offline.
+     * Only the signature and the embedded windows are used: the database is not accessed.
+     *
+     * @param token the content of the scanned QR code.
+     * @return the {@link GatePassCheck}; when the pass is stale the scanner should ask {@code /qrcodes/{id}/verdict}.
+     */
+    @PostMapping("/verify")
+    public ResponseEntity<GatePassCheck> verifyGatePass(@RequestParam String token,
+                                                        @RequestHeader(value = "Authorization", required = false) String authHeader) {
+        ZonedDateTime now = ZonedDateTime.now(clock);
+        GatePassCheck check = gatePassUtils.verify(token, now);
+        if (check.getStatus() == GatePassCheck.Status.VALID) {
+            StudentExitWindows student = exitWindowIndex.get(check.getUserId());
+            ExitRule matching = student != null ? student.findAllowingRule(now.toLocalDateTime()) : null;
+            scanEventLog.record(new ScanEvent(null, check.getUserId(), getSupervisorId(authHeader),
+                    student != null ? student.getSchoolId() : null, now.toLocalDateTime(), check.getCanGo(),
+                    matching != null ? matching.getAutorisationId() : null));
+        }
+        return ResponseEntity.ok(check);
+    }
+
     @GetMapping("/{id}")
-    public ResponseEntity<?> getUserById(@PathVariable("id") Integer id) {
+    public ResponseEntity<?> getUserById(@PathVariable("id") Integer id,
+                                         @RequestHeader(value = "Authorization", required = false) String authHeader) {
         if (id == null) {
             return ResponseEntity.badRequest().body(null);
         }
         try {
             User user = userRepository.findById(id).orElseThrow(() -> new IllegalArgumentException("User not found"));
-            List<Autorisation> autorisations = autorisationService.getAutorisationsByUserID(user.getId());
+            // Verdict answered from the in-memory exit window index, the database is only hit on a miss
+            StudentExitWindows windows = exitWindowIndex.getOrLoad(user.getId());
             UserAutorisation userAutorisation = new UserAutorisation();
             userAutorisation.setUser(user);
-            for (Autorisation autorisation : autorisations) {
-                if (qrCodeServiceImpl.checkIfUserCanLeave(autorisation)) {
-                    userAutorisation.setCanGo(true);
-                    return ResponseEntity.ok(userAutorisation);
-                }
+            if (windows != null) {
+                ScanVerdict verdict = ScanVerdict.of(windows, LocalDateTime.now(clock));
+                userAutorisation.setCanGo(verdict.getCanGo());
+                scanEventLog.record(ScanEvent.of(verdict, getSupervisorId(authHeader), windows.getSchoolId()));
+            } else {
+                userAutorisation.setCanGo(false);
             }
-            userAutorisation.setCanGo(false);
             return ResponseEntity.ok(userAutorisation);
         }catch (IllegalArgumentException e){
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the verdict of a gate scan without the User entity.
+     * The answer only contains the student's names, whether they can leave, the matching exit window
+     * and the version of their picture, and is served from the exit window index.
+     *
+     * @param id the ID of the scanned student.
+     * @return the {@link ScanVerdict}, or 404 if the user does not exist.
+     */
+    @GetMapping("/{id}/verdict")
+    public ResponseEntity<?> getVerdict(@PathVariable("id") int id,
+                                        @RequestHeader(value = "Authorization", required = false) String authHeader) {
+        StudentExitWindows windows = exitWindowIndex.getOrLoad(id);
+        if (windows == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User not found");
+        }
+        ScanVerdict verdict = ScanVerdict.of(windows, LocalDateTime.now(clock));
+        scanEventLog.record(ScanEvent.of(verdict, getSupervisorId(authHeader), windows.getSchoolId()));
+        return ResponseEntity.ok(verdict);
+    }
+
+    /**
+     * Returns the verdicts of several scans at once, in the order of the request.
+     * Scans recorded while the scanner was offline are evaluated at their {@code scannedAt} time
+     * (scans dated in the future are evaluated now). Students missing from the exit window index are
+     * loaded with two set-based queries.
+     *
+     * @param scans the scans, at most {@value #MAX_BATCH_SIZE}.
+     * @return one {@link ScanVerdict} per scan; unknown users get a verdict without names and {@code canGo} false.
+     *         400 if a scan has no {@code userId}.
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<?> getVerdicts(@RequestBody List<ScanRequest> scans,
+                                         @RequestHeader(value = "Authorization", required = false) String authHeader) {
+        if (scans == null || scans.isEmpty()) {
+            return ResponseEntity.badRequest().body("No scan provided");
+        }
+        if (scans.size() > MAX_BATCH_SIZE) {
+            return ResponseEntity.badRequest().body("At most " + MAX_BATCH_SIZE + " scans per batch");
+        }
+        Set<Integer> userIds = new LinkedHashSet<>();
+        for (ScanRequest scan : scans) {
+            if (scan == null || scan.getUserId() == null) {
+                return ResponseEntity.badRequest().body("Each scan needs a userId");
+            }
+            userIds.add(scan.getUserId());
+        }
+        Map<Integer, StudentExitWindows> students = exitWindowIndex.getOrLoadAll(userIds);
+
+        ZoneId zone = clock.getZone();
+        LocalDateTime now = LocalDateTime.now(clock);
+        Integer supervisorId = getSupervisorId(authHeader);
+        List<ScanVerdict> verdicts = new ArrayList<>(scans.size());
+        for (ScanRequest scan : scans) {
+            LocalDateTime scannedAt = scan.getScannedAt() != null
+                    ? scan.getScannedAt().atZoneSameInstant(zone).toLocalDateTime()
+                    : now;
+            if (scannedAt.isAfter(now)) {
+                scannedAt = now;
+            }
+            StudentExitWindows student = students.get(scan.getUserId());
+            if (student != null) {
+                ScanVerdict verdict = ScanVerdict.of(student, scannedAt);
+                scanEventLog.record(ScanEvent.of(verdict, supervisorId, student.getSchoolId()));
+                verdicts.add(verdict);
+            } else {
+                verdicts.add(ScanVerdict.unknown(scan.getUserId(), scannedAt));
+            }
+        }
+        return ResponseEntity.ok(verdicts);
+    }
+
+    /**
+     * Returns the picture of a student for the scanner app.
+     * The ETag is the {@code photoVersion} of the {@link ScanVerdict}, so the app can keep the picture
+     * locally and revalidate it with a 304 when the version has not changed.
+     *
+     * @param id   the ID of the student.
+     * @param size the size of the thumbnail wanted (e.g. 64 or 160 pixels), or {@code null} for the whole picture.
+     * @return the picture bytes, 304 if the client copy is current, or 404 if the student has no picture.
+     */
+    @GetMapping("/{id}/photo")
+    public ResponseEntity<?> getPhoto(@PathVariable("id") int id, @RequestParam(value = "size", required = false) Integer size,
+                                      WebRequest request) {
+        StudentExitWindows windows = exitWindowIndex.getOrLoad(id);
+        if (windows == null || windows.getPhotoVersion() == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Picture not found");
+        }
+        String eTag = "\"" + windows.getPhotoVersion() + (size != null ? "-" + size : "") + "\"";
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        byte[] picture = userRepository.findById(id)
+                .map(user -> user.getPicture_hash() == null ? PictureUtils.decode(user.getPicture_user())
+                        : size != null ? pictureStore.get(user.getPicture_hash(), size)
+                        : pictureStore.get(user.getPicture_hash()))
+                .orElse(null);
+        if (picture == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Picture not found");
+        }
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .cacheControl(CacheControl.maxAge(Duration.ofDays(7)).cachePrivate())
+                .contentType(PictureUtils.sniffMediaType(picture))
+                .body(picture);
+    }
+
+    /**
+     * Tells whether the Accept header asks for {@code image/svg+xml} explicitly and with a higher quality
+     * than {@code image/png}. Wildcards keep the PNG, which every client can display.
+     */
+    private static boolean prefersSvg(String accept) {
+        if (accept == null || accept.isEmpty()) {
+            return false;
+        }
+        double svgQuality = 0;
+        double pngQuality = 0;
+        try {
+            for (MediaType mediaType : MediaType.parseMediaTypes(accept)) {
+                if (mediaType.equalsTypeAndSubtype(IMAGE_SVG)) {
+                    svgQuality = Math.max(svgQuality, mediaType.getQualityValue());
+                } else if (mediaType.equalsTypeAndSubtype(MediaType.IMAGE_PNG)) {
+                    pngQuality = Math.max(pngQuality, mediaType.getQualityValue());
+                }
+            }
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+        return svgQuality > pngQuality;
+    }
+
+    /**
+     * Returns the ID of the supervisor who scanned, read from their JWT, or {@code null} if it cannot be read.
+     */
+    private Integer getSupervisorId(String authHeader) {
+        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            return null;
+        }
+        try {
+            return jwtUtils.getUserIdFromToken(authHeader.substring(7));
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
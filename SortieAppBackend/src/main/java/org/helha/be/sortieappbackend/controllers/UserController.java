@@ -4,25 +4,34 @@
  */
 package org.helha.be.sortieappbackend.controllers;
 
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.JwtException;
 import jakarta.transaction.Transactional;
 import org.helha.be.sortieappbackend.models.ActivationToken;
+import org.helha.be.sortieappbackend.models.ImportJob;
 import org.helha.be.sortieappbackend.models.User;
 import org.helha.be.sortieappbackend.repositories.jpa.ActivationTokenRepository;
+import org.helha.be.sortieappbackend.security.RoleCode;
+import org.helha.be.sortieappbackend.services.PicturePipelineBusyException;
+import org.helha.be.sortieappbackend.services.TemplateService;
+import org.helha.be.sortieappbackend.services.UserImportJobs;
 import org.helha.be.sortieappbackend.services.UserServiceDB;
 import org.helha.be.sortieappbackend.utils.JWTUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.net.URI;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * REST controller for handling User-related HTTP requests.
@@ -47,6 +56,15 @@ public class UserController {
     @Autowired
     private ActivationTokenRepository activationTokenRepository;
 
+    @Autowired
+    private UserImportJobs userImportJobs;
+
+    @Autowired
+    private TemplateService templateService;
+
+    private static final String ACTIVATION_CSS = "/activation/activation.css";
+    private static final String ACTIVATION_JS = "/activation/activation.js";
+
 
     @GetMapping(path="/getAllUsers")
     public List<User> getAllUsers() {
@@ -82,12 +100,16 @@ public class UserController {
      * Adds a new User to the database.
      *
      * @param user the {@link User} object to add.
-     * @return the added {@link User} object.
+     * @return the added {@link User} object, or 400 if its role or its picture is invalid.
      */
 
     @PostMapping
     public User addUser(@RequestBody User user) {
-        return serviceDB.addUser(user);
+        try {
+            return serviceDB.addUser(user);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
     }
 
     /**
@@ -95,12 +117,16 @@ public class UserController {
      *
      * @param user    the updated {@link User} object.
      * @param id_user the ID of the {@link User} to update.
-     * @return the updated {@link User} object.
+     * @return the updated {@link User} object, or 400 if it does not exist or its school, role or picture is invalid.
      */
 
     @PutMapping(path = "/{id_user}")
     public User updateUser(@RequestBody User user, @PathVariable int id_user) {
-        return serviceDB.updateUser(user, id_user);
+        try {
+            return serviceDB.updateUser(user, id_user);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
     }
 
     /**
@@ -162,21 +188,90 @@ public class UserController {
 
     /**
      * Handles HTTP POST requests to import users from a CSV file.
+     * The import runs in the background: its progress and its report are polled on {@code GET /users/import/{jobId}}.
      *
-     * @param file the CSV file containing user data, uploaded as a multipart file.
-     * @return a {@link ResponseEntity} containing a success message if the import
-     *         is successful, or an error message if the import fails.
+     * @param file       the CSV file containing user data, uploaded as a multipart file.
+     * @param authHeader the Authorization header of the user submitting the import.
+     * @return a {@link ResponseEntity} with status 202 containing the queued import job,
+     *         503 if too many imports are waiting, or an error message if the file cannot be read.
      */
 
     @PostMapping("/import")
-    public ResponseEntity<String> importUsersFromCSV(@RequestParam("file") MultipartFile file) {
+    public ResponseEntity<?> importUsersFromCSV(@RequestParam("file") MultipartFile file,
+                                                @RequestHeader(value = "Authorization", required = false) String authHeader) {
+        if (authHeader == null || authHeader.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Authorization header is missing");
+        }
+        String token = authHeader.startsWith("Bearer ") ? authHeader.substring(7) : authHeader;
         try {
-            serviceDB.importUsersFromCSV(file);
-            return ResponseEntity.ok("Users imported successfully.");
+            Claims claims = jwtUtils.parseToken(token);
+            return accepted(userImportJobs.submit(file, null, claims.get("id", Integer.class), claims.get("sch", Integer.class)));
+        } catch (JwtException e) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid token");
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Too many imports in progress, retry later");
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Failed to import users: " + e.getMessage());
         }
     }
+
+    /**
+     * Returns the status and the progress of an import job, and its report once done.
+     * Only the user who submitted the job, the users of their school and the administrators see it.
+     *
+     * @param jobId      the ID of the job, returned by the import endpoints.
+     * @param authHeader the Authorization header of the connected user.
+     * @return a {@link ResponseEntity} containing the job, or 404 if it does not exist, has expired or is not theirs.
+     */
+    @GetMapping("/import/{jobId}")
+    public ResponseEntity<?> getImportJob(@PathVariable String jobId,
+                                          @RequestHeader(value = "Authorization", required = false) String authHeader) {
+        return findImportJob(jobId, authHeader)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).body("Import job not found"));
+    }
+
+    /**
+     * Cancels an import job. The users of the chunks already inserted stay imported.
+     *
+     * @param jobId      the ID of the job.
+     * @param authHeader the Authorization header of the connected user.
+     * @return a {@link ResponseEntity} containing the job, or 404 if it does not exist, has expired or is not theirs.
+     */
+    @DeleteMapping("/import/{jobId}")
+    public ResponseEntity<?> cancelImportJob(@PathVariable String jobId,
+                                             @RequestHeader(value = "Authorization", required = false) String authHeader) {
+        return findImportJob(jobId, authHeader)
+                .flatMap(job -> userImportJobs.cancel(job.getId()))
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).body("Import job not found"));
+    }
+
+    /**
+     * Returns an import job if the connected user may see it (see {@link ImportJob#isVisibleTo}), or any job for
+     * an administrator.
+     */
+    private Optional<ImportJob> findImportJob(String jobId, String authHeader) {
+        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            return Optional.empty();
+        }
+        Claims claims;
+        try {
+            claims = jwtUtils.parseToken(authHeader.substring(7));
+        } catch (JwtException e) {
+            return Optional.empty();
+        }
+        boolean admin = RoleCode.ADMIN.getCode().equals(claims.get("rol", String.class));
+        Integer userId = claims.get("id", Integer.class);
+        Integer schoolId = claims.get("sch", Integer.class);
+        return userImportJobs.get(jobId)
+                .filter(job -> admin || (userId != null && job.isVisibleTo(userId, schoolId)));
+    }
+
+    private static ResponseEntity<ImportJob> accepted(ImportJob job) {
+        return ResponseEntity.accepted().location(URI.create("/users/import/" + job.getId())).body(job);
+    }
+
     @PostMapping("/importUsersForAdmin")
     public ResponseEntity<?> importUsersForAdmin(
             @RequestParam("file") MultipartFile file,
@@ -189,13 +284,17 @@ public class UserController {
             int userId = jwtUtils.getUserIdFromToken(token);
             User user = serviceDB.getUserById(userId).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"));
             if (user != null) {
-                serviceDB.importUsersFromCSVForAdmin(file, userId);
-                return ResponseEntity.ok("Users imported successfully and assigned to admin's school.");
+                if (user.getSchool_user() == null) {
+                    return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Admin does not have a school assigned.");
+                }
+                return accepted(userImportJobs.submit(file, user.getSchool_user(), user.getId(), user.getSchool_user().getId_school()));
             } else {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User not found");
             }
         } catch (JwtException e) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid token");
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Too many imports in progress, retry later");
         }catch (Exception e){
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(e);
         }
@@ -237,6 +336,10 @@ public class UserController {
             return ResponseEntity.ok("Profile picture updated successfully");
         } catch (JwtException e) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid token");
+        } catch (PicturePipelineBusyException e) {
+            return ResponseEntity.status(e.getStatusCode()).headers(e.getHeaders()).body(e.getReason());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Error updating profile picture: " + e.getMessage());
         } catch (Exception e) {
             e.printStackTrace(); //debug
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error updating profile picture: " + e.getMessage());
@@ -293,6 +396,7 @@ public class UserController {
      * @param token           The activation token provided in the request.
      * @param password        The new password entered by the user.
      * @param confirmPassword The confirmation of the new password entered by the user.
+     * @param lang            The language of the form, used for the pages shown before the token is looked up.
      * @return A ResponseEntity indicating the result of the operation:
      *         - HTTP 200 OK if the password is successfully updated and the account activated.
      *         - HTTP 400 Bad Request if the token is invalid, expired, or the passwords do not match.
@@ -303,140 +407,28 @@ public class UserController {
     public ResponseEntity<String> processPasswordForm(
             @RequestParam String token,
             @RequestParam String password,
-            @RequestParam String confirmPassword) {
+            @RequestParam String confirmPassword,
+            @RequestParam(required = false) String lang) {
 
         // Verifying if passwords match
         if (!password.equals(confirmPassword)) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("""
-            <!DOCTYPE html>
-            <html lang="en">
-            <head>
-                <meta charset="UTF-8">
-                <meta name="viewport" content="width=device-width, initial-scale=1.0">
-                <title>Passwords do not match</title>
-                <style>
-                    body {
-                        font-family: Arial, sans-serif;
-                        margin: 0;
-                        padding: 0;
-                        background-color: #f5f5f5;
-                    }
-                    .container {
-                        max-width: 400px;
-                        margin: 100px auto;
-                        padding: 20px;
-                        background-color: #ffffff;
-                        border-radius: 10px;
-                        box-shadow: 0px 4px 6px rgba(0, 0, 0, 0.1);
-                        text-align: center;
-                    }
-                    h1 {
-                        color: red;
-                        font-size: 24px;
-                    }
-                    a {
-                        display: inline-block;
-                        margin-top: 20px;
-                        text-decoration: none;
-                        color: #003366;
-                        font-weight: bold;
-                    }
-                    a:hover {
-                        color: #0055a5;
-                    }
-                </style>
-            </head>
-            <body>
-                <div class="container">
-                    <h1>Passwords do not match</h1>
-                    <a href="/users/activate-form?token=%s">Try Again</a>
-                </div>
-            </body>
-            </html>
-        """.formatted(token));
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).contentType(MediaType.TEXT_HTML)
+                    .body(templateService.render(TemplateService.ACTIVATION_RETRY, lang,
+                            Map.of("css", templateService.staticUrl(ACTIVATION_CSS), "token", token)));
         }
 
         // Verifying if token is ok
         Optional<ActivationToken> optionalToken = activationTokenRepository.findByToken(token);
         if (optionalToken.isEmpty()) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("""
-            <!DOCTYPE html>
-            <html lang="en">
-            <head>
-                <meta charset="UTF-8">
-                <meta name="viewport" content="width=device-width, initial-scale=1.0">
-                <title>Invalid Token</title>
-                <style>
-                    body {
-                        font-family: Arial, sans-serif;
-                        margin: 0;
-                        padding: 0;
-                        background-color: #f5f5f5;
-                    }
-                    .container {
-                        max-width: 400px;
-                        margin: 100px auto;
-                        padding: 20px;
-                        background-color: #ffffff;
-                        border-radius: 10px;
-                        box-shadow: 0px 4px 6px rgba(0, 0, 0, 0.1);
-                        text-align: center;
-                    }
-                    h1 {
-                        color: red;
-                        font-size: 24px;
-                    }
-                </style>
-            </head>
-            <body>
-                <div class="container">
-                    <h1>Invalid or already used token</h1>
-                </div>
-            </body>
-            </html>
-        """);
+            return activationMessage(HttpStatus.BAD_REQUEST, lang, "message.invalid");
         }
 
         ActivationToken activationToken = optionalToken.get();
+        String locale = localeOf(activationToken);
 
         // Verifying if token has expired
         if (activationToken.getExpiryDate().isBefore(LocalDateTime.now())) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("""
-            <!DOCTYPE html>
-            <html lang="en">
-            <head>
-                <meta charset="UTF-8">
-                <meta name="viewport" content="width=device-width, initial-scale=1.0">
-                <title>Token Expired</title>
-                <style>
-                    body {
-                        font-family: Arial, sans-serif;
-                        margin: 0;
-                        padding: 0;
-                        background-color: #f5f5f5;
-                    }
-                    .container {
-                        max-width: 400px;
-                        margin: 100px auto;
-                        padding: 20px;
-                        background-color: #ffffff;
-                        border-radius: 10px;
-                        box-shadow: 0px 4px 6px rgba(0, 0, 0, 0.1);
-                        text-align: center;
-                    }
-                    h1 {
-                        color: red;
-                        font-size: 24px;
-                    }
-                </style>
-            </head>
-            <body>
-                <div class="container">
-                    <h1>Token has expired</h1>
-                </div>
-            </body>
-            </html>
-        """);
+            return activationMessage(HttpStatus.BAD_REQUEST, locale, "message.expired");
         }
 
         User user = activationToken.getUser();
@@ -451,42 +443,29 @@ public class UserController {
         activationTokenRepository.flush(); // Forcing synchronisation of Database
 
         // Response if OK
-        return ResponseEntity.ok("""
-        <!DOCTYPE html>
-        <html lang="en">
-        <head>
-            <meta charset="UTF-8">
-            <meta name="viewport" content="width=device-width, initial-scale=1.0">
-            <title>Password Set</title>
-            <style>
-                body {
-                    font-family: Arial, sans-serif;
-                    margin: 0;
-                    padding: 0;
-                    background-color: #f5f5f5;
-                }
-                .container {
-                    max-width: 400px;
-                    margin: 100px auto;
-                    padding: 20px;
-                    background-color: #ffffff;
-                    border-radius: 10px;
-                    box-shadow: 0px 4px 6px rgba(0, 0, 0, 0.1);
-                    text-align: center;
-                }
-                h1 {
-                    color: green;
-                    font-size: 24px;
-                }
-            </style>
-        </head>
-        <body>
-            <div class="container">
-                <h1>Password set successfully!</h1>
-            </div>
-        </body>
-        </html>
-    """);
+        return activationMessage(HttpStatus.OK, locale, "message.success");
+    }
+
+    /**
+     * Renders a page of the activation with a title and a heading, in the style of its outcome.
+     *
+     * @param key the message of the heading; the one of the title is {@code key + ".title"}.
+     */
+    private ResponseEntity<String> activationMessage(HttpStatus status, String locale, String key) {
+        return ResponseEntity.status(status).contentType(MediaType.TEXT_HTML)
+                .body(templateService.render(TemplateService.ACTIVATION_MESSAGE, locale, Map.of(
+                        "css", templateService.staticUrl(ACTIVATION_CSS),
+                        "title", templateService.message(locale, key + ".title"),
+                        "heading", templateService.message(locale, key),
+                        "status", status.is2xxSuccessful() ? "success" : "error")));
+    }
+
+    /**
+     * Returns the language of the school of the user of a token, if any.
+     */
+    private static String localeOf(ActivationToken activationToken) {
+        User user = activationToken.getUser();
+        return user != null && user.getSchool_user() != null ? user.getSchool_user().getLocale_school() : null;
     }
 
     /**
@@ -510,59 +489,13 @@ public class UserController {
     public ResponseEntity<String> getActivationForm(@RequestParam String token) {
         Optional<ActivationToken> optionalToken = activationTokenRepository.findByToken(token);
         if (optionalToken.isEmpty()) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("ERROR : Invalid or expired token. Link probably already used or expired.");
+            return activationMessage(HttpStatus.BAD_REQUEST, null, "message.invalid-link");
         }
 
-        String htmlForm = "<!DOCTYPE html>" +
-                "<html lang=\"en\">" +
-                "<head>" +
-                "    <meta charset=\"UTF-8\">" +
-                "    <meta name=\"viewport\" content=\"width=device-width, initial-scale=1.0\">" +
-                "    <title>Set Your Password</title>" +
-                "    <style>" +
-                "        body { font-family: Arial, sans-serif; margin: 0; padding: 0; background-color: #f5f5f5; }" +
-                "        .container { max-width: 400px; margin: 100px auto; padding: 20px; background-color: #ffffff; " +
-                "            border-radius: 10px; box-shadow: 0px 4px 6px rgba(0, 0, 0, 0.1); text-align: center; }" +
-                "        .container h1 { font-size: 24px; margin-bottom: 20px; color: #003366; }" +
-                "        label { display: block; text-align: left; margin-bottom: 5px; font-weight: bold; color: #003366; }" +
-                "        input[type=\"password\"] { width: 100%; padding: 10px; margin-bottom: 15px; border: 1px solid #cccccc; border-radius: 5px; box-sizing: border-box; }" +
-                "        button { width: 100%; padding: 10px; background-color: #003366; color: #ffffff; border: none; border-radius: 5px; font-size: 16px; cursor: pointer; transition: background-color 0.3s; }" +
-                "        button:hover { background-color: #0055a5; }" +
-                "        #message { color: red; margin-bottom: 15px; }" +
-                "        .footer { margin-top: 20px; font-size: 12px; color: #777777; }" +
-                "    </style>" +
-                "</head>" +
-                "<body>" +
-                "    <div class=\"container\">" +
-                "        <h1>Set Your Password</h1>" +
-                "        <form id=\"passwordForm\" action=\"/users/set-password\" method=\"POST\">" +
-                "            <input type=\"hidden\" name=\"token\" value=\"" + token + "\">" +
-                "            <label for=\"password\">New Password:</label>" +
-                "            <input type=\"password\" id=\"password\" name=\"password\" required>" +
-                "            <label for=\"confirmPassword\">Confirm Password:</label>" +
-                "            <input type=\"password\" id=\"confirmPassword\" name=\"confirmPassword\" required>" +
-                "            <span id=\"message\"></span>" +
-                "            <button type=\"submit\">Submit</button>" +
-                "        </form>" +
-                "        <div class=\"footer\">© 2024 Sortie'App.</div>" +
-                "    </div>" +
-                "    <script>" +
-                "        document.getElementById(\"passwordForm\").addEventListener(\"submit\", function(event) {" +
-                "            const password = document.getElementById(\"password\").value;" +
-                "            const confirmPassword = document.getElementById(\"confirmPassword\").value;" +
-                "            const message = document.getElementById(\"message\");" +
-                "            message.textContent = \"\";" +
-                "            if (password !== confirmPassword) {" +
-                "                event.preventDefault();" +
-                "                message.textContent = \"Passwords do not match.\";" +
-                "            } else if (password.length < 8) {" +
-                "                event.preventDefault();" +
-                "                message.textContent = \"Password must be at least 8 characters.\";" +
-                "            }" +
-                "        });" +
-                "    </script>" +
-                "</body>" +
-                "</html>";
-        return ResponseEntity.ok(htmlForm);
+        return ResponseEntity.ok().contentType(MediaType.TEXT_HTML)
+                .body(templateService.render(TemplateService.ACTIVATION_FORM, localeOf(optionalToken.get()), Map.of(
+                        "css", templateService.staticUrl(ACTIVATION_CSS),
+                        "js", templateService.staticUrl(ACTIVATION_JS),
+                        "token", token)));
     }
 }
\ No newline at end of file
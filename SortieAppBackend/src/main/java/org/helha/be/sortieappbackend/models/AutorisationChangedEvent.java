@@ -0,0 +1,29 @@
+package org.helha.be.sortieappbackend.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Published by {@link org.helha.be.sortieappbackend.services.AutorisationServiceDB} after an Autorisation
+ * has been added, updated or deleted.
+ */
+@Data
+@AllArgsConstructor
+public class AutorisationChangedEvent {
+
+    public enum Change {
+        SAVED, DELETED
+    }
+
+    private long autorisationId;
+    private Change change;
+    /**
+     * The student owning the Autorisation, or {@code null} if unknown (deleted Autorisation of a student
+     * that was not indexed).
+     */
+    private Integer userId;
+    /**
+     * The previous owner when the Autorisation has been moved to another student, {@code null} otherwise.
+     */
+    private Integer previousUserId;
+}
@@ -0,0 +1,79 @@
+package org.helha.be.sortieappbackend.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * An email waiting to be sent, written in the same transaction as the data it is about (the user and its
+ * {@link ActivationToken} for an activation email), so creating a user never waits on the SMTP server.
+ *
+ * Rows are written by {@link org.helha.be.sortieappbackend.services.EmailOutboxService} and sent by
+ * {@link org.helha.be.sortieappbackend.services.EmailOutboxDispatcher} with plain JDBC, so the table and column
+ * names are fixed here.
+ */
+@Data
+@Entity
+@Table(name = "email_outbox", indexes = {
+        @Index(name = "idx_email_outbox_due", columnList = "status, next_attempt_at")
+})
+@AllArgsConstructor
+@NoArgsConstructor
+public class EmailOutbox {
+
+    public enum Status {
+        /** Waiting for its first or next attempt. */
+        PENDING,
+        SENT,
+        /** Given up after too many attempts, or not sendable; kept for inspection. */
+        DEAD
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id")
+    private Long id;
+
+    /**
+     * Kind of email, which tells how to build it from the payload, e.g. {@code activation}.
+     */
+    @Column(name = "type", nullable = false, length = 32)
+    private String type;
+
+    @Column(name = "recipient", nullable = false)
+    private String recipient;
+
+    /**
+     * Data of the email, e.g. the activation token.
+     */
+    @Column(name = "payload", nullable = false)
+    private String payload;
+
+    /**
+     * Language of the email, e.g. {@code fr}; the default one when null.
+     */
+    @Column(name = "locale", length = 16)
+    private String locale;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 16)
+    private Status status;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime next_attempt_at;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime created_at;
+
+    @Column(name = "sent_at")
+    private LocalDateTime sent_at;
+
+    @Column(name = "last_error", length = 1000)
+    private String last_error;
+}
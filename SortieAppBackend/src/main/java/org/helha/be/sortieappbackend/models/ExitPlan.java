@@ -0,0 +1,55 @@
+package org.helha.be.sortieappbackend.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Whether a student can leave at a given time and, if not, when they next can.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ExitPlan {
+    private int id;
+    private String name_user;
+    private String lastname_user;
+    /**
+     * The local date and time the plan was computed for.
+     */
+    private LocalDateTime at;
+    private Boolean canGo;
+    /**
+     * The window letting the student leave at {@link #at}, {@code null} if they cannot.
+     */
+    private ExitWindow window;
+    /**
+     * The first time from {@link #at} on at which the student can leave ({@link #at} itself when they can),
+     * {@code null} if none of their Autorisations opens again.
+     */
+    private LocalDateTime nextExit;
+    /**
+     * The window opening at {@link #nextExit}.
+     */
+    private ExitWindow nextWindow;
+
+    public static ExitPlan of(StudentExitWindows student, LocalDateTime at) {
+        ExitRule current = student.findAllowingRule(at);
+        ExitRule nextRule = current;
+        LocalDateTime nextExit = current != null ? at : null;
+        if (current == null) {
+            for (ExitRule rule : student.getRules()) {
+                LocalDateTime exit = rule.nextExit(at);
+                if (exit != null && (nextExit == null || exit.isBefore(nextExit))) {
+                    nextExit = exit;
+                    nextRule = rule;
+                }
+            }
+        }
+        return new ExitPlan(student.getUserId(), student.getName(), student.getLastname(), at, current != null,
+                current != null ? ExitWindow.of(current) : null, nextExit,
+                nextRule != null ? ExitWindow.of(nextRule) : null);
+    }
+}
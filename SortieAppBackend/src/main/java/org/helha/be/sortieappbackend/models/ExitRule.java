@@ -0,0 +1,242 @@
+package org.helha.be.sortieappbackend.models;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+
+/**
+ * Immutable, pre-compiled form of an {@link Autorisation}.
+ *
+ * The dates are kept as epoch days, the hours as minutes of the day and the authorised
+ * days as a bitmask, so evaluating a rule on the gate-check path never parses a string,
+ * converts a {@link Date} or allocates an object.
+ */
+public final class ExitRule {
+
+    /**
+     * Bitmask with every day of the week set (bit 0 is Monday, bit 6 is Sunday).
+     */
+    public static final int ALL_DAYS = 0x7F;
+
+    /**
+     * Number of minutes in a day, used as end minute when the Autorisation has no end hour.
+     */
+    public static final int END_OF_DAY = 24 * 60;
+
+    private static final long NANOS_PER_MINUTE = 60_000_000_000L;
+    private static final DateTimeFormatter HOUR_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
+
+    private final long autorisationId;
+    private final int userId;
+    private final Autorisation_Type type;
+    private final long startEpochDay;
+    private final long endEpochDay;
+    private final int dayMask;
+    private final int startMinute;
+    private final int endMinute;
+
+    public ExitRule(long autorisationId, int userId, Autorisation_Type type, long startEpochDay, long endEpochDay,
+                    int dayMask, int startMinute, int endMinute) {
+        this.autorisationId = autorisationId;
+        this.userId = userId;
+        this.type = type;
+        this.startEpochDay = startEpochDay;
+        this.endEpochDay = endEpochDay;
+        this.dayMask = dayMask;
+        this.startMinute = startMinute;
+        this.endMinute = endMinute;
+    }
+
+    /**
+     * Compiles an Autorisation into a rule, resolving its dates in the given time zone.
+     *
+     * @param autorisation the Autorisation to compile.
+     * @param zone         the zone used to turn {@code date_debut}/{@code date_fin} into local dates.
+     * @return the compiled rule.
+     * @throws java.time.format.DateTimeParseException if an hour is not in the {@code HH:mm} format.
+     */
+    public static ExitRule compile(Autorisation autorisation, ZoneId zone) {
+        long startEpochDay = autorisation.getDate_debut() != null
+                ? toEpochDay(autorisation.getDate_debut(), zone)
+                : Long.MIN_VALUE;
+        long endEpochDay;
+        if (autorisation.getType() == Autorisation_Type.Unique) {
+            // Une autorisation unique n'est valable que le jour de début
+            endEpochDay = startEpochDay;
+        } else {
+            endEpochDay = autorisation.getDate_fin() != null
+                    ? toEpochDay(autorisation.getDate_fin(), zone)
+                    : Long.MAX_VALUE;
+        }
+
+        int dayMask = ALL_DAYS;
+        if (autorisation.getType() == Autorisation_Type.Weekly) {
+            dayMask = parseDays(autorisation.getJours());
+        }
+
+        int startMinute = autorisation.getHeure_debut() != null ? toMinuteOfDay(autorisation.getHeure_debut()) : 0;
+        int endMinute = autorisation.getHeure_fin() != null ? toMinuteOfDay(autorisation.getHeure_fin()) : END_OF_DAY;
+
+        int userId = autorisation.getUser() != null ? autorisation.getUser().getId() : 0;
+        return new ExitRule(autorisation.getId(), userId, autorisation.getType(), startEpochDay, endEpochDay,
+                dayMask, startMinute, endMinute);
+    }
+
+    /**
+     * Converts the {@code jours} field of a weekly Autorisation into a day bitmask.
+     * An empty or missing value means every day, matching the behaviour of the original check.
+     *
+     * @param jours the comma separated list of English day names (case insensitive).
+     * @return the bitmask of authorised days.
+     */
+    public static int parseDays(String jours) {
+        if (jours == null || jours.isEmpty()) {
+            return ALL_DAYS;
+        }
+        String upper = jours.toUpperCase();
+        int mask = 0;
+        for (DayOfWeek day : DayOfWeek.values()) {
+            if (upper.contains(day.name())) {
+                mask |= dayBit(day);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * @return the bit representing the given day in {@link #getDayMask()}.
+     */
+    public static int dayBit(DayOfWeek day) {
+        return 1 << (day.getValue() - 1);
+    }
+
+    /**
+     * Checks whether this rule lets the student leave at the given local date and time.
+     *
+     * @param dateTime the local date and time of the scan.
+     * @return {@code true} if the student is allowed to leave.
+     */
+    public boolean allows(LocalDateTime dateTime) {
+        LocalDate date = dateTime.toLocalDate();
+        return allows(date.toEpochDay(), date.getDayOfWeek(), dateTime.toLocalTime().toNanoOfDay());
+    }
+
+    /**
+     * Allocation-free evaluation of the rule.
+     *
+     * @param epochDay  the local date of the scan as an epoch day.
+     * @param dayOfWeek the day of the week of that date.
+     * @param nanoOfDay the local time of the scan as nanoseconds of the day.
+     * @return {@code true} if the student is allowed to leave.
+     */
+    public boolean allows(long epochDay, DayOfWeek dayOfWeek, long nanoOfDay) {
+        return allowsOn(epochDay, dayOfWeek)
+                && nanoOfDay >= startMinute * NANOS_PER_MINUTE
+                && nanoOfDay <= endMinute * NANOS_PER_MINUTE;
+    }
+
+    /**
+     * Checks only the date part of the rule (date range and authorised days).
+     *
+     * @param epochDay  the local date as an epoch day.
+     * @param dayOfWeek the day of the week of that date.
+     * @return {@code true} if the rule opens an exit window on that day.
+     */
+    public boolean allowsOn(long epochDay, DayOfWeek dayOfWeek) {
+        return epochDay >= startEpochDay
+                && epochDay <= endEpochDay
+                && (dayMask & dayBit(dayOfWeek)) != 0;
+    }
+
+    /**
+     * Computes the first time, from the given one on, at which this rule lets the student leave.
+     * The day mask repeats every week, so at most eight days are looked at.
+     *
+     * @param from the local date and time to start from.
+     * @return {@code from} if the rule lets the student leave at that time, the start of the next
+     * window otherwise, or {@code null} if the rule never opens again.
+     */
+    public LocalDateTime nextExit(LocalDateTime from) {
+        if (startMinute > endMinute || dayMask == 0) {
+            return null;
+        }
+        long fromDay = from.toLocalDate().toEpochDay();
+        long nanoOfDay = from.toLocalTime().toNanoOfDay();
+        long day = Math.max(fromDay, startEpochDay);
+        for (int i = 0; i < 8 && day <= endEpochDay; i++, day++) {
+            // Epoch day 0 (1970-01-01) was a Thursday
+            DayOfWeek dayOfWeek = DayOfWeek.of((int) Math.floorMod(day + 3, 7L) + 1);
+            if ((dayMask & dayBit(dayOfWeek)) == 0) {
+                continue;
+            }
+            if (day != fromDay) {
+                return LocalDate.ofEpochDay(day).atStartOfDay().plusMinutes(startMinute);
+            }
+            if (nanoOfDay <= endMinute * NANOS_PER_MINUTE) {
+                return nanoOfDay >= startMinute * NANOS_PER_MINUTE
+                        ? from
+                        : from.toLocalDate().atStartOfDay().plusMinutes(startMinute);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Formats a minute of the day as {@code HH:mm} ({@code 24:00} for {@link #END_OF_DAY}).
+     */
+    public static String formatMinute(int minute) {
+        return String.format("%02d:%02d", minute / 60, minute % 60);
+    }
+
+    public long getAutorisationId() {
+        return autorisationId;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public Autorisation_Type getType() {
+        return type;
+    }
+
+    public long getStartEpochDay() {
+        return startEpochDay;
+    }
+
+    public long getEndEpochDay() {
+        return endEpochDay;
+    }
+
+    public int getDayMask() {
+        return dayMask;
+    }
+
+    public int getStartMinute() {
+        return startMinute;
+    }
+
+    public int getEndMinute() {
+        return endMinute;
+    }
+
+    private static long toEpochDay(Date date, ZoneId zone) {
+        return LocalDate.ofInstant(date.toInstant(), zone).toEpochDay();
+    }
+
+    private static int toMinuteOfDay(String heure) {
+        LocalTime time = LocalTime.parse(heure, HOUR_FORMATTER);
+        return time.getHour() * 60 + time.getMinute();
+    }
+
+    @Override
+    public String toString() {
+        return "ExitRule{autorisationId=" + autorisationId + ", userId=" + userId + ", type=" + type
+                + ", days=[" + startEpochDay + ".." + endEpochDay + "], dayMask=" + Integer.toBinaryString(dayMask)
+                + ", minutes=[" + startMinute + ".." + endMinute + "]}";
+    }
+}
@@ -0,0 +1,23 @@
+package org.helha.be.sortieappbackend.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Exit window opened by an Autorisation, as returned to the apps.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ExitWindow {
+    private long autorisationId;
+    private Autorisation_Type type;
+    private String start;
+    private String end;
+
+    public static ExitWindow of(ExitRule rule) {
+        return new ExitWindow(rule.getAutorisationId(), rule.getType(),
+                ExitRule.formatMinute(rule.getStartMinute()), ExitRule.formatMinute(rule.getEndMinute()));
+    }
+}
@@ -0,0 +1,25 @@
+package org.helha.be.sortieappbackend.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Signed gate pass encoded in the QR code of a student.
+ * The token carries the student id, the exit windows of the day and an expiry, and is signed
+ * so a scanner can verify it without calling the server.
+ */
+@Data
+@AllArgsConstructor
+public class GatePass {
+    private String token;
+    private int userId;
+    private long epochDay;
+    /**
+     * Epoch second after which the token is stale.
+     */
+    private long expiresAt;
+    /**
+     * Epoch second from which a new token is issued, used as cache lifetime of the QR code.
+     */
+    private long refreshAt;
+}
@@ -0,0 +1,32 @@
+package org.helha.be.sortieappbackend.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Result of the verification of a {@link GatePass} token.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class GatePassCheck {
+
+    public enum Status {
+        VALID, MALFORMED, BAD_SIGNATURE, EXPIRED
+    }
+
+    private Status status;
+    private int userId;
+    private Boolean canGo;
+    private String start;
+    private String end;
+    private long expiresAt;
+
+    /**
+     * @param userId the user read from the token when it is authentic but stale, 0 otherwise.
+     */
+    public static GatePassCheck rejected(Status status, int userId) {
+        return new GatePassCheck(status, userId, false, null, null, 0);
+    }
+}
@@ -0,0 +1,171 @@
+package org.helha.be.sortieappbackend.models;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Getter;
+import org.helha.be.sortieappbackend.services.UserImporter;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CSV user import run in the background: its status, its progress while it runs, and its report once done.
+ */
+@Getter
+public class ImportJob implements UserImporter.Progress {
+
+    public enum Status {
+        QUEUED, RUNNING, DONE, FAILED, CANCELLED
+    }
+
+    private final String id;
+    private final Instant submittedAt;
+    /**
+     * The user who submitted the job, and their school ({@code null} for users without a school).
+     */
+    @JsonIgnore
+    private final int submittedBy;
+    @JsonIgnore
+    private final Integer schoolId;
+    private volatile Status status = Status.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    /**
+     * Why the import failed as a whole (wrong header...), when {@link Status#FAILED}.
+     */
+    private volatile String error;
+    /**
+     * Rows imported and errors of the others, once the import is {@link Status#DONE} or {@link Status#CANCELLED}.
+     */
+    private volatile UserImportReport report;
+
+    @JsonIgnore
+    private final Clock clock;
+    @JsonIgnore
+    private volatile boolean cancelRequested;
+
+    @Getter(lombok.AccessLevel.NONE)
+    private final AtomicInteger rowsParsed = new AtomicInteger();
+    @Getter(lombok.AccessLevel.NONE)
+    private final AtomicInteger rowsInserted = new AtomicInteger();
+    @Getter(lombok.AccessLevel.NONE)
+    private final AtomicInteger rowsFailed = new AtomicInteger();
+    @Getter(lombok.AccessLevel.NONE)
+    private final AtomicInteger emailsQueued = new AtomicInteger();
+
+    public ImportJob(String id, Clock clock, int submittedBy, Integer schoolId) {
+        this.id = id;
+        this.clock = clock;
+        this.submittedBy = submittedBy;
+        this.schoolId = schoolId;
+        this.submittedAt = clock.instant();
+    }
+
+    /**
+     * Tells whether a user may follow or cancel the job: the user who submitted it, or a user of the same school.
+     *
+     * @param userId   the ID of the user.
+     * @param schoolId the ID of their school, or {@code null} if they have none.
+     */
+    public boolean isVisibleTo(int userId, Integer schoolId) {
+        return userId == submittedBy || (this.schoolId != null && this.schoolId.equals(schoolId));
+    }
+
+    /**
+     * Marks the job as running.
+     *
+     * @return {@code false} if it has been cancelled while queued, in which case it must not run.
+     */
+    public synchronized boolean start() {
+        if (status != Status.QUEUED) {
+            return false;
+        }
+        status = Status.RUNNING;
+        startedAt = clock.instant();
+        return true;
+    }
+
+    public synchronized void finish(UserImportReport report) {
+        this.report = report;
+        status = report.isCancelled() ? Status.CANCELLED : Status.DONE;
+        finishedAt = clock.instant();
+    }
+
+    public synchronized void fail(String error) {
+        this.error = error;
+        status = Status.FAILED;
+        finishedAt = clock.instant();
+    }
+
+    /**
+     * Asks the job to stop: a queued job will not run, a running one stops before its next row.
+     */
+    public synchronized void cancel() {
+        cancelRequested = true;
+        if (status == Status.QUEUED) {
+            status = Status.CANCELLED;
+            finishedAt = clock.instant();
+        }
+    }
+
+    @JsonIgnore
+    public boolean isFinished() {
+        return finishedAt != null;
+    }
+
+    public int getRowsParsed() {
+        return rowsParsed.get();
+    }
+
+    public int getRowsInserted() {
+        return rowsInserted.get();
+    }
+
+    public int getRowsFailed() {
+        return rowsFailed.get();
+    }
+
+    public int getEmailsQueued() {
+        return emailsQueued.get();
+    }
+
+    /**
+     * Rows parsed per second since the job started, until it finished.
+     */
+    public double getRowsPerSecond() {
+        Instant start = startedAt;
+        if (start == null) {
+            return 0;
+        }
+        Instant end = finishedAt != null ? finishedAt : clock.instant();
+        long millis = Math.max(1, Duration.between(start, end).toMillis());
+        return rowsParsed.get() * 1000.0 / millis;
+    }
+
+    @Override
+    public void rowParsed() {
+        rowsParsed.incrementAndGet();
+    }
+
+    @Override
+    public void rowsInserted(int count) {
+        rowsInserted.addAndGet(count);
+    }
+
+    @Override
+    public void rowRejected() {
+        rowsFailed.incrementAndGet();
+    }
+
+    @Override
+    public void emailQueued() {
+        emailsQueued.incrementAndGet();
+    }
+
+    @Override
+    @JsonIgnore
+    public boolean isCancelled() {
+        return cancelRequested;
+    }
+}
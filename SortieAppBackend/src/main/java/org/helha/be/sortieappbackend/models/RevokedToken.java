@@ -0,0 +1,33 @@
+package org.helha.be.sortieappbackend.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A refresh token that has been used or revoked, by its {@code jti} claim.
+ *
+ * Rows are written and read by {@link org.helha.be.sortieappbackend.security.RefreshTokenStore} with plain JDBC,
+ * so the table and column names are fixed here. They can be deleted once the token has expired.
+ */
+@Data
+@Entity
+@Table(name = "revoked_token", indexes = {
+        @Index(name = "idx_revoked_token_expires_at", columnList = "expires_at")
+})
+@AllArgsConstructor
+@NoArgsConstructor
+public class RevokedToken {
+    @Id
+    @Column(name = "jti", length = 64)
+    private String jti;
+
+    @Column(name = "id_user", nullable = false)
+    private int id_user;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expires_at;
+}
@@ -0,0 +1,53 @@
+package org.helha.be.sortieappbackend.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * One gate scan, as recorded in the append-only scan log.
+ *
+ * Rows are inserted by {@link org.helha.be.sortieappbackend.services.ScanEventLog} with plain JDBC batches,
+ * so the table and column names are fixed here. The user, supervisor, school and Autorisation are stored
+ * as plain IDs: the log must keep its rows when they are deleted.
+ */
+@Data
+@Entity
+@Table(name = "scan_event", indexes = {
+        @Index(name = "idx_scan_event_user", columnList = "id_user"),
+        @Index(name = "idx_scan_event_school_time", columnList = "id_school, scanned_at")
+})
+@AllArgsConstructor
+@NoArgsConstructor
+public class ScanEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id_scan_event")
+    private Long id;
+
+    @Column(name = "id_user", nullable = false)
+    private int id_user;
+
+    @Column(name = "id_supervisor")
+    private Integer id_supervisor;
+
+    @Column(name = "id_school")
+    private Integer id_school;
+
+    @Column(name = "scanned_at", nullable = false)
+    private LocalDateTime scanned_at;
+
+    @Column(name = "can_go", nullable = false)
+    private boolean can_go;
+
+    @Column(name = "id_autorisation")
+    private Long id_autorisation;
+
+    public static ScanEvent of(ScanVerdict verdict, Integer supervisorId, Integer schoolId) {
+        return new ScanEvent(null, verdict.getId(), supervisorId, schoolId, verdict.getEvaluatedAt(), verdict.getCanGo(),
+                verdict.getWindow() != null ? verdict.getWindow().getAutorisationId() : null);
+    }
+}
@@ -0,0 +1,21 @@
+package org.helha.be.sortieappbackend.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.OffsetDateTime;
+
+/**
+ * One scan sent by a scanner in a batch.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ScanRequest {
+    private Integer userId;
+    /**
+     * When the QR code was scanned; {@code null} for a scan made right now.
+     */
+    private OffsetDateTime scannedAt;
+}
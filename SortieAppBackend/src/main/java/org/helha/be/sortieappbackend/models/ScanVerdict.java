@@ -0,0 +1,44 @@
+package org.helha.be.sortieappbackend.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Lightweight answer of a gate scan.
+ * Unlike {@link UserAutorisation} it does not carry the whole User entity: the picture is fetched
+ * separately with {@code photoVersion} as cache key.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ScanVerdict {
+    private int id;
+    private String name_user;
+    private String lastname_user;
+    private Boolean canGo;
+    private ExitWindow window;
+    private String photoVersion;
+    /**
+     * Local date and time at which the verdict was evaluated (the scan time for offline scans).
+     */
+    private LocalDateTime evaluatedAt;
+
+    /**
+     * Evaluates the exit windows of a student at the given time.
+     */
+    public static ScanVerdict of(StudentExitWindows student, LocalDateTime dateTime) {
+        ExitRule matchingRule = student.findAllowingRule(dateTime);
+        return new ScanVerdict(student.getUserId(), student.getName(), student.getLastname(), matchingRule != null,
+                matchingRule != null ? ExitWindow.of(matchingRule) : null, student.getPhotoVersion(), dateTime);
+    }
+
+    /**
+     * Verdict for a scanned id that does not match any user.
+     */
+    public static ScanVerdict unknown(int userId, LocalDateTime dateTime) {
+        return new ScanVerdict(userId, null, null, false, null, null, dateTime);
+    }
+}
@@ -20,6 +20,12 @@ public class School {
 
     private String address_school;
 
+    /**
+     * Language of the emails and pages sent to the users of the school, e.g. {@code fr}; the default one when null.
+     */
+    @Column(length = 16)
+    private String locale_school;
+
     @OneToMany(mappedBy = "school_user", cascade = CascadeType.ALL)
     @JsonIgnoreProperties("school_user") // Prevent infinite loops
     private List<User> users_school;
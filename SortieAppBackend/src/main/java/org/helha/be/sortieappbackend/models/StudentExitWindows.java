@@ -0,0 +1,129 @@
+package org.helha.be.sortieappbackend.models;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+/**
+ * Immutable set of compiled exit rules of one student, as held by the exit window index,
+ * together with the few student fields a scan verdict needs.
+ * Updates never modify an instance: they build a new one and swap it in the index.
+ */
+public final class StudentExitWindows {
+
+    private static final ExitRule[] NO_RULES = new ExitRule[0];
+
+    private final int userId;
+    private final Integer schoolId;
+    private final String name;
+    private final String lastname;
+    private final String photoVersion;
+    private final ExitRule[] rules;
+
+    public StudentExitWindows(int userId, Integer schoolId, String name, String lastname, String photoVersion, ExitRule[] rules) {
+        this.userId = userId;
+        this.schoolId = schoolId;
+        this.name = name;
+        this.lastname = lastname;
+        this.photoVersion = photoVersion;
+        this.rules = rules != null ? rules : NO_RULES;
+    }
+
+    /**
+     * Returns the first rule letting the student leave at the given time.
+     *
+     * @param dateTime the local date and time of the scan.
+     * @return the matching rule, or {@code null} if the student may not leave.
+     */
+    public ExitRule findAllowingRule(LocalDateTime dateTime) {
+        for (ExitRule rule : rules) {
+            if (rule.allows(dateTime)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return {@code true} if one of the rules lets the student leave at the given time.
+     */
+    public boolean canLeave(LocalDateTime dateTime) {
+        return findAllowingRule(dateTime) != null;
+    }
+
+    /**
+     * Returns a copy of these windows where the rule of the same Autorisation is replaced (or added).
+     */
+    public StudentExitWindows withRule(ExitRule rule) {
+        ExitRule[] updated = Arrays.copyOf(rules, rules.length + 1);
+        int length = 0;
+        for (ExitRule existing : rules) {
+            if (existing.getAutorisationId() != rule.getAutorisationId()) {
+                updated[length++] = existing;
+            }
+        }
+        updated[length++] = rule;
+        return withRules(Arrays.copyOf(updated, length));
+    }
+
+    /**
+     * Returns a copy of these windows without the rule of the given Autorisation.
+     */
+    public StudentExitWindows withoutRule(long autorisationId) {
+        ExitRule[] updated = new ExitRule[rules.length];
+        int length = 0;
+        for (ExitRule existing : rules) {
+            if (existing.getAutorisationId() != autorisationId) {
+                updated[length++] = existing;
+            }
+        }
+        return withRules(Arrays.copyOf(updated, length));
+    }
+
+    /**
+     * Returns a copy of these windows with other rules.
+     */
+    public StudentExitWindows withRules(ExitRule[] newRules) {
+        return new StudentExitWindows(userId, schoolId, name, lastname, photoVersion, newRules);
+    }
+
+    /**
+     * Returns a copy of these windows with refreshed student fields and the same rules.
+     */
+    public StudentExitWindows withStudent(Integer newSchoolId, String newName, String newLastname, String newPhotoVersion) {
+        return new StudentExitWindows(userId, newSchoolId, newName, newLastname, newPhotoVersion, rules);
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public Integer getSchoolId() {
+        return schoolId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getLastname() {
+        return lastname;
+    }
+
+    /**
+     * @return the version hash of the student's picture, or {@code null} if the student has none.
+     */
+    public String getPhotoVersion() {
+        return photoVersion;
+    }
+
+    /**
+     * @return a copy of the compiled rules.
+     */
+    public ExitRule[] getRules() {
+        return rules.clone();
+    }
+
+    public int size() {
+        return rules.length;
+    }
+}
@@ -0,0 +1,37 @@
+package org.helha.be.sortieappbackend.models;
+
+import io.jsonwebtoken.Claims;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Result of the verification of an access or refresh token.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TokenCheck {
+
+    public enum Status {
+        VALID, MALFORMED, BAD_SIGNATURE, EXPIRED
+    }
+
+    private Status status;
+    /**
+     * The claims of the token when it is valid, or authentic but expired; {@code null} otherwise.
+     */
+    private Claims claims;
+
+    public static TokenCheck valid(Claims claims) {
+        return new TokenCheck(Status.VALID, claims);
+    }
+
+    public static TokenCheck rejected(Status status) {
+        return new TokenCheck(status, null);
+    }
+
+    public boolean isValid() {
+        return status == Status.VALID;
+    }
+}
@@ -2,6 +2,7 @@ package org.helha.be.sortieappbackend.models;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.ToString;
@@ -68,18 +69,23 @@ public class User {
     private boolean activated;
 
     /**
-     * Stores the user's profile picture as a Base64-encoded string.
+     * Legacy profile picture of the user: the URL of a picture imported from CSV, or a Base64-encoded image
+     * not yet moved to the {@link org.helha.be.sortieappbackend.services.PictureStore}.
      *
-     * This field is mapped to a database column of type `LONGTEXT`,
-     * allowing it to store large amounts of data, such as images.
-     *
-     * The profile picture is typically expected to be in a Base64-encoded format,
-     * which allows binary image data to be safely stored as text in the database.
+     * Accepted in requests, where a Base64 image is moved to the store, but never serialized: clients read
+     * {@link #getPicture_url()} instead.
      */
-
     @Column(columnDefinition = "LONGTEXT")
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
     private String picture_user;
 
+    /**
+     * SHA-256 of the profile picture of the user in the {@link org.helha.be.sortieappbackend.services.PictureStore}.
+     */
+    @Column(length = 64)
+    @JsonIgnore
+    private String picture_hash;
+
     /**
      * Represents a one-to-one relationship between a User and an ActivationToken.
      *
@@ -98,6 +104,15 @@ public class User {
     @JsonIgnore
     private ActivationToken activation_token;
 
+    /**
+     * Version of the tokens of the User, written in the {@code ver} claim of the tokens.
+     * Only incremented by {@link org.helha.be.sortieappbackend.repositories.jpa.UserRepository#incrementTokenVersion(int)},
+     * which revokes every token issued before; saving the entity never writes it back.
+     */
+    @Column(name = "token_version", nullable = false, updatable = false, columnDefinition = "INT DEFAULT 0")
+    @JsonIgnore
+    private int token_version;
+
     /**
      * Default constructor.
      */
@@ -129,6 +144,21 @@ public class User {
         this.picture_user = picture_user;
     }
 
+    /**
+     * Returns the URL of the profile picture of the user: {@code /pictures/<hash>} for a stored picture,
+     * the legacy URL for an imported one, or {@code null} if the user has no picture.
+     */
+    @JsonProperty(value = "picture_url", access = JsonProperty.Access.READ_ONLY)
+    public String getPicture_url() {
+        if (picture_hash != null) {
+            return "/pictures/" + picture_hash;
+        }
+        if (picture_user != null && (picture_user.startsWith("http://") || picture_user.startsWith("https://"))) {
+            return picture_user;
+        }
+        return null;
+    }
+
     /**
      * Method that returns the status of activation.
      */
@@ -0,0 +1,47 @@
+package org.helha.be.sortieappbackend.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a CSV user import: the rows that could not be imported are listed with their reason, while
+ * the others are imported.
+ */
+@Data
+public class UserImportReport {
+
+    /**
+     * Error on one row of the file.
+     */
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class RowError {
+        /**
+         * Line of the row in the file, the header being line 1.
+         */
+        private int line;
+        private String email;
+        private String message;
+    }
+
+    /**
+     * Rows read; when the import has been cancelled, only those processed before.
+     */
+    private int rows;
+    private int imported;
+    private boolean cancelled;
+    private List<RowError> errors = new ArrayList<>();
+
+    public void addError(int line, String email, String message) {
+        errors.add(new RowError(line, email, message));
+    }
+
+    public int getRejected() {
+        return rows - imported;
+    }
+}
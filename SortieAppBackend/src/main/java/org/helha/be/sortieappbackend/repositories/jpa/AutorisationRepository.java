@@ -7,6 +7,7 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface AutorisationRepository extends JpaRepository<Autorisation, Long>, PagingAndSortingRepository<Autorisation, Long> {
@@ -14,6 +15,7 @@ public interface AutorisationRepository extends JpaRepository<Autorisation, Long
 
     List<Autorisation> findByUser_id(int userId);
     Page<Autorisation> findByUser_id(int userId, Pageable page);
+    List<Autorisation> findByUser_idIn(Collection<Integer> userIds);
     @Query("SELECT a FROM Autorisation a WHERE a.user.school_user.id_school = :schoolId")
     List<Autorisation> findBySchoolId(int schoolId);
 }
\ No newline at end of file
@@ -2,9 +2,11 @@ package org.helha.be.sortieappbackend.repositories.jpa;
 
 import org.helha.be.sortieappbackend.models.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
@@ -14,4 +16,12 @@ public interface UserRepository extends JpaRepository<User, Integer> {
     List<User> findByActivatedTrue();
     @Query("SELECT u FROM User u WHERE u.email = :email")
     Optional<User> findUserByEmail(@Param("email") String email);
+    @Query("SELECT u.id FROM User u WHERE u.school_user.id_school = :schoolId AND u.role_user.name_role = :roleName")
+    List<Integer> findIdsBySchoolAndRole(@Param("schoolId") int schoolId, @Param("roleName") String roleName);
+    @Query("SELECT u.token_version FROM User u WHERE u.id = :id")
+    Optional<Integer> findTokenVersionById(@Param("id") int id);
+    @Modifying
+    @Transactional
+    @Query("UPDATE User u SET u.token_version = u.token_version + 1 WHERE u.id = :id")
+    int incrementTokenVersion(@Param("id") int id);
 }
@@ -5,51 +5,104 @@ import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.helha.be.sortieappbackend.models.TokenCheck;
 import org.helha.be.sortieappbackend.utils.JWTUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.User;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
+/**
+ * Authenticates the requests carrying a bearer token.
+ *
+ * The principal and its authorities are built from the signed claims of the token ({@code id}, and the role
+ * code {@code rol} resolved by {@link RoleCode}) without loading the user from the database, and kept in the
+ * {@link PrincipalCache} until the token expires. Tokens whose {@code ver} claim is not the current token version
+ * of the user ({@link TokenVersions}) are rejected. The name of the principal is the
+ * user ID.
+ */
 @Component
 public class JWTFilter extends OncePerRequestFilter {
     @Autowired
     private JWTUtils jwtUtils;
 
     @Autowired
-    private UserDetailsService userDetailsService;
+    private PrincipalCache principalCache;
+
+    @Autowired
+    private TokenVersions tokenVersions;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
-        System.out.println("JWTFilter - Authorization Header: " + request.getHeader("Authorization"));
-        System.out.println("JWTFilter - Processing request for: " + request.getRequestURI());
         String jwt = parseJWTFromHeader(request);
-        if(jwt != null && jwtUtils.validateToken(jwt)){
-            System.out.println("JWTFilter - Valid token found: " + jwt);
-            Claims claims = jwtUtils.parseToken(jwt);
-            String username = claims.getSubject();
-            UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-            if(userDetails != null){
-                SecurityContextHolder.getContext().setAuthentication(
-                        new UsernamePasswordAuthenticationToken(userDetails, null,userDetails.getAuthorities())
-                );
-                System.out.println("Authentication: " + SecurityContextHolder.getContext().getAuthentication());
-            }else {
-                System.out.println("JWTFilter - UserDetailsService returned null for username: " + username);
+        if(jwt != null){
+            Authentication authentication = principalCache.get(jwt);
+            if(authentication == null){
+                authentication = authenticate(jwt);
+            }
+            if(authentication != null){
+                SecurityContextHolder.getContext().setAuthentication(authentication);
             }
-        }else {
-            System.out.println("JWTFilter - No valid JWT token found");
         }
-        System.out.println("JWTFilter - SecurityContext Authentication: " +
-                SecurityContextHolder.getContext().getAuthentication());
         filterChain.doFilter(request,response);
     }
 
+    private Authentication authenticate(String jwt){
+        TokenCheck check = jwtUtils.check(jwt);
+        if(!check.isValid()){
+            return null;
+        }
+        Claims claims = check.getClaims();
+        Integer userId = claims.get("id", Integer.class);
+        // Refresh tokens, the only ones with a jti, are not accepted here
+        if(userId == null || claims.getExpiration() == null || claims.getId() != null){
+            return null;
+        }
+        Integer version = claims.get("ver", Integer.class);
+        if(!tokenVersions.isCurrent(userId, version)){
+            return null;
+        }
+        List<GrantedAuthority> authorities;
+        if(claims.containsKey("rol")){
+            authorities = RoleCode.decode(claims.get("rol", String.class));
+        } else if(jwtUtils.isLegacy(claims) && jwtUtils.acceptsLegacyTokens()){
+            authorities = getGrantedAuthorities(claims.get("roles"));
+        } else {
+            return null;
+        }
+        User principal = new User(String.valueOf(userId), "", authorities);
+        Authentication authentication = new UsernamePasswordAuthenticationToken(principal, null, authorities);
+        principalCache.put(jwt, userId, version, claims.getExpiration().getTime(), authentication);
+        return authentication;
+    }
+
+    /**
+     * Reads the legacy {@code roles} claim, written as the serialized authorities of the user: {@code [{"authority": "ROLE_X"}]}.
+     */
+    static List<GrantedAuthority> getGrantedAuthorities(Object roles){
+        List<GrantedAuthority> authorities = new ArrayList<>();
+        if(roles instanceof Collection<?> collection){
+            for(Object role : collection){
+                Object authority = role instanceof Map<?, ?> map ? map.get("authority") : role;
+                if(authority instanceof String name && !name.isEmpty()){
+                    authorities.add(new SimpleGrantedAuthority(name));
+                }
+            }
+        }
+        return authorities;
+    }
+
     private String parseJWTFromHeader(HttpServletRequest request){
         String authorization = request.getHeader("Authorization");
         if(authorization != null && authorization.startsWith("Bearer ")){
@@ -58,4 +111,3 @@ public class JWTFilter extends OncePerRequestFilter {
         return null;
     }
 }
-
@@ -0,0 +1,127 @@
+package org.helha.be.sortieappbackend.security;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Short-lived cache of the authentications built by the {@link JWTFilter}, keyed by access token, so a client
+ * sending the same token again skips the signature check.
+ *
+ * The principals come from the signed claims, not from the database: a cached principal is only served while
+ * the version of its token is the current one of the user in {@link TokenVersions}, so revoking the tokens of a
+ * user also drops their principals.
+ *
+ * Entries live {@code jwt.principal-cache.ttl-ms} at most, and never beyond the expiration of their token.
+ * Once {@code jwt.principal-cache.max-size} entries are reached, the expired ones are purged at most once a second,
+ * so a burst of new tokens does not scan the cache on every request, and new tokens are not cached until there is room.
+ */
+@Component
+public class PrincipalCache implements MeterBinder {
+
+    private record Entry(Authentication authentication, int userId, Integer version, long expiresAt) {}
+
+    @Autowired
+    private Clock clock;
+
+    @Autowired
+    private TokenVersions tokenVersions;
+
+    private final long ttlMs;
+    private final int maxSize;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweep = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public PrincipalCache(@Value("${jwt.principal-cache.ttl-ms:60000}") long ttlMs,
+                          @Value("${jwt.principal-cache.max-size:10000}") int maxSize) {
+        this.ttlMs = ttlMs;
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("jwt.principal.cache", hits, LongAdder::doubleValue)
+                .tag("result", "hit")
+                .description("Requests authenticated from a cached principal")
+                .register(registry);
+        FunctionCounter.builder("jwt.principal.cache", misses, LongAdder::doubleValue)
+                .tag("result", "miss")
+                .description("Requests whose token had to be parsed")
+                .register(registry);
+        Gauge.builder("jwt.principal.cache.size", entries, Map::size)
+                .description("Principals in the cache")
+                .register(registry);
+    }
+
+    /**
+     * Returns the cached authentication of a token.
+     *
+     * @param token the access token.
+     * @return the authentication, or {@code null} if the token is not cached, has expired or has been revoked.
+     */
+    public Authentication get(String token) {
+        Entry entry = entries.get(token);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (entry.expiresAt() <= clock.millis() || !tokenVersions.isCurrent(entry.userId(), entry.version())) {
+            entries.remove(token, entry);
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.authentication();
+    }
+
+    /**
+     * Caches the authentication of a token.
+     *
+     * @param token          the access token.
+     * @param userId         the ID of the user the token was issued to.
+     * @param version        the token version of the token.
+     * @param expiresAt      the expiration date of the token, in epoch milliseconds.
+     * @param authentication the authentication built from the token.
+     */
+    public void put(String token, int userId, Integer version, long expiresAt, Authentication authentication) {
+        long now = clock.millis();
+        if (entries.size() >= maxSize) {
+            long last = lastSweep.get();
+            if (now - last < 1000 || !lastSweep.compareAndSet(last, now)) {
+                return;
+            }
+            entries.values().removeIf(entry -> entry.expiresAt() <= now);
+            if (entries.size() >= maxSize) {
+                return;
+            }
+        }
+        entries.put(token, new Entry(authentication, userId, version, Math.min(now + ttlMs, expiresAt)));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+}
@@ -0,0 +1,113 @@
+package org.helha.be.sortieappbackend.security;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.helha.be.sortieappbackend.utils.RateLimiter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throttles the endpoints that hash a password or consume a token, so a client retrying in a loop cannot take
+ * all the BCrypt threads and database connections: every request takes a permit from the bucket of its client
+ * IP ({@code rate-limit.ip.*}), and logins also one from the bucket of their email ({@code rate-limit.email.*}),
+ * which holds against a client spreading its attempts on one account over many addresses.
+ *
+ * Requests without a permit are answered 429 with a {@code Retry-After} and counted in
+ * {@code auth.ratelimit.rejected}. The filter runs before the Spring Security chain.
+ */
+@Component
+@Order(SecurityProperties.DEFAULT_FILTER_ORDER - 1)
+public class RateLimitFilter extends OncePerRequestFilter implements MeterBinder {
+
+    static final Set<String> LIMITED_PATHS = Set.of("/auth/login", "/auth/refresh-token", "/users/activate", "/users/set-password");
+    static final String LOGIN_PATH = "/auth/login";
+
+    private final RateLimiter ipLimiter;
+    private final RateLimiter emailLimiter;
+
+    private final LongAdder ipRejections = new LongAdder();
+    private final LongAdder emailRejections = new LongAdder();
+
+    public RateLimitFilter(@Value("${rate-limit.ip.capacity:20}") int ipCapacity,
+                           @Value("${rate-limit.ip.permits-per-minute:60}") long ipPermitsPerMinute,
+                           @Value("${rate-limit.email.capacity:5}") int emailCapacity,
+                           @Value("${rate-limit.email.permits-per-minute:10}") long emailPermitsPerMinute,
+                           @Value("${rate-limit.max-keys:100000}") int maxKeys,
+                           @Value("${rate-limit.idle-ms:60000}") long idleMs) {
+        this.ipLimiter = new RateLimiter(ipCapacity, ipPermitsPerMinute, maxKeys, idleMs);
+        this.emailLimiter = new RateLimiter(emailCapacity, emailPermitsPerMinute, maxKeys, idleMs);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("auth.ratelimit.rejected", ipRejections, LongAdder::doubleValue)
+                .tag("key", "ip")
+                .description("Requests refused because their client IP ran out of permits")
+                .register(registry);
+        FunctionCounter.builder("auth.ratelimit.rejected", emailRejections, LongAdder::doubleValue)
+                .tag("key", "email")
+                .description("Logins refused because their email ran out of permits")
+                .register(registry);
+        Gauge.builder("auth.ratelimit.buckets", ipLimiter, RateLimiter::size)
+                .tag("key", "ip")
+                .description("Token buckets held in memory")
+                .register(registry);
+        Gauge.builder("auth.ratelimit.buckets", emailLimiter, RateLimiter::size)
+                .tag("key", "email")
+                .description("Token buckets held in memory")
+                .register(registry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !LIMITED_PATHS.contains(request.getServletPath());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        long wait = ipLimiter.tryAcquire(request.getRemoteAddr());
+        if (wait > 0) {
+            ipRejections.increment();
+            reject(response, wait);
+            return;
+        }
+        String email = request.getParameter("email");
+        if (email != null && LOGIN_PATH.equals(request.getServletPath())) {
+            wait = emailLimiter.tryAcquire(email.trim().toLowerCase(Locale.ROOT));
+            if (wait > 0) {
+                emailRejections.increment();
+                reject(response, wait);
+                return;
+            }
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    private static void reject(HttpServletResponse response, long waitNanos) throws IOException {
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999))));
+        response.setContentType("text/plain;charset=UTF-8");
+        response.getWriter().write("Too many requests, retry later");
+    }
+
+    public long getRejections() {
+        return ipRejections.sum() + emailRejections.sum();
+    }
+}
@@ -0,0 +1,115 @@
+package org.helha.be.sortieappbackend.security;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import org.helha.be.sortieappbackend.utils.BloomFilter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Set of the refresh tokens that have been used, by {@code jti}, so each refresh token is accepted once.
+ *
+ * The set is stored in the {@code revoked_token} table, and mirrored in memory by a {@link BloomFilter} rebuilt
+ * at startup: a token missing from the filter, the usual case, is known to be unused without querying the
+ * database. Only the tokens the filter may contain are looked up. Rows of expired tokens are deleted at startup.
+ *
+ * The filter is sized by {@code jwt.revocation.expected-tokens} and {@code jwt.revocation.false-positive-rate};
+ * past that count it answers "maybe" more often, which costs lookups but never a wrong answer.
+ */
+@Component
+@DependsOn("entityManagerFactory") // The table must exist before the rebuild
+public class RefreshTokenStore implements MeterBinder {
+
+    static final String INSERT_SQL = "INSERT INTO revoked_token (jti, id_user, expires_at) VALUES (?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BloomFilter filter;
+
+    @Autowired
+    private Clock clock;
+
+    private final AtomicLong size = new AtomicLong();
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder reuses = new LongAdder();
+
+    public RefreshTokenStore(JdbcTemplate jdbcTemplate,
+                             @Value("${jwt.revocation.expected-tokens:100000}") long expectedTokens,
+                             @Value("${jwt.revocation.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.filter = new BloomFilter(expectedTokens, falsePositiveRate);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("jwt.refresh.revoked", size, AtomicLong::get)
+                .description("Used refresh tokens loaded in or added to the Bloom filter")
+                .register(registry);
+        FunctionCounter.builder("jwt.refresh.lookups", lookups, LongAdder::doubleValue)
+                .description("Refresh tokens the Bloom filter may contain, looked up in the database")
+                .register(registry);
+        FunctionCounter.builder("jwt.refresh.reuses", reuses, LongAdder::doubleValue)
+                .description("Refresh tokens presented again after their use")
+                .register(registry);
+    }
+
+    /**
+     * Deletes the expired rows and loads the others in the Bloom filter.
+     */
+    @PostConstruct
+    public void rebuild() {
+        jdbcTemplate.update("DELETE FROM revoked_token WHERE expires_at < ?", new Timestamp(clock.millis()));
+        jdbcTemplate.query("SELECT jti FROM revoked_token", resultSet -> {
+            filter.put(resultSet.getString(1));
+            size.incrementAndGet();
+        });
+    }
+
+    /**
+     * Tells whether a refresh token has already been used or revoked.
+     */
+    public boolean isRevoked(String jti) {
+        if (!filter.mightContain(jti)) {
+            return false;
+        }
+        lookups.increment();
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM revoked_token WHERE jti = ?", Integer.class, jti);
+        return count != null && count > 0;
+    }
+
+    /**
+     * Marks a refresh token as used.
+     *
+     * @param jti       the {@code jti} claim of the token.
+     * @param userId    the user the token was issued to.
+     * @param expiresAt the expiration date of the token, in epoch milliseconds; the row can be deleted afterwards.
+     * @return {@code false} if the token had already been used, in which case it must be rejected.
+     */
+    public boolean use(String jti, int userId, long expiresAt) {
+        if (isRevoked(jti)) {
+            reuses.increment();
+            return false;
+        }
+        try {
+            jdbcTemplate.update(INSERT_SQL, jti, userId, new Timestamp(expiresAt));
+        } catch (DuplicateKeyException e) {
+            // Used concurrently by another request
+            reuses.increment();
+            return false;
+        }
+        filter.put(jti);
+        size.incrementAndGet();
+        return true;
+    }
+}
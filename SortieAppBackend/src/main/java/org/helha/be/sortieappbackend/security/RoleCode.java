@@ -0,0 +1,76 @@
+package org.helha.be.sortieappbackend.security;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Short codes of the roles carried by the {@code rol} claim of the access tokens, and the authorities they
+ * stand for. A role missing from this table is written with its full name and still resolved.
+ */
+public enum RoleCode {
+    ADMIN("AD"),
+    LOCAL_ADMIN("LA"),
+    RESPONSIBLE("RE"),
+    SUPERVISOR("SU"),
+    STUDENT("ST");
+
+    private static final Map<String, RoleCode> BY_CODE = new HashMap<>();
+    private static final Map<String, RoleCode> BY_NAME = new HashMap<>();
+
+    static {
+        for (RoleCode roleCode : values()) {
+            BY_CODE.put(roleCode.code, roleCode);
+            BY_NAME.put(roleCode.name(), roleCode);
+        }
+    }
+
+    private final String code;
+    private final List<GrantedAuthority> authorities;
+
+    RoleCode(String code) {
+        this.code = code;
+        this.authorities = List.of(new SimpleGrantedAuthority("ROLE_" + name()));
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public List<GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    /**
+     * Returns the code of the first authority, e.g. {@code ST} for {@code ROLE_STUDENT}.
+     *
+     * @return the code, the role name when it has no code, or {@code null} without authorities.
+     */
+    public static String encode(Collection<? extends GrantedAuthority> authorities) {
+        for (GrantedAuthority authority : authorities) {
+            String name = authority.getAuthority();
+            if (name == null) {
+                continue;
+            }
+            name = name.startsWith("ROLE_") ? name.substring(5) : name;
+            RoleCode roleCode = BY_NAME.get(name.toUpperCase());
+            return roleCode != null ? roleCode.code : name.toUpperCase();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the authorities of a role code written by {@link #encode(Collection)}.
+     */
+    public static List<GrantedAuthority> decode(String code) {
+        if (code == null || code.isEmpty()) {
+            return List.of();
+        }
+        RoleCode roleCode = BY_CODE.get(code);
+        return roleCode != null ? roleCode.authorities : List.of(new SimpleGrantedAuthority("ROLE_" + code.toUpperCase()));
+    }
+}
@@ -0,0 +1,80 @@
+package org.helha.be.sortieappbackend.security;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.helha.be.sortieappbackend.repositories.jpa.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory copy of the token version of the users ({@code User.token_version}).
+ *
+ * Every token carries the version of its user in its {@code ver} claim, and is only accepted while it matches
+ * the current one: {@link #revoke(int)} increments the version in the database and so revokes every token issued
+ * to the user so far, access and refresh tokens alike. The versions are loaded on first use and then checked
+ * without touching the database.
+ */
+@Component
+public class TokenVersions implements MeterBinder {
+
+    /** Version of the users that do not exist anymore: no token matches it. */
+    static final int UNKNOWN_USER = -1;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private final Map<Integer, Integer> versions = new ConcurrentHashMap<>();
+
+    private final LongAdder revocations = new LongAdder();
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("jwt.revocations", revocations, LongAdder::doubleValue)
+                .description("Users whose tokens have been revoked")
+                .register(registry);
+        Gauge.builder("jwt.token.versions", versions, Map::size)
+                .description("Token versions held in memory")
+                .register(registry);
+    }
+
+    /**
+     * Returns the current token version of a user, loading it on first use.
+     */
+    public int get(int userId) {
+        return versions.computeIfAbsent(userId, this::load);
+    }
+
+    /**
+     * Tells whether a token issued with the given version is still valid.
+     *
+     * @param userId  the ID of the user.
+     * @param version the {@code ver} claim of the token; {@code null} for the tokens issued before it existed.
+     */
+    public boolean isCurrent(int userId, Integer version) {
+        int current = get(userId);
+        return current != UNKNOWN_USER && current == (version != null ? version : 0);
+    }
+
+    /**
+     * Revokes every token issued to a user so far.
+     * To be called when the user is deactivated or deleted, when their role or email changes, or when one of
+     * their refresh tokens is reused.
+     *
+     * @param userId the ID of the user.
+     */
+    public void revoke(int userId) {
+        userRepository.incrementTokenVersion(userId);
+        versions.put(userId, load(userId));
+        revocations.increment();
+    }
+
+    private int load(int userId) {
+        return userRepository.findTokenVersionById(userId).orElse(UNKNOWN_USER);
+    }
+}
@@ -1,8 +1,10 @@
 package org.helha.be.sortieappbackend.services;
 
 import org.helha.be.sortieappbackend.models.Autorisation;
+import org.helha.be.sortieappbackend.models.AutorisationChangedEvent;
 import org.helha.be.sortieappbackend.repositories.jpa.AutorisationRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Primary;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -17,6 +19,15 @@ public class AutorisationServiceDB implements IAutorisationService {
     @Autowired
     private AutorisationRepository autorisationRepository;
 
+    @Autowired
+    private ExitRuleService exitRuleService;
+
+    @Autowired
+    private ExitWindowIndex exitWindowIndex;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     public Page<Autorisation> getAutorisationsByUserID(int userId,Pageable page) {
         return autorisationRepository.findByUser_id(userId,page);
     }
@@ -37,18 +48,39 @@ public class AutorisationServiceDB implements IAutorisationService {
 
 
     public Autorisation addAutorisation(Autorisation autorisation) {
-        return autorisationRepository.save(autorisation);
+        return save(autorisation);
     }
 
 
-    public Autorisation updateAutorisation(Autorisation autorisation) {return autorisationRepository.save(autorisation);}
+    public Autorisation updateAutorisation(Autorisation autorisation) {
+        return save(autorisation);
+    }
 
 
     public void deleteAutorisation(long id) {
+        Integer owner = exitWindowIndex.getOwner(id);
         autorisationRepository.deleteById(id);
+        exitRuleService.invalidate(id);
+        exitWindowIndex.onAutorisationDeleted(id);
+        eventPublisher.publishEvent(new AutorisationChangedEvent(id, AutorisationChangedEvent.Change.DELETED, owner, null));
     }
 
     public List<Autorisation> getAutorisationsBySchoolId(int schoolId) {
         return autorisationRepository.findBySchoolId(schoolId);
     }
+
+    /**
+     * Saves an Autorisation, refreshes the exit rule caches and publishes an {@link AutorisationChangedEvent}
+     * so the gate caches of its student can be warmed in the background.
+     */
+    private Autorisation save(Autorisation autorisation) {
+        Integer previousOwner = autorisation.getId() != 0 ? exitWindowIndex.getOwner(autorisation.getId()) : null;
+        Autorisation saved = autorisationRepository.save(autorisation);
+        exitRuleService.invalidate(saved.getId());
+        exitWindowIndex.onAutorisationSaved(saved);
+        Integer owner = saved.getUser() != null ? saved.getUser().getId() : null;
+        eventPublisher.publishEvent(new AutorisationChangedEvent(saved.getId(), AutorisationChangedEvent.Change.SAVED,
+                owner, previousOwner != null && !previousOwner.equals(owner) ? previousOwner : null));
+        return saved;
+    }
 }
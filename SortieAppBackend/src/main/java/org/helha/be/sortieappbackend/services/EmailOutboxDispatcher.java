@@ -0,0 +1,294 @@
+package org.helha.be.sortieappbackend.services;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.helha.be.sortieappbackend.models.EmailOutbox;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends the emails of the {@link EmailOutbox} table from a background thread.
+ *
+ * The thread drains the due {@code PENDING} emails in batches of {@code email-outbox.batch-size}, sent with
+ * {@link EmailService#sendActivationEmails(List)} over few SMTP connections, every
+ * {@code email-outbox.poll-interval-ms} and whenever {@link #wakeUp()} is called after a commit. A sent email is
+ * marked {@code SENT}. An email whose sending fails is retried with an exponential backoff, starting at
+ * {@code email-outbox.initial-backoff-ms} and doubling up to {@code email-outbox.max-backoff-ms}; after
+ * {@code email-outbox.max-attempts} attempts it is marked {@code DEAD} with its last error and left for inspection.
+ *
+ * Emails are claimed by a single dispatcher per instance: running several instances on the same database may
+ * send an email twice.
+ */
+@Service
+public class EmailOutboxDispatcher implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(EmailOutboxDispatcher.class);
+
+    static final String SELECT_DUE_SQL = "SELECT id, type, recipient, payload, locale, attempts, created_at FROM email_outbox "
+            + "WHERE status = 'PENDING' AND next_attempt_at <= ? ORDER BY next_attempt_at, id LIMIT ?";
+    static final String SENT_SQL = "UPDATE email_outbox SET status = 'SENT', attempts = ?, sent_at = ?, last_error = NULL WHERE id = ?";
+    static final String FAILED_SQL = "UPDATE email_outbox SET status = ?, attempts = ?, next_attempt_at = ?, last_error = ? WHERE id = ?";
+
+    private static final RowMapper<EmailOutbox> ROW_MAPPER = (resultSet, rowNum) -> {
+        EmailOutbox email = new EmailOutbox();
+        email.setId(resultSet.getLong("id"));
+        email.setType(resultSet.getString("type"));
+        email.setRecipient(resultSet.getString("recipient"));
+        email.setPayload(resultSet.getString("payload"));
+        email.setLocale(resultSet.getString("locale"));
+        email.setAttempts(resultSet.getInt("attempts"));
+        email.setCreated_at(resultSet.getTimestamp("created_at").toLocalDateTime());
+        return email;
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+    private final long pollIntervalMs;
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+
+    @Autowired
+    private EmailService emailService;
+
+    @Autowired
+    private Clock clock;
+
+    private final ScheduledExecutorService executor;
+    private final AtomicBoolean wakeUpPending = new AtomicBoolean();
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder dead = new LongAdder();
+    private final LongAdder drainFailures = new LongAdder();
+    private final AtomicLong pending = new AtomicLong();
+    private volatile Timer delayTimer;
+
+    public EmailOutboxDispatcher(JdbcTemplate jdbcTemplate,
+                                 @Value("${email-outbox.batch-size:50}") int batchSize,
+                                 @Value("${email-outbox.poll-interval-ms:1000}") long pollIntervalMs,
+                                 @Value("${email-outbox.max-attempts:8}") int maxAttempts,
+                                 @Value("${email-outbox.initial-backoff-ms:5000}") long initialBackoffMs,
+                                 @Value("${email-outbox.max-backoff-ms:3600000}") long maxBackoffMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = Math.max(1, batchSize);
+        this.pollIntervalMs = pollIntervalMs;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "email-outbox-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("email.outbox", sent, LongAdder::doubleValue)
+                .tag("result", "sent")
+                .description("Outbox emails sent, or retried, or given up on")
+                .register(registry);
+        FunctionCounter.builder("email.outbox", retried, LongAdder::doubleValue)
+                .tag("result", "retried")
+                .description("Outbox emails sent, or retried, or given up on")
+                .register(registry);
+        FunctionCounter.builder("email.outbox", dead, LongAdder::doubleValue)
+                .tag("result", "dead")
+                .description("Outbox emails sent, or retried, or given up on")
+                .register(registry);
+        FunctionCounter.builder("email.outbox.drain.failures", drainFailures, LongAdder::doubleValue)
+                .description("Background drains of the outbox that failed, e.g. because the database was unreachable")
+                .register(registry);
+        Gauge.builder("email.outbox.pending", pending, AtomicLong::get)
+                .description("Outbox emails waiting to be sent, as of the last drain")
+                .register(registry);
+        delayTimer = Timer.builder("email.outbox.delay")
+                .description("Time from the queuing of an email to its sending")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        executor.scheduleWithFixedDelay(this::drainQuietly, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the dispatcher; the emails still pending are sent at the next start.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Asks for a drain as soon as possible, typically because emails have just been committed.
+     * Calls made while a drain is already requested are merged.
+     */
+    public void wakeUp() {
+        if (!wakeUpPending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                wakeUpPending.set(false);
+                drainQuietly();
+            });
+        } catch (RejectedExecutionException e) {
+            // Shutting down: the emails are sent at the next start
+            wakeUpPending.set(false);
+        }
+    }
+
+    private void drainQuietly() {
+        try {
+            drain();
+        } catch (RuntimeException e) {
+            drainFailures.increment();
+            log.warn("Unable to drain the email outbox", e);
+        }
+    }
+
+    /**
+     * Sends the due emails, batch after batch, until none is due.
+     *
+     * @return the number of emails attempted.
+     */
+    public int drain() {
+        int attempted = 0;
+        List<EmailOutbox> due;
+        do {
+            LocalDateTime now = LocalDateTime.now(clock);
+            due = jdbcTemplate.query(SELECT_DUE_SQL, ROW_MAPPER, Timestamp.valueOf(now), batchSize);
+            List<EmailOutbox> succeeded = new ArrayList<>(due.size());
+            List<EmailOutbox> failed = new ArrayList<>();
+            List<EmailOutbox> activationEmails = new ArrayList<>(due.size());
+            List<EmailService.Activation> activations = new ArrayList<>(due.size());
+            for (EmailOutbox email : due) {
+                email.setAttempts(email.getAttempts() + 1);
+                if (EmailOutboxService.ACTIVATION.equals(email.getType())) {
+                    activationEmails.add(email);
+                    activations.add(new EmailService.Activation(email.getRecipient(), email.getPayload(), email.getLocale()));
+                } else {
+                    fail(email, new IllegalArgumentException("Unknown email type: " + email.getType()), now);
+                    failed.add(email);
+                }
+            }
+            Map<Integer, Exception> failures = activations.isEmpty()
+                    ? Map.of()
+                    : emailService.sendActivationEmails(activations);
+            for (int i = 0; i < activationEmails.size(); i++) {
+                EmailOutbox email = activationEmails.get(i);
+                Exception failure = failures.get(i);
+                if (failure == null) {
+                    succeeded.add(email);
+                } else {
+                    fail(email, failure, now);
+                    failed.add(email);
+                }
+            }
+            markSent(succeeded);
+            markFailed(failed);
+            attempted += due.size();
+        } while (due.size() == batchSize);
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM email_outbox WHERE status = 'PENDING'", Long.class);
+        pending.set(count != null ? count : 0);
+        return attempted;
+    }
+
+    private void fail(EmailOutbox email, Exception e, LocalDateTime now) {
+        boolean retry = email.getAttempts() < maxAttempts && !(e instanceof IllegalArgumentException);
+        email.setStatus(retry ? EmailOutbox.Status.PENDING : EmailOutbox.Status.DEAD);
+        email.setNext_attempt_at(retry ? now.plus(Duration.ofMillis(backoffMs(email.getAttempts()))) : now);
+        String message = e.getClass().getSimpleName() + ": " + e.getMessage();
+        email.setLast_error(message.length() > 1000 ? message.substring(0, 1000) : message);
+    }
+
+    /**
+     * Returns the delay before the next attempt of an email that failed for the {@code attempts}-th time.
+     */
+    long backoffMs(int attempts) {
+        long delay = initialBackoffMs;
+        for (int i = 1; i < attempts && delay < maxBackoffMs; i++) {
+            delay *= 2;
+        }
+        return Math.min(delay, maxBackoffMs);
+    }
+
+    private void markSent(List<EmailOutbox> emails) {
+        if (emails.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now(clock);
+        jdbcTemplate.batchUpdate(SENT_SQL, emails, emails.size(), (statement, email) -> {
+            statement.setInt(1, email.getAttempts());
+            statement.setTimestamp(2, Timestamp.valueOf(now));
+            statement.setLong(3, email.getId());
+        });
+        sent.add(emails.size());
+        Timer timer = delayTimer;
+        if (timer != null) {
+            for (EmailOutbox email : emails) {
+                timer.record(Duration.between(email.getCreated_at(), now));
+            }
+        }
+    }
+
+    private void markFailed(List<EmailOutbox> emails) {
+        if (emails.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(FAILED_SQL, emails, emails.size(), (statement, email) -> {
+            statement.setString(1, email.getStatus().name());
+            statement.setInt(2, email.getAttempts());
+            statement.setTimestamp(3, Timestamp.valueOf(email.getNext_attempt_at()));
+            statement.setString(4, email.getLast_error());
+            statement.setLong(5, email.getId());
+        });
+        for (EmailOutbox email : emails) {
+            (email.getStatus() == EmailOutbox.Status.DEAD ? dead : retried).increment();
+        }
+    }
+
+    public long getSent() {
+        return sent.sum();
+    }
+
+    public long getRetried() {
+        return retried.sum();
+    }
+
+    public long getDead() {
+        return dead.sum();
+    }
+
+    public long getDrainFailures() {
+        return drainFailures.sum();
+    }
+}
@@ -0,0 +1,92 @@
+package org.helha.be.sortieappbackend.services;
+
+import org.helha.be.sortieappbackend.models.EmailOutbox;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Queues emails in the {@link EmailOutbox} table, within the current transaction: the email exists if and only if
+ * the data it is about has been committed. The {@link EmailOutboxDispatcher} is woken up once the transaction
+ * commits, so the email usually leaves at once rather than at its next poll.
+ */
+@Service
+public class EmailOutboxService {
+
+    public static final String ACTIVATION = "activation";
+
+    static final String INSERT_SQL = "INSERT INTO email_outbox (type, recipient, payload, locale, status, attempts, next_attempt_at, created_at) "
+            + "VALUES (?, ?, ?, ?, 'PENDING', 0, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EmailOutboxDispatcher dispatcher;
+
+    @Autowired
+    private Clock clock;
+
+    public EmailOutboxService(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Queues the activation email of a new user.
+     *
+     * @param to              the email address of the user.
+     * @param activationToken the token of the activation link.
+     * @param locale          the language of the email, usually the one of the school; may be {@code null}.
+     */
+    public void enqueueActivation(String to, String activationToken, String locale) {
+        enqueue(List.of(activation(to, activationToken, locale)));
+    }
+
+    /**
+     * Builds, without queuing it, the activation email of a new user.
+     */
+    public static EmailOutbox activation(String to, String activationToken, String locale) {
+        EmailOutbox email = new EmailOutbox();
+        email.setType(ACTIVATION);
+        email.setRecipient(to);
+        email.setPayload(activationToken);
+        email.setLocale(locale);
+        return email;
+    }
+
+    /**
+     * Queues emails with one JDBC batch.
+     *
+     * @param emails the emails; only their type, recipient, payload and locale are used.
+     */
+    public void enqueue(List<EmailOutbox> emails) {
+        if (emails.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now(clock));
+        jdbcTemplate.batchUpdate(INSERT_SQL, emails, emails.size(), (statement, email) -> {
+            statement.setString(1, email.getType());
+            statement.setString(2, email.getRecipient());
+            statement.setString(3, email.getPayload());
+            statement.setString(4, email.getLocale());
+            statement.setTimestamp(5, now);
+            statement.setTimestamp(6, now);
+        });
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    dispatcher.wakeUp();
+                }
+            });
+        } else {
+            dispatcher.wakeUp();
+        }
+    }
+}
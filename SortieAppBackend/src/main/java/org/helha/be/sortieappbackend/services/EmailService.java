@@ -1,52 +1,174 @@
 package org.helha.be.sortieappbackend.services;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.helha.be.sortieappbackend.utils.RateLimiter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
 import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
 
+/**
+ * Builds and sends the emails of the application.
+ *
+ * {@link #sendActivationEmails(List)} sends many emails over few SMTP connections: they go by batches of
+ * {@code email.bulk.batch-size}, each batch over a single connection (one handshake, STARTTLS and login for the
+ * whole batch), and no faster than {@code email.bulk.max-per-minute} emails per minute when set, to stay under
+ * the quotas of the provider.
+ *
+ * The emails are rendered from the templates of the {@link TemplateService}, in the language of the school.
+ */
 @Service
 public class EmailService {
 
+    private static final String RATE_LIMIT_KEY = "smtp";
+
+    private static final Timer BATCH_TIMER = Timer.builder("email.send.batch")
+            .description("Duration of the sending of a batch of emails over one SMTP connection")
+            .register(Metrics.globalRegistry);
+    private static final Timer THROTTLE_TIMER = Timer.builder("email.send.throttle")
+            .description("Time spent waiting for the send rate limit")
+            .register(Metrics.globalRegistry);
+    private static final Counter BULK_SENT = Counter.builder("email.bulk")
+            .tag("result", "sent")
+            .description("Emails sent, or not, by the bulk sends")
+            .register(Metrics.globalRegistry);
+    private static final Counter BULK_FAILED = Counter.builder("email.bulk")
+            .tag("result", "failed")
+            .description("Emails sent, or not, by the bulk sends")
+            .register(Metrics.globalRegistry);
+
+    /**
+     * An activation email to send.
+     */
+    public record Activation(String to, String activationToken, String locale) {}
+
+    private static final String ACTIVATION_LINK = "http://localhost:8081/users/activate-form?token=";
+
     @Autowired
     private JavaMailSender mailSender;
 
-    public void sendActivationEmail(String to, String activationToken) throws MessagingException {
+    @Autowired
+    private TemplateService templates;
+
+    @Value("${email.bulk.batch-size:50}")
+    private int batchSize = 50;
+
+    @Value("${email.bulk.max-per-minute:0}")
+    private long maxPerMinute;
+
+    /** {@code null} when the send rate is not limited. */
+    private RateLimiter rateLimiter;
+
+    @PostConstruct
+    public void init() {
+        if (maxPerMinute > 0) {
+            // One batch may leave at once, the next ones at the configured rate
+            rateLimiter = new RateLimiter(Math.max(1, batchSize), maxPerMinute, 1, 60_000);
+        }
+    }
+
+    /**
+     * Sends activation emails by batches, each batch over one SMTP connection.
+     * An email that cannot be built or sent does not stop the others.
+     *
+     * @param emails the emails to send.
+     * @return the reason of each email that could not be sent, by index in {@code emails}; empty if all of them
+     *         were sent. Two equal emails are reported apart.
+     */
+    public Map<Integer, Exception> sendActivationEmails(List<Activation> emails) {
+        Map<Integer, Exception> failures = new TreeMap<>();
+        for (int from = 0; from < emails.size(); from += Math.max(1, batchSize)) {
+            int to = Math.min(emails.size(), from + Math.max(1, batchSize));
+            // MimeMessage keeps the identity equality: the map is keyed by instance, in sending order
+            Map<MimeMessage, Integer> messages = new LinkedHashMap<>();
+            for (int i = from; i < to; i++) {
+                try {
+                    messages.put(buildActivationEmail(emails.get(i)), i);
+                } catch (MessagingException | RuntimeException e) {
+                    failures.put(i, e);
+                }
+            }
+            if (!messages.isEmpty()) {
+                sendBatch(messages, failures);
+            }
+        }
+        BULK_FAILED.increment(failures.size());
+        BULK_SENT.increment(emails.size() - failures.size());
+        return failures;
+    }
+
+    private void sendBatch(Map<MimeMessage, Integer> messages, Map<Integer, Exception> failures) {
+        Timer.Sample sample = Timer.start();
+        try {
+            throttle(messages.size());
+            mailSender.send(messages.keySet().toArray(new MimeMessage[0]));
+        } catch (MailSendException e) {
+            if (e.getFailedMessages().isEmpty()) {
+                messages.values().forEach(index -> failures.put(index, e));
+            } else {
+                // Only the listed messages failed, the connection went on with the others
+                e.getFailedMessages().forEach((message, exception) -> failures.put(messages.get(message), exception));
+            }
+        } catch (MailException e) {
+            // Connection or authentication failure: nothing was sent
+            messages.values().forEach(index -> failures.put(index, e));
+        } finally {
+            sample.stop(BATCH_TIMER);
+        }
+    }
+
+    /**
+     * Waits until the rate limit allows {@code permits} more emails.
+     */
+    private void throttle(int permits) {
+        if (rateLimiter == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < permits; i++) {
+            long wait;
+            while ((wait = rateLimiter.tryAcquire(RATE_LIMIT_KEY)) > 0) {
+                LockSupport.parkNanos(wait);
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new MailSendException("Interrupted while waiting for the send rate limit");
+                }
+            }
+        }
+        THROTTLE_TIMER.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private MimeMessage buildActivationEmail(Activation email) throws MessagingException {
         MimeMessage message = mailSender.createMimeMessage();
         MimeMessageHelper helper = new MimeMessageHelper(message, true);
 
-        helper.setTo(to);
-        helper.setSubject("Activate Your School Account");
-
-        String activationLink = String.format(
-                "http://localhost:8081/users/activate-form?token=%s",
-                activationToken
-        );
-
-        String emailContent = """
-            <!DOCTYPE html>
-            <html lang="en">
-            <head>
-                <meta charset="UTF-8">
-                <meta name="viewport" content="width=device-width, initial-scale=1.0">
-                <title>Activate Your Account</title>
-            </head>
-            <body>
-                <h1>Welcome to your School!</h1>
-                <p>Please click the link below to set your password and activate your account:</p>
-                <a href="%s">Set Your Password</a>
-            </body>
-            </html>
-        """.formatted(activationLink);
-
-        helper.setText(emailContent, true);
-        mailSender.send(message);
+        helper.setTo(email.to());
+        helper.setSubject(templates.message(email.locale(), "email.activation.subject"));
+
+        String activationLink = ACTIVATION_LINK + URLEncoder.encode(email.activationToken(), StandardCharsets.UTF_8);
+        helper.setText(templates.render(TemplateService.ACTIVATION_EMAIL, email.locale(), Map.of("link", activationLink)), true);
+        return message;
     }
 
     public String generateActivationToken() {
         return UUID.randomUUID().toString();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,110 @@
+package org.helha.be.sortieappbackend.services;
+
+import org.helha.be.sortieappbackend.models.Autorisation;
+import org.helha.be.sortieappbackend.models.ExitRule;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compiles Autorisations into {@link ExitRule}s and keeps them in memory.
+ *
+ * Rules are cached by Autorisation id and must be invalidated whenever the Autorisation
+ * is written, which {@link AutorisationServiceDB} does on add, update and delete.
+ * Each invalidation moves the {@link #generation()} forward: a caller reads it before loading Autorisations, and
+ * their rules are only cached when no invalidation happened since, as they may come from the former Autorisation.
+ * At most {@code exit-rules.cache.max-size} rules are cached; past that, rules are compiled on each use.
+ */
+@Service
+public class ExitRuleService {
+
+    private final Map<Long, ExitRule> rules = new ConcurrentHashMap<>();
+
+    /** Incremented by each invalidation, before the rule is removed. */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @Value("${exit-rules.cache.max-size:10000}")
+    private int maxSize = 10000;
+
+    private final ZoneId zone;
+
+    public ExitRuleService(Clock clock) {
+        this.zone = clock.getZone();
+    }
+
+    /**
+     * @return the current generation, to read before loading the Autorisations given to {@link #getRule(Autorisation, long)}.
+     */
+    public long generation() {
+        return invalidations.get();
+    }
+
+    /**
+     * Returns the compiled rule of an Autorisation, from the cache or compiled without caching it:
+     * the Autorisation may have been read before its last write.
+     *
+     * @param autorisation the Autorisation to evaluate.
+     * @return the compiled rule.
+     */
+    public ExitRule getRule(Autorisation autorisation) {
+        ExitRule rule = rules.get(autorisation.getId());
+        return rule != null ? rule : ExitRule.compile(autorisation, zone);
+    }
+
+    /**
+     * Returns the compiled rule of an Autorisation, compiling it on first use.
+     * The rule is only cached when no Autorisation was invalidated since {@code generation}, read before the
+     * Autorisation was loaded. Autorisations that are not persisted yet (id 0) are compiled but never cached.
+     *
+     * @param autorisation the Autorisation to evaluate.
+     * @param generation   the {@link #generation()} read before the Autorisation was loaded.
+     * @return the compiled rule.
+     */
+    public ExitRule getRule(Autorisation autorisation, long generation) {
+        if (autorisation.getId() == 0) {
+            return ExitRule.compile(autorisation, zone);
+        }
+        ExitRule rule = rules.get(autorisation.getId());
+        if (rule != null) {
+            return rule;
+        }
+        rule = ExitRule.compile(autorisation, zone);
+        if (rules.size() < maxSize && invalidations.get() == generation) {
+            rules.putIfAbsent(autorisation.getId(), rule);
+            // Invalidated between the check and the put: the rule may be the one of the former Autorisation
+            if (invalidations.get() != generation) {
+                rules.remove(autorisation.getId(), rule);
+            }
+        }
+        return rule;
+    }
+
+    /**
+     * Drops the compiled rule of an Autorisation.
+     *
+     * @param autorisationId the ID of the Autorisation that was written.
+     */
+    public void invalidate(long autorisationId) {
+        invalidations.incrementAndGet();
+        rules.remove(autorisationId);
+    }
+
+    /**
+     * @return the number of compiled rules currently cached.
+     */
+    public int size() {
+        return rules.size();
+    }
+
+    /**
+     * @return the zone used to compile the rules, the one of the application {@link Clock}.
+     */
+    public ZoneId getZone() {
+        return zone;
+    }
+}
@@ -0,0 +1,364 @@
+package org.helha.be.sortieappbackend.services;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.helha.be.sortieappbackend.models.Autorisation;
+import org.helha.be.sortieappbackend.models.ExitRule;
+import org.helha.be.sortieappbackend.models.School;
+import org.helha.be.sortieappbackend.models.StudentExitWindows;
+import org.helha.be.sortieappbackend.models.User;
+import org.helha.be.sortieappbackend.repositories.jpa.AutorisationRepository;
+import org.helha.be.sortieappbackend.repositories.jpa.SchoolRepository;
+import org.helha.be.sortieappbackend.repositories.jpa.UserRepository;
+import org.helha.be.sortieappbackend.utils.PictureUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory "who may leave now" index used by the supervisor scanner.
+ *
+ * For every school it maps each student to their compiled exit windows and the few fields a scan
+ * verdict shows, so a verdict is a memory lookup instead of two queries. The index is warmed at startup from
+ * {@link AutorisationRepository#findBySchoolId(int)}, kept up to date by {@link AutorisationServiceDB}
+ * on every write, and filled from the database when a student is missing.
+ */
+@Service
+public class ExitWindowIndex implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(ExitWindowIndex.class);
+
+    @Autowired
+    private AutorisationRepository autorisationRepository;
+
+    @Autowired
+    private SchoolRepository schoolRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ExitRuleService exitRuleService;
+
+    private final Map<Integer, StudentExitWindows> students = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<Integer>> studentsBySchool = new ConcurrentHashMap<>();
+    private final Map<Long, Integer> ownerByAutorisation = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented on every write, before the write touches the index, so that a database load racing with a
+     * write is not cached (see {@link #put}).
+     */
+    private final AtomicLong writeSequence = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("gate.index.lookups", hits, LongAdder::doubleValue)
+                .tag("result", "hit")
+                .description("Exit window lookups answered from memory")
+                .register(registry);
+        FunctionCounter.builder("gate.index.lookups", misses, LongAdder::doubleValue)
+                .tag("result", "miss")
+                .description("Exit window lookups that fell back to the database")
+                .register(registry);
+        Gauge.builder("gate.index.hit.ratio", this, ExitWindowIndex::getHitRatio)
+                .description("Share of exit window lookups answered from memory")
+                .register(registry);
+        Gauge.builder("gate.index.students", students, Map::size)
+                .description("Number of students held in the exit window index")
+                .register(registry);
+        Gauge.builder("gate.index.rules", ownerByAutorisation, Map::size)
+                .description("Number of compiled exit rules held in the exit window index")
+                .register(registry);
+    }
+
+    /**
+     * Loads the Autorisations of every school once the application is started.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try {
+            for (School school : schoolRepository.findAll()) {
+                warmUpSchool(school.getId_school());
+            }
+        } catch (RuntimeException e) {
+            // The index is only a cache: scans fall back to the database until it is filled
+            log.warn("Failed to warm up the exit window index", e);
+        }
+    }
+
+    /**
+     * (Re)loads the exit windows of every student of a school that has at least one Autorisation.
+     *
+     * @param schoolId the ID of the school to load.
+     */
+    public void warmUpSchool(int schoolId) {
+        long sequence = writeSequence.get();
+        long generation = exitRuleService.generation();
+        Map<Integer, User> users = new HashMap<>();
+        Map<Integer, List<Autorisation>> byStudent = new HashMap<>();
+        for (Autorisation autorisation : autorisationRepository.findBySchoolId(schoolId)) {
+            if (autorisation.getUser() != null) {
+                users.putIfAbsent(autorisation.getUser().getId(), autorisation.getUser());
+                byStudent.computeIfAbsent(autorisation.getUser().getId(), id -> new ArrayList<>()).add(autorisation);
+            }
+        }
+        byStudent.forEach((userId, autorisations) -> put(users.get(userId), autorisations, sequence, generation));
+    }
+
+    /**
+     * Returns the exit windows of a student, loading the student and their Autorisations
+     * from the database on a miss.
+     *
+     * @param userId the ID of the student.
+     * @return the exit windows of the student (possibly without any rule), or {@code null} if the user does not exist.
+     */
+    public StudentExitWindows getOrLoad(int userId) {
+        StudentExitWindows windows = students.get(userId);
+        if (windows != null) {
+            hits.increment();
+            return windows;
+        }
+        misses.increment();
+        long sequence = writeSequence.get();
+        long generation = exitRuleService.generation();
+        Optional<User> user = userRepository.findById(userId);
+        if (user.isEmpty()) {
+            return null;
+        }
+        return put(user.get(), autorisationRepository.findByUser_id(userId), sequence, generation);
+    }
+
+    /**
+     * Returns the exit windows of several students. Indexed students are answered from memory and
+     * the others are loaded with one query for the users and one for their Autorisations.
+     *
+     * @param userIds the IDs of the students.
+     * @return the exit windows by user ID; users that do not exist are absent from the map.
+     */
+    public Map<Integer, StudentExitWindows> getOrLoadAll(Collection<Integer> userIds) {
+        Map<Integer, StudentExitWindows> result = new HashMap<>();
+        Set<Integer> missing = new HashSet<>();
+        for (Integer userId : userIds) {
+            StudentExitWindows windows = students.get(userId);
+            if (windows != null) {
+                hits.increment();
+                result.put(userId, windows);
+            } else if (missing.add(userId)) {
+                misses.increment();
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        long sequence = writeSequence.get();
+        long generation = exitRuleService.generation();
+        List<User> users = userRepository.findAllById(missing);
+        Map<Integer, List<Autorisation>> byStudent = new HashMap<>();
+        for (Autorisation autorisation : autorisationRepository.findByUser_idIn(missing)) {
+            byStudent.computeIfAbsent(autorisation.getUser().getId(), id -> new ArrayList<>()).add(autorisation);
+        }
+        for (User user : users) {
+            result.put(user.getId(), put(user, byStudent.getOrDefault(user.getId(), List.of()), sequence, generation));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the exit windows of a student without touching the database.
+     *
+     * @param userId the ID of the student.
+     * @return the exit windows, or {@code null} if the student is not indexed.
+     */
+    public StudentExitWindows get(int userId) {
+        StudentExitWindows windows = students.get(userId);
+        if (windows != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return windows;
+    }
+
+    /**
+     * @return the exit windows of every indexed student of a school.
+     */
+    public Collection<StudentExitWindows> getSchool(int schoolId) {
+        List<StudentExitWindows> result = new ArrayList<>();
+        for (Integer userId : studentsBySchool.getOrDefault(schoolId, Set.of())) {
+            StudentExitWindows windows = students.get(userId);
+            if (windows != null) {
+                result.add(windows);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the indexed student owning an Autorisation, or {@code null} if the owner is not indexed.
+     */
+    public Integer getOwner(long autorisationId) {
+        return ownerByAutorisation.get(autorisationId);
+    }
+
+    /**
+     * Updates the index after an Autorisation has been added or updated.
+     * Students that are not indexed yet are left alone: they will be fully loaded on their next scan.
+     *
+     * @param autorisation the saved Autorisation.
+     */
+    public void onAutorisationSaved(Autorisation autorisation) {
+        writeSequence.incrementAndGet();
+        long autorisationId = autorisation.getId();
+        int userId = autorisation.getUser() != null ? autorisation.getUser().getId() : 0;
+
+        Integer previousOwner = ownerByAutorisation.get(autorisationId);
+        if (previousOwner != null && previousOwner != userId) {
+            students.computeIfPresent(previousOwner, (id, windows) -> windows.withoutRule(autorisationId));
+            ownerByAutorisation.remove(autorisationId);
+        }
+
+        // Just saved, and its former rule invalidated: the Autorisation is the current one
+        ExitRule rule = exitRuleService.getRule(autorisation, exitRuleService.generation());
+        StudentExitWindows updated = students.computeIfPresent(userId, (id, windows) -> windows.withRule(rule));
+        if (updated != null) {
+            ownerByAutorisation.put(autorisationId, userId);
+        }
+    }
+
+    /**
+     * Updates the index after an Autorisation has been deleted.
+     *
+     * @param autorisationId the ID of the deleted Autorisation.
+     */
+    public void onAutorisationDeleted(long autorisationId) {
+        writeSequence.incrementAndGet();
+        Integer owner = ownerByAutorisation.remove(autorisationId);
+        if (owner != null) {
+            students.computeIfPresent(owner, (id, windows) -> windows.withoutRule(autorisationId));
+        }
+    }
+
+    /**
+     * Refreshes the student fields (school, names, picture version) of an indexed user after a write.
+     *
+     * @param user the saved user.
+     */
+    public void onUserSaved(User user) {
+        writeSequence.incrementAndGet();
+        Integer schoolId = user.getSchool_user() != null ? user.getSchool_user().getId_school() : null;
+        StudentExitWindows[] previous = new StudentExitWindows[1];
+        StudentExitWindows updated = students.computeIfPresent(user.getId(), (id, windows) -> {
+            previous[0] = windows;
+            return windows.withStudent(schoolId, user.getName_user(), user.getLastname_user(),
+                    PictureUtils.version(user));
+        });
+        if (updated == null) {
+            return;
+        }
+        if (previous[0].getSchoolId() != null && !previous[0].getSchoolId().equals(schoolId)) {
+            Set<Integer> oldSchool = studentsBySchool.get(previous[0].getSchoolId());
+            if (oldSchool != null) {
+                oldSchool.remove(user.getId());
+            }
+        }
+        if (schoolId != null) {
+            studentsBySchool.computeIfAbsent(schoolId, id -> ConcurrentHashMap.newKeySet()).add(user.getId());
+        }
+    }
+
+    /**
+     * Removes a user from the index after they have been physically deleted.
+     *
+     * @param userId the ID of the deleted user.
+     */
+    public void onUserDeleted(int userId) {
+        writeSequence.incrementAndGet();
+        StudentExitWindows removed = students.remove(userId);
+        if (removed == null) {
+            return;
+        }
+        for (ExitRule rule : removed.getRules()) {
+            ownerByAutorisation.remove(rule.getAutorisationId());
+        }
+        if (removed.getSchoolId() != null) {
+            Set<Integer> school = studentsBySchool.get(removed.getSchoolId());
+            if (school != null) {
+                school.remove(userId);
+            }
+        }
+    }
+
+    /**
+     * @return the share of lookups answered from memory, between 0 and 1.
+     */
+    public double getHitRatio() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    /**
+     * @return the number of indexed students.
+     */
+    public int size() {
+        return students.size();
+    }
+
+    /**
+     * Indexes the exit windows of a student loaded from the database, unless the index has been written since
+     * {@code sequence} was read before the load, which may then be stale.
+     * The sequence is checked and the windows stored under the lock of the student's entry. A write increments
+     * the sequence before it takes that lock, so it either updates the stored windows or makes the load skip them.
+     * Likewise, the rules are only cached by the {@link ExitRuleService} if no Autorisation was written since
+     * {@code generation}.
+     *
+     * @return the compiled windows, indexed or not.
+     */
+    private StudentExitWindows put(User user, List<Autorisation> autorisations, long sequence, long generation) {
+        StudentExitWindows windows = compile(user, autorisations, generation);
+        students.compute(user.getId(), (id, current) -> {
+            if (writeSequence.get() != sequence) {
+                return current;
+            }
+            for (Autorisation autorisation : autorisations) {
+                ownerByAutorisation.put(autorisation.getId(), id);
+            }
+            if (windows.getSchoolId() != null) {
+                studentsBySchool.computeIfAbsent(windows.getSchoolId(), school -> ConcurrentHashMap.newKeySet()).add(id);
+            }
+            return windows;
+        });
+        return windows;
+    }
+
+    private StudentExitWindows compile(User user, List<Autorisation> autorisations, long generation) {
+        ExitRule[] rules = new ExitRule[autorisations.size()];
+        for (int i = 0; i < rules.length; i++) {
+            rules[i] = exitRuleService.getRule(autorisations.get(i), generation);
+        }
+        Integer schoolId = user.getSchool_user() != null ? user.getSchool_user().getId_school() : null;
+        return new StudentExitWindows(user.getId(), schoolId, user.getName_user(), user.getLastname_user(),
+                PictureUtils.version(user), rules);
+    }
+}
@@ -0,0 +1,173 @@
+package org.helha.be.sortieappbackend.services;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.helha.be.sortieappbackend.ServiceImpl.QRCodeServiceImpl;
+import org.helha.be.sortieappbackend.models.AutorisationChangedEvent;
+import org.helha.be.sortieappbackend.models.GatePass;
+import org.helha.be.sortieappbackend.models.StudentExitWindows;
+import org.helha.be.sortieappbackend.utils.GatePassUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Warms the gate caches of a student in the background when one of their Autorisations changes.
+ *
+ * For each {@link AutorisationChangedEvent}, a task on a bounded pool loads the student in the
+ * {@link ExitWindowIndex} and renders the QR codes of their gate passes for the current and the next
+ * period into the {@link QRCodeImageCache}, so the next QR page and scan are served from memory.
+ *
+ * Several changes of the same student waiting in the queue are coalesced into one task. When the queue
+ * is full the task is dropped and counted: warming is only an optimisation, the caches are filled on demand.
+ */
+@Service
+public class GateCacheWarmer implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(GateCacheWarmer.class);
+
+    @Autowired
+    private ExitWindowIndex exitWindowIndex;
+
+    @Autowired
+    private GatePassUtils gatePassUtils;
+
+    @Autowired
+    private QRCodeServiceImpl qrCodeServiceImpl;
+
+    @Autowired
+    private Clock clock;
+
+    private final ThreadPoolExecutor executor;
+    private final Set<Integer> pending = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder warmed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public GateCacheWarmer(@Value("${gate.warmup.threads:1}") int threads,
+                           @Value("${gate.warmup.queue-capacity:1000}") int queueCapacity) {
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "gate-cache-warmer-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("gate.warmup.tasks", warmed, LongAdder::doubleValue)
+                .tag("result", "done")
+                .description("Students whose gate caches have been warmed")
+                .register(registry);
+        FunctionCounter.builder("gate.warmup.tasks", failed, LongAdder::doubleValue)
+                .tag("result", "failed")
+                .description("Gate cache warm-ups that failed")
+                .register(registry);
+        FunctionCounter.builder("gate.warmup.tasks", rejected, LongAdder::doubleValue)
+                .tag("result", "rejected")
+                .description("Gate cache warm-ups dropped because the queue was full")
+                .register(registry);
+        Gauge.builder("gate.warmup.queue", executor, pool -> pool.getQueue().size())
+                .description("Gate cache warm-ups waiting to run")
+                .register(registry);
+    }
+
+    @EventListener
+    public void onAutorisationChanged(AutorisationChangedEvent event) {
+        if (event.getUserId() != null) {
+            submit(event.getUserId());
+        }
+        if (event.getPreviousUserId() != null) {
+            submit(event.getPreviousUserId());
+        }
+    }
+
+    /**
+     * Queues the warm-up of a student, unless one is already waiting.
+     *
+     * @param userId the ID of the student.
+     */
+    public void submit(int userId) {
+        if (!pending.add(userId)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                pending.remove(userId);
+                warm(userId, ZonedDateTime.now(clock));
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(userId);
+            rejected.increment();
+        }
+    }
+
+    /**
+     * Loads the exit windows of a student and renders the QR codes of their current and next gate passes.
+     *
+     * @param userId the ID of the student.
+     * @param now    the current date and time, in the zone of the exit rules.
+     */
+    public void warm(int userId, ZonedDateTime now) {
+        try {
+            StudentExitWindows student = exitWindowIndex.getOrLoad(userId);
+            if (student == null) {
+                return;
+            }
+            GatePass current = gatePassUtils.issue(student, now);
+            render(current);
+            ZonedDateTime next = ZonedDateTime.ofInstant(Instant.ofEpochSecond(current.getRefreshAt()), now.getZone());
+            if (next.toLocalDate().equals(now.toLocalDate())) {
+                render(gatePassUtils.issue(student, next));
+            }
+            warmed.increment();
+        } catch (Exception e) {
+            failed.increment();
+            log.warn("Failed to warm the gate caches of user {}", userId, e);
+        }
+    }
+
+    private void render(GatePass gatePass) throws Exception {
+        qrCodeServiceImpl.generateQRCodeWithMessage(gatePass.getToken(),
+                QRCodeServiceImpl.GATE_PASS_SIZE, QRCodeServiceImpl.GATE_PASS_SIZE);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    public long getWarmed() {
+        return warmed.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+}
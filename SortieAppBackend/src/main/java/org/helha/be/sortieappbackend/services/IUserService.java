@@ -1,7 +1,6 @@
 package org.helha.be.sortieappbackend.services;
 
 import org.helha.be.sortieappbackend.models.User;
-import org.springframework.web.multipart.MultipartFile;
 
 import java.util.List;
 
@@ -12,6 +11,5 @@ public interface IUserService {
     public User updateUser(User user, int id_role);
     public void deleteUser(int id_role);
     public void deleteUserPhysically(int id_user);
-    public void importUsersFromCSV(MultipartFile file);
     public void updateProfilePicture(int userId, String base64Image);
 }
@@ -0,0 +1,124 @@
+package org.helha.be.sortieappbackend.services;
+
+import jakarta.annotation.PreDestroy;
+import org.helha.be.sortieappbackend.utils.PictureUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves the Base64 profile pictures left in the {@code user} table to the {@link PictureStore}, on a background
+ * thread started once the application is ready, so the startup does not wait for the resizing.
+ *
+ * The users are read by pages of {@code pictures.migration.batch-size}, by ascending ID. Each page is read before
+ * its pictures are processed, so no connection is held while resizing; each decodable picture goes through the
+ * {@link PicturePipeline} and is replaced by its hash, unless the user got a new picture meanwhile. The URLs
+ * imported from CSV and the values that are not readable images are left in place. Once every picture has been
+ * moved, the migration only runs one empty query.
+ */
+@Component
+public class PictureMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(PictureMigration.class);
+
+    static final String SELECT_SQL = "SELECT id_user, picture_user FROM user "
+            + "WHERE id_user > ? AND picture_hash IS NULL AND picture_user IS NOT NULL "
+            + "AND picture_user NOT LIKE 'http://%' AND picture_user NOT LIKE 'https://%' ORDER BY id_user LIMIT ?";
+    static final String UPDATE_SQL = "UPDATE user SET picture_hash = ?, picture_user = NULL WHERE id_user = ? AND picture_hash IS NULL";
+
+    private record Row(int userId, String picture) {}
+
+    private record Picture(int userId, String hash) {}
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PicturePipeline picturePipeline;
+    private final int batchSize;
+
+    private volatile boolean running = true;
+    private Thread worker;
+
+    public PictureMigration(JdbcTemplate jdbcTemplate, PicturePipeline picturePipeline,
+                            @Value("${pictures.migration.batch-size:100}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.picturePipeline = picturePipeline;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Starts the migration in the background once the application is ready.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        worker = new Thread(() -> {
+            try {
+                migrate();
+            } catch (RuntimeException e) {
+                // The pictures left are served from the user table and moved at the next startup
+                log.warn("Failed to move the profile pictures to the picture store", e);
+            }
+        }, "picture-migration");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Stops the migration after the picture being processed.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (worker != null) {
+            worker.join(5000);
+        }
+    }
+
+    /**
+     * Moves the remaining Base64 pictures to the store.
+     *
+     * @return the number of pictures moved.
+     */
+    public int migrate() {
+        int migrated = 0;
+        int lastId = 0;
+        while (running) {
+            List<Row> rows = jdbcTemplate.query(SELECT_SQL,
+                    (resultSet, rowNum) -> new Row(resultSet.getInt(1), resultSet.getString(2)), lastId, batchSize);
+            List<Picture> pictures = new ArrayList<>(rows.size());
+            for (Row row : rows) {
+                if (!running) {
+                    break;
+                }
+                byte[] image = PictureUtils.decodeImage(row.picture());
+                if (image != null) {
+                    try {
+                        pictures.add(new Picture(row.userId(), picturePipeline.processInline(image)));
+                    } catch (IllegalArgumentException e) {
+                        log.warn("Cannot migrate the picture of the user {}: {}", row.userId(), e.getMessage());
+                    }
+                }
+            }
+            if (!pictures.isEmpty()) {
+                jdbcTemplate.batchUpdate(UPDATE_SQL, pictures, pictures.size(), (statement, picture) -> {
+                    statement.setString(1, picture.hash());
+                    statement.setInt(2, picture.userId());
+                });
+                migrated += pictures.size();
+            }
+            if (rows.size() < batchSize) {
+                break;
+            }
+            lastId = rows.get(rows.size() - 1).userId();
+        }
+        if (migrated > 0) {
+            log.info("Moved {} profile pictures to the picture store", migrated);
+        }
+        return migrated;
+    }
+}
@@ -0,0 +1,255 @@
+package org.helha.be.sortieappbackend.services;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import net.coobird.thumbnailator.Thumbnails;
+import org.helha.be.sortieappbackend.utils.PictureUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Turns an uploaded profile picture into the pictures of the {@link PictureStore}: one per size of
+ * {@code pictures.thumbnails.sizes}, in the format of the upload.
+ *
+ * The format is sniffed from the first bytes, the image is decoded once, and each size is resized from the
+ * previous, larger one. The largest size is the picture the user keeps the hash of; the smaller ones are stored
+ * as its thumbnails, for the lists and the scanner app. Images are never enlarged.
+ *
+ * {@link #process(byte[])} runs on a bounded pool of {@code pictures.pipeline.threads}, which bounds the number of
+ * pictures resized at once, whatever the number of concurrent uploads. The calling thread still waits for the
+ * result, up to {@code pictures.pipeline.max-wait-ms}; past {@code pictures.pipeline.queue-capacity} waiting
+ * pictures, or when a picture waited longer than that, a {@link PicturePipelineBusyException} is thrown.
+ * The duration of each stage is recorded in {@code picture.pipeline}.
+ */
+@Service
+public class PicturePipeline implements MeterBinder {
+
+    private static final Timer WAIT_TIMER = stage("wait");
+    private static final Timer SNIFF_TIMER = stage("sniff");
+    private static final Timer DECODE_TIMER = stage("decode");
+    private static final Timer RESIZE_TIMER = stage("resize");
+    private static final Timer ENCODE_TIMER = stage("encode");
+    private static final Timer STORE_TIMER = stage("store");
+
+    @Autowired
+    private PictureStore pictureStore;
+
+    private final List<Integer> sizes;
+    private final float quality;
+    private final long maxWaitMs;
+    private final long retryAfterSeconds;
+    private final ThreadPoolExecutor executor;
+
+    private final LongAdder rejected = new LongAdder();
+
+    public PicturePipeline(@Value("${pictures.thumbnails.sizes:400,160,64}") List<Integer> sizes,
+                           @Value("${pictures.thumbnails.quality:0.85}") float quality,
+                           @Value("${pictures.pipeline.threads:0}") int threads,
+                           @Value("${pictures.pipeline.queue-capacity:16}") int queueCapacity,
+                           @Value("${pictures.pipeline.max-wait-ms:10000}") long maxWaitMs,
+                           @Value("${pictures.pipeline.retry-after-seconds:2}") long retryAfterSeconds) {
+        this.sizes = sizes.stream().distinct().sorted(Comparator.reverseOrder()).toList();
+        this.quality = quality;
+        this.maxWaitMs = maxWaitMs;
+        this.retryAfterSeconds = retryAfterSeconds;
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "picture-pipeline-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    private static Timer stage(String stage) {
+        return Timer.builder("picture.pipeline")
+                .tag("stage", stage)
+                .description("Duration of the stages of the processing of the profile pictures")
+                .register(Metrics.globalRegistry);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("picture.pipeline.rejected", rejected, LongAdder::doubleValue)
+                .description("Pictures refused because the pool was full")
+                .register(registry);
+        Gauge.builder("picture.pipeline.queue", executor, pool -> pool.getQueue().size())
+                .description("Pictures waiting for a thread")
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Processes and stores a picture on the pool, waiting for the result.
+     *
+     * @param image the uploaded image bytes.
+     * @return the hash of the picture in the {@link PictureStore}.
+     * @throws IllegalArgumentException     if the image is not a readable PNG or JPEG.
+     * @throws PicturePipelineBusyException if the pool is full.
+     */
+    public String process(byte[] image) {
+        long queuedAt = System.nanoTime();
+        Future<String> future;
+        try {
+            future = executor.submit(() -> {
+                WAIT_TIMER.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+                return processInline(image);
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new PicturePipelineBusyException(retryAfterSeconds);
+        }
+        try {
+            return future.get(maxWaitMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            rejected.increment();
+            throw new PicturePipelineBusyException(retryAfterSeconds);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while processing a picture", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Processes and stores a picture on the calling thread, for the callers that are already in the background
+     * (CSV imports, migration).
+     *
+     * @param image the uploaded image bytes.
+     * @return the hash of the picture in the {@link PictureStore}.
+     * @throws IllegalArgumentException if the image is not a readable PNG or JPEG.
+     */
+    public String processInline(byte[] image) {
+        long start = System.nanoTime();
+        String format = format(image);
+        long decodeStart = record(SNIFF_TIMER, start);
+        BufferedImage source;
+        try {
+            source = ImageIO.read(new ByteArrayInputStream(image));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid image provided", e);
+        }
+        if (source == null) {
+            throw new IllegalArgumentException("Invalid image provided");
+        }
+        record(DECODE_TIMER, decodeStart);
+
+        String hash = null;
+        for (int size : sizes) {
+            long resizeStart = System.nanoTime();
+            if (source.getWidth() > size || source.getHeight() > size) {
+                try {
+                    source = Thumbnails.of(source).size(size, size).asBufferedImage();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            long encodeStart = record(RESIZE_TIMER, resizeStart);
+            byte[] encoded = encode(source, format);
+            long storeStart = record(ENCODE_TIMER, encodeStart);
+            if (hash == null) {
+                hash = pictureStore.put(encoded);
+            } else {
+                pictureStore.putThumbnail(hash, size, encoded);
+            }
+            record(STORE_TIMER, storeStart);
+        }
+        return hash;
+    }
+
+    public List<Integer> getSizes() {
+        return sizes;
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Returns the ImageIO format of an image from its first bytes, without decoding it.
+     */
+    private static String format(byte[] image) {
+        MediaType mediaType = PictureUtils.sniffMediaType(image);
+        if (MediaType.IMAGE_PNG.equals(mediaType)) {
+            return "png";
+        }
+        if (MediaType.IMAGE_JPEG.equals(mediaType)) {
+            return "jpeg";
+        }
+        throw new IllegalArgumentException("Unsupported image format. Only .jpg, .jpeg, and .png are allowed.");
+    }
+
+    private byte[] encode(BufferedImage image, String format) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(output)) {
+            writer.setOutput(stream);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed() && "jpeg".equals(format)) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(quality);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            writer.dispose();
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Records the time elapsed since {@code start} and returns the current time, the start of the next stage.
+     */
+    private static long record(Timer timer, long start) {
+        long now = System.nanoTime();
+        timer.record(now - start, TimeUnit.NANOSECONDS);
+        return now;
+    }
+}
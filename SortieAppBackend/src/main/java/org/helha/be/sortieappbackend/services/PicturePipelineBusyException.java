@@ -0,0 +1,25 @@
+package org.helha.be.sortieappbackend.services;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Thrown when the picture processing pool is full: answered with a 503 and a {@code Retry-After} header.
+ */
+public class PicturePipelineBusyException extends ResponseStatusException {
+
+    private final long retryAfterSeconds;
+
+    public PicturePipelineBusyException(long retryAfterSeconds) {
+        super(HttpStatus.SERVICE_UNAVAILABLE, "Too many pictures in progress, retry later");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        return headers;
+    }
+}
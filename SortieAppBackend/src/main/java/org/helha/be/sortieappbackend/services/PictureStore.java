@@ -0,0 +1,198 @@
+package org.helha.be.sortieappbackend.services;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed store of the profile pictures, on the local filesystem.
+ *
+ * Each picture is a file named by the SHA-256 of its bytes, under {@code pictures.dir}/{@code <2 first hex>}/:
+ * the same picture uploaded twice is stored once, and a stored file never changes, so it can be cached forever.
+ * Files are written to a temporary file first and moved in place, so a reader never sees a partial picture.
+ *
+ * The thumbnails of a picture are stored next to it, as {@code <hash>-<size>}: they derive from the picture,
+ * so they never change either.
+ *
+ * Pictures no longer referenced by a user are not deleted.
+ */
+@Service
+public class PictureStore implements MeterBinder {
+
+    private static final Pattern HASH = Pattern.compile("[0-9a-f]{64}");
+
+    private final Path directory;
+
+    private final LongAdder stored = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+
+    public PictureStore(@Value("${pictures.dir:data/pictures}") String directory) {
+        this.directory = Paths.get(directory).toAbsolutePath().normalize();
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        Files.createDirectories(directory);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("pictures.store", stored, LongAdder::doubleValue)
+                .tag("result", "stored")
+                .description("Pictures written to the store")
+                .register(registry);
+        FunctionCounter.builder("pictures.store", deduplicated, LongAdder::doubleValue)
+                .tag("result", "deduplicated")
+                .description("Pictures already in the store")
+                .register(registry);
+    }
+
+    /**
+     * Stores a picture, unless the same bytes are already stored.
+     *
+     * @param picture the image bytes.
+     * @return the SHA-256 of the picture, in lowercase hex, to be kept in {@code User.picture_hash}.
+     */
+    public String put(byte[] picture) {
+        String hash = hash(picture);
+        write(resolve(hash), picture);
+        return hash;
+    }
+
+    /**
+     * Stores a thumbnail of a picture, unless it is already stored.
+     *
+     * @param hash      the SHA-256 of the picture.
+     * @param size      the size of the thumbnail, in pixels.
+     * @param thumbnail the image bytes of the thumbnail.
+     */
+    public void putThumbnail(String hash, int size, byte[] thumbnail) {
+        write(resolve(hash + "-" + size), thumbnail);
+    }
+
+    /**
+     * Returns the file of a stored picture.
+     *
+     * @param hash the SHA-256 of the picture.
+     * @return the file, or {@code null} if the hash is malformed or the picture is not stored.
+     */
+    public Path path(String hash) {
+        if (hash == null || !HASH.matcher(hash).matches()) {
+            return null;
+        }
+        Path path = resolve(hash);
+        return Files.isRegularFile(path) ? path : null;
+    }
+
+    /**
+     * Returns the file of a stored thumbnail.
+     *
+     * @param hash the SHA-256 of the picture.
+     * @param size the size of the thumbnail, in pixels.
+     * @return the file, or {@code null} if the hash is malformed or the thumbnail is not stored.
+     */
+    public Path path(String hash, int size) {
+        if (hash == null || !HASH.matcher(hash).matches()) {
+            return null;
+        }
+        Path path = resolve(hash + "-" + size);
+        return Files.isRegularFile(path) ? path : null;
+    }
+
+    /**
+     * Reads a stored picture.
+     *
+     * @param hash the SHA-256 of the picture.
+     * @return the image bytes, or {@code null} if the picture is not stored.
+     */
+    public byte[] get(String hash) {
+        return read(path(hash));
+    }
+
+    /**
+     * Reads a stored thumbnail, or the picture itself if the thumbnail is not stored.
+     *
+     * @param hash the SHA-256 of the picture.
+     * @param size the size of the thumbnail, in pixels.
+     * @return the image bytes, or {@code null} if the picture is not stored.
+     */
+    public byte[] get(String hash, int size) {
+        Path thumbnail = path(hash, size);
+        return read(thumbnail != null ? thumbnail : path(hash));
+    }
+
+    public long getStored() {
+        return stored.sum();
+    }
+
+    public long getDeduplicated() {
+        return deduplicated.sum();
+    }
+
+    private Path resolve(String name) {
+        return directory.resolve(name.substring(0, 2)).resolve(name);
+    }
+
+    private void write(Path path, byte[] content) {
+        if (Files.exists(path)) {
+            deduplicated.increment();
+            return;
+        }
+        try {
+            Files.createDirectories(path.getParent());
+            Path temporary = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+            try {
+                Files.write(temporary, content);
+                try {
+                    Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temporary, path);
+                }
+                stored.increment();
+            } catch (FileAlreadyExistsException e) {
+                // Stored concurrently by another request
+                deduplicated.increment();
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot store the picture " + path.getFileName(), e);
+        }
+    }
+
+    private static byte[] read(Path path) {
+        if (path == null) {
+            return null;
+        }
+        try {
+            return Files.readAllBytes(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read the picture " + path.getFileName(), e);
+        }
+    }
+
+    static String hash(byte[] picture) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(picture));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package org.helha.be.sortieappbackend.services;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of the generated QR code images, keyed by (format, message, width, height).
+ *
+ * The cache is bounded by the total size of the cached images in bytes; the least recently
+ * used images are evicted first. Images are rendered outside the lock, so two concurrent misses
+ * on the same key may render the image twice, which is harmless.
+ */
+@Component
+public class QRCodeImageCache implements MeterBinder {
+
+    /**
+     * Loader called on a cache miss.
+     */
+    @FunctionalInterface
+    public interface Renderer {
+        byte[] render() throws Exception;
+    }
+
+    private record Key(String format, String message, int width, int height) {}
+
+    private final long maxBytes;
+    private final LinkedHashMap<Key, byte[]> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long currentBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public QRCodeImageCache(@Value("${qrcode.cache.max-bytes:8388608}") long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("qrcode.cache.requests", hits, LongAdder::doubleValue)
+                .tag("result", "hit")
+                .description("QR code images served from the cache")
+                .register(registry);
+        FunctionCounter.builder("qrcode.cache.requests", misses, LongAdder::doubleValue)
+                .tag("result", "miss")
+                .description("QR code images that had to be rendered")
+                .register(registry);
+        FunctionCounter.builder("qrcode.cache.evictions", evictions, LongAdder::doubleValue)
+                .description("QR code images evicted to stay under the size cap")
+                .register(registry);
+        Gauge.builder("qrcode.cache.size", this, QRCodeImageCache::getCurrentBytes)
+                .baseUnit("bytes")
+                .description("Total size of the cached QR code images")
+                .register(registry);
+        Gauge.builder("qrcode.cache.entries", this, QRCodeImageCache::size)
+                .description("Number of cached QR code images")
+                .register(registry);
+    }
+
+    /**
+     * Returns the cached image for the key, rendering and caching it on a miss.
+     *
+     * @param format   the image format, e.g. {@code png} or {@code svg}.
+     * @param message  the encoded message.
+     * @param width    the image width.
+     * @param height   the image height.
+     * @param renderer renders the image on a miss.
+     * @return the image bytes (shared, must not be modified).
+     * @throws Exception if the rendering fails.
+     */
+    public byte[] get(String format, String message, int width, int height, Renderer renderer) throws Exception {
+        Key key = new Key(format, message, width, height);
+        synchronized (this) {
+            byte[] image = entries.get(key);
+            if (image != null) {
+                hits.increment();
+                return image;
+            }
+        }
+        misses.increment();
+        byte[] image = renderer.render();
+        put(key, image);
+        return image;
+    }
+
+    private synchronized void put(Key key, byte[] image) {
+        if (image.length > maxBytes) {
+            return;
+        }
+        byte[] previous = entries.put(key, image);
+        if (previous != null) {
+            currentBytes -= previous.length;
+        }
+        currentBytes += image.length;
+        Iterator<Map.Entry<Key, byte[]>> eldest = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<Key, byte[]> entry = eldest.next();
+            currentBytes -= entry.getValue().length;
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Computes the ETag of a QR code image from its key, so a client copy can be revalidated
+     * without rendering or looking up the image.
+     *
+     * @return a quoted strong ETag, different for each format.
+     */
+    public static String eTag(String format, String message, int width, int height) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((format + ":" + width + "x" + height + ":").getBytes(StandardCharsets.US_ASCII));
+            byte[] hash = digest.digest(message.getBytes(StandardCharsets.UTF_8));
+            return "\"qr-" + HexFormat.of().formatHex(hash, 0, 12) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+}
@@ -0,0 +1,220 @@
+package org.helha.be.sortieappbackend.services;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.helha.be.sortieappbackend.models.ScanEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Append-only log of the gate scans.
+ *
+ * {@link #record(ScanEvent)} only puts the event in a bounded in-memory queue, so the scan path never waits
+ * on the database. A background writer drains the queue and inserts the events with JDBC batches of
+ * {@code scan-log.batch-size} rows, or fewer when {@code scan-log.flush-interval-ms} has elapsed since the
+ * first event of the batch.
+ *
+ * When the queue is full, the {@code scan-log.overflow} policy applies:
+ * <ul>
+ *     <li>{@code DROP} (default): the event is dropped at once;</li>
+ *     <li>{@code BLOCK}: the caller waits up to {@code scan-log.block-timeout-ms} for room, then the event is dropped.</li>
+ * </ul>
+ * Dropped events are counted in {@code gate.scan.log.dropped}. A batch whose insert fails is not retried and
+ * is counted in {@code gate.scan.log.failed}.
+ */
+@Service
+public class ScanEventLog implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(ScanEventLog.class);
+
+    public enum OverflowPolicy {
+        DROP, BLOCK
+    }
+
+    static final String INSERT_SQL = "INSERT INTO scan_event (id_user, id_supervisor, id_school, scanned_at, can_go, id_autorisation) "
+            + "VALUES (?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BlockingQueue<ScanEvent> queue;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutMs;
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile Timer flushTimer;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public ScanEventLog(JdbcTemplate jdbcTemplate,
+                        @Value("${scan-log.capacity:10000}") int capacity,
+                        @Value("${scan-log.batch-size:200}") int batchSize,
+                        @Value("${scan-log.flush-interval-ms:1000}") long flushIntervalMs,
+                        @Value("${scan-log.overflow:DROP}") OverflowPolicy overflowPolicy,
+                        @Value("${scan-log.block-timeout-ms:50}") long blockTimeoutMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutMs = blockTimeoutMs;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("gate.scan.log.queue", queue, BlockingQueue::size)
+                .description("Scan events waiting to be written")
+                .register(registry);
+        FunctionCounter.builder("gate.scan.log.written", written, LongAdder::doubleValue)
+                .description("Scan events written to the database")
+                .register(registry);
+        FunctionCounter.builder("gate.scan.log.dropped", dropped, LongAdder::doubleValue)
+                .description("Scan events dropped because the queue was full")
+                .register(registry);
+        FunctionCounter.builder("gate.scan.log.failed", failed, LongAdder::doubleValue)
+                .description("Scan events lost because their batch insert failed")
+                .register(registry);
+        flushTimer = Timer.builder("gate.scan.log.flush")
+                .description("Duration of the scan event batch inserts")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        writer = new Thread(this::run, "scan-event-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Stops the writer after it has written the events still in the queue.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (writer != null) {
+            writer.join(TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos) + 5000);
+        }
+    }
+
+    /**
+     * Queues a scan event for writing.
+     *
+     * @param event the event.
+     * @return {@code false} if the event was dropped because the queue was full.
+     */
+    public boolean record(ScanEvent event) {
+        boolean queued;
+        if (overflowPolicy == OverflowPolicy.BLOCK) {
+            try {
+                queued = queue.offer(event, blockTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                queued = false;
+            }
+        } else {
+            queued = queue.offer(event);
+        }
+        if (!queued) {
+            dropped.increment();
+        }
+        return queued;
+    }
+
+    private void run() {
+        List<ScanEvent> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                ScanEvent first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                        break;
+                    }
+                    ScanEvent next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                running = false;
+                queue.drainTo(batch, batchSize - batch.size());
+            }
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Writes a batch of events with one JDBC batch insert.
+     */
+    void flush(List<ScanEvent> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, event) -> {
+                ps.setInt(1, event.getId_user());
+                ps.setObject(2, event.getId_supervisor(), Types.INTEGER);
+                ps.setObject(3, event.getId_school(), Types.INTEGER);
+                ps.setTimestamp(4, Timestamp.valueOf(event.getScanned_at()));
+                ps.setBoolean(5, event.isCan_go());
+                ps.setObject(6, event.getId_autorisation(), Types.BIGINT);
+            });
+            written.add(batch.size());
+        } catch (RuntimeException e) {
+            failed.add(batch.size());
+            log.warn("Unable to write {} scan events", batch.size(), e);
+        } finally {
+            Timer timer = flushTimer;
+            if (timer != null) {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getWritten() {
+        return written.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+}
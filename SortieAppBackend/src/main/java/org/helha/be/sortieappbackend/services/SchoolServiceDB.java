@@ -44,6 +44,10 @@ public class SchoolServiceDB implements ISchoolService {
                 .map(existingSchool -> {
                     existingSchool.setName_school(newSchool.getName_school());
                     existingSchool.setAddress_school(newSchool.getAddress_school());
+                    // Clients that don't know the locale keep the one already set
+                    if (newSchool.getLocale_school() != null) {
+                        existingSchool.setLocale_school(newSchool.getLocale_school());
+                    }
 
                     // Update users
                     if (newSchool.getUsers_school() != null) {
@@ -0,0 +1,143 @@
+package org.helha.be.sortieappbackend.services;
+
+import jakarta.annotation.PostConstruct;
+import org.helha.be.sortieappbackend.utils.Template;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.resource.ResourceUrlProvider;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The HTML templates of the emails and of the activation pages, in {@code templates/*.html}, compiled once at
+ * startup for each language of {@code templates.locales} with the texts of {@code templates/messages*.properties}
+ * (see {@link Template}).
+ *
+ * The language of a user is the one of their school ({@code School.locale_school}); a missing or unsupported one
+ * falls back to {@code templates.default-locale}.
+ */
+@Service
+public class TemplateService {
+
+    public static final String ACTIVATION_EMAIL = "activation-email";
+    public static final String ACTIVATION_FORM = "activation-form";
+    public static final String ACTIVATION_MESSAGE = "activation-message";
+    public static final String ACTIVATION_RETRY = "activation-retry";
+
+    private static final List<String> NAMES = List.of(ACTIVATION_EMAIL, ACTIVATION_FORM, ACTIVATION_MESSAGE, ACTIVATION_RETRY);
+
+    private final String defaultLocale;
+    private final List<String> locales;
+
+    private final Map<String, ResourceBundle> messages = new HashMap<>();
+    private final Map<String, Map<String, Template>> templates = new HashMap<>();
+
+    /** Absent outside of a web application context. */
+    @Autowired(required = false)
+    private ResourceUrlProvider resourceUrlProvider;
+
+    private final Map<String, String> staticUrls = new ConcurrentHashMap<>();
+
+    public TemplateService(@Value("${templates.default-locale:en}") String defaultLocale,
+                           @Value("${templates.locales:en,fr}") List<String> locales) {
+        this.defaultLocale = defaultLocale;
+        this.locales = locales;
+    }
+
+    /**
+     * Loads and compiles the templates for every language.
+     *
+     * @throws IllegalStateException if a template or a message is missing.
+     */
+    @PostConstruct
+    public void init() {
+        Map<String, String> sources = new HashMap<>();
+        for (String name : NAMES) {
+            try (InputStream in = new ClassPathResource("templates/" + name + ".html").getInputStream()) {
+                sources.put(name, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to read the template " + name, e);
+            }
+        }
+        for (String locale : locales) {
+            ResourceBundle bundle = ResourceBundle.getBundle("templates/messages", Locale.forLanguageTag(locale),
+                    ResourceBundle.Control.getNoFallbackControl(ResourceBundle.Control.FORMAT_PROPERTIES));
+            messages.put(locale, bundle);
+            Map<String, Template> compiled = new HashMap<>();
+            for (String name : NAMES) {
+                try {
+                    compiled.put(name, Template.compile(sources.get(name), key -> bundle.containsKey(key) ? bundle.getString(key) : null));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalStateException("Template " + name + " (" + locale + "): " + e.getMessage(), e);
+                }
+            }
+            templates.put(locale, compiled);
+        }
+    }
+
+    /**
+     * Returns the supported language closest to the given one.
+     *
+     * @param locale a language tag, e.g. {@code fr} or {@code fr-BE}; may be {@code null}.
+     */
+    public String locale(String locale) {
+        if (locale != null) {
+            String language = Locale.forLanguageTag(locale).getLanguage();
+            if (templates.containsKey(locale)) {
+                return locale;
+            }
+            if (templates.containsKey(language)) {
+                return language;
+            }
+        }
+        return defaultLocale;
+    }
+
+    /**
+     * Renders a template.
+     *
+     * @param name   the name of the template, e.g. {@link #ACTIVATION_EMAIL}.
+     * @param locale the language; see {@link #locale(String)}.
+     * @param values the values of its variables.
+     */
+    public String render(String name, String locale, Map<String, ?> values) {
+        return templates.get(locale(locale)).get(name).render(values);
+    }
+
+    /**
+     * Returns the text of a message.
+     *
+     * @throws MissingResourceException if the message does not exist.
+     */
+    public String message(String locale, String key) {
+        return messages.get(locale(locale)).getString(key);
+    }
+
+    /**
+     * Returns the URL of a static resource, with the hash of its content when the resource chain is
+     * configured for it, so the resource can be cached for long and is fetched again only once changed.
+     *
+     * @param path the path of the resource, e.g. {@code /activation/activation.css}.
+     */
+    public String staticUrl(String path) {
+        if (resourceUrlProvider == null) {
+            return path;
+        }
+        return staticUrls.computeIfAbsent(path, key -> {
+            String url = resourceUrlProvider.getForLookupPath(key);
+            return url != null ? url : key;
+        });
+    }
+}
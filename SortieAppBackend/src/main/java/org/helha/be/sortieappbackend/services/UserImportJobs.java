@@ -0,0 +1,190 @@
+package org.helha.be.sortieappbackend.services;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.helha.be.sortieappbackend.models.ImportJob;
+import org.helha.be.sortieappbackend.models.School;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the CSV user imports in the background, so the upload request returns at once with an {@link ImportJob}
+ * whose progress is then polled.
+ *
+ * The uploaded file is copied to a temporary file, as the upload is deleted at the end of the request, and
+ * imported by the {@link UserImporter} on a pool of {@code user-import.jobs.threads} threads. At most
+ * {@code user-import.jobs.queue-capacity} jobs wait for a thread; past that, {@link #submit} throws a
+ * {@link RejectedExecutionException}. Finished jobs are kept {@code user-import.jobs.retention-ms} to be polled.
+ * Each job records who submitted it, so it is only shown to them and to the users of their school
+ * (see {@link ImportJob#isVisibleTo}).
+ */
+@Service
+public class UserImportJobs implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(UserImportJobs.class);
+
+    @Autowired
+    private UserImporter userImporter;
+
+    @Autowired
+    private Clock clock;
+
+    private final ThreadPoolExecutor executor;
+    private final Duration retention;
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+
+    private final LongAdder done = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public UserImportJobs(@Value("${user-import.jobs.threads:2}") int threads,
+                          @Value("${user-import.jobs.queue-capacity:10}") int queueCapacity,
+                          @Value("${user-import.jobs.retention-ms:3600000}") long retentionMs) {
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "user-import-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+        this.retention = Duration.ofMillis(retentionMs);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("user.import.jobs", done, LongAdder::doubleValue)
+                .tag("result", "done")
+                .description("Import jobs by outcome")
+                .register(registry);
+        FunctionCounter.builder("user.import.jobs", failed, LongAdder::doubleValue)
+                .tag("result", "failed")
+                .description("Import jobs by outcome")
+                .register(registry);
+        FunctionCounter.builder("user.import.jobs", cancelled, LongAdder::doubleValue)
+                .tag("result", "cancelled")
+                .description("Import jobs by outcome")
+                .register(registry);
+        FunctionCounter.builder("user.import.jobs", rejected, LongAdder::doubleValue)
+                .tag("result", "rejected")
+                .description("Import jobs by outcome")
+                .register(registry);
+        Gauge.builder("user.import.jobs.queue", executor, pool -> pool.getQueue().size())
+                .description("Import jobs waiting for a thread")
+                .register(registry);
+        Gauge.builder("user.import.jobs.running", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Import jobs running")
+                .register(registry);
+    }
+
+    /**
+     * Queues the import of a CSV file.
+     *
+     * @param file   the uploaded file.
+     * @param school            the school of all the students, or {@code null} to take it from the {@code school_id} column.
+     * @param submittedBy       the ID of the user submitting the import.
+     * @param submitterSchoolId the ID of their school, or {@code null} if they have none.
+     * @return the job, {@link ImportJob.Status#QUEUED}.
+     * @throws RejectedExecutionException if too many jobs are already waiting.
+     */
+    public ImportJob submit(MultipartFile file, School school, int submittedBy, Integer submitterSchoolId) throws IOException {
+        purge();
+        Path path = Files.createTempFile("user-import-", ".csv");
+        try (InputStream content = file.getInputStream()) {
+            Files.copy(content, path, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        ImportJob job = new ImportJob(UUID.randomUUID().toString(), clock, submittedBy, submitterSchoolId);
+        jobs.put(job.getId(), job);
+        try {
+            executor.execute(() -> run(job, path, school));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            Files.deleteIfExists(path);
+            rejected.increment();
+            throw e;
+        }
+        return job;
+    }
+
+    private void run(ImportJob job, Path path, School school) {
+        try {
+            if (!job.start()) {
+                cancelled.increment();
+                return;
+            }
+            try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                job.finish(userImporter.importStudents(reader, school, job));
+            }
+            (job.getStatus() == ImportJob.Status.CANCELLED ? cancelled : done).increment();
+        } catch (Exception e) {
+            job.fail(e.getMessage());
+            failed.increment();
+        } finally {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("Failed to delete {}", path, e);
+            }
+        }
+    }
+
+    public Optional<ImportJob> get(String id) {
+        purge();
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    /**
+     * Cancels a job (see {@link ImportJob#cancel()}).
+     *
+     * @return the job, or empty if it does not exist.
+     */
+    public Optional<ImportJob> cancel(String id) {
+        ImportJob job = jobs.get(id);
+        if (job != null) {
+            job.cancel();
+        }
+        return Optional.ofNullable(job);
+    }
+
+    private void purge() {
+        Instant limit = clock.instant().minus(retention);
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt().isBefore(limit));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
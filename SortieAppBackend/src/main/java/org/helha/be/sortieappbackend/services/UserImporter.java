@@ -0,0 +1,342 @@
+package org.helha.be.sortieappbackend.services;
+
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.helha.be.sortieappbackend.models.Role;
+import org.helha.be.sortieappbackend.models.School;
+import org.helha.be.sortieappbackend.models.UserImportReport;
+import org.helha.be.sortieappbackend.utils.PictureUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Imports students from a CSV file, as a stream: the rows are read one at a time and inserted by chunks of
+ * {@code user-import.chunk-size} rows, each chunk with one JDBC batch per table in its own transaction, so memory
+ * stays flat and a failure only loses the current chunk.
+ *
+ * The STUDENT role and the schools are resolved once per import, and the emails already taken are looked up
+ * once per chunk. A row that cannot be imported (missing email, unknown school, email already taken...) is
+ * skipped and reported in the {@link UserImportReport}; when the database refuses a chunk, its rows are
+ * inserted one by one to report the faulty ones. The activation emails are queued in the
+ * {@link org.helha.be.sortieappbackend.models.EmailOutbox} within the chunk transaction, and sent in the background.
+ *
+ * The import reports its progress to a {@link Progress}, which can cancel it between two rows: the chunks
+ * already committed stay imported, the rows read since are dropped.
+ */
+@Service
+public class UserImporter {
+
+    /** Header of the files whose rows carry the school of the student. */
+    public static final List<String> HEADER = List.of("lastname_user", "name_user", "address_user", "email", "school_id", "picture_user");
+    /** Header of the files imported into the school of the admin importing them. */
+    public static final List<String> SCHOOL_HEADER = List.of("lastname_user", "name_user", "address_user", "email", "picture_user");
+
+    static final String INSERT_USER_SQL = "INSERT INTO user (lastname_user, name_user, email, address_user, school_id, role_id, activated, picture_user, picture_hash, token_version) "
+            + "VALUES (?, ?, ?, ?, ?, ?, FALSE, ?, ?, 0)";
+    static final String INSERT_TOKEN_SQL = "INSERT INTO activation_token (token, expiry_date, user_id_user) VALUES (?, ?, ?)";
+
+    private static final Timer IMPORT_TIMER = Timer.builder("user.import")
+            .description("Duration of the CSV user imports")
+            .register(Metrics.globalRegistry);
+    private static final Timer CHUNK_TIMER = Timer.builder("user.import.chunk")
+            .description("Duration of the insertion of a chunk of imported users")
+            .register(Metrics.globalRegistry);
+    private static final Counter IMPORTED = Counter.builder("user.import.rows")
+            .tag("result", "imported")
+            .register(Metrics.globalRegistry);
+    private static final Counter REJECTED = Counter.builder("user.import.rows")
+            .tag("result", "rejected")
+            .register(Metrics.globalRegistry);
+
+    /**
+     * Receives the progress of an import, from the importing thread, and may cancel it.
+     */
+    public interface Progress {
+
+        Progress NONE = new Progress() {};
+
+        default void rowParsed() {}
+
+        default void rowsInserted(int count) {}
+
+        default void rowRejected() {}
+
+        default void emailQueued() {}
+
+        default boolean isCancelled() {
+            return false;
+        }
+    }
+
+    private record Row(int line, String lastname, String firstname, String address, String email, School school,
+                       String picture, String pictureHash, String token) {}
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+
+    @Autowired
+    private RoleServiceDB roleServiceDB;
+
+    @Autowired
+    private SchoolServiceDB schoolServiceDB;
+
+    @Autowired
+    private EmailService emailService;
+
+    @Autowired
+    private PicturePipeline picturePipeline;
+
+    @Autowired
+    private EmailOutboxService emailOutboxService;
+
+    @Autowired
+    private Clock clock;
+
+    public UserImporter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                        @Value("${user-import.chunk-size:500}") int chunkSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * Imports the students of a CSV file.
+     *
+     * @param csv    the content of the file, starting with {@link #HEADER}, or {@link #SCHOOL_HEADER} when a school is given.
+     * @param school the school of all the students, or {@code null} to take it from the {@code school_id} column.
+     * @return the number of rows imported and the errors of the others.
+     * @throws IllegalArgumentException if the header is not the expected one.
+     */
+    public UserImportReport importStudents(Reader csv, School school) throws IOException {
+        return importStudents(csv, school, Progress.NONE);
+    }
+
+    /**
+     * Imports the students of a CSV file, reporting the progress.
+     *
+     * @see #importStudents(Reader, School)
+     */
+    public UserImportReport importStudents(Reader csv, School school, Progress progress) throws IOException {
+        Timer.Sample sample = Timer.start();
+        try (CSVReader reader = new CSVReader(csv)) {
+            List<String> expected = school == null ? HEADER : SCHOOL_HEADER;
+            String[] header = reader.readNext();
+            if (header == null || !expected.equals(List.of(header))) {
+                throw new IllegalArgumentException("CSV file has incorrect column headers or order.");
+            }
+            Role student = roleServiceDB.getRoleByName("STUDENT")
+                    .orElseThrow(() -> new RuntimeException("Role STUDENT not found"));
+            Map<Integer, Optional<School>> schools = new HashMap<>();
+            Set<String> seenEmails = new HashSet<>();
+
+            UserImportReport report = new UserImportReport();
+            List<Row> chunk = new ArrayList<>(chunkSize);
+            int line = 1;
+            String[] values;
+            while ((values = reader.readNext()) != null) {
+                if (progress.isCancelled()) {
+                    break;
+                }
+                line++;
+                report.setRows(report.getRows() + 1);
+                progress.rowParsed();
+                Row row = parse(line, values, school, schools, seenEmails, report, progress);
+                if (row != null) {
+                    chunk.add(row);
+                    if (chunk.size() == chunkSize) {
+                        flush(chunk, student, report, progress);
+                        chunk.clear();
+                    }
+                }
+            }
+            if (progress.isCancelled()) {
+                report.setCancelled(true);
+                report.setRows(report.getRows() - chunk.size());
+            } else {
+                flush(chunk, student, report, progress);
+            }
+            report.getErrors().sort(Comparator.comparingInt(UserImportReport.RowError::getLine));
+            IMPORTED.increment(report.getImported());
+            REJECTED.increment(report.getRejected());
+            return report;
+        } catch (CsvException e) {
+            throw new IllegalArgumentException("Malformed CSV file: " + e.getMessage(), e);
+        } finally {
+            sample.stop(IMPORT_TIMER);
+        }
+    }
+
+    private Row parse(int line, String[] values, School school, Map<Integer, Optional<School>> schools,
+                      Set<String> seenEmails, UserImportReport report, Progress progress) {
+        int columns = school == null ? HEADER.size() : SCHOOL_HEADER.size();
+        String email = values.length > 3 ? values[3].trim() : null;
+        if (values.length != columns) {
+            reject(report, progress, line, email, "Expected " + columns + " columns, found " + values.length);
+            return null;
+        }
+        if (email.isEmpty() || email.indexOf('@') <= 0) {
+            reject(report, progress, line, email, "Invalid email");
+            return null;
+        }
+        if (!seenEmails.add(email.toLowerCase(Locale.ROOT))) {
+            reject(report, progress, line, email, "Email already present earlier in the file");
+            return null;
+        }
+        if (school == null) {
+            int schoolId;
+            try {
+                schoolId = Integer.parseInt(values[4].trim());
+            } catch (NumberFormatException e) {
+                reject(report, progress, line, email, "Invalid school_id: " + values[4]);
+                return null;
+            }
+            school = schools.computeIfAbsent(schoolId, schoolServiceDB::getSchoolById).orElse(null);
+            if (school == null) {
+                reject(report, progress, line, email, "School not found with ID: " + schoolId);
+                return null;
+            }
+        }
+        String picture = values[columns - 1];
+        if (picture == null || picture.isEmpty()) {
+            picture = null;
+        }
+        // Base64 images go through the picture pipeline, on the importing thread; URLs are kept as they are
+        String pictureHash = null;
+        byte[] image = PictureUtils.decodeImage(picture);
+        if (image != null) {
+            try {
+                pictureHash = picturePipeline.processInline(image);
+            } catch (IllegalArgumentException e) {
+                reject(report, progress, line, email, "Invalid picture: " + e.getMessage());
+                return null;
+            }
+            picture = null;
+        }
+        return new Row(line, values[0], values[1], values[2], email, school, picture, pictureHash,
+                emailService.generateActivationToken());
+    }
+
+    /**
+     * Inserts a chunk of rows with their activation tokens and emails.
+     */
+    private void flush(List<Row> chunk, Role student, UserImportReport report, Progress progress) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        List<Row> rows = new ArrayList<>(chunk.size());
+        Set<String> taken = takenEmails(chunk);
+        for (Row row : chunk) {
+            if (taken.contains(row.email().toLowerCase(Locale.ROOT))) {
+                reject(report, progress, row.line(), row.email(), "Email already used by another user");
+            } else {
+                rows.add(row);
+            }
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+        List<Row> inserted;
+        try {
+            CHUNK_TIMER.record(() -> transactionTemplate.executeWithoutResult(status -> insert(rows, student)));
+            inserted = rows;
+        } catch (DataAccessException e) {
+            // Find the faulty rows, the chunk has been rolled back
+            inserted = new ArrayList<>(rows.size());
+            for (Row row : rows) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> insert(List.of(row), student));
+                    inserted.add(row);
+                } catch (DuplicateKeyException duplicate) {
+                    reject(report, progress, row.line(), row.email(), "Email already used by another user");
+                } catch (DataAccessException rowException) {
+                    reject(report, progress, row.line(), row.email(), "Rejected by the database: " + rowException.getMostSpecificCause().getMessage());
+                }
+            }
+        }
+        report.setImported(report.getImported() + inserted.size());
+        progress.rowsInserted(inserted.size());
+        for (int i = 0; i < inserted.size(); i++) {
+            progress.emailQueued();
+        }
+    }
+
+    private static void reject(UserImportReport report, Progress progress, int line, String email, String message) {
+        report.addError(line, email, message);
+        progress.rowRejected();
+    }
+
+    private Set<String> takenEmails(List<Row> rows) {
+        String placeholders = String.join(",", Collections.nCopies(rows.size(), "?"));
+        Set<String> taken = new HashSet<>();
+        jdbcTemplate.query("SELECT email FROM user WHERE email IN (" + placeholders + ")",
+                resultSet -> {
+                    taken.add(resultSet.getString(1).toLowerCase(Locale.ROOT));
+                },
+                rows.stream().map(Row::email).toArray());
+        return taken;
+    }
+
+    private void insert(List<Row> rows, Role student) {
+        jdbcTemplate.batchUpdate(INSERT_USER_SQL, rows, rows.size(), (statement, row) -> {
+            statement.setString(1, row.lastname());
+            statement.setString(2, row.firstname());
+            statement.setString(3, row.email());
+            statement.setString(4, row.address());
+            statement.setInt(5, row.school().getId_school());
+            statement.setInt(6, student.getId_role());
+            if (row.picture() != null) {
+                statement.setString(7, row.picture());
+            } else {
+                statement.setNull(7, Types.VARCHAR);
+            }
+            if (row.pictureHash() != null) {
+                statement.setString(8, row.pictureHash());
+            } else {
+                statement.setNull(8, Types.VARCHAR);
+            }
+        });
+        Map<String, Integer> ids = new HashMap<>();
+        String placeholders = String.join(",", Collections.nCopies(rows.size(), "?"));
+        jdbcTemplate.query("SELECT id_user, email FROM user WHERE email IN (" + placeholders + ")",
+                resultSet -> {
+                    ids.put(resultSet.getString(2).toLowerCase(Locale.ROOT), resultSet.getInt(1));
+                },
+                rows.stream().map(Row::email).toArray());
+        Timestamp expiryDate = Timestamp.valueOf(LocalDateTime.now(clock).plusHours(24));
+        jdbcTemplate.batchUpdate(INSERT_TOKEN_SQL, rows, rows.size(), (statement, row) -> {
+            statement.setString(1, row.token());
+            statement.setTimestamp(2, expiryDate);
+            statement.setInt(3, ids.get(row.email().toLowerCase(Locale.ROOT)));
+        });
+        emailOutboxService.enqueue(rows.stream()
+                .map(row -> EmailOutboxService.activation(row.email(), row.token(), row.school().getLocale_school()))
+                .toList());
+    }
+}
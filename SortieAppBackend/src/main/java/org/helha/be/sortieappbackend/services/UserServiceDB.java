@@ -3,8 +3,6 @@
  */
 package org.helha.be.sortieappbackend.services;
 
-import com.opencsv.CSVReader;
-import net.coobird.thumbnailator.Thumbnails;
 import org.helha.be.sortieappbackend.ServiceImpl.QRCodeServiceImpl;
 import org.helha.be.sortieappbackend.models.ActivationToken;
 import org.helha.be.sortieappbackend.models.Role;
@@ -12,21 +10,19 @@ import org.helha.be.sortieappbackend.models.School;
 import org.helha.be.sortieappbackend.models.User;
 import org.helha.be.sortieappbackend.repositories.jpa.ActivationTokenRepository;
 import org.helha.be.sortieappbackend.repositories.jpa.UserRepository;
+import org.helha.be.sortieappbackend.security.TokenVersions;
+import org.helha.be.sortieappbackend.utils.PictureUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Primary;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
-import jakarta.mail.MessagingException;
-
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.InputStreamReader;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
 import java.time.LocalDateTime;
 import java.util.Base64;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 
 @Service
@@ -48,11 +44,26 @@ public class UserServiceDB implements IUserService {
     @Autowired
     private EmailService emailService;
 
+    @Autowired
+    private PicturePipeline picturePipeline;
+
+    @Autowired
+    private EmailOutboxService emailOutboxService;
+
     @Autowired
     private PasswordEncoder passwordEncoder;
 
     @Autowired
     private QRCodeServiceImpl qrCodeServiceImpl;
+
+    @Autowired
+    private ExitWindowIndex exitWindowIndex;
+
+    @Autowired
+    private TokenVersions tokenVersions;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
     /**
      * Retrieve all users from the database.
      */
@@ -81,6 +92,8 @@ public class UserServiceDB implements IUserService {
 
     /**
      * Add a new user to the database and generate a QR code if the user is a student and activated.
+     * The activation email is queued in the outbox with the user and its token, and sent in the background.
+     * The picture is processed before the transaction is opened, as the {@link PicturePipeline} may wait for a thread.
      */
     public User addUser(User user) {
         if (user.getRole_user() != null && user.getRole_user().getId_role() != 0) {
@@ -89,6 +102,11 @@ public class UserServiceDB implements IUserService {
             user.setRole_user(role);
         }
 
+        applyPicture(user, user.getPicture_user());
+        return new TransactionTemplate(transactionManager).execute(status -> saveNewUser(user));
+    }
+
+    private User saveNewUser(User user) {
         User savedUser = repository.save(user);
 
         // Generating activation token
@@ -104,13 +122,9 @@ public class UserServiceDB implements IUserService {
         // Activation link
         String activationLink = "http://localhost:8081/users/activate?token=" + token;
 
-        // Sending Email
-        try {
-            emailService.sendActivationEmail(savedUser.getEmail(), token);
-        } catch (MessagingException e) {
-            System.err.println("Failed to send activation email: " + e.getMessage());
-            throw new RuntimeException("Failed to send activation email", e);
-        }
+        // Queuing the email in the same transaction: it is sent by the EmailOutboxDispatcher once committed
+        School school = savedUser.getSchool_user();
+        emailOutboxService.enqueueActivation(savedUser.getEmail(), token, school != null ? school.getLocale_school() : null);
         return savedUser;
     }
 
@@ -120,6 +134,9 @@ public class UserServiceDB implements IUserService {
     public User updateUser(User newUser, int id_user) {
         return repository.findById(id_user)
                 .map(user -> {
+                    // The tokens carry the email and the role: they must be revoked when those change
+                    String previousEmail = user.getEmail();
+                    Integer previousRole = user.getRole_user() != null ? user.getRole_user().getId_role() : null;
                     user.setName_user(newUser.getName_user());
                     user.setLastname_user(newUser.getLastname_user());
                     user.setEmail(newUser.getEmail());
@@ -141,8 +158,8 @@ public class UserServiceDB implements IUserService {
                         user.setRole_user(role);
                     }
 
-                    if (newUser.getPicture_user() != null) {
-                        user.setPicture_user(newUser.getPicture_user());
+                    if (newUser.getPicture_user() != null && !newUser.getPicture_user().equals(user.getPicture_user())) {
+                        applyPicture(user, newUser.getPicture_user());
                     }
 
                     // Y'a un stut ici
@@ -150,7 +167,14 @@ public class UserServiceDB implements IUserService {
                         user.setActivated(newUser.getActivated());
                     }
 
-                    return repository.save(user);
+                    User savedUser = repository.save(user);
+                    exitWindowIndex.onUserSaved(savedUser);
+                    if (!Boolean.TRUE.equals(savedUser.getActivated())
+                            || !Objects.equals(previousEmail, savedUser.getEmail())
+                            || !Objects.equals(previousRole, savedUser.getRole_user() != null ? savedUser.getRole_user().getId_role() : null)) {
+                        tokenVersions.revoke(id_user);
+                    }
+                    return savedUser;
                 })
                 .orElseThrow(() -> new IllegalArgumentException("User not found"));
     }
@@ -162,6 +186,7 @@ public class UserServiceDB implements IUserService {
         repository.findById(id_user).ifPresent(user -> {
             user.setActivated(false);
             repository.save(user);
+            tokenVersions.revoke(id_user);
         });
     }
 
@@ -170,204 +195,47 @@ public class UserServiceDB implements IUserService {
      */
     public void deleteUserPhysically(int id_user) {
         repository.deleteById(id_user);
+        exitWindowIndex.onUserDeleted(id_user);
+        tokenVersions.revoke(id_user);
     }
 
     /**
-     * Importing users from CSV File.
+     * Sets the picture of a user from a request: a Base64 image goes through the {@link PicturePipeline} and the
+     * user keeps its hash, any other value (an URL) is kept as the legacy picture.
      */
-    public void importUsersFromCSV(MultipartFile file) {
-        try (CSVReader reader = new CSVReader(new InputStreamReader(file.getInputStream()))) {
-            String[] header = reader.readNext(); // Lire l'en-tête
-
-            if (header == null || header.length != 6 ||
-                    !"lastname_user".equals(header[0]) ||
-                    !"name_user".equals(header[1]) ||
-                    !"address_user".equals(header[2]) ||
-                    !"email".equals(header[3]) ||
-                    !"school_id".equals(header[4]) ||
-                    !"picture_user".equals(header[5])) {
-
-                throw new IllegalArgumentException("CSV file has incorrect column headers or order.");
-            }
-
-            String[] nextLine;
-
-            while ((nextLine = reader.readNext()) != null) {
-                String lastname = nextLine[0];
-                String firstname = nextLine[1];
-                String address = nextLine[2];
-                String email = nextLine[3];
-                int schoolId = Integer.parseInt(nextLine[4]);
-                String pictureUrl = nextLine[5];
-
-                Role defaultRole = roleServiceDB.getRoleByName("STUDENT")
-                        .orElseThrow(() -> new RuntimeException("Role STUDENT not found"));
-
-                School school = schoolServiceDB.getSchoolById(schoolId)
-                        .orElseThrow(() -> new RuntimeException("School not found with ID: " + schoolId));
-
-                User user = new User();
-                user.setLastname_user(lastname);
-                user.setName_user(firstname);
-                user.setEmail(email);
-                user.setAddress_user(address);
-                user.setSchool_user(school);
-                user.setRole_user(defaultRole);
-                user.setActivated(false);
-
-                if (pictureUrl != null && !pictureUrl.isEmpty()) {
-                    user.setPicture_user(pictureUrl);
-                }
-
-                addUser(user);
-            }
-        } catch (Exception e) {
-            throw new RuntimeException("Error importing users from CSV", e);
+    private void applyPicture(User user, String picture) {
+        byte[] image = PictureUtils.decodeImage(picture);
+        if (image != null) {
+            user.setPicture_hash(picturePipeline.process(image));
+            user.setPicture_user(null);
+        } else {
+            user.setPicture_hash(null);
+            user.setPicture_user(picture);
         }
     }
 
-    /**
-     * Import users from CSV File and assign them the school of the admin importing the file.
-     */
-    public void importUsersFromCSVForAdmin(MultipartFile file, int adminId) {
-        try (CSVReader reader = new CSVReader(new InputStreamReader(file.getInputStream()))) {
-            String[] header = reader.readNext(); // Lire l'en-tête
-
-            if (header == null || header.length != 5 ||
-                    !"lastname_user".equals(header[0]) ||
-                    !"name_user".equals(header[1]) ||
-                    !"address_user".equals(header[2]) ||
-                    !"email".equals(header[3]) ||
-                    !"picture_user".equals(header[4])) {
-
-                throw new IllegalArgumentException("CSV file has incorrect column headers or order.");
-            }
-
-            // Récupérer l'école de l'admin connecté
-            User admin = repository.findById(adminId)
-                    .orElseThrow(() -> new RuntimeException("Admin not found with ID: " + adminId));
-
-            School adminSchool = admin.getSchool_user();
-            if (adminSchool == null) {
-                throw new IllegalArgumentException("Admin does not have a school assigned.");
-            }
-
-            String[] nextLine;
-
-            while ((nextLine = reader.readNext()) != null) {
-                String lastname = nextLine[0];
-                String firstname = nextLine[1];
-                String address = nextLine[2];
-                String email = nextLine[3];
-                String pictureUrl = nextLine[4];
-
-                // Assigner le rôle par défaut "STUDENT"
-                Role defaultRole = roleServiceDB.getRoleByName("STUDENT")
-                        .orElseThrow(() -> new RuntimeException("Role STUDENT not found"));
-
-                User user = new User();
-                user.setLastname_user(lastname);
-                user.setName_user(firstname);
-                user.setEmail(email);
-                user.setAddress_user(address);
-                user.setSchool_user(adminSchool);  // L'école de l'admin est assignée ici
-                user.setRole_user(defaultRole);
-                user.setActivated(false);
-
-                if (pictureUrl != null && !pictureUrl.isEmpty()) {
-                    user.setPicture_user(pictureUrl);
-                }
-
-                addUser(user);
-            }
-        } catch (Exception e) {
-            throw new RuntimeException("Error importing users from CSV for admin", e);
-        }
-    }
-
-
     /**
      * Updates the profile picture of a user by their ID.
+     * The picture and its thumbnails are made by the {@link PicturePipeline}, off the request thread.
      *
      * @param userId       The ID of the user whose profile picture is being updated.
      * @param base64Image  The new profile picture in Base64 format.
      */
     public void updateProfilePicture(int userId, String base64Image) {
-        repository.findById(userId).ifPresentOrElse(user -> {
-            try {
-                // Decoding image in Base64
-                byte[] decodedBytes = Base64.getDecoder().decode(base64Image);
-
-                if (decodedBytes.length == 0) {
-                    throw new IllegalArgumentException("Image Base64 is empty");
-                }
-
-                // Converting binary datas in BufferedImage
-                ByteArrayInputStream inputStream = new ByteArrayInputStream(decodedBytes);
-                BufferedImage originalImage = ImageIO.read(inputStream);
-
-                if (originalImage == null) {
-                    throw new IllegalArgumentException("Invalid Base64 image provided");
-                }
-
-                // Detecting format (.jpeg if not provided)
-                String inputFormat = detectImageFormat(decodedBytes);
-                if (inputFormat == null || (!inputFormat.equalsIgnoreCase("jpg") &&
-                        !inputFormat.equalsIgnoreCase("jpeg") &&
-                        !inputFormat.equalsIgnoreCase("png"))) {
-                    throw new IllegalArgumentException("Unsupported image format. Only .jpg, .jpeg, and .png are allowed.");
-                }
-
-                // Resize to 400x400 pixels
-                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-                Thumbnails.of(originalImage)
-                        .size(400, 400) // Taille de sortie
-                        .outputFormat(inputFormat) // Utilise le même format que l'entrée
-                        .outputQuality(0.85) // Qualité de l'image
-                        .toOutputStream(outputStream);
-
-                // Converting resized image in Base64
-                byte[] resizedBytes = outputStream.toByteArray();
-                String resizedBase64Image = Base64.getEncoder().encodeToString(resizedBytes);
-
-                user.setPicture_user(resizedBase64Image);
-                repository.save(user);
-
-            } catch (Exception e) {
-                throw new RuntimeException("Error processing the profile picture", e);
-            }
-        }, () -> {
-            throw new IllegalArgumentException("User not found");
-        });
-    }
-
-    /**
-     * Detects the format of an image from its byte array.
-     *
-     * @param imageBytes the byte array representing the image data
-     * @return the format name of the image (e.g., "jpg", "png"), or {@code null} if the format
-     *         is unsupported or the data is not a valid image
-     * @throws RuntimeException if an error occurs during the detection process
-     */
-    private String detectImageFormat(byte[] imageBytes) {
-        String format;
-        try (ByteArrayInputStream inputStream = new ByteArrayInputStream(imageBytes)) {
-            BufferedImage bufferedImage = ImageIO.read(inputStream);
-
-            if (bufferedImage == null) {
-                return null;
-            }
-
-            // Using ImageIO to detect the format
-            for (String formatName : ImageIO.getReaderFormatNames()) {
-                if (ImageIO.getImageReadersByFormatName(formatName).hasNext()) {
-                    format = formatName;
-                    return format;
-                }
-            }
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to detect image format", e);
+        User user = repository.findById(userId).orElseThrow(() -> new IllegalArgumentException("User not found"));
+        byte[] decodedBytes;
+        try {
+            decodedBytes = Base64.getDecoder().decode(base64Image);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid Base64 image provided", e);
+        }
+        if (decodedBytes.length == 0) {
+            throw new IllegalArgumentException("Image Base64 is empty");
         }
-        return null;
+
+        user.setPicture_hash(picturePipeline.process(decodedBytes));
+        user.setPicture_user(null);
+        repository.save(user);
+        exitWindowIndex.onUserSaved(user);
     }
 }
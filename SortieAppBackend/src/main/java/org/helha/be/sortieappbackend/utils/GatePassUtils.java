@@ -0,0 +1,166 @@
+package org.helha.be.sortieappbackend.utils;
+
+import org.helha.be.sortieappbackend.models.ExitRule;
+import org.helha.be.sortieappbackend.models.GatePass;
+import org.helha.be.sortieappbackend.models.GatePassCheck;
+import org.helha.be.sortieappbackend.models.StudentExitWindows;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Issues and verifies the signed gate passes encoded in the students' QR codes.
+ *
+ * A pass looks like {@code G1.<payload>.<signature>} (Base64url), where the payload holds the user id,
+ * the day, the expiry and the exit windows of that day as minutes of the day, and the signature is a
+ * truncated HMAC-SHA256. The HMAC key is derived from {@code jwt.secret}, so it can be handed to
+ * scanner devices without disclosing the key that signs the JWTs.
+ */
+@Component
+public class GatePassUtils {
+
+    public static final String PREFIX = "G1.";
+
+    private static final int SIGNATURE_LENGTH = 16;
+    private static final int MAX_WINDOWS = 32;
+    private static final long NANOS_PER_MINUTE = 60_000_000_000L;
+
+    private final SecretKeySpec key;
+    private final long ttlSeconds;
+    private final ThreadLocal<Mac> macs;
+
+    public GatePassUtils(@Value("${jwt.secret}") String secret, @Value("${gatepass.ttl-minutes:30}") long ttlMinutes) {
+        this.key = new SecretKeySpec(hmac(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"),
+                "sortieapp-gate-pass".getBytes(StandardCharsets.UTF_8)), "HmacSHA256");
+        this.ttlSeconds = ttlMinutes * 60;
+        this.macs = ThreadLocal.withInitial(() -> newMac(key));
+    }
+
+    /**
+     * Issues the pass of a student for the day of {@code now}.
+     *
+     * Passes are issued per period of {@code gatepass.ttl-minutes}: within a period the same token is returned,
+     * so the QR code image and its ETag stay stable. A token stays valid at least one full period and never
+     * past the end of its day.
+     *
+     * @param student the exit windows of the student.
+     * @param now     the current date and time, in the zone of the exit rules.
+     * @return the signed pass.
+     */
+    public GatePass issue(StudentExitWindows student, ZonedDateTime now) {
+        LocalDate day = now.toLocalDate();
+        long epochDay = day.toEpochDay();
+
+        int[] windows = new int[MAX_WINDOWS * 2];
+        int count = 0;
+        for (ExitRule rule : student.getRules()) {
+            if (count < MAX_WINDOWS && rule.allowsOn(epochDay, day.getDayOfWeek())) {
+                windows[count * 2] = rule.getStartMinute();
+                windows[count * 2 + 1] = rule.getEndMinute();
+                count++;
+            }
+        }
+
+        long nowSeconds = now.toEpochSecond();
+        long endOfDay = day.plusDays(1).atStartOfDay(now.getZone()).toEpochSecond();
+        long refreshAt = Math.min((nowSeconds / ttlSeconds + 1) * ttlSeconds, endOfDay);
+        long expiresAt = Math.min(refreshAt + ttlSeconds, endOfDay);
+
+        ByteBuffer payload = ByteBuffer.allocate(13 + count * 4);
+        payload.putInt(student.getUserId());
+        payload.putInt((int) epochDay);
+        payload.putInt((int) expiresAt);
+        payload.put((byte) count);
+        for (int i = 0; i < count * 2; i++) {
+            payload.putShort((short) windows[i]);
+        }
+
+        String signed = PREFIX + Base64.getUrlEncoder().withoutPadding().encodeToString(payload.array());
+        String token = signed + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(sign(signed));
+        return new GatePass(token, student.getUserId(), epochDay, expiresAt, refreshAt);
+    }
+
+    /**
+     * Verifies a pass: signature, expiry, day and whether one of its windows is open at {@code now}.
+     * No database access is needed.
+     *
+     * @param token the token read from the QR code.
+     * @param now   the current date and time, in the zone of the exit rules.
+     * @return the result of the check.
+     */
+    public GatePassCheck verify(String token, ZonedDateTime now) {
+        if (token == null || !token.startsWith(PREFIX)) {
+            return GatePassCheck.rejected(GatePassCheck.Status.MALFORMED, 0);
+        }
+        int dot = token.indexOf('.', PREFIX.length());
+        if (dot < 0) {
+            return GatePassCheck.rejected(GatePassCheck.Status.MALFORMED, 0);
+        }
+        byte[] payload;
+        byte[] signature;
+        try {
+            payload = Base64.getUrlDecoder().decode(token.substring(PREFIX.length(), dot));
+            signature = Base64.getUrlDecoder().decode(token.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            return GatePassCheck.rejected(GatePassCheck.Status.MALFORMED, 0);
+        }
+        if (!MessageDigest.isEqual(sign(token.substring(0, dot)), signature)) {
+            return GatePassCheck.rejected(GatePassCheck.Status.BAD_SIGNATURE, 0);
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(payload);
+            int userId = buffer.getInt();
+            long epochDay = buffer.getInt();
+            long expiresAt = Integer.toUnsignedLong(buffer.getInt());
+            int count = buffer.get() & 0xFF;
+
+            if (now.toEpochSecond() >= expiresAt || now.toLocalDate().toEpochDay() != epochDay) {
+                return GatePassCheck.rejected(GatePassCheck.Status.EXPIRED, userId);
+            }
+
+            long nanoOfDay = now.toLocalTime().toNanoOfDay();
+            for (int i = 0; i < count; i++) {
+                int start = buffer.getShort();
+                int end = buffer.getShort();
+                if (nanoOfDay >= start * NANOS_PER_MINUTE && nanoOfDay <= end * NANOS_PER_MINUTE) {
+                    return new GatePassCheck(GatePassCheck.Status.VALID, userId, true,
+                            ExitRule.formatMinute(start), ExitRule.formatMinute(end), expiresAt);
+                }
+            }
+            return new GatePassCheck(GatePassCheck.Status.VALID, userId, false, null, null, expiresAt);
+        } catch (BufferUnderflowException e) {
+            return GatePassCheck.rejected(GatePassCheck.Status.MALFORMED, 0);
+        }
+    }
+
+    private byte[] sign(String content) {
+        Mac mac = macs.get();
+        return Arrays.copyOf(mac.doFinal(content.getBytes(StandardCharsets.US_ASCII)), SIGNATURE_LENGTH);
+    }
+
+    private static byte[] hmac(SecretKeySpec key, byte[] content) {
+        return newMac(key).doFinal(content);
+    }
+
+    private static Mac newMac(SecretKeySpec key) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+}
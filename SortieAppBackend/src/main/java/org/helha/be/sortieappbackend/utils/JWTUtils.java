@@ -2,17 +2,58 @@ package org.helha.be.sortieappbackend.utils;
 
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ClaimsBuilder;
+import io.jsonwebtoken.ExpiredJwtException;
 import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.SecurityException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.helha.be.sortieappbackend.models.TokenCheck;
+import org.helha.be.sortieappbackend.security.RoleCode;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.time.Clock;
 import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Issues and verifies the access and refresh tokens.
+ *
+ * The tokens are compact: the user ID ({@code id}), the code of their role ({@code rol}, see {@link RoleCode}),
+ * their school ({@code sch}) and their token version ({@code ver}), besides {@code iat} and {@code exp}.
+ * Refresh tokens also have a {@code jti}.
+ * The signing key and the parser are built once from {@code jwt.secret} and shared by all threads.
+ * The claims of up to {@code jwt.verified-cache.max-size} verified tokens are kept until the tokens expire, so
+ * a token checked by the {@code JWTFilter} and then again by a controller is only verified once.
+ */
 @Component
 public class JWTUtils {
 
+    private static final Timer PARSE_TIMER = Timer.builder("jwt.parse")
+            .description("Duration of the JWT signature checks and parsing")
+            .register(Metrics.globalRegistry);
+    private static final Counter CACHE_HITS = Counter.builder("jwt.verified.cache")
+            .tag("result", "hit")
+            .description("Tokens whose claims were served from the verified token cache")
+            .register(Metrics.globalRegistry);
+    private static final Counter CACHE_MISSES = Counter.builder("jwt.verified.cache")
+            .tag("result", "miss")
+            .description("Tokens whose signature had to be checked")
+            .register(Metrics.globalRegistry);
+
     @Value("${jwt.secret}")
     private String secret;
 
@@ -22,51 +63,154 @@ public class JWTUtils {
     @Value("${jwt.expirationRefreshTokenMs}")
     private long expirationRefreshToken;
 
-    public String generateAccesToken(org.springframework.security.core.userdetails.User user, org.helha.be.sortieappbackend.models.User customUser){return generateToken(user,customUser,expirationToken);}
+    @Value("${jwt.verified-cache.max-size:1024}")
+    private int verifiedCacheSize = 1024;
+
+    @Value("${jwt.legacy-tokens.window-ms:604800000}")
+    private long legacyTokensWindowMs = 604800000L;
+
+    @Autowired
+    private Clock clock;
+
+    private long startedAt;
 
-    public String generateRefreshToken(org.springframework.security.core.userdetails.User user, org.helha.be.sortieappbackend.models.User customUser){return generateToken(user,customUser,expirationRefreshToken);}
+    private volatile SecretKey key;
+    private volatile JwtParser parser;
+
+    private record Verified(Claims claims, long expiresAt) {}
+
+    /** Claims of the recently verified tokens, by token. */
+    private final Map<String, Verified> verified = new ConcurrentHashMap<>();
+    /** When the expired tokens were last removed from {@link #verified}, in epoch milliseconds. */
+    private final AtomicLong lastSweep = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        // Same key as the former signWith(HS256, secret): the secret is read as Base64
+        SecretKey secretKey = new SecretKeySpec(Decoders.BASE64.decode(secret), "HmacSHA256");
+        parser = Jwts.parser().verifyWith(secretKey).clock(() -> new Date(clock.millis())).build();
+        key = secretKey;
+        startedAt = clock.millis();
+    }
 
-    private String generateToken(org.springframework.security.core.userdetails.User user, org.helha.be.sortieappbackend.models.User customUser, long expiration){
+    public String generateAccesToken(org.springframework.security.core.userdetails.User user, org.helha.be.sortieappbackend.models.User customUser){return generateToken(user,customUser,expirationToken,null);}
+
+    /**
+     * Generates a refresh token, identified by a random {@code jti} so it can be used only once.
+     */
+    public String generateRefreshToken(org.springframework.security.core.userdetails.User user, org.helha.be.sortieappbackend.models.User customUser){return generateToken(user,customUser,expirationRefreshToken,UUID.randomUUID().toString());}
+
+    private String generateToken(org.springframework.security.core.userdetails.User user, org.helha.be.sortieappbackend.models.User customUser, long expiration, String id){
+        Date now = new Date(clock.millis());
+        ClaimsBuilder claims = Jwts.claims()
+                .id(id)
+                .issuedAt(now)
+                .expiration(new Date(now.getTime()+expiration))
+                .add("id",customUser.getId())
+                .add("rol",RoleCode.encode(user.getAuthorities()))
+                .add("ver",customUser.getToken_version());
+        if(customUser.getSchool_user() != null){
+            claims.add("sch",customUser.getSchool_user().getId_school());
+        }
         return Jwts.builder()
-                .claims(Jwts.claims()
-                        .subject(user.getUsername())
-                        .issuedAt(new Date())
-                        .expiration(new Date(new Date().getTime()+expiration))
-                        .add("id",customUser.getId())
-                        .add("name",customUser.getName_user())
-                        .add("lastname",customUser.getLastname_user())
-                        .add("roles",user.getAuthorities())
-                        .build())
-                .signWith(SignatureAlgorithm.HS256,secret).compact();
+                .claims(claims.build())
+                .signWith(key, Jwts.SIG.HS256).compact();
     }
 
-    public boolean validateToken(String token){
+    /**
+     * Verifies a token once and tells why it is rejected, if it is.
+     *
+     * @param token the compact token.
+     * @return the check, holding the claims when the token is valid or authentic but expired.
+     */
+    public TokenCheck check(String token){
+        if(token == null || token.isBlank()){
+            return TokenCheck.rejected(TokenCheck.Status.MALFORMED);
+        }
+        long now = clock.millis();
+        Verified cached = verified.get(token);
+        if(cached != null){
+            if(cached.expiresAt() >= now){
+                CACHE_HITS.increment();
+                return TokenCheck.valid(cached.claims());
+            }
+            verified.remove(token, cached);
+            return new TokenCheck(TokenCheck.Status.EXPIRED, cached.claims());
+        }
+        CACHE_MISSES.increment();
+        Claims claims;
+        long start = System.nanoTime();
         try{
-            parseToken(token);
-            return true;
-        } catch (JwtException e) {
-            return false;
+            claims = parser.parseSignedClaims(token).getPayload();
+        } catch (ExpiredJwtException e) {
+            return new TokenCheck(TokenCheck.Status.EXPIRED, e.getClaims());
+        } catch (SecurityException e) {
+            return TokenCheck.rejected(TokenCheck.Status.BAD_SIGNATURE);
+        } catch (JwtException | IllegalArgumentException e) {
+            return TokenCheck.rejected(TokenCheck.Status.MALFORMED);
+        } finally {
+            PARSE_TIMER.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         }
+        remember(token, claims, now);
+        return TokenCheck.valid(claims);
     }
-    public Claims parseToken(String token) throws JwtException{
-        return Jwts.parser()
-                .setSigningKey(secret)
-                .build()
-                .parseClaimsJws(token)
-                .getPayload();
 
+    /**
+     * Keeps the claims of a verified token. When the cache is full, the expired tokens are removed, at most once
+     * a second so a burst of new tokens does not scan it on every request; a token that still does not fit is
+     * not cached.
+     */
+    private void remember(String token, Claims claims, long now){
+        if(verifiedCacheSize <= 0){
+            return;
+        }
+        if(verified.size() >= verifiedCacheSize){
+            long last = lastSweep.get();
+            if(now - last < 1000 || !lastSweep.compareAndSet(last, now)){
+                return;
+            }
+            verified.values().removeIf(entry -> entry.expiresAt() < now);
+            if(verified.size() >= verifiedCacheSize){
+                return;
+            }
+        }
+        Date expiration = claims.getExpiration();
+        verified.put(token, new Verified(claims, expiration != null ? expiration.getTime() : Long.MAX_VALUE));
+    }
+
+    /**
+     * Tells whether the claims are those of a token issued before the compact format, with the full {@code roles} list.
+     */
+    public boolean isLegacy(Claims claims){
+        return !claims.containsKey("rol") && claims.containsKey("roles");
     }
+
+    /**
+     * Tells whether the legacy tokens are still accepted: during {@code jwt.legacy-tokens.window-ms} after startup,
+     * the lifetime of a refresh token by default.
+     */
+    public boolean acceptsLegacyTokens(){
+        return clock.millis() - startedAt < legacyTokensWindowMs;
+    }
+
+    public boolean validateToken(String token){
+        return check(token).isValid();
+    }
+
+    public Claims parseToken(String token) throws JwtException{
+        TokenCheck check = check(token);
+        if(!check.isValid()){
+            throw new JwtException("Invalid token: " + check.getStatus());
+        }
+        return check.getClaims();
+    }
+
     public int getUserIdFromToken(String token) throws JwtException {
         // Parse the token and get the claims (payload)
-        Claims claims = Jwts.parser()
-                .setSigningKey(secret)
-                .build()
-                .parseClaimsJws(token)
-                .getPayload(); // getBody() returns the claims (payload)
+        Claims claims = parseToken(token);
 
         // Extract the 'id' claim from the payload
         return claims.get("id", Integer.class);  // Assuming 'id' is a Long
     }
 
 }
-
@@ -0,0 +1,97 @@
+package org.helha.be.sortieappbackend.utils;
+
+import org.helha.be.sortieappbackend.models.User;
+import org.springframework.http.MediaType;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
+
+/**
+ * Helpers for the profile pictures of the User: stored by hash in the
+ * {@link org.helha.be.sortieappbackend.services.PictureStore}, or, for the legacy ones, as Base64 strings.
+ */
+public final class PictureUtils {
+
+    private PictureUtils() {}
+
+    /**
+     * Returns the short version hash of the profile picture of a user, used as ETag and cache key by the scanner app.
+     *
+     * @param user the user.
+     * @return the first 16 hex characters of the SHA-256 of the picture, or {@code null} if the user has no picture.
+     */
+    public static String version(User user) {
+        if (user.getPicture_hash() != null) {
+            return user.getPicture_hash().substring(0, 16);
+        }
+        return version(user.getPicture_user());
+    }
+
+    /**
+     * Computes a short version hash of a legacy Base64 profile picture.
+     *
+     * @param picture the Base64 picture of the user (may be {@code null}).
+     * @return the first 16 hex characters of the SHA-256 of the picture, or {@code null} if there is no picture.
+     */
+    public static String version(String picture) {
+        if (picture == null || picture.isEmpty()) {
+            return null;
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(picture.getBytes(StandardCharsets.US_ASCII));
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Decodes a Base64 profile picture.
+     *
+     * @param picture the Base64 picture of the user.
+     * @return the image bytes, or {@code null} if the value is not valid Base64 (e.g. an URL imported from CSV).
+     */
+    public static byte[] decode(String picture) {
+        if (picture == null || picture.isEmpty()) {
+            return null;
+        }
+        try {
+            return Base64.getMimeDecoder().decode(picture);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Decodes a Base64 profile picture sent by a client, if it is a PNG or JPEG image.
+     *
+     * @param picture the Base64 picture.
+     * @return the image bytes, or {@code null} if the value is not a Base64 image (e.g. an URL).
+     */
+    public static byte[] decodeImage(String picture) {
+        byte[] image = decode(picture);
+        if (image == null || MediaType.APPLICATION_OCTET_STREAM.equals(sniffMediaType(image))) {
+            return null;
+        }
+        return image;
+    }
+
+    /**
+     * Detects the media type of an image from its first bytes.
+     *
+     * @param image the image bytes.
+     * @return {@code image/png}, {@code image/jpeg}, or {@code application/octet-stream} if unknown.
+     */
+    public static MediaType sniffMediaType(byte[] image) {
+        if (image.length >= 8 && (image[0] & 0xFF) == 0x89 && image[1] == 'P' && image[2] == 'N' && image[3] == 'G') {
+            return MediaType.IMAGE_PNG;
+        }
+        if (image.length >= 3 && (image[0] & 0xFF) == 0xFF && (image[1] & 0xFF) == 0xD8 && (image[2] & 0xFF) == 0xFF) {
+            return MediaType.IMAGE_JPEG;
+        }
+        return MediaType.APPLICATION_OCTET_STREAM;
+    }
+}
@@ -0,0 +1,141 @@
+package org.helha.be.sortieappbackend.utils;
+
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes QR code {@link BitMatrix} images without going through a {@code BufferedImage}.
+ *
+ * The PNG output is a 1-bit grayscale image packed straight from the rows of the matrix, 32 pixels at a time,
+ * instead of copying every pixel into an image and handing it to ImageIO like {@code MatrixToImageWriter}.
+ * The SVG output draws one rectangle per run of dark modules.
+ */
+public final class QRCodeEncoder {
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private QRCodeEncoder() {}
+
+    /**
+     * Writes the matrix as a 1-bit grayscale PNG, set bits being black.
+     *
+     * @param matrix the QR code, one pixel per bit.
+     * @param out    the stream to write to; it is not closed.
+     */
+    public static void writePng(BitMatrix matrix, OutputStream out) throws IOException {
+        int width = matrix.getWidth();
+        int height = matrix.getHeight();
+        int rowBytes = (width + 7) / 8;
+
+        ByteArrayOutputStream idat = new ByteArrayOutputStream(2048);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(idat, deflater, 4096)) {
+            // Each row: filter type 0 (None), then 8 pixels per byte, most significant bit first, 1 being white
+            byte[] rows = new byte[(rowBytes + 1) * height];
+            BitArray bits = new BitArray(width);
+            for (int y = 0, offset = 0; y < height; y++, offset += rowBytes + 1) {
+                // BitArray stores 32 pixels per int, first pixel in the lowest bit
+                int[] words = matrix.getRow(y, bits).getBitArray();
+                for (int i = 0; i < rowBytes; i++) {
+                    int word = ~Integer.reverse(words[i >> 2]);
+                    rows[offset + 1 + i] = (byte) (word >>> (24 - 8 * (i & 3)));
+                }
+            }
+            deflate.write(rows);
+        } finally {
+            deflater.end();
+        }
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(PNG_SIGNATURE);
+        ByteArrayOutputStream ihdr = new ByteArrayOutputStream(13);
+        DataOutputStream header = new DataOutputStream(ihdr);
+        header.writeInt(width);
+        header.writeInt(height);
+        header.writeByte(1);  // bit depth
+        header.writeByte(0);  // grayscale
+        header.writeByte(0);  // deflate
+        header.writeByte(0);  // adaptive filtering
+        header.writeByte(0);  // no interlace
+        writeChunk(data, "IHDR", ihdr.toByteArray(), ihdr.size());
+        writeChunk(data, "IDAT", idat.toByteArray(), idat.size());
+        writeChunk(data, "IEND", new byte[0], 0);
+        data.flush();
+    }
+
+    /**
+     * Returns the matrix as a 1-bit grayscale PNG.
+     */
+    public static byte[] toPng(BitMatrix matrix) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(2048);
+        writePng(matrix, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes the matrix as an SVG image of the given size, one unit per module.
+     * The matrix should be encoded unscaled (one bit per module) since the SVG scales itself.
+     *
+     * @param matrix the QR code.
+     * @param width  the displayed width.
+     * @param height the displayed height.
+     * @param out    the stream to write to; it is not closed.
+     */
+    public static void writeSvg(BitMatrix matrix, int width, int height, OutputStream out) throws IOException {
+        int columns = matrix.getWidth();
+        int rows = matrix.getHeight();
+        StringBuilder svg = new StringBuilder(columns * rows / 2 + 256);
+        svg.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(width)
+                .append("\" height=\"").append(height)
+                .append("\" viewBox=\"0 0 ").append(columns).append(' ').append(rows)
+                .append("\" shape-rendering=\"crispEdges\">")
+                .append("<rect width=\"100%\" height=\"100%\" fill=\"#fff\"/><path fill=\"#000\" d=\"");
+        for (int y = 0; y < rows; y++) {
+            int x = 0;
+            while (x < columns) {
+                if (!matrix.get(x, y)) {
+                    x++;
+                    continue;
+                }
+                int start = x;
+                while (x < columns && matrix.get(x, y)) {
+                    x++;
+                }
+                svg.append('M').append(start).append(',').append(y)
+                        .append('h').append(x - start).append("v1h-").append(x - start).append('z');
+            }
+        }
+        svg.append("\"/></svg>");
+        out.write(svg.toString().getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    /**
+     * Returns the matrix as an SVG image of the given size.
+     */
+    public static byte[] toSvg(BitMatrix matrix, int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        writeSvg(matrix, width, height, out);
+        return out.toByteArray();
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] content, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(content, 0, length);
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(content, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+}
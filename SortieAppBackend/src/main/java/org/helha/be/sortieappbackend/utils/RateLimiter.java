@@ -0,0 +1,117 @@
+package org.helha.be.sortieappbackend.utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Thread-safe token buckets by key (client IP, email...): each key may take {@code capacity} permits at once,
+ * and earns one more every {@code 1 / permitsPerMinute} minute.
+ *
+ * A bucket is a single {@link AtomicLong}, the instant it will be full again (the "theoretical arrival time" of
+ * GCRA, equivalent to a token bucket), updated with one compare-and-set per permit: requests on different keys
+ * never contend, and requests on the same key never block.
+ *
+ * A full bucket is the same as no bucket, so the full ones are evicted at most every {@code idleMs}, when a new
+ * key comes. While the table holds {@code maxKeys} buckets, a new key may evict them sooner, at most once per
+ * permit interval, and is refused if none is full: memory stays bounded even when a client makes up keys, a
+ * flood of new keys never costs more than one scan of the table per interval, and a legitimate key is refused
+ * for one interval at most once the buckets of the flood are full again.
+ */
+public final class RateLimiter {
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final int maxKeys;
+    private final long idleNanos;
+    private final LongSupplier nanoClock;
+
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong lastEviction;
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final LongAdder evicted = new LongAdder();
+
+    public RateLimiter(int capacity, long permitsPerMinute, int maxKeys, long idleMs) {
+        this(capacity, permitsPerMinute, maxKeys, idleMs, System::nanoTime);
+    }
+
+    public RateLimiter(int capacity, long permitsPerMinute, int maxKeys, long idleMs, LongSupplier nanoClock) {
+        this.intervalNanos = Math.max(1, TimeUnit.MINUTES.toNanos(1) / Math.max(1, permitsPerMinute));
+        this.burstNanos = intervalNanos * Math.max(1, capacity);
+        this.maxKeys = maxKeys;
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMs);
+        this.nanoClock = nanoClock;
+        this.lastEviction = new AtomicLong(nanoClock.getAsLong());
+    }
+
+    /**
+     * Takes a permit from the bucket of a key.
+     *
+     * @param key the key (client IP, email...).
+     * @return 0 if the permit was granted, otherwise the nanoseconds until the bucket has one.
+     */
+    public long tryAcquire(String key) {
+        long now = nanoClock.getAsLong();
+        AtomicLong bucket = bucket(key, now);
+        if (bucket == null) {
+            return intervalNanos;
+        }
+        while (true) {
+            long fullAt = bucket.get();
+            long next = Math.max(fullAt, now) + intervalNanos;
+            long wait = next - now - burstNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (bucket.compareAndSet(fullAt, next)) {
+                return 0;
+            }
+        }
+    }
+
+    private AtomicLong bucket(String key, long now) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket != null) {
+            return bucket;
+        }
+        long sinceEviction = now - lastEviction.get();
+        if (sinceEviction >= idleNanos || (sinceEviction >= intervalNanos && buckets.size() >= maxKeys)) {
+            evictFull(now);
+        }
+        if (buckets.size() >= maxKeys) {
+            return null;
+        }
+        // Long.MIN_VALUE: full since ever
+        return buckets.computeIfAbsent(key, k -> new AtomicLong(Long.MIN_VALUE));
+    }
+
+    /**
+     * Removes the full buckets. A permit taken concurrently from a bucket being removed is lost, which at worst
+     * grants one more permit to its key.
+     */
+    private void evictFull(long now) {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            lastEviction.set(now);
+            int before = buckets.size();
+            buckets.values().removeIf(bucket -> bucket.get() <= now);
+            evicted.add(Math.max(0, before - buckets.size()));
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+
+    public long getEvicted() {
+        return evicted.sum();
+    }
+}
@@ -0,0 +1,127 @@
+package org.helha.be.sortieappbackend.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * HTML template parsed once into segments: the literal text, and the variables between them.
+ *
+ * Two placeholders are supported:
+ * <ul>
+ *     <li>{@code {{#key}}}, a message, replaced at compile time by its HTML-escaped text (which may itself hold
+ *     variables), so a template compiled for a language has its texts baked in;</li>
+ *     <li>{@code {{name}}}, a variable, replaced at render time by its HTML-escaped value, or by nothing when
+ *     it has none.</li>
+ * </ul>
+ * Rendering appends the segments to a buffer reused by the thread, without any parsing or regex.
+ */
+public final class Template {
+
+    private static final Pattern MESSAGE = Pattern.compile("\\{\\{#([\\w.-]+)}}");
+    private static final Pattern VARIABLE = Pattern.compile("\\{\\{([\\w.-]+)}}");
+
+    /** Buffers larger than this are not kept for the next render. */
+    private static final int MAX_KEPT_BUFFER = 64 * 1024;
+    private static final ThreadLocal<StringBuilder> BUFFERS = ThreadLocal.withInitial(() -> new StringBuilder(4096));
+
+    /** {@code literals[i]} comes before {@code variables[i]}; the last literal ends the template. */
+    private final String[] literals;
+    private final String[] variables;
+
+    private Template(String[] literals, String[] variables) {
+        this.literals = literals;
+        this.variables = variables;
+    }
+
+    /**
+     * Parses a template.
+     *
+     * @param source   the template.
+     * @param messages the texts of the messages, by key; returns {@code null} for an unknown key.
+     * @throws IllegalArgumentException if a message is unknown.
+     */
+    public static Template compile(String source, Function<String, String> messages) {
+        StringBuilder resolved = new StringBuilder(source.length());
+        Matcher message = MESSAGE.matcher(source);
+        while (message.find()) {
+            String text = messages.apply(message.group(1));
+            if (text == null) {
+                throw new IllegalArgumentException("Unknown message: " + message.group(1));
+            }
+            message.appendReplacement(resolved, Matcher.quoteReplacement(escape(text)));
+        }
+        message.appendTail(resolved);
+
+        List<String> literals = new ArrayList<>();
+        List<String> variables = new ArrayList<>();
+        Matcher variable = VARIABLE.matcher(resolved);
+        int from = 0;
+        while (variable.find()) {
+            literals.add(resolved.substring(from, variable.start()));
+            variables.add(variable.group(1));
+            from = variable.end();
+        }
+        literals.add(resolved.substring(from));
+        return new Template(literals.toArray(new String[0]), variables.toArray(new String[0]));
+    }
+
+    /**
+     * Renders the template.
+     *
+     * @param values the values of the variables.
+     */
+    public String render(Map<String, ?> values) {
+        StringBuilder out = BUFFERS.get();
+        out.setLength(0);
+        render(values, out);
+        String result = out.toString();
+        if (out.capacity() > MAX_KEPT_BUFFER) {
+            BUFFERS.remove();
+        }
+        return result;
+    }
+
+    /**
+     * Renders the template at the end of a buffer.
+     */
+    public void render(Map<String, ?> values, StringBuilder out) {
+        for (int i = 0; i < variables.length; i++) {
+            out.append(literals[i]);
+            Object value = values.get(variables[i]);
+            if (value != null) {
+                escape(value.toString(), out);
+            }
+        }
+        out.append(literals[variables.length]);
+    }
+
+    public static String escape(String text) {
+        StringBuilder out = new StringBuilder(text.length() + 16);
+        escape(text, out);
+        return out.toString();
+    }
+
+    public static void escape(String text, StringBuilder out) {
+        // Runs of characters that need no escaping, usually the whole text, are appended at once
+        int from = 0;
+        for (int i = 0; i < text.length(); i++) {
+            String entity = switch (text.charAt(i)) {
+                case '&' -> "&amp;";
+                case '<' -> "&lt;";
+                case '>' -> "&gt;";
+                case '"' -> "&quot;";
+                case '\'' -> "&#39;";
+                default -> null;
+            };
+            if (entity != null) {
+                out.append(text, from, i).append(entity);
+                from = i + 1;
+            }
+        }
+        out.append(text, from, text.length());
+    }
+}
@@ -0,0 +1,14 @@
+document.getElementById("passwordForm").addEventListener("submit", function(event) {
+    const form = event.target;
+    const password = document.getElementById("password").value;
+    const confirmPassword = document.getElementById("confirmPassword").value;
+    const message = document.getElementById("message");
+    message.textContent = "";
+    if (password !== confirmPassword) {
+        event.preventDefault();
+        message.textContent = form.dataset.mismatch;
+    } else if (password.length < 8) {
+        event.preventDefault();
+        message.textContent = form.dataset.tooShort;
+    }
+});
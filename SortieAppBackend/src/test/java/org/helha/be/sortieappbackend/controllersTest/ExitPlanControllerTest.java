@@ -0,0 +1,155 @@
+package org.helha.be.sortieappbackend.controllersTest;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import org.helha.be.sortieappbackend.controllers.ExitPlanController;
+import org.helha.be.sortieappbackend.models.*;
+import org.helha.be.sortieappbackend.repositories.jpa.UserRepository;
+import org.helha.be.sortieappbackend.security.RoleCode;
+import org.helha.be.sortieappbackend.services.ExitWindowIndex;
+import org.helha.be.sortieappbackend.utils.JWTUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.*;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class ExitPlanControllerTest {
+
+    private static final ZoneId ZONE = ZoneId.of("Europe/Brussels");
+
+    @Mock
+    private ExitWindowIndex exitWindowIndex;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private JWTUtils jwtUtils;
+
+    @InjectMocks
+    private ExitPlanController exitPlanController;
+
+    private StudentExitWindows noah;
+    private StudentExitWindows marie;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        // Jeudi 16 janvier 2025, 10:00 à Bruxelles
+        ReflectionTestUtils.setField(exitPlanController, "clock",
+                Clock.fixed(ZonedDateTime.of(2025, 1, 16, 10, 0, 0, 0, ZONE).toInstant(), ZONE));
+
+        long start = LocalDate.of(2024, 9, 1).toEpochDay();
+        ExitRule morning = new ExitRule(1, 7, Autorisation_Type.Daily, start, Long.MAX_VALUE, ExitRule.ALL_DAYS, 9 * 60, 11 * 60);
+        ExitRule noon = new ExitRule(2, 8, Autorisation_Type.Weekly, start, Long.MAX_VALUE, 0b1, 12 * 60, 13 * 60);
+        noah = new StudentExitWindows(7, 1, "Noah", "Gallet", null, new ExitRule[]{morning});
+        marie = new StudentExitWindows(8, 1, "Marie", "Dupont", null, new ExitRule[]{noon});
+        when(jwtUtils.parseToken("token")).thenReturn(Jwts.claims().add("id", 3).add("rol", RoleCode.SUPERVISOR.getCode()).add("sch", 1).build());
+    }
+
+    @Test
+    public void testPlanIsComputedNowByDefault() {
+        when(exitWindowIndex.getOrLoad(7)).thenReturn(noah);
+
+        ResponseEntity<?> response = exitPlanController.getExitPlan("Bearer token", 7, null);
+
+        ExitPlan plan = (ExitPlan) response.getBody();
+        assertTrue(plan.getCanGo());
+        assertEquals(LocalDateTime.of(2025, 1, 16, 10, 0), plan.getAt());
+        assertEquals(plan.getAt(), plan.getNextExit());
+        assertEquals("09:00", plan.getWindow().getStart());
+    }
+
+    @Test
+    public void testPlanAtAnotherTimeGivesNextExit() {
+        when(exitWindowIndex.getOrLoad(7)).thenReturn(noah);
+
+        ResponseEntity<?> response = exitPlanController.getExitPlan("Bearer token", 7, OffsetDateTime.of(2025, 1, 16, 11, 30, 0, 0, ZoneOffset.UTC));
+
+        ExitPlan plan = (ExitPlan) response.getBody();
+        assertEquals(LocalDateTime.of(2025, 1, 16, 12, 30), plan.getAt());
+        assertFalse(plan.getCanGo());
+        assertNull(plan.getWindow());
+        assertEquals(LocalDateTime.of(2025, 1, 17, 9, 0), plan.getNextExit());
+        assertEquals(1, plan.getNextWindow().getAutorisationId());
+    }
+
+    @Test
+    public void testUnknownUserGives404() {
+        ResponseEntity<?> response = exitPlanController.getExitPlan("Bearer token", 42, null);
+
+        assertEquals(404, response.getStatusCode().value());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSchoolRosterIsSortedByName() {
+        when(userRepository.findIdsBySchoolAndRole(1, "STUDENT")).thenReturn(List.of(7, 8));
+        when(exitWindowIndex.getOrLoadAll(List.of(7, 8))).thenReturn(Map.of(7, noah, 8, marie));
+
+        List<ExitPlan> plans = (List<ExitPlan>) exitPlanController.getSchoolExitPlans("Bearer token", 1, null).getBody();
+
+        assertEquals(2, plans.size());
+        assertEquals("Dupont", plans.get(0).getLastname_user());
+        assertFalse(plans.get(0).getCanGo());
+        // Lundi 20 janvier
+        assertEquals(LocalDateTime.of(2025, 1, 20, 12, 0), plans.get(0).getNextExit());
+        assertTrue(plans.get(1).getCanGo());
+    }
+
+    @Test
+    public void testSchoolRosterIsOnlyShownToItsStaff() {
+        when(jwtUtils.parseToken("other-school")).thenReturn(Jwts.claims().add("id", 3).add("rol", RoleCode.SUPERVISOR.getCode()).add("sch", 2).build());
+        when(jwtUtils.parseToken("admin")).thenReturn(Jwts.claims().add("id", 4).add("rol", RoleCode.ADMIN.getCode()).build());
+        when(userRepository.findIdsBySchoolAndRole(1, "STUDENT")).thenReturn(List.of());
+
+        assertEquals(403, exitPlanController.getSchoolExitPlans("Bearer other-school", 1, null).getStatusCode().value());
+        assertEquals(403, exitPlanController.getSchoolExitPlans(null, 1, null).getStatusCode().value());
+        verify(userRepository, never()).findIdsBySchoolAndRole(anyInt(), anyString());
+
+        assertEquals(200, exitPlanController.getSchoolExitPlans("Bearer admin", 1, null).getStatusCode().value());
+    }
+
+    @Test
+    public void testStudentPlanIsOnlyShownToTheStaffOfTheSchool() {
+        when(exitWindowIndex.getOrLoad(7)).thenReturn(noah);
+        when(jwtUtils.parseToken("other-school")).thenReturn(Jwts.claims().add("id", 3).add("rol", RoleCode.SUPERVISOR.getCode()).add("sch", 2).build());
+        when(jwtUtils.parseToken("admin")).thenReturn(Jwts.claims().add("id", 4).add("rol", RoleCode.ADMIN.getCode()).build());
+
+        assertEquals(200, exitPlanController.getExitPlan("Bearer token", 7, null).getStatusCode().value());
+        assertEquals(403, exitPlanController.getExitPlan("Bearer other-school", 7, null).getStatusCode().value());
+        assertEquals(403, exitPlanController.getExitPlan(null, 7, null).getStatusCode().value());
+        assertEquals(200, exitPlanController.getExitPlan("Bearer admin", 7, null).getStatusCode().value());
+    }
+
+    @Test
+    public void testLegacyTokensAreCheckedAgainstTheSchoolOfTheirUser() {
+        Claims legacy = Jwts.claims().add("id", 3).add("roles", List.of(Map.of("authority", "ROLE_SUPERVISOR"))).build();
+        when(jwtUtils.parseToken("legacy")).thenReturn(legacy);
+        when(jwtUtils.isLegacy(legacy)).thenReturn(true);
+        User supervisor = new User();
+        supervisor.setSchool_user(new School(1, "School A", "Address A", null));
+        supervisor.setRole_user(new Role(3, "SUPERVISOR", null));
+        when(userRepository.findById(3)).thenReturn(Optional.of(supervisor));
+        when(exitWindowIndex.getOrLoad(7)).thenReturn(noah);
+        when(userRepository.findIdsBySchoolAndRole(anyInt(), eq("STUDENT"))).thenReturn(List.of());
+
+        assertEquals(200, exitPlanController.getExitPlan("Bearer legacy", 7, null).getStatusCode().value());
+        assertEquals(200, exitPlanController.getSchoolExitPlans("Bearer legacy", 1, null).getStatusCode().value());
+        assertEquals(403, exitPlanController.getSchoolExitPlans("Bearer legacy", 2, null).getStatusCode().value());
+
+        supervisor.setRole_user(new Role(1, "ADMIN", null));
+        assertEquals(200, exitPlanController.getSchoolExitPlans("Bearer legacy", 2, null).getStatusCode().value());
+    }
+}
@@ -0,0 +1,113 @@
+package org.helha.be.sortieappbackend.controllersTest;
+
+import org.helha.be.sortieappbackend.controllers.PictureController;
+import org.helha.be.sortieappbackend.services.PictureStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PictureControllerTest {
+
+    private static final byte[] JPEG = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 4, 5, 6, 7, 8, 9};
+
+    @TempDir
+    Path directory;
+
+    private PictureStore pictureStore;
+    private PictureController pictureController;
+    private String hash;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        pictureStore = new PictureStore(directory.toString());
+        pictureStore.init();
+        hash = pictureStore.put(JPEG);
+        pictureController = new PictureController();
+        ReflectionTestUtils.setField(pictureController, "pictureStore", pictureStore);
+    }
+
+    private static MockHttpServletRequest request(String hash) {
+        return new MockHttpServletRequest("GET", "/pictures/" + hash);
+    }
+
+    @Test
+    public void testPictureIsStreamedWithAStrongETagAndImmutableCaching() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        pictureController.getPicture(hash, null, request(hash), response);
+
+        assertEquals(200, response.getStatus());
+        assertArrayEquals(JPEG, response.getContentAsByteArray());
+        assertEquals("image/jpeg", response.getContentType());
+        assertEquals(JPEG.length, response.getContentLengthLong());
+        assertEquals("\"" + hash + "\"", response.getHeader("ETag"));
+        assertEquals("max-age=31536000, private, immutable", response.getHeader("Cache-Control"));
+    }
+
+    @Test
+    public void testCurrentCopyIsRevalidatedWithA304() throws Exception {
+        MockHttpServletRequest request = request(hash);
+        request.addHeader("If-None-Match", "\"" + hash + "\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        pictureController.getPicture(hash, null, request, response);
+
+        assertEquals(304, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    public void testPictureIsHandedToTheConnectorWhenItSupportsSendfile() throws Exception {
+        MockHttpServletRequest request = request(hash);
+        request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        pictureController.getPicture(hash, null, request, response);
+
+        assertEquals(pictureStore.path(hash).toString(), request.getAttribute("org.apache.tomcat.sendfile.filename"));
+        assertEquals(0L, request.getAttribute("org.apache.tomcat.sendfile.start"));
+        assertEquals((long) JPEG.length, request.getAttribute("org.apache.tomcat.sendfile.end"));
+        assertEquals(JPEG.length, response.getContentLengthLong());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    public void testThumbnailsAreServedByTheirOwnETag() throws Exception {
+        byte[] thumbnail = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 1};
+        pictureStore.putThumbnail(hash, 64, thumbnail);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        pictureController.getPicture(hash, 64, request(hash), response);
+
+        assertArrayEquals(thumbnail, response.getContentAsByteArray());
+        assertEquals("\"" + hash + "-64\"", response.getHeader("ETag"));
+        assertEquals("max-age=31536000, private, immutable", response.getHeader("Cache-Control"));
+
+        // Without the thumbnail, the picture itself, not cached for good
+        response = new MockHttpServletResponse();
+        pictureController.getPicture(hash, 160, request(hash), response);
+
+        assertArrayEquals(JPEG, response.getContentAsByteArray());
+        assertEquals("\"" + hash + "\"", response.getHeader("ETag"));
+        assertEquals("max-age=3600, private", response.getHeader("Cache-Control"));
+    }
+
+    @Test
+    public void testUnknownPictureIsNotFound() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        pictureController.getPicture("0".repeat(64), null, request("0".repeat(64)), response);
+        assertEquals(404, response.getStatus());
+
+        response = new MockHttpServletResponse();
+        pictureController.getPicture("..", null, request(".."), response);
+        assertEquals(404, response.getStatus());
+    }
+}
@@ -0,0 +1,128 @@
+package org.helha.be.sortieappbackend.controllersTest;
+
+import org.helha.be.sortieappbackend.controllers.QRCodeController;
+import org.helha.be.sortieappbackend.models.*;
+import org.helha.be.sortieappbackend.services.ExitWindowIndex;
+import org.helha.be.sortieappbackend.services.ScanEventLog;
+import org.helha.be.sortieappbackend.utils.JWTUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.*;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class QRCodeControllerTest {
+
+    private static final ZoneId ZONE = ZoneId.of("Europe/Brussels");
+
+    @Mock
+    private ExitWindowIndex exitWindowIndex;
+
+    @Mock
+    private ScanEventLog scanEventLog;
+
+    @Mock
+    private JWTUtils jwtUtils;
+
+    @InjectMocks
+    private QRCodeController qrCodeController;
+
+    private StudentExitWindows noah;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        // Jeudi 16 janvier 2025, 10:00 à Bruxelles
+        ReflectionTestUtils.setField(qrCodeController, "clock",
+                Clock.fixed(ZonedDateTime.of(2025, 1, 16, 10, 0, 0, 0, ZONE).toInstant(), ZONE));
+
+        long start = LocalDate.of(2024, 9, 1).toEpochDay();
+        ExitRule morning = new ExitRule(1, 7, Autorisation_Type.Daily, start, Long.MAX_VALUE, ExitRule.ALL_DAYS, 9 * 60, 11 * 60);
+        noah = new StudentExitWindows(7, 1, "Noah", "Gallet", "v1", new ExitRule[]{morning});
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMixedBatchIsAnsweredInOrder() {
+        when(jwtUtils.getUserIdFromToken("supervisor")).thenReturn(3);
+        when(exitWindowIndex.getOrLoadAll(any())).thenReturn(Map.of(7, noah));
+        List<ScanRequest> scans = List.of(
+                new ScanRequest(7, null),
+                // Scanné hors ligne à 8:30, avant la fenêtre de sortie
+                new ScanRequest(7, OffsetDateTime.of(2025, 1, 16, 7, 30, 0, 0, ZoneOffset.UTC)),
+                new ScanRequest(99, null),
+                // Daté dans le futur : évalué maintenant
+                new ScanRequest(7, OffsetDateTime.of(2025, 1, 16, 20, 0, 0, 0, ZoneOffset.UTC)));
+
+        ResponseEntity<?> response = qrCodeController.getVerdicts(scans, "Bearer supervisor");
+
+        assertEquals(200, response.getStatusCode().value());
+        List<ScanVerdict> verdicts = (List<ScanVerdict>) response.getBody();
+        assertEquals(4, verdicts.size());
+        LocalDateTime now = LocalDateTime.of(2025, 1, 16, 10, 0);
+
+        assertEquals(7, verdicts.get(0).getId());
+        assertTrue(verdicts.get(0).getCanGo());
+        assertEquals("Noah", verdicts.get(0).getName_user());
+        assertEquals("09:00", verdicts.get(0).getWindow().getStart());
+        assertEquals(now, verdicts.get(0).getEvaluatedAt());
+
+        assertFalse(verdicts.get(1).getCanGo());
+        assertNull(verdicts.get(1).getWindow());
+        assertEquals(LocalDateTime.of(2025, 1, 16, 8, 30), verdicts.get(1).getEvaluatedAt());
+
+        // Identifiant inconnu : un verdict sans nom, qui ne laisse pas sortir
+        assertEquals(99, verdicts.get(2).getId());
+        assertFalse(verdicts.get(2).getCanGo());
+        assertNull(verdicts.get(2).getName_user());
+        assertNull(verdicts.get(2).getPhotoVersion());
+
+        assertTrue(verdicts.get(3).getCanGo());
+        assertEquals(now, verdicts.get(3).getEvaluatedAt());
+
+        // Les étudiants sont chargés une seule fois, et seuls les scans connus sont enregistrés
+        verify(exitWindowIndex, times(1)).getOrLoadAll(new LinkedHashSet<>(List.of(7, 99)));
+        verify(scanEventLog, times(3)).record(argThat(event -> event.getId_user() == 7 && event.getId_supervisor() == 3));
+        verifyNoMoreInteractions(scanEventLog);
+    }
+
+    @Test
+    public void testBatchSizeIsLimited() {
+        List<ScanRequest> scans = new ArrayList<>();
+        for (int i = 0; i < 501; i++) {
+            scans.add(new ScanRequest(i, null));
+        }
+
+        assertEquals(400, qrCodeController.getVerdicts(scans, null).getStatusCode().value());
+        assertEquals(400, qrCodeController.getVerdicts(List.of(), null).getStatusCode().value());
+        verifyNoInteractions(exitWindowIndex, scanEventLog);
+
+        when(exitWindowIndex.getOrLoadAll(any())).thenReturn(Map.of());
+        ResponseEntity<?> response = qrCodeController.getVerdicts(scans.subList(0, 500), null);
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals(500, ((List<?>) response.getBody()).size());
+    }
+
+    @Test
+    public void testScansWithoutUserAreRejected() {
+        List<ScanRequest> withNull = new ArrayList<>();
+        withNull.add(new ScanRequest(7, null));
+        withNull.add(null);
+
+        assertEquals(400, qrCodeController.getVerdicts(withNull, null).getStatusCode().value());
+        assertEquals(400, qrCodeController.getVerdicts(List.of(new ScanRequest(7, null), new ScanRequest()), null).getStatusCode().value());
+        verifyNoInteractions(exitWindowIndex, scanEventLog);
+    }
+}
@@ -1,10 +1,17 @@
 package org.helha.be.sortieappbackend.controllersTest;
 
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
 import org.helha.be.sortieappbackend.controllers.UserController;
 import org.helha.be.sortieappbackend.models.ActivationToken;
+import org.helha.be.sortieappbackend.models.ImportJob;
+import org.helha.be.sortieappbackend.models.School;
 import org.helha.be.sortieappbackend.models.User;
 import org.helha.be.sortieappbackend.repositories.jpa.ActivationTokenRepository;
+import org.helha.be.sortieappbackend.security.RoleCode;
+import org.helha.be.sortieappbackend.services.TemplateService;
+import org.helha.be.sortieappbackend.services.UserImportJobs;
 import org.helha.be.sortieappbackend.services.UserServiceDB;
 import org.helha.be.sortieappbackend.utils.JWTUtils;
 import org.junit.jupiter.api.BeforeEach;
@@ -17,10 +24,15 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.time.Clock;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -41,6 +53,9 @@ class UserControllerTest {
     @Mock
     private ActivationTokenRepository activationTokenRepository;
 
+    @Mock
+    private UserImportJobs userImportJobs;
+
     @InjectMocks
     private UserController userController;
 
@@ -62,6 +77,10 @@ class UserControllerTest {
         activationToken.setToken("some-token-value");
         activationToken.setUser(userMock);
         activationToken.setExpiryDate(LocalDateTime.now().plusDays(1));
+
+        TemplateService templateService = new TemplateService("en", List.of("en", "fr"));
+        templateService.init();
+        ReflectionTestUtils.setField(userController, "templateService", templateService);
     }
 
     @Test
@@ -146,6 +165,20 @@ class UserControllerTest {
         verify(serviceDB, times(1)).updateUser(updatedUser, 1);
     }
 
+    @Test
+    void testAddAndUpdateUser_ShouldReturnBadRequest_WhenPictureIsInvalid() {
+        User user = new User();
+        when(serviceDB.addUser(user)).thenThrow(new IllegalArgumentException("Unsupported image format"));
+        when(serviceDB.updateUser(user, 1)).thenThrow(new IllegalArgumentException("Unsupported image format"));
+
+        ResponseStatusException added = assertThrows(ResponseStatusException.class, () -> userController.addUser(user));
+        ResponseStatusException updated = assertThrows(ResponseStatusException.class, () -> userController.updateUser(user, 1));
+
+        assertEquals(HttpStatus.BAD_REQUEST, added.getStatusCode());
+        assertEquals("Unsupported image format", added.getReason());
+        assertEquals(HttpStatus.BAD_REQUEST, updated.getStatusCode());
+    }
+
     @Test
     void testDeleteUser_ShouldCallService() {
         doNothing().when(serviceDB).deleteUser(1);
@@ -199,27 +232,35 @@ class UserControllerTest {
         assertEquals("Invalid token", response.getBody());
     }
 
+    private static Claims claims(int userId, RoleCode role, Integer schoolId) {
+        return Jwts.claims().add("id", userId).add("rol", role.getCode()).add("sch", schoolId).build();
+    }
+
     @Test
     void testImportUsersFromCSV_ShouldReturnOk_WhenSuccess() throws Exception {
         MultipartFile file = mock(MultipartFile.class);
-        doNothing().when(serviceDB).importUsersFromCSV(file);
+        when(jwtUtils.parseToken("token")).thenReturn(claims(1, RoleCode.RESPONSIBLE, 7));
+        ImportJob job = new ImportJob("job-1", Clock.systemUTC(), 1, 7);
+        when(userImportJobs.submit(file, null, 1, 7)).thenReturn(job);
 
-        ResponseEntity<String> response = userController.importUsersFromCSV(file);
+        ResponseEntity<?> response = userController.importUsersFromCSV(file, "Bearer token");
 
-        assertEquals(HttpStatus.OK, response.getStatusCode());
-        assertEquals("Users imported successfully.", response.getBody());
-        verify(serviceDB, times(1)).importUsersFromCSV(file);
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        assertSame(job, response.getBody());
+        assertEquals("/users/import/job-1", response.getHeaders().getLocation().toString());
+        verify(userImportJobs, times(1)).submit(file, null, 1, 7);
     }
 
     @Test
     void testImportUsersFromCSV_ShouldReturnBadRequest_WhenExceptionThrown() throws Exception {
         MultipartFile file = mock(MultipartFile.class);
-        doThrow(new RuntimeException("Error")).when(serviceDB).importUsersFromCSV(file);
+        when(jwtUtils.parseToken("token")).thenReturn(claims(1, RoleCode.ADMIN, null));
+        when(userImportJobs.submit(file, null, 1, null)).thenThrow(new IOException("Error"));
 
-        ResponseEntity<String> response = userController.importUsersFromCSV(file);
+        ResponseEntity<?> response = userController.importUsersFromCSV(file, "Bearer token");
 
         assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
-        assertTrue(response.getBody().contains("Failed to import users: Error"));
+        assertTrue(response.getBody().toString().contains("Failed to import users: Error"));
     }
 
     @Test
@@ -228,12 +269,58 @@ class UserControllerTest {
         String token = "someValidToken";
         when(jwtUtils.getUserIdFromToken(token)).thenReturn(1);
         when(serviceDB.getUserById(1)).thenReturn(Optional.of(userMock));
-        doNothing().when(serviceDB).importUsersFromCSVForAdmin(file, 1);
+        School school = new School();
+        school.setId_school(7);
+        userMock.setSchool_user(school);
+        ImportJob job = new ImportJob("job-1", Clock.systemUTC(), 1, 7);
+        when(userImportJobs.submit(file, school, 1, 7)).thenReturn(job);
 
         ResponseEntity<?> response = userController.importUsersForAdmin(file, "Bearer " + token);
 
-        assertEquals(HttpStatus.OK, response.getStatusCode());
-        assertEquals("Users imported successfully and assigned to admin's school.", response.getBody());
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        assertSame(job, response.getBody());
+    }
+
+    @Test
+    void testImportUsersFromCSV_ShouldReturnServiceUnavailable_WhenQueueIsFull() throws Exception {
+        MultipartFile file = mock(MultipartFile.class);
+        when(jwtUtils.parseToken("token")).thenReturn(claims(1, RoleCode.ADMIN, null));
+        when(userImportJobs.submit(file, null, 1, null)).thenThrow(new RejectedExecutionException());
+
+        ResponseEntity<?> response = userController.importUsersFromCSV(file, "Bearer token");
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+    }
+
+    @Test
+    void testImportJob_ShouldBeReturnedAndCancelled() {
+        ImportJob job = new ImportJob("job-1", Clock.systemUTC(), 1, 7);
+        when(jwtUtils.parseToken("token")).thenReturn(claims(1, RoleCode.RESPONSIBLE, 7));
+        when(userImportJobs.get("job-1")).thenReturn(Optional.of(job));
+        when(userImportJobs.cancel("job-1")).thenReturn(Optional.of(job));
+        when(userImportJobs.get("unknown")).thenReturn(Optional.empty());
+
+        assertSame(job, userController.getImportJob("job-1", "Bearer token").getBody());
+        assertEquals(HttpStatus.OK, userController.cancelImportJob("job-1", "Bearer token").getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, userController.getImportJob("unknown", "Bearer token").getStatusCode());
+    }
+
+    @Test
+    void testImportJob_ShouldBeHiddenFromOtherSchools() {
+        ImportJob job = new ImportJob("job-1", Clock.systemUTC(), 1, 7);
+        when(userImportJobs.get("job-1")).thenReturn(Optional.of(job));
+        when(jwtUtils.parseToken("other-school")).thenReturn(claims(2, RoleCode.LOCAL_ADMIN, 8));
+        when(jwtUtils.parseToken("same-school")).thenReturn(claims(3, RoleCode.LOCAL_ADMIN, 7));
+        when(jwtUtils.parseToken("admin")).thenReturn(claims(4, RoleCode.ADMIN, null));
+
+        assertEquals(HttpStatus.NOT_FOUND, userController.getImportJob("job-1", "Bearer other-school").getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, userController.cancelImportJob("job-1", "Bearer other-school").getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, userController.getImportJob("job-1", null).getStatusCode());
+        verify(userImportJobs, never()).cancel(anyString());
+        assertFalse(job.isCancelled());
+
+        assertSame(job, userController.getImportJob("job-1", "Bearer same-school").getBody());
+        assertSame(job, userController.getImportJob("job-1", "Bearer admin").getBody());
     }
 
     @Test
@@ -352,7 +439,7 @@ class UserControllerTest {
     void testProcessPasswordForm_ShouldReturnOk_WhenPasswordsMatchAndTokenValid() {
         when(activationTokenRepository.findByToken("some-token-value")).thenReturn(Optional.of(activationToken));
 
-        ResponseEntity<String> response = userController.processPasswordForm("some-token-value", "newPassword", "newPassword");
+        ResponseEntity<String> response = userController.processPasswordForm("some-token-value", "newPassword", "newPassword", null);
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertTrue(response.getBody().contains("Password set successfully!"));
@@ -362,7 +449,7 @@ class UserControllerTest {
 
     @Test
     void testProcessPasswordForm_ShouldReturnBadRequest_WhenPasswordsDoNotMatch() {
-        ResponseEntity<String> response = userController.processPasswordForm("some-token-value", "password1", "password2");
+        ResponseEntity<String> response = userController.processPasswordForm("some-token-value", "password1", "password2", null);
 
         assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
         assertTrue(response.getBody().contains("Passwords do not match"));
@@ -373,7 +460,7 @@ class UserControllerTest {
     void testProcessPasswordForm_ShouldReturnBadRequest_WhenTokenInvalid() {
         when(activationTokenRepository.findByToken("invalid-token")).thenReturn(Optional.empty());
 
-        ResponseEntity<String> response = userController.processPasswordForm("invalid-token", "password", "password");
+        ResponseEntity<String> response = userController.processPasswordForm("invalid-token", "password", "password", null);
 
         assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
         assertTrue(response.getBody().contains("Invalid or already used token"));
@@ -384,7 +471,7 @@ class UserControllerTest {
         activationToken.setExpiryDate(LocalDateTime.now().minusDays(1)); // token expiré
         when(activationTokenRepository.findByToken("expired-token")).thenReturn(Optional.of(activationToken));
 
-        ResponseEntity<String> response = userController.processPasswordForm("expired-token", "password", "password");
+        ResponseEntity<String> response = userController.processPasswordForm("expired-token", "password", "password", null);
 
         assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
         assertTrue(response.getBody().contains("Token has expired"));
@@ -410,4 +497,19 @@ class UserControllerTest {
         assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
         assertTrue(response.getBody().contains("ERROR : Invalid or expired token"));
     }
+
+    @Test
+    void testGetActivationForm_ShouldBeInTheLanguageOfTheSchool() {
+        School school = new School();
+        school.setLocale_school("fr");
+        userMock.setSchool_user(school);
+        when(activationTokenRepository.findByToken("<token>")).thenReturn(Optional.of(activationToken));
+
+        ResponseEntity<String> response = userController.getActivationForm("<token>");
+
+        assertTrue(response.getBody().contains("Choisissez votre mot de passe"));
+        assertTrue(response.getBody().contains("value=\"&lt;token&gt;\""));
+        assertTrue(response.getBody().contains("<link rel=\"stylesheet\" href=\"/activation/activation.css\">"));
+        assertFalse(response.getBody().contains("<style>"));
+    }
 }
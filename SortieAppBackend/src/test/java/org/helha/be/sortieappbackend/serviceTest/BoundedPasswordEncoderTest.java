@@ -0,0 +1,113 @@
+package org.helha.be.sortieappbackend.serviceTest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.helha.be.sortieappbackend.models.User;
+import org.helha.be.sortieappbackend.repositories.jpa.UserRepository;
+import org.helha.be.sortieappbackend.security.BoundedPasswordEncoder;
+import org.helha.be.sortieappbackend.security.PasswordHashingBusyException;
+import org.helha.be.sortieappbackend.services.UserDetailsServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class BoundedPasswordEncoderTest {
+
+    private BoundedPasswordEncoder encoder;
+
+    @AfterEach
+    public void tearDown() {
+        encoder.close();
+    }
+
+    @Test
+    public void testHashesAreDelegatedAndTimed() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        encoder = new BoundedPasswordEncoder(new BCryptPasswordEncoder(4), 1, 4, 5_000, 2);
+        encoder.bindTo(registry);
+
+        String hash = encoder.encode("secret");
+
+        assertTrue(encoder.matches("secret", hash));
+        assertFalse(encoder.matches("wrong", hash));
+        assertEquals(3, registry.get("auth.password.wait").timer().count());
+        assertEquals(2, registry.get("auth.password.hash").tag("operation", "matches").timer().count());
+        assertEquals(1, registry.get("auth.password.hash").tag("operation", "encode").timer().count());
+    }
+
+    @Test
+    public void testFullPoolIsRejectedWithRetryAfter() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        PasswordEncoder blocking = mock(PasswordEncoder.class);
+        when(blocking.matches(any(), any())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return true;
+        });
+        encoder = new BoundedPasswordEncoder(blocking, 1, 1, 5_000, 7);
+
+        Thread first = new Thread(() -> encoder.matches("secret", "hash"));
+        first.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Thread queued = new Thread(() -> encoder.matches("secret", "hash"));
+        queued.start();
+        while (encoder.getQueueDepth() == 0) {
+            Thread.sleep(5);
+        }
+
+        PasswordHashingBusyException e = assertThrows(PasswordHashingBusyException.class, () -> encoder.matches("secret", "hash"));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatusCode());
+        assertEquals("7", e.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertEquals(1, encoder.getRejected());
+
+        release.countDown();
+        first.join();
+        queued.join();
+    }
+
+    @Test
+    public void testHashesWaitingTooLongAreRejected() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        PasswordEncoder blocking = mock(PasswordEncoder.class);
+        when(blocking.matches(any(), any())).thenAnswer(invocation -> release.await(5, TimeUnit.SECONDS));
+        encoder = new BoundedPasswordEncoder(blocking, 1, 4, 50, 2);
+
+        assertThrows(PasswordHashingBusyException.class, () -> encoder.matches("secret", "hash"));
+        release.countDown();
+    }
+
+    @Test
+    public void testWeakerHashesAreRehashedAtLogin() {
+        encoder = new BoundedPasswordEncoder(new BCryptPasswordEncoder(5), 1, 4, 5_000, 2);
+        String weak = new BCryptPasswordEncoder(4).encode("secret");
+        assertTrue(encoder.upgradeEncoding(weak));
+        assertFalse(encoder.upgradeEncoding(encoder.encode("secret")));
+
+        User user = new User();
+        user.setEmail("noah.gallet@example.com");
+        user.setPassword_user(weak);
+        UserRepository repository = mock(UserRepository.class);
+        when(repository.findUserByEmail("noah.gallet@example.com")).thenReturn(Optional.of(user));
+        UserDetailsServiceImpl userDetailsService = new UserDetailsServiceImpl();
+        ReflectionTestUtils.setField(userDetailsService, "repository", repository);
+
+        org.springframework.security.core.userdetails.User springUser = new org.springframework.security.core.userdetails.User(
+                user.getEmail(), weak, List.of());
+        String rehashed = encoder.encode("secret");
+        assertEquals(rehashed, userDetailsService.updatePassword(springUser, rehashed).getPassword());
+        assertEquals(rehashed, user.getPassword_user());
+        verify(repository).save(user);
+    }
+}
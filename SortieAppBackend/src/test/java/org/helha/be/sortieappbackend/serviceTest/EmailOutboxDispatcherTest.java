@@ -0,0 +1,176 @@
+package org.helha.be.sortieappbackend.serviceTest;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import jakarta.mail.internet.MimeMessage;
+import org.helha.be.sortieappbackend.models.EmailOutbox;
+import org.helha.be.sortieappbackend.services.EmailOutboxDispatcher;
+import org.helha.be.sortieappbackend.services.EmailOutboxService;
+import org.helha.be.sortieappbackend.services.EmailService;
+import org.helha.be.sortieappbackend.services.TemplateService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class EmailOutboxDispatcherTest {
+
+    public static final String CREATE_TABLE_SQL = "CREATE TABLE email_outbox (id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+            + "type VARCHAR(32) NOT NULL, recipient VARCHAR(255) NOT NULL, payload VARCHAR(255) NOT NULL, locale VARCHAR(16), "
+            + "status VARCHAR(16) NOT NULL, attempts INT NOT NULL, next_attempt_at TIMESTAMP NOT NULL, "
+            + "created_at TIMESTAMP NOT NULL, sent_at TIMESTAMP, last_error VARCHAR(1000))";
+
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    private JdbcTemplate jdbcTemplate;
+    private EmailOutboxService outbox;
+    private EmailService emailService;
+    private EmailOutboxDispatcher dispatcher;
+
+    @BeforeEach
+    public void setUp() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:email_outbox;DB_CLOSE_DELAY=-1", "sa", ""));
+        jdbcTemplate.execute(CREATE_TABLE_SQL);
+
+        outbox = new EmailOutboxService(jdbcTemplate);
+        ReflectionTestUtils.setField(outbox, "dispatcher", mock(EmailOutboxDispatcher.class));
+
+        emailService = new EmailService();
+        TemplateService templates = new TemplateService("en", List.of("en", "fr"));
+        templates.init();
+        ReflectionTestUtils.setField(emailService, "templates", templates);
+        useSmtpPort(ServerSetupTest.SMTP.getPort());
+
+        dispatcher = new EmailOutboxDispatcher(jdbcTemplate, 2, 1000, 3, 1000, 1500);
+        ReflectionTestUtils.setField(dispatcher, "emailService", emailService);
+        at("2025-01-16T12:00:00Z");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.execute("DROP TABLE email_outbox");
+    }
+
+    private void useSmtpPort(int port) {
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("localhost");
+        mailSender.setPort(port);
+        ReflectionTestUtils.setField(emailService, "mailSender", mailSender);
+    }
+
+    private void at(String instant) {
+        Clock clock = Clock.fixed(Instant.parse(instant), ZoneId.of("UTC"));
+        ReflectionTestUtils.setField(outbox, "clock", clock);
+        ReflectionTestUtils.setField(dispatcher, "clock", clock);
+    }
+
+    private Map<String, Object> row(String recipient) {
+        return jdbcTemplate.queryForMap("SELECT * FROM email_outbox WHERE recipient = ?", recipient);
+    }
+
+    @Test
+    public void testQueuedEmailsAreSentInBatches() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            outbox.enqueueActivation("student" + i + "@test.be", "token-" + i, i == 4 ? "fr" : null);
+        }
+
+        assertEquals(5, dispatcher.drain());
+        assertEquals(0, dispatcher.drain());
+
+        MimeMessage[] received = greenMail.getReceivedMessages();
+        assertEquals(5, received.length);
+        assertEquals("student0@test.be", received[0].getAllRecipients()[0].toString());
+        assertTrue(GreenMailUtil.getBody(greenMail.getReceivedMessagesForDomain("student3@test.be")[0]).contains("token-3"));
+        assertEquals("Activate Your School Account", received[3].getSubject());
+        assertEquals("Activez votre compte scolaire", received[4].getSubject());
+        assertEquals(5, dispatcher.getSent());
+        assertEquals(5, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM email_outbox WHERE status = 'SENT' AND attempts = 1 "
+                + "AND sent_at IS NOT NULL", Integer.class));
+    }
+
+    @Test
+    public void testFailedEmailsAreRetriedWithBackoffThenDead() {
+        useSmtpPort(1);
+        outbox.enqueueActivation("noah@test.be", "token", null);
+
+        assertEquals(1, dispatcher.drain());
+        assertEquals("PENDING", row("noah@test.be").get("status"));
+        assertEquals(1, row("noah@test.be").get("attempts"));
+        assertEquals(java.sql.Timestamp.valueOf("2025-01-16 12:00:01"), row("noah@test.be").get("next_attempt_at"));
+        assertNotNull(row("noah@test.be").get("last_error"));
+        assertEquals(0, dispatcher.drain());
+
+        at("2025-01-16T12:00:01Z");
+        assertEquals(1, dispatcher.drain());
+        assertEquals(java.sql.Timestamp.valueOf("2025-01-16 12:00:02.5"), row("noah@test.be").get("next_attempt_at"));
+
+        at("2025-01-16T12:00:02.500Z");
+        assertEquals(1, dispatcher.drain());
+        assertEquals("DEAD", row("noah@test.be").get("status"));
+        assertEquals(3, row("noah@test.be").get("attempts"));
+        assertEquals(2, dispatcher.getRetried());
+        assertEquals(1, dispatcher.getDead());
+
+        at("2025-01-16T13:00:00Z");
+        assertEquals(0, dispatcher.drain());
+        assertEquals(0, greenMail.getReceivedMessages().length);
+    }
+
+    @Test
+    public void testFailuresAreMatchedToTheirRow() {
+        EmailService failingFirst = mock(EmailService.class);
+        when(failingFirst.sendActivationEmails(any())).thenReturn(Map.of(0, new MailSendException("Mailbox unavailable")));
+        ReflectionTestUtils.setField(dispatcher, "emailService", failingFirst);
+        // The same email queued twice
+        outbox.enqueueActivation("noah@test.be", "token", null);
+        outbox.enqueueActivation("noah@test.be", "token", null);
+
+        assertEquals(2, dispatcher.drain());
+
+        assertEquals(List.of("PENDING", "SENT"), jdbcTemplate.queryForList("SELECT status FROM email_outbox ORDER BY id", String.class));
+        assertEquals(1, dispatcher.getSent());
+        assertEquals(1, dispatcher.getRetried());
+    }
+
+    @Test
+    public void testEmailsOfUnknownTypeAreDeadAtOnce() {
+        EmailOutbox email = EmailOutboxService.activation("noah@test.be", "token", null);
+        email.setType("newsletter");
+        outbox.enqueue(List.of(email));
+
+        assertEquals(1, dispatcher.drain());
+
+        assertEquals("DEAD", row("noah@test.be").get("status"));
+        assertEquals("IllegalArgumentException: Unknown email type: newsletter", row("noah@test.be").get("last_error"));
+        assertEquals(0, greenMail.getReceivedMessages().length);
+    }
+
+    @Test
+    public void testFailedBackgroundDrainsAreCounted() throws Exception {
+        jdbcTemplate.execute("DROP TABLE email_outbox");
+        try {
+            dispatcher.wakeUp();
+            dispatcher.stop();
+
+            assertEquals(1, dispatcher.getDrainFailures());
+        } finally {
+            jdbcTemplate.execute(CREATE_TABLE_SQL);
+        }
+    }
+}
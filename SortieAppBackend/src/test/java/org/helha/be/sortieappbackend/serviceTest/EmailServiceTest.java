@@ -0,0 +1,107 @@
+package org.helha.be.sortieappbackend.serviceTest;
+
+import jakarta.mail.SendFailedException;
+import jakarta.mail.internet.MimeMessage;
+import org.helha.be.sortieappbackend.services.EmailService;
+import org.helha.be.sortieappbackend.services.TemplateService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EmailServiceTest {
+
+    /**
+     * Records the batches instead of sending them, each batch standing for one SMTP connection.
+     */
+    private static class RecordingMailSender extends JavaMailSenderImpl {
+        final List<Integer> batches = new ArrayList<>();
+        Function<MimeMessage[], MailException> failure = messages -> null;
+
+        @Override
+        protected void doSend(MimeMessage[] mimeMessages, Object[] originalMessages) {
+            batches.add(mimeMessages.length);
+            MailException exception = failure.apply(mimeMessages);
+            if (exception != null) {
+                throw exception;
+            }
+        }
+    }
+
+    private RecordingMailSender mailSender;
+    private EmailService emailService;
+
+    @BeforeEach
+    public void setUp() {
+        mailSender = new RecordingMailSender();
+        emailService = new EmailService();
+        TemplateService templates = new TemplateService("en", List.of("en"));
+        templates.init();
+        ReflectionTestUtils.setField(emailService, "templates", templates);
+        ReflectionTestUtils.setField(emailService, "mailSender", mailSender);
+        ReflectionTestUtils.setField(emailService, "batchSize", 2);
+    }
+
+    private static List<EmailService.Activation> activations(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> new EmailService.Activation("student" + i + "@test.be", "token-" + i, null))
+                .toList();
+    }
+
+    @Test
+    public void testEmailsAreSentByBatches() {
+        Map<Integer, Exception> failures = emailService.sendActivationEmails(activations(5));
+
+        assertTrue(failures.isEmpty());
+        assertEquals(List.of(2, 2, 1), mailSender.batches);
+    }
+
+    @Test
+    public void testFailuresAreReportedPerEmail() {
+        List<EmailService.Activation> emails = activations(4);
+        mailSender.failure = messages -> mailSender.batches.size() == 1
+                ? new MailSendException(Map.of(messages[1], new SendFailedException("Mailbox unavailable")))
+                : new MailAuthenticationException("Bad credentials");
+
+        Map<Integer, Exception> failures = emailService.sendActivationEmails(emails);
+
+        assertEquals(List.of(1, 2, 3), List.copyOf(failures.keySet()));
+        assertInstanceOf(SendFailedException.class, failures.get(1));
+        assertInstanceOf(MailAuthenticationException.class, failures.get(3));
+    }
+
+    @Test
+    public void testEqualEmailsAreReportedApart() {
+        EmailService.Activation email = new EmailService.Activation("noah@test.be", "token", null);
+        mailSender.failure = messages -> new MailSendException(Map.of(messages[0], new SendFailedException("Mailbox unavailable")));
+
+        Map<Integer, Exception> failures = emailService.sendActivationEmails(List.of(email, email));
+
+        assertEquals(List.of(0), List.copyOf(failures.keySet()));
+    }
+
+    @Test
+    public void testSendRateIsLimited() {
+        ReflectionTestUtils.setField(emailService, "batchSize", 1);
+        ReflectionTestUtils.setField(emailService, "maxPerMinute", 600L);
+        emailService.init();
+
+        long start = System.nanoTime();
+        emailService.sendActivationEmails(activations(3));
+
+        // One email at once, then one every 100 ms
+        assertTrue(System.nanoTime() - start >= 190_000_000L);
+        assertEquals(List.of(1, 1, 1), mailSender.batches);
+    }
+}
@@ -0,0 +1,172 @@
+package org.helha.be.sortieappbackend.serviceTest;
+
+import org.helha.be.sortieappbackend.models.Autorisation;
+import org.helha.be.sortieappbackend.models.Autorisation_Type;
+import org.helha.be.sortieappbackend.models.ExitRule;
+import org.helha.be.sortieappbackend.models.User;
+import org.helha.be.sortieappbackend.services.ExitRuleService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExitRuleServiceTest {
+
+    private ExitRuleService exitRuleService;
+    private User user;
+
+    @BeforeEach
+    public void setUp() {
+        exitRuleService = new ExitRuleService(Clock.systemDefaultZone());
+        user = new User();
+        user.setId(1);
+    }
+
+    private Date date(int year, int month, int day) {
+        return Date.from(LocalDate.of(year, month, day).atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    @Test
+    public void testUniqueOnlyOnStartDate() {
+        Autorisation a = new Autorisation(1, Autorisation_Type.Unique, "dentist", date(2025, 1, 16), date(2025, 1, 20), "10:00", "11:00", null, user);
+
+        assertTrue(exitRuleService.getRule(a).allows(LocalDateTime.of(2025, 1, 16, 10, 30)));
+        assertFalse(exitRuleService.getRule(a).allows(LocalDateTime.of(2025, 1, 17, 10, 30)));
+        assertFalse(exitRuleService.getRule(a).allows(LocalDateTime.of(2025, 1, 16, 11, 0, 1)));
+        assertTrue(exitRuleService.getRule(a).allows(LocalDateTime.of(2025, 1, 16, 11, 0)));
+    }
+
+    @Test
+    public void testWeeklyUsesDaysCaseInsensitively() {
+        // 2025-01-15 is a Wednesday, 2025-01-16 a Thursday
+        Autorisation a = new Autorisation(2, Autorisation_Type.Weekly, "midi", date(2024, 9, 1), date(2025, 6, 30), "12:00", "13:00", "Monday,Wednesday", user);
+        ExitRule rule = exitRuleService.getRule(a);
+
+        assertEquals(0b101, rule.getDayMask());
+        assertTrue(rule.allows(LocalDateTime.of(2025, 1, 15, 12, 15)));
+        assertFalse(rule.allows(LocalDateTime.of(2025, 1, 16, 12, 15)));
+        assertFalse(rule.allows(LocalDateTime.of(2025, 7, 2, 12, 15)));
+    }
+
+    @Test
+    public void testDailyWithoutEndDateOrEndHour() {
+        Autorisation a = new Autorisation(3, Autorisation_Type.Daily, "majeur", date(2024, 9, 1), null, "15:30", null, null, user);
+        ExitRule rule = exitRuleService.getRule(a);
+
+        assertEquals(ExitRule.ALL_DAYS, rule.getDayMask());
+        assertEquals(ExitRule.END_OF_DAY, rule.getEndMinute());
+        assertTrue(rule.allows(LocalDateTime.of(2030, 3, 3, 23, 59, 59)));
+        assertFalse(rule.allows(LocalDateTime.of(2030, 3, 3, 15, 29)));
+        assertFalse(rule.allows(LocalDateTime.of(2024, 8, 31, 16, 0)));
+    }
+
+    @Test
+    public void testRuleIsCachedUntilInvalidated() {
+        Autorisation a = new Autorisation(4, Autorisation_Type.Daily, "midi", date(2024, 9, 1), null, "12:00", "13:00", null, user);
+        ExitRule first = exitRuleService.getRule(a, exitRuleService.generation());
+
+        a.setHeure_debut("14:00");
+        assertSame(first, exitRuleService.getRule(a));
+
+        exitRuleService.invalidate(4);
+        assertEquals(14 * 60, exitRuleService.getRule(a, exitRuleService.generation()).getStartMinute());
+    }
+
+    @Test
+    public void testRuleReadBeforeAWriteIsNotCached() {
+        // A scan loads the Autorisation, which is then written before the scan compiles it
+        long generation = exitRuleService.generation();
+        Autorisation read = new Autorisation(6, Autorisation_Type.Daily, "midi", date(2024, 9, 1), null, "12:00", "13:00", null, user);
+        Autorisation written = new Autorisation(6, Autorisation_Type.Daily, "midi", date(2024, 9, 1), null, "14:00", "15:00", null, user);
+        exitRuleService.invalidate(6);
+
+        assertEquals(12 * 60, exitRuleService.getRule(read, generation).getStartMinute());
+        assertEquals(0, exitRuleService.size());
+
+        assertEquals(14 * 60, exitRuleService.getRule(written, exitRuleService.generation()).getStartMinute());
+        assertEquals(14 * 60, exitRuleService.getRule(read).getStartMinute());
+    }
+
+    @Test
+    public void testRuleCompiledDuringAnInvalidationIsNotCached() {
+        // The Autorisation is written while its former version is being compiled
+        Autorisation a = new Autorisation(6, Autorisation_Type.Daily, "midi", date(2024, 9, 1), null, "12:00", "13:00", null, user) {
+            @Override
+            public String getHeure_debut() {
+                exitRuleService.invalidate(6);
+                return super.getHeure_debut();
+            }
+        };
+
+        exitRuleService.getRule(a, exitRuleService.generation());
+
+        assertEquals(0, exitRuleService.size());
+    }
+
+    @Test
+    public void testRuleOfAnAutorisationReadAtAnUnknownTimeIsNotCached() {
+        Autorisation a = new Autorisation(9, Autorisation_Type.Daily, "midi", date(2024, 9, 1), null, "12:00", "13:00", null, user);
+
+        exitRuleService.getRule(a);
+
+        assertEquals(0, exitRuleService.size());
+    }
+
+    @Test
+    public void testCacheIsBounded() {
+        ReflectionTestUtils.setField(exitRuleService, "maxSize", 1);
+        Autorisation a = new Autorisation(7, Autorisation_Type.Daily, "midi", date(2024, 9, 1), null, "12:00", "13:00", null, user);
+        Autorisation b = new Autorisation(8, Autorisation_Type.Daily, "midi", date(2024, 9, 1), null, "12:00", "13:00", null, user);
+
+        ExitRule first = exitRuleService.getRule(a, 0);
+        exitRuleService.getRule(b, 0);
+
+        assertEquals(1, exitRuleService.size());
+        assertSame(first, exitRuleService.getRule(a, 0));
+        assertNotSame(exitRuleService.getRule(b, 0), exitRuleService.getRule(b, 0));
+    }
+
+    @Test
+    public void testRulesAreCompiledInTheZoneOfTheClock() {
+        ZoneId zone = ZoneId.of("Pacific/Auckland");
+
+        assertEquals(zone, new ExitRuleService(Clock.system(zone)).getZone());
+    }
+
+    @Test
+    public void testUnsavedAutorisationIsNotCached() {
+        Autorisation a = new Autorisation(0, Autorisation_Type.Daily, "new", date(2024, 9, 1), null, "12:00", "13:00", null, user);
+
+        exitRuleService.getRule(a, exitRuleService.generation());
+
+        assertEquals(0, exitRuleService.size());
+    }
+
+    @Test
+    public void testNextExitOfWeeklyRule() {
+        // 2025-01-15 is a Wednesday, 2025-01-16 a Thursday, 2025-01-20 a Monday
+        Autorisation a = new Autorisation(5, Autorisation_Type.Weekly, "midi", date(2024, 9, 1), date(2025, 6, 30), "12:00", "13:00", "Monday,Wednesday", user);
+        ExitRule rule = exitRuleService.getRule(a);
+
+        assertEquals(LocalDateTime.of(2025, 1, 15, 12, 0), rule.nextExit(LocalDateTime.of(2025, 1, 15, 8, 0)));
+        assertEquals(LocalDateTime.of(2025, 1, 15, 12, 30), rule.nextExit(LocalDateTime.of(2025, 1, 15, 12, 30)));
+        assertEquals(LocalDateTime.of(2025, 1, 20, 12, 0), rule.nextExit(LocalDateTime.of(2025, 1, 15, 13, 1)));
+        assertNull(rule.nextExit(LocalDateTime.of(2025, 6, 30, 14, 0)));
+    }
+
+    @Test
+    public void testNextExitBeforeStartDate() {
+        Autorisation a = new Autorisation(6, Autorisation_Type.Unique, "dentist", date(2025, 1, 16), null, "10:00", "11:00", null, user);
+        ExitRule rule = exitRuleService.getRule(a);
+
+        assertEquals(LocalDateTime.of(2025, 1, 16, 10, 0), rule.nextExit(LocalDateTime.of(2024, 12, 1, 9, 0)));
+        assertNull(rule.nextExit(LocalDateTime.of(2025, 1, 16, 11, 30)));
+    }
+}
@@ -0,0 +1,214 @@
+package org.helha.be.sortieappbackend.serviceTest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.helha.be.sortieappbackend.models.*;
+import org.helha.be.sortieappbackend.repositories.jpa.AutorisationRepository;
+import org.helha.be.sortieappbackend.repositories.jpa.SchoolRepository;
+import org.helha.be.sortieappbackend.repositories.jpa.UserRepository;
+import org.helha.be.sortieappbackend.services.ExitRuleService;
+import org.helha.be.sortieappbackend.services.ExitWindowIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class ExitWindowIndexTest {
+
+    @Mock
+    private AutorisationRepository autorisationRepository;
+
+    @Mock
+    private SchoolRepository schoolRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Spy
+    private ExitRuleService exitRuleService = new ExitRuleService(Clock.systemDefaultZone());
+
+    @InjectMocks
+    private ExitWindowIndex exitWindowIndex;
+
+    private School school;
+    private User user1;
+    private User user2;
+    private Autorisation a1;
+    private Autorisation a2;
+
+    private final LocalDateTime noon = LocalDateTime.of(2025, 1, 16, 12, 15);
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+
+        school = new School(1, "HelHa Montignies", "Rue Trieu Kaisin 136", new ArrayList<>());
+        user1 = new User(1, "Ozudogru", "Huseyin", "hozu@helha.be", "password123", "Rue Lison 214, 6060 Gilly", school, null, true, null);
+        user2 = new User(2, "Gallet", "Noah", "ngal@helha.be", "password456", "Rue Trieu Kaisin 136, 6061 Montignies", school, null, true, "aGVsbG8=");
+
+        Date start = Date.from(LocalDate.of(2024, 9, 1).atStartOfDay(ZoneId.systemDefault()).toInstant());
+        a1 = new Autorisation(1, Autorisation_Type.Daily, "midi", start, null, "12:00", "13:00", null, user1);
+        a2 = new Autorisation(2, Autorisation_Type.Daily, "soir", start, null, "16:00", "17:00", null, user2);
+
+        when(schoolRepository.findAll()).thenReturn(List.of(school));
+        when(autorisationRepository.findBySchoolId(1)).thenReturn(List.of(a1, a2));
+    }
+
+    @Test
+    public void testWarmUpIndexesEveryStudentOfTheSchool() {
+        exitWindowIndex.warmUp();
+
+        assertEquals(2, exitWindowIndex.size());
+        assertEquals(2, exitWindowIndex.getSchool(1).size());
+        assertTrue(exitWindowIndex.getOrLoad(1).canLeave(noon));
+        assertFalse(exitWindowIndex.getOrLoad(2).canLeave(noon));
+        verify(autorisationRepository, never()).findByUser_id(anyInt());
+    }
+
+    @Test
+    public void testMissFallsBackToDatabaseOnce() {
+        User user3 = new User(3, "Dupont", "Marie", "mdup@helha.be", "password789", "Rue de la Station 1", school, null, true, null);
+        when(userRepository.findById(3)).thenReturn(Optional.of(user3));
+        when(autorisationRepository.findByUser_id(3)).thenReturn(List.of());
+
+        assertFalse(exitWindowIndex.getOrLoad(3).canLeave(noon));
+        assertFalse(exitWindowIndex.getOrLoad(3).canLeave(noon));
+
+        verify(autorisationRepository, times(1)).findByUser_id(3);
+        assertEquals(0.5, exitWindowIndex.getHitRatio());
+    }
+
+    @Test
+    public void testLoadRacingWithAWriteIsNotIndexed() {
+        when(userRepository.findById(1)).thenReturn(Optional.of(user1));
+        // The Autorisation is deleted while the student is being loaded
+        when(autorisationRepository.findByUser_id(1)).thenAnswer(invocation -> {
+            exitWindowIndex.onAutorisationDeleted(1);
+            return List.of(a1);
+        });
+
+        assertTrue(exitWindowIndex.getOrLoad(1).canLeave(noon));
+        assertEquals(0, exitWindowIndex.size());
+        assertNull(exitWindowIndex.getOwner(1));
+    }
+
+    @Test
+    public void testRuleLoadedBeforeAWriteIsNotCached() {
+        when(userRepository.findById(1)).thenReturn(Optional.of(user1));
+        // The Autorisation is written, as AutorisationServiceDB does, after it has been read by the load
+        when(autorisationRepository.findByUser_id(1)).thenAnswer(invocation -> {
+            exitRuleService.invalidate(1);
+            exitWindowIndex.onAutorisationDeleted(1);
+            return List.of(a1);
+        });
+
+        exitWindowIndex.getOrLoad(1);
+
+        assertEquals(0, exitRuleService.size());
+    }
+
+    @Test
+    public void testUnknownUserIsNotIndexed() {
+        when(userRepository.findById(42)).thenReturn(Optional.empty());
+
+        assertNull(exitWindowIndex.getOrLoad(42));
+        assertEquals(0, exitWindowIndex.size());
+        verify(autorisationRepository, never()).findByUser_id(42);
+    }
+
+    @Test
+    public void testVerdictCarriesMatchingWindowAndPhotoVersion() {
+        exitWindowIndex.warmUp();
+
+        ScanVerdict allowed = ScanVerdict.of(exitWindowIndex.getOrLoad(1), noon);
+        assertTrue(allowed.getCanGo());
+        assertEquals("12:00", allowed.getWindow().getStart());
+        assertEquals("13:00", allowed.getWindow().getEnd());
+        assertNull(allowed.getPhotoVersion());
+
+        ScanVerdict denied = ScanVerdict.of(exitWindowIndex.getOrLoad(2), noon);
+        assertFalse(denied.getCanGo());
+        assertNull(denied.getWindow());
+        assertEquals(16, denied.getPhotoVersion().length());
+        assertEquals(noon, denied.getEvaluatedAt());
+    }
+
+    @Test
+    public void testBatchLoadsMissesWithSetBasedQueries() {
+        exitWindowIndex.warmUp();
+        User user3 = new User(3, "Dupont", "Marie", "mdup@helha.be", "password789", "Rue de la Station 1", school, null, true, null);
+        Autorisation a3 = new Autorisation(3, Autorisation_Type.Daily, "midi", a1.getDate_debut(), null, "12:00", "12:30", null, user3);
+        when(userRepository.findAllById(Set.of(3, 42))).thenReturn(List.of(user3));
+        when(autorisationRepository.findByUser_idIn(Set.of(3, 42))).thenReturn(List.of(a3));
+
+        Map<Integer, StudentExitWindows> students = exitWindowIndex.getOrLoadAll(List.of(1, 3, 42, 3));
+
+        assertEquals(2, students.size());
+        assertTrue(students.get(1).canLeave(noon));
+        assertTrue(students.get(3).canLeave(noon));
+        assertFalse(students.containsKey(42));
+        assertSame(students.get(3), exitWindowIndex.get(3));
+        verify(userRepository, never()).findById(anyInt());
+        verify(autorisationRepository, never()).findByUser_id(anyInt());
+    }
+
+    @Test
+    public void testUserWritesRefreshStudentFields() {
+        exitWindowIndex.warmUp();
+        String before = exitWindowIndex.getOrLoad(2).getPhotoVersion();
+
+        user2.setPicture_user("d29ybGQ=");
+        user2.setName_user("Noé");
+        exitWindowIndex.onUserSaved(user2);
+
+        assertNotEquals(before, exitWindowIndex.getOrLoad(2).getPhotoVersion());
+        assertEquals("Noé", exitWindowIndex.getOrLoad(2).getName());
+        assertEquals(1, exitWindowIndex.getOrLoad(2).size());
+    }
+
+    @Test
+    public void testWritesUpdateIndexedStudents() {
+        exitWindowIndex.warmUp();
+
+        a2.setHeure_debut("12:00");
+        exitRuleService.invalidate(2);
+        exitWindowIndex.onAutorisationSaved(a2);
+        assertTrue(exitWindowIndex.getOrLoad(2).canLeave(noon));
+
+        exitWindowIndex.onAutorisationDeleted(1);
+        assertFalse(exitWindowIndex.getOrLoad(1).canLeave(noon));
+    }
+
+    @Test
+    public void testReassignedAutorisationMovesToNewOwner() {
+        exitWindowIndex.warmUp();
+
+        a1.setUser(user2);
+        exitRuleService.invalidate(1);
+        exitWindowIndex.onAutorisationSaved(a1);
+
+        assertEquals(0, exitWindowIndex.getOrLoad(1).size());
+        assertEquals(2, exitWindowIndex.getOrLoad(2).size());
+    }
+
+    @Test
+    public void testMetricsAreExposed() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        exitWindowIndex.bindTo(registry);
+        exitWindowIndex.warmUp();
+        exitWindowIndex.getOrLoad(1);
+
+        assertEquals(2.0, registry.get("gate.index.students").gauge().value());
+        assertEquals(1.0, registry.get("gate.index.lookups").tag("result", "hit").functionCounter().count());
+    }
+}
@@ -0,0 +1,92 @@
+package org.helha.be.sortieappbackend.serviceTest;
+
+import org.helha.be.sortieappbackend.ServiceImpl.QRCodeServiceImpl;
+import org.helha.be.sortieappbackend.models.*;
+import org.helha.be.sortieappbackend.services.ExitWindowIndex;
+import org.helha.be.sortieappbackend.services.GateCacheWarmer;
+import org.helha.be.sortieappbackend.utils.GatePassUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class GateCacheWarmerTest {
+
+    private static final ZoneId ZONE = ZoneId.of("Europe/Brussels");
+
+    @Mock
+    private ExitWindowIndex exitWindowIndex;
+
+    @Mock
+    private QRCodeServiceImpl qrCodeServiceImpl;
+
+    @Spy
+    private GatePassUtils gatePassUtils = new GatePassUtils("fjkdfngdbjzebnhubvshubsgdvgbjhn435345fsdnbvxhcbghxcbvxcvx", 30);
+
+    @InjectMocks
+    private GateCacheWarmer gateCacheWarmer = new GateCacheWarmer(1, 10);
+
+    private StudentExitWindows student;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(gateCacheWarmer, "clock", Clock.system(ZONE));
+        ExitRule daily = new ExitRule(2, 7, Autorisation_Type.Daily, LocalDate.of(2024, 9, 1).toEpochDay(), Long.MAX_VALUE,
+                ExitRule.ALL_DAYS, 16 * 60, 16 * 60 + 30);
+        student = new StudentExitWindows(7, 1, "Noah", "Gallet", null, new ExitRule[]{daily});
+        when(exitWindowIndex.getOrLoad(7)).thenReturn(student);
+    }
+
+    @Test
+    public void testCurrentAndNextPassesAreRendered() throws Exception {
+        ZonedDateTime now = ZonedDateTime.of(2025, 1, 16, 7, 50, 0, 0, ZONE);
+
+        gateCacheWarmer.warm(7, now);
+
+        String current = gatePassUtils.issue(student, now).getToken();
+        String next = gatePassUtils.issue(student, now.plusMinutes(10)).getToken();
+        assertNotEquals(current, next);
+        verify(qrCodeServiceImpl).generateQRCodeWithMessage(current, 300, 300);
+        verify(qrCodeServiceImpl).generateQRCodeWithMessage(next, 300, 300);
+        assertEquals(1, gateCacheWarmer.getWarmed());
+    }
+
+    @Test
+    public void testNoPassIsRenderedForTheNextDay() throws Exception {
+        gateCacheWarmer.warm(7, ZonedDateTime.of(2025, 1, 16, 23, 50, 0, 0, ZONE));
+
+        verify(qrCodeServiceImpl, times(1)).generateQRCodeWithMessage(anyString(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void testUnknownStudentIsSkipped() throws Exception {
+        gateCacheWarmer.warm(42, ZonedDateTime.of(2025, 1, 16, 7, 50, 0, 0, ZONE));
+
+        verify(qrCodeServiceImpl, never()).generateQRCodeWithMessage(anyString(), anyInt(), anyInt());
+        assertEquals(0, gateCacheWarmer.getWarmed());
+        assertEquals(0, gateCacheWarmer.getFailed());
+    }
+
+    @Test
+    public void testEventWarmsOldAndNewOwnerInBackground() {
+        when(exitWindowIndex.getOrLoad(8)).thenReturn(student);
+
+        gateCacheWarmer.onAutorisationChanged(new AutorisationChangedEvent(2, AutorisationChangedEvent.Change.SAVED, 7, 8));
+
+        verify(exitWindowIndex, timeout(2000)).getOrLoad(7);
+        verify(exitWindowIndex, timeout(2000)).getOrLoad(8);
+        gateCacheWarmer.stop();
+    }
+}
@@ -0,0 +1,90 @@
+package org.helha.be.sortieappbackend.serviceTest;
+
+import org.helha.be.sortieappbackend.models.*;
+import org.helha.be.sortieappbackend.utils.GatePassUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GatePassUtilsTest {
+
+    private static final ZoneId ZONE = ZoneId.of("Europe/Brussels");
+
+    private GatePassUtils gatePassUtils;
+    private StudentExitWindows student;
+
+    @BeforeEach
+    public void setUp() {
+        gatePassUtils = new GatePassUtils("fjkdfngdbjzebnhubvshubsgdvgbjhn435345fsdnbvxhcbghxcbvxcvx", 30);
+        long start = LocalDate.of(2024, 9, 1).toEpochDay();
+        // Lundi et jeudi de 12:00 à 13:00, tous les jours de 16:00 à 16:30
+        ExitRule weekly = new ExitRule(1, 7, Autorisation_Type.Weekly, start, Long.MAX_VALUE, 0b1001, 12 * 60, 13 * 60);
+        ExitRule daily = new ExitRule(2, 7, Autorisation_Type.Daily, start, Long.MAX_VALUE, ExitRule.ALL_DAYS, 16 * 60, 16 * 60 + 30);
+        student = new StudentExitWindows(7, 1, "Noah", "Gallet", null, new ExitRule[]{weekly, daily});
+    }
+
+    private ZonedDateTime at(int day, int hour, int minute) {
+        // Janvier 2025 : le 16 est un jeudi, le 17 un vendredi
+        return ZonedDateTime.of(2025, 1, day, hour, minute, 0, 0, ZONE);
+    }
+
+    @Test
+    public void testPassIsVerifiedWithinItsWindows() {
+        GatePass pass = gatePassUtils.issue(student, at(16, 11, 50));
+
+        GatePassCheck check = gatePassUtils.verify(pass.getToken(), at(16, 12, 10));
+        assertEquals(GatePassCheck.Status.VALID, check.getStatus());
+        assertEquals(7, check.getUserId());
+        assertTrue(check.getCanGo());
+        assertEquals("12:00", check.getStart());
+        assertEquals("13:00", check.getEnd());
+
+        GatePassCheck outside = gatePassUtils.verify(pass.getToken(), at(16, 11, 55));
+        assertEquals(GatePassCheck.Status.VALID, outside.getStatus());
+        assertFalse(outside.getCanGo());
+    }
+
+    @Test
+    public void testOnlyWindowsOfTheDayAreEmbedded() {
+        GatePass pass = gatePassUtils.issue(student, at(17, 11, 50));
+
+        assertFalse(gatePassUtils.verify(pass.getToken(), at(17, 12, 10)).getCanGo());
+    }
+
+    @Test
+    public void testPassIsStableWithinAPeriodAndExpires() {
+        GatePass first = gatePassUtils.issue(student, at(16, 12, 1));
+        GatePass second = gatePassUtils.issue(student, at(16, 12, 29));
+        assertEquals(first.getToken(), second.getToken());
+        assertEquals(at(16, 12, 30).toEpochSecond(), first.getRefreshAt());
+        assertEquals(at(16, 13, 0).toEpochSecond(), first.getExpiresAt());
+
+        GatePassCheck stale = gatePassUtils.verify(first.getToken(), at(16, 13, 0));
+        assertEquals(GatePassCheck.Status.EXPIRED, stale.getStatus());
+        assertEquals(7, stale.getUserId());
+    }
+
+    @Test
+    public void testPassDoesNotOutliveItsDay() {
+        GatePass pass = gatePassUtils.issue(student, at(16, 23, 50));
+
+        assertEquals(at(17, 0, 0).toEpochSecond(), pass.getExpiresAt());
+    }
+
+    @Test
+    public void testTamperedOrForeignPassIsRejected() {
+        String token = gatePassUtils.issue(student, at(16, 11, 50)).getToken();
+        int dot = token.lastIndexOf('.');
+        String tampered = token.substring(0, dot - 2) + (token.charAt(dot - 2) == 'A' ? 'B' : 'A') + token.substring(dot - 1);
+
+        assertEquals(GatePassCheck.Status.BAD_SIGNATURE, gatePassUtils.verify(tampered, at(16, 12, 10)).getStatus());
+        assertEquals(GatePassCheck.Status.BAD_SIGNATURE,
+                new GatePassUtils("another-secret-another-secret-another-secret", 30).verify(token, at(16, 12, 10)).getStatus());
+        assertEquals(GatePassCheck.Status.MALFORMED, gatePassUtils.verify("7", at(16, 12, 10)).getStatus());
+    }
+}
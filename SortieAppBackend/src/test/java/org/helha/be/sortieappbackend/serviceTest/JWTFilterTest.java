@@ -0,0 +1,193 @@
+package org.helha.be.sortieappbackend.serviceTest;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.helha.be.sortieappbackend.models.User;
+import org.helha.be.sortieappbackend.repositories.jpa.UserRepository;
+import org.helha.be.sortieappbackend.security.JWTFilter;
+import org.helha.be.sortieappbackend.security.PrincipalCache;
+import org.helha.be.sortieappbackend.security.TokenVersions;
+import org.helha.be.sortieappbackend.utils.JWTUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class JWTFilterTest {
+
+    private static final String SECRET = "fjkdfngdbjzebnhubvshubsgdvgbjhn435345fsdnbvxhcbghxcbvxcvxfjkdfngdbjzebnhubvshubsgdvgbjhn435345";
+
+    private JWTUtils jwtUtils;
+    private PrincipalCache principalCache;
+    private JWTFilter jwtFilter;
+    private String token;
+    private String refreshToken;
+    private UserRepository userRepository;
+    private TokenVersions tokenVersions;
+
+    @BeforeEach
+    public void setUp() {
+        jwtUtils = new JWTUtils();
+        ReflectionTestUtils.setField(jwtUtils, "secret", SECRET);
+        ReflectionTestUtils.setField(jwtUtils, "expirationToken", 3_600_000L);
+        ReflectionTestUtils.setField(jwtUtils, "expirationRefreshToken", 86_400_000L);
+        ReflectionTestUtils.setField(jwtUtils, "clock", Clock.systemDefaultZone());
+        jwtUtils.init();
+
+        userRepository = mock(UserRepository.class);
+        when(userRepository.findTokenVersionById(7)).thenReturn(Optional.of(0));
+        tokenVersions = new TokenVersions();
+        ReflectionTestUtils.setField(tokenVersions, "userRepository", userRepository);
+
+        principalCache = newPrincipalCache();
+
+        jwtFilter = new JWTFilter();
+        ReflectionTestUtils.setField(jwtFilter, "jwtUtils", jwtUtils);
+        ReflectionTestUtils.setField(jwtFilter, "principalCache", principalCache);
+        ReflectionTestUtils.setField(jwtFilter, "tokenVersions", tokenVersions);
+
+        User user = new User();
+        user.setId(7);
+        user.setEmail("noah.gallet@example.com");
+        user.setName_user("Noah");
+        user.setLastname_user("Gallet");
+        org.springframework.security.core.userdetails.User springUser = new org.springframework.security.core.userdetails.User(
+                user.getEmail(), "secret", List.of(new SimpleGrantedAuthority("ROLE_SUPERVISOR")));
+        token = jwtUtils.generateAccesToken(springUser, user);
+        refreshToken = jwtUtils.generateRefreshToken(springUser, user);
+    }
+
+    private PrincipalCache newPrincipalCache() {
+        PrincipalCache cache = new PrincipalCache(60_000, 100);
+        ReflectionTestUtils.setField(cache, "clock", Clock.systemDefaultZone());
+        ReflectionTestUtils.setField(cache, "tokenVersions", tokenVersions);
+        return cache;
+    }
+
+    @AfterEach
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    private Authentication filter(String authorization) throws Exception {
+        SecurityContextHolder.clearContext();
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        if (authorization != null) {
+            request.addHeader("Authorization", authorization);
+        }
+        jwtFilter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        return SecurityContextHolder.getContext().getAuthentication();
+    }
+
+    @Test
+    public void testPrincipalIsBuiltFromTheClaims() throws Exception {
+        Authentication authentication = filter("Bearer " + token);
+
+        assertNotNull(authentication);
+        assertEquals("7", authentication.getName());
+        assertEquals(List.of(new SimpleGrantedAuthority("ROLE_SUPERVISOR")), List.copyOf(authentication.getAuthorities()));
+    }
+
+    @Test
+    public void testLegacyTokensAreAcceptedDuringTheTransitionWindow() throws Exception {
+        String legacy = Jwts.builder()
+                .subject("noah.gallet@example.com")
+                .issuedAt(new Date())
+                .expiration(new Date(System.currentTimeMillis() + 60_000))
+                .claim("id", 7)
+                .claim("name", "Noah")
+                .claim("lastname", "Gallet")
+                .claim("roles", List.of(new SimpleGrantedAuthority("ROLE_SUPERVISOR")))
+                .signWith(SignatureAlgorithm.HS256, SECRET)
+                .compact();
+
+        Authentication authentication = filter("Bearer " + legacy);
+        assertNotNull(authentication);
+        assertEquals(List.of(new SimpleGrantedAuthority("ROLE_SUPERVISOR")), List.copyOf(authentication.getAuthorities()));
+
+        principalCache = newPrincipalCache();
+        ReflectionTestUtils.setField(jwtFilter, "principalCache", principalCache);
+        ReflectionTestUtils.setField(jwtUtils, "legacyTokensWindowMs", 0L);
+        assertNull(filter("Bearer " + legacy));
+        assertNotNull(filter("Bearer " + token));
+    }
+
+    @Test
+    public void testPrincipalIsServedFromTheCache() throws Exception {
+        Authentication first = filter("Bearer " + token);
+        Authentication second = filter("Bearer " + token);
+
+        assertSame(first, second);
+        assertEquals(1, principalCache.getHits());
+        assertEquals(1, principalCache.size());
+    }
+
+    @Test
+    public void testFullCacheIsSweptAtMostOncePerSecond() {
+        PrincipalCache cache = new PrincipalCache(1_000, 2);
+        ReflectionTestUtils.setField(cache, "tokenVersions", tokenVersions);
+        Authentication authentication = mock(Authentication.class);
+
+        at(cache, 0);
+        cache.put("a", 7, 0, Long.MAX_VALUE, authentication);
+        cache.put("b", 7, 0, Long.MAX_VALUE, authentication);
+        at(cache, 1_500);
+        cache.put("c", 7, 0, Long.MAX_VALUE, authentication);
+        assertEquals(1, cache.size(), "a and b have expired and are swept");
+
+        cache.put("d", 7, 0, Long.MAX_VALUE, authentication);
+        at(cache, 2_400);
+        cache.put("e", 7, 0, Long.MAX_VALUE, authentication);
+        assertNull(cache.get("e"), "Swept less than a second ago: not cached");
+
+        at(cache, 2_600);
+        cache.put("e", 7, 0, Long.MAX_VALUE, authentication);
+        assertSame(authentication, cache.get("e"));
+        assertEquals(1, cache.size());
+    }
+
+    private static void at(PrincipalCache cache, long millis) {
+        ReflectionTestUtils.setField(cache, "clock", Clock.fixed(Instant.ofEpochMilli(millis), ZoneOffset.UTC));
+    }
+
+    @Test
+    public void testRevokedTokensAreRejected() throws Exception {
+        assertNotNull(filter("Bearer " + token));
+
+        when(userRepository.findTokenVersionById(7)).thenReturn(Optional.of(1));
+        tokenVersions.revoke(7);
+
+        verify(userRepository).incrementTokenVersion(7);
+        assertNull(filter("Bearer " + token));
+        assertEquals(0, principalCache.size());
+    }
+
+    @Test
+    public void testRefreshTokensAreNotAccessTokens() throws Exception {
+        assertNull(filter("Bearer " + refreshToken));
+    }
+
+    @Test
+    public void testMissingOrTamperedTokenIsNotAuthenticated() throws Exception {
+        assertNull(filter(null));
+        assertNull(filter("Bearer " + token.substring(0, token.length() - 2) + "xx"));
+        assertNull(filter("Bearer not-a-token"));
+        assertEquals(0, principalCache.size());
+    }
+}
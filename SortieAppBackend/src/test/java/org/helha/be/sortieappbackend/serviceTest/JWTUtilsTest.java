@@ -0,0 +1,142 @@
+package org.helha.be.sortieappbackend.serviceTest;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.helha.be.sortieappbackend.models.School;
+import org.helha.be.sortieappbackend.models.TokenCheck;
+import org.helha.be.sortieappbackend.models.User;
+import org.helha.be.sortieappbackend.security.RoleCode;
+import org.helha.be.sortieappbackend.utils.JWTUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JWTUtilsTest {
+
+    private static final String SECRET = "fjkdfngdbjzebnhubvshubsgdvgbjhn435345fsdnbvxhcbghxcbvxcvxfjkdfngdbjzebnhubvshubsgdvgbjhn435345";
+
+    private JWTUtils jwtUtils;
+    private org.springframework.security.core.userdetails.User springUser;
+    private User user;
+
+    @BeforeEach
+    public void setUp() {
+        jwtUtils = newJwtUtils(SECRET, 3_600_000L);
+        springUser = new org.springframework.security.core.userdetails.User("noah.gallet@example.com", "secret",
+                List.of(new SimpleGrantedAuthority("ROLE_STUDENT")));
+        user = new User();
+        user.setId(7);
+        user.setName_user("Noah");
+        user.setLastname_user("Gallet");
+    }
+
+    private static JWTUtils newJwtUtils(String secret, long expiration) {
+        JWTUtils jwtUtils = new JWTUtils();
+        ReflectionTestUtils.setField(jwtUtils, "secret", secret);
+        ReflectionTestUtils.setField(jwtUtils, "expirationToken", expiration);
+        ReflectionTestUtils.setField(jwtUtils, "expirationRefreshToken", expiration);
+        ReflectionTestUtils.setField(jwtUtils, "clock", Clock.systemDefaultZone());
+        jwtUtils.init();
+        return jwtUtils;
+    }
+
+    @Test
+    public void testGeneratedTokenIsValid() {
+        TokenCheck check = jwtUtils.check(jwtUtils.generateAccesToken(springUser, user));
+
+        assertEquals(TokenCheck.Status.VALID, check.getStatus());
+        assertEquals(7, check.getClaims().get("id", Integer.class));
+    }
+
+    @Test
+    public void testTokensAreCompact() {
+        School school = new School();
+        school.setId_school(3);
+        user.setSchool_user(school);
+        user.setToken_version(2);
+
+        Claims claims = jwtUtils.parseToken(jwtUtils.generateAccesToken(springUser, user));
+
+        assertEquals(Set.of("iat", "exp", "id", "rol", "sch", "ver"), claims.keySet());
+        assertEquals("ST", claims.get("rol", String.class));
+        assertEquals(3, claims.get("sch", Integer.class));
+        assertEquals(2, claims.get("ver", Integer.class));
+        assertEquals(RoleCode.STUDENT.getAuthorities(), RoleCode.decode("ST"));
+    }
+
+    @Test
+    public void testTokensSignedWithTheFormerApiAreStillAccepted() {
+        String legacy = Jwts.builder()
+                .subject("noah.gallet@example.com")
+                .claim("id", 7)
+                .expiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(SignatureAlgorithm.HS256, SECRET)
+                .compact();
+
+        assertEquals(7, jwtUtils.getUserIdFromToken(legacy));
+    }
+
+    @Test
+    public void testRejectionsAreTyped() {
+        String token = jwtUtils.generateAccesToken(springUser, user);
+        String expired = newJwtUtils(SECRET, -60_000L).generateAccesToken(springUser, user);
+        String foreign = newJwtUtils(SECRET.replace('f', 'g'), 3_600_000L).generateAccesToken(springUser, user);
+
+        TokenCheck expiredCheck = jwtUtils.check(expired);
+        assertEquals(TokenCheck.Status.EXPIRED, expiredCheck.getStatus());
+        assertEquals(7, expiredCheck.getClaims().get("id", Integer.class));
+        assertEquals(TokenCheck.Status.BAD_SIGNATURE, jwtUtils.check(foreign).getStatus());
+        assertEquals(TokenCheck.Status.MALFORMED, jwtUtils.check("not-a-token").getStatus());
+        assertEquals(TokenCheck.Status.MALFORMED, jwtUtils.check(null).getStatus());
+        assertEquals(TokenCheck.Status.MALFORMED, jwtUtils.check(token.substring(0, token.indexOf('.'))).getStatus());
+        assertThrows(JwtException.class, () -> jwtUtils.parseToken(foreign));
+        assertFalse(jwtUtils.validateToken(expired));
+    }
+
+    @Test
+    public void testVerifiedTokensAreCached() {
+        String token = jwtUtils.generateAccesToken(springUser, user);
+
+        TokenCheck first = jwtUtils.check(token);
+        TokenCheck second = jwtUtils.check(token);
+
+        assertSame(first.getClaims(), second.getClaims());
+    }
+
+    @Test
+    public void testCacheIsBounded() {
+        ReflectionTestUtils.setField(jwtUtils, "verifiedCacheSize", 1);
+        String first = jwtUtils.generateAccesToken(springUser, user);
+        user.setId(8);
+        String second = jwtUtils.generateAccesToken(springUser, user);
+
+        TokenCheck check = jwtUtils.check(first);
+        TokenCheck secondCheck = jwtUtils.check(second);
+
+        // The cache is full of a valid token: the second one is verified each time
+        assertSame(check.getClaims(), jwtUtils.check(first).getClaims());
+        assertNotSame(secondCheck.getClaims(), jwtUtils.check(second).getClaims());
+    }
+
+    @Test
+    public void testCachedTokensExpireWithTheClock() {
+        String token = jwtUtils.generateAccesToken(springUser, user);
+        assertEquals(TokenCheck.Status.VALID, jwtUtils.check(token).getStatus());
+
+        ReflectionTestUtils.setField(jwtUtils, "clock", Clock.offset(Clock.systemDefaultZone(), Duration.ofHours(2)));
+
+        assertEquals(TokenCheck.Status.EXPIRED, jwtUtils.check(token).getStatus());
+        assertEquals(TokenCheck.Status.EXPIRED, jwtUtils.check(token).getStatus());
+    }
+}
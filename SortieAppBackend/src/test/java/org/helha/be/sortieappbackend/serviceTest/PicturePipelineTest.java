@@ -0,0 +1,103 @@
+package org.helha.be.sortieappbackend.serviceTest;
+
+import org.helha.be.sortieappbackend.services.PicturePipeline;
+import org.helha.be.sortieappbackend.services.PicturePipelineBusyException;
+import org.helha.be.sortieappbackend.services.PictureStore;
+import org.helha.be.sortieappbackend.utils.PictureUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PicturePipelineTest {
+
+    @TempDir
+    Path directory;
+
+    private PictureStore pictureStore;
+    private PicturePipeline picturePipeline;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        pictureStore = new PictureStore(directory.toString());
+        pictureStore.init();
+        picturePipeline = newPipeline(10_000);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        picturePipeline.stop();
+    }
+
+    private PicturePipeline newPipeline(long maxWaitMs) {
+        PicturePipeline pipeline = new PicturePipeline(List.of(64, 400, 160), 0.85f, 1, 1, maxWaitMs, 3);
+        ReflectionTestUtils.setField(pipeline, "pictureStore", pictureStore);
+        return pipeline;
+    }
+
+    private static byte[] image(int width, int height, String format) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), format, output);
+        return output.toByteArray();
+    }
+
+    private BufferedImage read(Path path) throws Exception {
+        return ImageIO.read(path.toFile());
+    }
+
+    @Test
+    public void testEverySizeIsMadeFromOneUpload() throws Exception {
+        String hash = picturePipeline.process(image(1200, 900, "jpeg"));
+
+        assertEquals(List.of(400, 160, 64), picturePipeline.getSizes());
+        BufferedImage picture = read(pictureStore.path(hash));
+        assertEquals(400, picture.getWidth());
+        assertEquals(300, picture.getHeight());
+        assertEquals(160, read(pictureStore.path(hash, 160)).getWidth());
+        assertEquals(64, read(pictureStore.path(hash, 64)).getWidth());
+        assertEquals(48, read(pictureStore.path(hash, 64)).getHeight());
+        assertEquals(MediaType.IMAGE_JPEG, PictureUtils.sniffMediaType(pictureStore.get(hash, 64)));
+        assertEquals(3, pictureStore.getStored());
+    }
+
+    @Test
+    public void testSmallPicturesAreNotEnlargedAndKeepTheirFormat() throws Exception {
+        String hash = picturePipeline.processInline(image(100, 50, "png"));
+
+        assertEquals(MediaType.IMAGE_PNG, PictureUtils.sniffMediaType(pictureStore.get(hash)));
+        assertEquals(100, read(pictureStore.path(hash)).getWidth());
+        assertEquals(100, read(pictureStore.path(hash, 160)).getWidth());
+        assertEquals(64, read(pictureStore.path(hash, 64)).getWidth());
+    }
+
+    @Test
+    public void testUnsupportedOrUnreadableImagesAreRejected() throws Exception {
+        assertThrows(IllegalArgumentException.class, () -> picturePipeline.process(image(10, 10, "gif")));
+        assertThrows(IllegalArgumentException.class,
+                () -> picturePipeline.process(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 1, 2, 3}));
+        assertEquals(0, pictureStore.getStored());
+    }
+
+    @Test
+    public void testPictureIsRefusedWhenItWaitsTooLong() throws Exception {
+        picturePipeline.stop();
+        picturePipeline = newPipeline(0);
+
+        PicturePipelineBusyException exception = assertThrows(PicturePipelineBusyException.class,
+                () -> picturePipeline.process(image(2000, 2000, "jpeg")));
+
+        assertEquals(503, exception.getStatusCode().value());
+        assertEquals("3", exception.getHeaders().getFirst("Retry-After"));
+        assertEquals(1, picturePipeline.getRejected());
+    }
+}
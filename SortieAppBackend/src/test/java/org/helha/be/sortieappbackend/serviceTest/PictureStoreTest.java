@@ -0,0 +1,117 @@
+package org.helha.be.sortieappbackend.serviceTest;
+
+import org.helha.be.sortieappbackend.services.PictureMigration;
+import org.helha.be.sortieappbackend.services.PicturePipeline;
+import org.helha.be.sortieappbackend.services.PictureStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PictureStoreTest {
+
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 1, 2, 3};
+    private static final byte[] JPEG = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 4, 5, 6};
+
+    @TempDir
+    Path directory;
+
+    private PictureStore pictureStore;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        pictureStore = new PictureStore(directory.toString());
+        pictureStore.init();
+    }
+
+    @Test
+    public void testPicturesAreStoredByHashAndDeduplicated() throws Exception {
+        String hash = pictureStore.put(PNG);
+
+        assertEquals(64, hash.length());
+        assertEquals(hash, pictureStore.put(PNG.clone()));
+        Path path = pictureStore.path(hash);
+        assertEquals(directory.resolve(hash.substring(0, 2)).resolve(hash), path);
+        assertArrayEquals(PNG, Files.readAllBytes(path));
+        assertArrayEquals(PNG, pictureStore.get(hash));
+        assertEquals(1, pictureStore.getStored());
+        assertEquals(1, pictureStore.getDeduplicated());
+        try (var files = Files.walk(directory)) {
+            assertEquals(1, files.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    public void testThumbnailsAreStoredNextToTheirPicture() {
+        String hash = pictureStore.put(PNG);
+        pictureStore.putThumbnail(hash, 64, JPEG);
+
+        assertEquals(directory.resolve(hash.substring(0, 2)).resolve(hash + "-64"), pictureStore.path(hash, 64));
+        assertArrayEquals(JPEG, pictureStore.get(hash, 64));
+        // A missing thumbnail falls back to the picture
+        assertNull(pictureStore.path(hash, 160));
+        assertArrayEquals(PNG, pictureStore.get(hash, 160));
+    }
+
+    @Test
+    public void testUnknownOrMalformedHashesAreNotResolved() {
+        String hash = pictureStore.put(PNG);
+
+        assertNull(pictureStore.path(hash.toUpperCase()));
+        assertNull(pictureStore.path("../" + hash.substring(3)));
+        assertNull(pictureStore.path(HexFormat.of().formatHex(new byte[32])));
+        assertNull(pictureStore.get(null));
+    }
+
+    @Test
+    public void testLegacyPicturesAreMigratedToTheStore() throws Exception {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:picture_migration;DB_CLOSE_DELAY=-1;NON_KEYWORDS=USER", "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE user (id_user INT AUTO_INCREMENT PRIMARY KEY, picture_user CLOB, picture_hash VARCHAR(64))");
+        String png = Base64.getEncoder().encodeToString(image(32, "png"));
+        String jpeg = Base64.getMimeEncoder().encodeToString(image(600, "jpeg"));
+        jdbcTemplate.update("INSERT INTO user (picture_user) VALUES (?), (?), (?), (?), (?), (?), (NULL)",
+                png, "https://example.com/emma.png", jpeg, "bm90IGFuIGltYWdl", png, Base64.getEncoder().encodeToString(PNG));
+        PicturePipeline picturePipeline = new PicturePipeline(List.of(400, 64), 0.85f, 1, 1, 10_000, 2);
+        ReflectionTestUtils.setField(picturePipeline, "pictureStore", pictureStore);
+
+        try {
+            assertEquals(3, new PictureMigration(jdbcTemplate, picturePipeline, 2).migrate());
+
+            String pngHash = jdbcTemplate.queryForObject("SELECT picture_hash FROM user WHERE id_user = 1", String.class);
+            assertEquals(32, ImageIO.read(pictureStore.path(pngHash).toFile()).getWidth());
+            assertEquals(pngHash, jdbcTemplate.queryForObject("SELECT picture_hash FROM user WHERE id_user = 5", String.class));
+            String jpegHash = jdbcTemplate.queryForObject("SELECT picture_hash FROM user WHERE id_user = 3", String.class);
+            assertEquals(400, ImageIO.read(pictureStore.path(jpegHash).toFile()).getWidth());
+            assertNotNull(pictureStore.path(jpegHash, 64));
+            assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM user WHERE picture_hash IS NOT NULL AND picture_user IS NOT NULL", Integer.class));
+            assertEquals("https://example.com/emma.png", jdbcTemplate.queryForObject("SELECT picture_user FROM user WHERE id_user = 2", String.class));
+            assertEquals("bm90IGFuIGltYWdl", jdbcTemplate.queryForObject("SELECT picture_user FROM user WHERE id_user = 4", String.class));
+            // Not a readable image: left in place
+            assertNull(jdbcTemplate.queryForObject("SELECT picture_hash FROM user WHERE id_user = 6", String.class));
+
+            assertEquals(0, new PictureMigration(jdbcTemplate, picturePipeline, 2).migrate());
+        } finally {
+            jdbcTemplate.execute("DROP TABLE user");
+        }
+    }
+
+    private static byte[] image(int size, String format) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB), format, output);
+        return output.toByteArray();
+    }
+}
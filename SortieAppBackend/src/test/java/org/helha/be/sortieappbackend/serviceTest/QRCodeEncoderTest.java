@@ -0,0 +1,70 @@
+package org.helha.be.sortieappbackend.serviceTest;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.client.j2se.MatrixToImageWriter;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import org.helha.be.sortieappbackend.utils.QRCodeEncoder;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QRCodeEncoderTest {
+
+    private static final String MESSAGE = "G1.AAAABwAATSQAAAAAAQLQAwwC.3q2-7wAAAAAAAAAAAAAAAA";
+
+    @Test
+    public void testPngHasTheSamePixelsAsTheMatrix() throws Exception {
+        BitMatrix matrix = new QRCodeWriter().encode(MESSAGE, BarcodeFormat.QR_CODE, 300, 300);
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(QRCodeEncoder.toPng(matrix)));
+
+        assertEquals(300, image.getWidth());
+        assertEquals(300, image.getHeight());
+        for (int y = 0; y < 300; y++) {
+            for (int x = 0; x < 300; x++) {
+                assertEquals(matrix.get(x, y) ? 0x000000 : 0xFFFFFF, image.getRGB(x, y) & 0xFFFFFF, "pixel " + x + "," + y);
+            }
+        }
+    }
+
+    @Test
+    public void testPngIsSmallerThanMatrixToImageWriter() throws Exception {
+        BitMatrix matrix = new QRCodeWriter().encode(MESSAGE, BarcodeFormat.QR_CODE, 300, 300);
+        ByteArrayOutputStream legacy = new ByteArrayOutputStream();
+        MatrixToImageWriter.writeToStream(matrix, "PNG", legacy);
+
+        assertTrue(QRCodeEncoder.toPng(matrix).length < legacy.size());
+    }
+
+    @Test
+    public void testSvgDrawsEveryDarkModule() throws Exception {
+        BitMatrix matrix = new QRCodeWriter().encode(MESSAGE, BarcodeFormat.QR_CODE, 0, 0);
+
+        String svg = new String(QRCodeEncoder.toSvg(matrix, 300, 300), StandardCharsets.US_ASCII);
+
+        assertTrue(svg.startsWith("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"300\" height=\"300\" viewBox=\"0 0 "
+                + matrix.getWidth() + " " + matrix.getHeight() + "\""));
+        assertTrue(svg.endsWith("</svg>"));
+        int dark = 0;
+        for (int y = 0; y < matrix.getHeight(); y++) {
+            for (int x = 0; x < matrix.getWidth(); x++) {
+                dark += matrix.get(x, y) ? 1 : 0;
+            }
+        }
+        int drawn = 0;
+        Matcher run = Pattern.compile("h(\\d+)v1").matcher(svg);
+        while (run.find()) {
+            drawn += Integer.parseInt(run.group(1));
+        }
+        assertEquals(dark, drawn);
+    }
+}
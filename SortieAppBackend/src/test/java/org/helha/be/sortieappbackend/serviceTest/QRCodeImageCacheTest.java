@@ -0,0 +1,94 @@
+package org.helha.be.sortieappbackend.serviceTest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.helha.be.sortieappbackend.services.QRCodeImageCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QRCodeImageCacheTest {
+
+    private QRCodeImageCache cache;
+    private AtomicInteger renders;
+
+    @BeforeEach
+    public void setUp() {
+        cache = new QRCodeImageCache(250);
+        renders = new AtomicInteger();
+    }
+
+    private byte[] get(String message, int size) throws Exception {
+        return cache.get("png", message, 300, 300, () -> {
+            renders.incrementAndGet();
+            return new byte[size];
+        });
+    }
+
+    @Test
+    public void testSecondRequestIsServedFromCache() throws Exception {
+        byte[] first = get("1", 100);
+        byte[] second = get("1", 100);
+
+        assertSame(first, second);
+        assertEquals(1, renders.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvictedOverByteCap() throws Exception {
+        get("1", 100);
+        get("2", 100);
+        get("1", 100);
+        get("3", 100);
+
+        assertEquals(2, cache.size());
+        assertEquals(200, cache.getCurrentBytes());
+        assertEquals(1, cache.getEvictions());
+
+        get("1", 100);
+        assertEquals(3, renders.get());
+        get("2", 100);
+        assertEquals(4, renders.get());
+    }
+
+    @Test
+    public void testImageLargerThanCapIsNotCached() throws Exception {
+        get("big", 300);
+
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getCurrentBytes());
+    }
+
+    @Test
+    public void testFormatsAreCachedApart() throws Exception {
+        byte[] png = get("1", 100);
+        byte[] svg = cache.get("svg", "1", 300, 300, () -> new byte[50]);
+
+        assertNotSame(png, svg);
+        assertEquals(2, cache.size());
+        assertSame(svg, cache.get("svg", "1", 300, 300, () -> fail("The SVG image is cached")));
+    }
+
+    @Test
+    public void testETagDependsOnFormatMessageAndSize() {
+        assertEquals(QRCodeImageCache.eTag("png", "1", 300, 300), QRCodeImageCache.eTag("png", "1", 300, 300));
+        assertNotEquals(QRCodeImageCache.eTag("png", "1", 300, 300), QRCodeImageCache.eTag("png", "2", 300, 300));
+        assertNotEquals(QRCodeImageCache.eTag("png", "1", 300, 300), QRCodeImageCache.eTag("png", "1", 200, 200));
+        assertNotEquals(QRCodeImageCache.eTag("png", "1", 300, 300), QRCodeImageCache.eTag("svg", "1", 300, 300));
+    }
+
+    @Test
+    public void testMetricsAreExposed() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+        get("1", 100);
+        get("1", 100);
+
+        assertEquals(1.0, registry.get("qrcode.cache.requests").tag("result", "hit").functionCounter().count());
+        assertEquals(100.0, registry.get("qrcode.cache.size").gauge().value());
+    }
+}
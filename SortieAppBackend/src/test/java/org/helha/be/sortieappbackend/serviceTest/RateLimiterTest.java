@@ -0,0 +1,132 @@
+package org.helha.be.sortieappbackend.serviceTest;
+
+import org.helha.be.sortieappbackend.security.RateLimitFilter;
+import org.helha.be.sortieappbackend.utils.RateLimiter;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+
+    @Test
+    public void testBurstThenRefill() {
+        RateLimiter limiter = new RateLimiter(3, 60, 100, 60_000, now::get);
+
+        assertEquals(0, limiter.tryAcquire("10.0.0.1"));
+        assertEquals(0, limiter.tryAcquire("10.0.0.1"));
+        assertEquals(0, limiter.tryAcquire("10.0.0.1"));
+        assertEquals(TimeUnit.SECONDS.toNanos(1), limiter.tryAcquire("10.0.0.1"));
+        assertEquals(0, limiter.tryAcquire("10.0.0.2"));
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(0, limiter.tryAcquire("10.0.0.1"));
+        assertTrue(limiter.tryAcquire("10.0.0.1") > 0);
+    }
+
+    @Test
+    public void testFullBucketsAreEvicted() {
+        RateLimiter limiter = new RateLimiter(2, 60, 2, 60_000, now::get);
+
+        limiter.tryAcquire("a");
+        limiter.tryAcquire("b");
+        assertTrue(limiter.tryAcquire("c") > 0, "The table is full of active buckets");
+        assertEquals(2, limiter.size());
+
+        // One interval later the buckets are full again: the full table is swept for the new key
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(0, limiter.tryAcquire("c"));
+        assertEquals(1, limiter.size());
+        assertEquals(2, limiter.getEvicted());
+
+        // A full table is scanned at most once per interval
+        limiter.tryAcquire("d");
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+        assertTrue(limiter.tryAcquire("e") > 0);
+        assertEquals(2, limiter.getEvicted());
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(0, limiter.tryAcquire("e"));
+        assertEquals(4, limiter.getEvicted());
+
+        // Below the limit, the table is only scanned once per idle period
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        limiter = new RateLimiter(2, 60, 10, 60_000, now::get);
+        limiter.tryAcquire("a");
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        limiter.tryAcquire("b");
+        assertEquals(0, limiter.getEvicted());
+        now.addAndGet(TimeUnit.SECONDS.toNanos(60));
+        limiter.tryAcquire("c");
+        assertEquals(2, limiter.getEvicted());
+    }
+
+    @Test
+    public void testPermitsAreNotOverGrantedUnderContention() throws Exception {
+        RateLimiter limiter = new RateLimiter(1000, 1, 100, 60_000, now::get);
+        AtomicInteger granted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int j = 0; j < 500; j++) {
+                    if (limiter.tryAcquire("hot") == 0) {
+                        granted.incrementAndGet();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1000, granted.get());
+    }
+
+    @Test
+    public void testFilterRejectsByIpAndByEmail() throws Exception {
+        RateLimitFilter filter = new RateLimitFilter(2, 60, 1, 1, 100, 60_000);
+
+        assertEquals(200, request(filter, "/auth/login", "10.0.0.1", "noah@test.be").getStatus());
+        MockHttpServletResponse response = request(filter, "/auth/login", "10.0.0.2", "Noah@Test.be ");
+        assertEquals(429, response.getStatus());
+        assertEquals("60", response.getHeader("Retry-After"));
+
+        assertEquals(200, request(filter, "/auth/refresh-token", "10.0.0.3", null).getStatus());
+        assertEquals(200, request(filter, "/users/activate", "10.0.0.3", null).getStatus());
+        assertEquals(429, request(filter, "/users/set-password", "10.0.0.3", null).getStatus());
+        assertEquals(200, request(filter, "/users/profile", "10.0.0.3", null).getStatus());
+        assertEquals(2, filter.getRejections());
+    }
+
+    private static MockHttpServletResponse request(RateLimitFilter filter, String path, String ip, String email) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", path);
+        request.setServletPath(path);
+        request.setRemoteAddr(ip);
+        if (email != null) {
+            request.addParameter("email", email);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+}
@@ -0,0 +1,82 @@
+package org.helha.be.sortieappbackend.serviceTest;
+
+import org.helha.be.sortieappbackend.security.RefreshTokenStore;
+import org.helha.be.sortieappbackend.utils.BloomFilter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RefreshTokenStoreTest {
+
+    private static final Instant NOW = Instant.parse("2025-01-16T12:00:00Z");
+
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void setUp() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:refresh_tokens;DB_CLOSE_DELAY=-1", "sa", ""));
+        jdbcTemplate.execute("CREATE TABLE revoked_token (jti VARCHAR(64) PRIMARY KEY, id_user INT NOT NULL, expires_at TIMESTAMP NOT NULL)");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.execute("DROP TABLE revoked_token");
+    }
+
+    private RefreshTokenStore newStore() {
+        RefreshTokenStore store = new RefreshTokenStore(jdbcTemplate, 1000, 0.01);
+        ReflectionTestUtils.setField(store, "clock", Clock.fixed(NOW, ZoneId.of("UTC")));
+        store.rebuild();
+        return store;
+    }
+
+    @Test
+    public void testRefreshTokenIsUsedOnce() {
+        RefreshTokenStore store = newStore();
+        String jti = UUID.randomUUID().toString();
+
+        assertFalse(store.isRevoked(jti));
+        assertTrue(store.use(jti, 7, NOW.plusSeconds(3600).toEpochMilli()));
+        assertTrue(store.isRevoked(jti));
+        assertFalse(store.use(jti, 7, NOW.plusSeconds(3600).toEpochMilli()));
+    }
+
+    @Test
+    public void testStoreIsRebuiltFromTheDatabaseWithoutTheExpiredTokens() {
+        RefreshTokenStore store = newStore();
+        store.use("expired", 7, NOW.minusSeconds(60).toEpochMilli());
+        store.use("current", 7, NOW.plusSeconds(60).toEpochMilli());
+
+        RefreshTokenStore rebuilt = newStore();
+
+        assertTrue(rebuilt.isRevoked("current"));
+        assertFalse(rebuilt.isRevoked("expired"));
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM revoked_token", Integer.class));
+    }
+
+    @Test
+    public void testBloomFilterHasNoFalseNegativeAndFewFalsePositives() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("used-" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("used-" + i));
+            if (filter.mightContain("unused-" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 300, "false positives: " + falsePositives);
+    }
+}
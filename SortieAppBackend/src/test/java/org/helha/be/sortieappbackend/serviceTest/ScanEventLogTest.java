@@ -0,0 +1,94 @@
+package org.helha.be.sortieappbackend.serviceTest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.helha.be.sortieappbackend.models.ScanEvent;
+import org.helha.be.sortieappbackend.services.ScanEventLog;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class ScanEventLogTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    private ScanEvent event(int userId) {
+        return new ScanEvent(null, userId, 9, 1, LocalDateTime.of(2025, 1, 16, 12, 15), true, 3L);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testEventsAreWrittenInBoundedBatches() throws Exception {
+        ScanEventLog log = new ScanEventLog(jdbcTemplate, 100, 2, 20, ScanEventLog.OverflowPolicy.DROP, 0);
+        log.start();
+        for (int i = 1; i <= 5; i++) {
+            assertTrue(log.record(event(i)));
+        }
+        log.stop();
+
+        ArgumentCaptor<Collection<ScanEvent>> batches = ArgumentCaptor.forClass(Collection.class);
+        verify(jdbcTemplate, atLeast(3)).batchUpdate(anyString(), batches.capture(), anyInt(), any());
+        assertTrue(batches.getAllValues().stream().allMatch(batch -> batch.size() <= 2));
+        assertEquals(5, log.getWritten());
+        assertEquals(0, log.getQueueDepth());
+    }
+
+    @Test
+    public void testFullQueueDropsEvents() {
+        ScanEventLog log = new ScanEventLog(jdbcTemplate, 2, 10, 20, ScanEventLog.OverflowPolicy.DROP, 0);
+
+        assertTrue(log.record(event(1)));
+        assertTrue(log.record(event(2)));
+        assertFalse(log.record(event(3)));
+
+        assertEquals(1, log.getDropped());
+        assertEquals(2, log.getQueueDepth());
+    }
+
+    @Test
+    public void testBlockingPolicyGivesUpAfterTimeout() {
+        ScanEventLog log = new ScanEventLog(jdbcTemplate, 1, 10, 20, ScanEventLog.OverflowPolicy.BLOCK, 10);
+
+        assertTrue(log.record(event(1)));
+        long start = System.nanoTime();
+        assertFalse(log.record(event(2)));
+
+        assertTrue(System.nanoTime() - start >= 10_000_000L);
+        assertEquals(1, log.getDropped());
+    }
+
+    @Test
+    public void testFailedBatchIsCountedAndTimed() throws Exception {
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any()))
+                .thenThrow(new DataAccessResourceFailureException("down"));
+        ScanEventLog log = new ScanEventLog(jdbcTemplate, 100, 10, 20, ScanEventLog.OverflowPolicy.DROP, 0);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        log.bindTo(registry);
+        log.start();
+        log.record(event(1));
+        log.record(event(2));
+        log.stop();
+
+        assertEquals(2, log.getFailed());
+        assertEquals(0, log.getWritten());
+        assertEquals(2.0, registry.get("gate.scan.log.failed").functionCounter().count());
+        assertTrue(registry.get("gate.scan.log.flush").timer().count() >= 1);
+        assertEquals(0.0, registry.get("gate.scan.log.queue").gauge().value());
+    }
+}
@@ -118,6 +118,31 @@ class SchoolServiceDBTest {
         verify(schoolRepository, times(1)).save(existingSchool);
     }
 
+    @Test
+    @DisplayName("updateSchool() doit conserver la locale de l'école si aucune n'est donnée")
+    void testUpdateSchoolKeepsLocale() {
+        // GIVEN
+        School existingSchool = new School(1, "Old Name", "Old Address", null);
+        existingSchool.setLocale_school("nl");
+        School newSchoolData = new School(0, "New Name", "New Address", null);
+
+        when(schoolRepository.findById(1)).thenReturn(Optional.of(existingSchool));
+        when(schoolRepository.save(any(School.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // WHEN
+        School updated = schoolServiceDB.updateSchool(newSchoolData, 1);
+
+        // THEN
+        assertEquals("nl", updated.getLocale_school());
+
+        // WHEN - une nouvelle locale est donnée
+        newSchoolData.setLocale_school("en");
+        updated = schoolServiceDB.updateSchool(newSchoolData, 1);
+
+        // THEN
+        assertEquals("en", updated.getLocale_school());
+    }
+
     @Test
     @DisplayName("updateSchool() doit lancer RuntimeException si l'école n'existe pas")
     void testUpdateSchoolNotFound() {
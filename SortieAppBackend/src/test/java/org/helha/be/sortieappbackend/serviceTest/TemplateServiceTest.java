@@ -0,0 +1,50 @@
+package org.helha.be.sortieappbackend.serviceTest;
+
+import org.helha.be.sortieappbackend.services.TemplateService;
+import org.helha.be.sortieappbackend.utils.Template;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TemplateServiceTest {
+
+    private TemplateService templateService;
+
+    @BeforeEach
+    public void setUp() {
+        templateService = new TemplateService("en", List.of("en", "fr"));
+        templateService.init();
+    }
+
+    @Test
+    public void testMessagesAreCompiledInAndVariablesEscaped() {
+        Map<String, String> messages = Map.of("greeting", "Hello <{{name}}> & welcome");
+        Template template = Template.compile("<p title=\"{{name}}\">{{#greeting}}</p>{{missing}}", messages::get);
+
+        assertEquals("<p title=\"O&#39;Neil &quot;Jr&quot;\">Hello &lt;O&#39;Neil &quot;Jr&quot;&gt; &amp; welcome</p>",
+                template.render(Map.of("name", "O'Neil \"Jr\"")));
+        assertThrows(IllegalArgumentException.class, () -> Template.compile("{{#unknown}}", messages::get));
+    }
+
+    @Test
+    public void testTemplatesAreLocalized() {
+        String english = templateService.render(TemplateService.ACTIVATION_EMAIL, null, Map.of("link", "https://example.com/?a=1&b=2"));
+        String french = templateService.render(TemplateService.ACTIVATION_EMAIL, "fr-BE", Map.of("link", "https://example.com/"));
+
+        assertTrue(english.contains("<html lang=\"en\">"));
+        assertTrue(english.contains("href=\"https://example.com/?a=1&amp;b=2\""));
+        assertTrue(french.contains("<html lang=\"fr\">"));
+        assertTrue(french.contains("Bienvenue dans votre école !"));
+        assertEquals("en", templateService.locale("nl"));
+        assertEquals("Activez votre compte scolaire", templateService.message("fr", "email.activation.subject"));
+    }
+
+    @Test
+    public void testStaticUrlsFallBackToThePathOutsideOfTheWebContext() {
+        assertEquals("/activation/activation.css", templateService.staticUrl("/activation/activation.css"));
+    }
+}
@@ -0,0 +1,117 @@
+package org.helha.be.sortieappbackend.serviceTest;
+
+import org.helha.be.sortieappbackend.models.ImportJob;
+import org.helha.be.sortieappbackend.models.UserImportReport;
+import org.helha.be.sortieappbackend.services.UserImportJobs;
+import org.helha.be.sortieappbackend.services.UserImporter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class UserImportJobsTest {
+
+    private UserImporter userImporter;
+    private UserImportJobs jobs;
+    private final MockMultipartFile file = new MockMultipartFile("file", "users.csv", "text/csv",
+            "lastname_user,name_user,address_user,email,school_id,picture_user\n".getBytes(StandardCharsets.UTF_8));
+
+    @BeforeEach
+    public void setUp() {
+        userImporter = mock(UserImporter.class);
+        jobs = new UserImportJobs(1, 1, 3_600_000);
+        ReflectionTestUtils.setField(jobs, "userImporter", userImporter);
+        ReflectionTestUtils.setField(jobs, "clock", Clock.systemUTC());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jobs.shutdown();
+    }
+
+    private static void awaitFinished(ImportJob job) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!job.isFinished() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(job.isFinished());
+    }
+
+    @Test
+    public void testJobRunsInTheBackgroundAndReportsItsProgress() throws Exception {
+        when(userImporter.importStudents(any(Reader.class), isNull(), any())).thenAnswer(invocation -> {
+            UserImporter.Progress progress = invocation.getArgument(2);
+            progress.rowParsed();
+            progress.rowParsed();
+            progress.rowRejected();
+            progress.rowsInserted(1);
+            progress.emailQueued();
+            UserImportReport report = new UserImportReport();
+            report.setRows(2);
+            report.setImported(1);
+            return report;
+        });
+
+        ImportJob job = jobs.submit(file, null, 1, null);
+        awaitFinished(job);
+
+        assertEquals(ImportJob.Status.DONE, job.getStatus());
+        assertEquals(2, job.getRowsParsed());
+        assertEquals(1, job.getRowsInserted());
+        assertEquals(1, job.getRowsFailed());
+        assertEquals(1, job.getEmailsQueued());
+        assertEquals(1, job.getReport().getImported());
+        assertSame(job, jobs.get(job.getId()).orElseThrow());
+    }
+
+    @Test
+    public void testFailureIsReported() throws Exception {
+        when(userImporter.importStudents(any(Reader.class), isNull(), any()))
+                .thenThrow(new IllegalArgumentException("CSV file has incorrect column headers or order."));
+
+        ImportJob job = jobs.submit(file, null, 1, null);
+        awaitFinished(job);
+
+        assertEquals(ImportJob.Status.FAILED, job.getStatus());
+        assertEquals("CSV file has incorrect column headers or order.", job.getError());
+    }
+
+    @Test
+    public void testJobsAreCancelledAndBounded() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        when(userImporter.importStudents(any(Reader.class), isNull(), any())).thenAnswer(invocation -> {
+            UserImporter.Progress progress = invocation.getArgument(2);
+            started.countDown();
+            while (!progress.isCancelled()) {
+                Thread.sleep(5);
+            }
+            UserImportReport report = new UserImportReport();
+            report.setCancelled(true);
+            return report;
+        });
+
+        ImportJob running = jobs.submit(file, null, 1, null);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        ImportJob queued = jobs.submit(file, null, 1, null);
+        assertThrows(RejectedExecutionException.class, () -> jobs.submit(file, null, 1, null));
+
+        jobs.cancel(queued.getId());
+        assertEquals(ImportJob.Status.CANCELLED, queued.getStatus());
+        jobs.cancel(running.getId());
+        awaitFinished(running);
+        assertEquals(ImportJob.Status.CANCELLED, running.getStatus());
+        verify(userImporter, times(1)).importStudents(any(Reader.class), isNull(), any());
+    }
+}
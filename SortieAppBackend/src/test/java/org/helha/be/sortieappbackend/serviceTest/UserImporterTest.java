@@ -0,0 +1,227 @@
+package org.helha.be.sortieappbackend.serviceTest;
+
+import org.helha.be.sortieappbackend.models.Role;
+import org.helha.be.sortieappbackend.models.School;
+import org.helha.be.sortieappbackend.models.UserImportReport;
+import org.helha.be.sortieappbackend.services.EmailOutboxDispatcher;
+import org.helha.be.sortieappbackend.services.EmailOutboxService;
+import org.helha.be.sortieappbackend.services.EmailService;
+import org.helha.be.sortieappbackend.services.PicturePipeline;
+import org.helha.be.sortieappbackend.services.PictureStore;
+import org.helha.be.sortieappbackend.services.RoleServiceDB;
+import org.helha.be.sortieappbackend.services.SchoolServiceDB;
+import org.helha.be.sortieappbackend.services.UserImporter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+public class UserImporterTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private DriverManagerDataSource dataSource;
+    private RoleServiceDB roleServiceDB;
+    private SchoolServiceDB schoolServiceDB;
+    private EmailService emailService;
+    private EmailOutboxDispatcher dispatcher;
+    private Clock clock;
+    private School school;
+    private PictureStore pictureStore;
+    private PicturePipeline picturePipeline;
+
+    @TempDir
+    Path pictures;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:user_import;DB_CLOSE_DELAY=-1;NON_KEYWORDS=USER", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE user (id_user INT AUTO_INCREMENT PRIMARY KEY, lastname_user VARCHAR(255), name_user VARCHAR(255), "
+                + "email VARCHAR(255) NOT NULL UNIQUE, password_user VARCHAR(255), address_user VARCHAR(255), school_id INT, role_id INT, "
+                + "activated BOOLEAN NOT NULL, picture_user CLOB, picture_hash VARCHAR(64), token_version INT DEFAULT 0 NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE activation_token (id BIGINT AUTO_INCREMENT PRIMARY KEY, token VARCHAR(255) NOT NULL UNIQUE, "
+                + "expiry_date TIMESTAMP, user_id_user INT UNIQUE)");
+        jdbcTemplate.execute(EmailOutboxDispatcherTest.CREATE_TABLE_SQL);
+        jdbcTemplate.update("INSERT INTO user (email, activated, school_id, role_id) VALUES ('taken@test.be', TRUE, 1, 3)");
+
+        school = new School(1, "HelHa Montignies", "Rue Trieu Kaisin 136", new ArrayList<>());
+        roleServiceDB = mock(RoleServiceDB.class);
+        when(roleServiceDB.getRoleByName("STUDENT")).thenReturn(Optional.of(new Role(3, "STUDENT", null)));
+        schoolServiceDB = mock(SchoolServiceDB.class);
+        when(schoolServiceDB.getSchoolById(anyInt())).thenReturn(Optional.empty());
+        when(schoolServiceDB.getSchoolById(1)).thenReturn(Optional.of(school));
+        emailService = mock(EmailService.class);
+        when(emailService.generateActivationToken()).thenAnswer(invocation -> UUID.randomUUID().toString());
+        dispatcher = mock(EmailOutboxDispatcher.class);
+        clock = Clock.fixed(Instant.parse("2025-01-16T12:00:00Z"), ZoneId.of("UTC"));
+        pictureStore = new PictureStore(pictures.toString());
+        picturePipeline = new PicturePipeline(List.of(400, 160, 64), 0.85f, 1, 1, 10_000, 2);
+        ReflectionTestUtils.setField(picturePipeline, "pictureStore", pictureStore);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.execute("DROP TABLE email_outbox");
+        jdbcTemplate.execute("DROP TABLE activation_token");
+        jdbcTemplate.execute("DROP TABLE user");
+    }
+
+    private UserImporter newImporter(int chunkSize) {
+        UserImporter importer = new UserImporter(jdbcTemplate, new DataSourceTransactionManager(dataSource), chunkSize);
+        ReflectionTestUtils.setField(importer, "roleServiceDB", roleServiceDB);
+        ReflectionTestUtils.setField(importer, "schoolServiceDB", schoolServiceDB);
+        ReflectionTestUtils.setField(importer, "emailService", emailService);
+        EmailOutboxService emailOutboxService = new EmailOutboxService(jdbcTemplate);
+        ReflectionTestUtils.setField(emailOutboxService, "dispatcher", dispatcher);
+        ReflectionTestUtils.setField(emailOutboxService, "clock", clock);
+        ReflectionTestUtils.setField(importer, "emailOutboxService", emailOutboxService);
+        ReflectionTestUtils.setField(importer, "clock", clock);
+        ReflectionTestUtils.setField(importer, "picturePipeline", picturePipeline);
+        return importer;
+    }
+
+    @Test
+    public void testInvalidRowsAreReportedAndTheOthersImported() throws Exception {
+        String csv = """
+                lastname_user,name_user,address_user,email,school_id,picture_user
+                Gallet,Noah,"Rue Trieu Kaisin 136, 6061 Montignies",noah@test.be,1,
+                Dupont,Emma,Rue Haute 1,emma@test.be,1,https://example.com/emma.png
+                Gallet,Noah,Rue Haute 2,NOAH@test.be,1,
+                Martin,Lucas,Rue Haute 3,lucas@test.be,9,
+                Martin,Lina,Rue Haute 4,lina@test.be,x,
+                Martin,Leo,Rue Haute 5
+                Taken,Tom,Rue Haute 6,taken@test.be,1,
+                Petit,Zoe,Rue Haute 7,zoe@test.be,1,
+                """;
+
+        UserImportReport report = newImporter(2).importStudents(new StringReader(csv), null);
+
+        assertEquals(8, report.getRows());
+        assertEquals(3, report.getImported());
+        assertEquals(5, report.getRejected());
+        assertEquals(List.of(4, 5, 6, 7, 8), report.getErrors().stream().map(UserImportReport.RowError::getLine).toList());
+        assertEquals("Email already present earlier in the file", report.getErrors().get(0).getMessage());
+        assertEquals("School not found with ID: 9", report.getErrors().get(1).getMessage());
+        assertEquals("Email already used by another user", report.getErrors().get(4).getMessage());
+
+        assertEquals(4, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM user", Integer.class));
+        assertEquals(3, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM activation_token t JOIN user u ON u.id_user = t.user_id_user "
+                + "WHERE u.activated = FALSE AND u.role_id = 3 AND u.school_id = 1", Integer.class));
+        assertEquals("https://example.com/emma.png", jdbcTemplate.queryForObject("SELECT picture_user FROM user WHERE email = 'emma@test.be'", String.class));
+        assertEquals(3, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM email_outbox o JOIN activation_token t ON t.token = o.payload "
+                + "JOIN user u ON u.id_user = t.user_id_user WHERE o.recipient = u.email AND o.status = 'PENDING'", Integer.class));
+        verify(emailService, never()).sendActivationEmails(any());
+        verify(dispatcher, atLeastOnce()).wakeUp();
+        verify(roleServiceDB, times(1)).getRoleByName("STUDENT");
+        verify(schoolServiceDB, times(1)).getSchoolById(1);
+    }
+
+    @Test
+    public void testBase64PicturesGoThroughThePicturePipeline() throws Exception {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB), "png", png);
+        String base64 = Base64.getEncoder().encodeToString(png.toByteArray());
+        String broken = Base64.getEncoder().encodeToString(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 1, 2, 3});
+        String csv = "lastname_user,name_user,address_user,email,picture_user\n"
+                + "Gallet,Noah,Rue Haute 1,noah@test.be," + base64 + "\n"
+                + "Gallet,Lina,Rue Haute 1,lina@test.be," + base64 + "\n"
+                + "Dupont,Emma,Rue Haute 2,emma@test.be,https://example.com/emma.png\n"
+                + "Petit,Zoe,Rue Haute 3,zoe@test.be," + broken + "\n";
+
+        UserImportReport report = newImporter(10).importStudents(new StringReader(csv), school);
+
+        assertEquals(3, report.getImported());
+        assertEquals(5, report.getErrors().get(0).getLine());
+        assertTrue(report.getErrors().get(0).getMessage().startsWith("Invalid picture"));
+        String hash = jdbcTemplate.queryForObject("SELECT picture_hash FROM user WHERE email = 'noah@test.be'", String.class);
+        assertEquals(hash, jdbcTemplate.queryForObject("SELECT picture_hash FROM user WHERE email = 'lina@test.be'", String.class));
+        assertNull(jdbcTemplate.queryForObject("SELECT picture_user FROM user WHERE email = 'noah@test.be'", String.class));
+        assertEquals(400, ImageIO.read(pictureStore.path(hash).toFile()).getWidth());
+        assertEquals(64, ImageIO.read(pictureStore.path(hash, 64).toFile()).getWidth());
+        // The picture and its 2 thumbnails, stored once
+        assertEquals(3, pictureStore.getStored());
+        assertEquals(3, pictureStore.getDeduplicated());
+        assertNull(jdbcTemplate.queryForObject("SELECT picture_hash FROM user WHERE email = 'emma@test.be'", String.class));
+        assertEquals("https://example.com/emma.png", jdbcTemplate.queryForObject("SELECT picture_user FROM user WHERE email = 'emma@test.be'", String.class));
+    }
+
+    @Test
+    public void testRowRejectedByTheDatabaseDoesNotLoseItsChunk() throws Exception {
+        String csv = "lastname_user,name_user,address_user,email,picture_user\n"
+                + "Gallet,Noah,Rue Haute 1,noah@test.be,\n"
+                + "x".repeat(300) + ",Emma,Rue Haute 2,emma@test.be,\n"
+                + "Petit,Zoe,Rue Haute 3,zoe@test.be,\n";
+
+        UserImportReport report = newImporter(10).importStudents(new StringReader(csv), school);
+
+        assertEquals(2, report.getImported());
+        assertEquals(1, report.getErrors().size());
+        assertEquals(3, report.getErrors().get(0).getLine());
+        assertTrue(report.getErrors().get(0).getMessage().startsWith("Rejected by the database"));
+        assertEquals(3, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM user", Integer.class));
+        assertEquals(2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM activation_token", Integer.class));
+        // The emails of the rolled back chunk went with it
+        assertEquals(2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM email_outbox", Integer.class));
+        verifyNoInteractions(schoolServiceDB);
+    }
+
+    @Test
+    public void testCancelledImportKeepsTheCommittedChunks() throws Exception {
+        String csv = "lastname_user,name_user,address_user,email,picture_user\n"
+                + "Gallet,Noah,Rue Haute 1,noah@test.be,\n"
+                + "Dupont,Emma,Rue Haute 2,emma@test.be,\n"
+                + "Petit,Zoe,Rue Haute 3,zoe@test.be,\n";
+        AtomicInteger parsed = new AtomicInteger();
+        UserImporter.Progress progress = new UserImporter.Progress() {
+            @Override
+            public void rowParsed() {
+                parsed.incrementAndGet();
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return parsed.get() == 2;
+            }
+        };
+
+        UserImportReport report = newImporter(1).importStudents(new StringReader(csv), school, progress);
+
+        assertTrue(report.isCancelled());
+        assertEquals(2, report.getRows());
+        assertEquals(2, report.getImported());
+        assertEquals(2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM user WHERE activated = FALSE", Integer.class));
+    }
+
+    @Test
+    public void testWrongHeaderIsRejected() {
+        UserImporter importer = newImporter(10);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> importer.importStudents(new StringReader("lastname_user,name_user,email\n"), null));
+        assertThrows(IllegalArgumentException.class,
+                () -> importer.importStudents(new StringReader(String.join(",", UserImporter.HEADER) + "\n"), school));
+    }
+}
@@ -4,7 +4,11 @@ import org.helha.be.sortieappbackend.ServiceImpl.QRCodeServiceImpl;
 import org.helha.be.sortieappbackend.models.*;
 import org.helha.be.sortieappbackend.repositories.jpa.ActivationTokenRepository;
 import org.helha.be.sortieappbackend.repositories.jpa.UserRepository;
+import org.helha.be.sortieappbackend.security.TokenVersions;
+import org.helha.be.sortieappbackend.services.EmailOutboxService;
 import org.helha.be.sortieappbackend.services.EmailService;
+import org.helha.be.sortieappbackend.services.ExitWindowIndex;
+import org.helha.be.sortieappbackend.services.PicturePipeline;
 import org.helha.be.sortieappbackend.services.RoleServiceDB;
 import org.helha.be.sortieappbackend.services.SchoolServiceDB;
 import org.helha.be.sortieappbackend.services.UserServiceDB;
@@ -13,10 +17,11 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mail.MailSendException;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import javax.imageio.ImageIO;
-import jakarta.mail.MessagingException;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.time.LocalDateTime;
@@ -43,12 +48,27 @@ class UserServiceTest {
     @Mock
     private EmailService emailService;
 
+    @Mock
+    private EmailOutboxService emailOutboxService;
+
     @Mock
     private PasswordEncoder passwordEncoder;
 
     @Mock
     private QRCodeServiceImpl qrCodeServiceImpl;
 
+    @Mock
+    private ExitWindowIndex exitWindowIndex;
+
+    @Mock
+    private TokenVersions tokenVersions;
+
+    @Mock
+    private PicturePipeline picturePipeline;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     @InjectMocks
     private UserServiceDB userService;
 
@@ -127,7 +147,7 @@ class UserServiceTest {
     }
 
     @Test
-    void testAddUser_ShouldAddNewUserAndSendActivationEmail() throws MessagingException {
+    void testAddUser_ShouldAddNewUserAndQueueActivationEmail() {
         userMock.setRole_user(roleMock);
         when(roleServiceDB.getRoleById(roleMock.getId_role())).thenReturn(Optional.of(roleMock));
         when(userRepository.save(any(User.class))).thenReturn(userMock);
@@ -140,7 +160,29 @@ class UserServiceTest {
         assertEquals("test@example.com", savedUser.getEmail());
         verify(userRepository, times(1)).save(any(User.class));
         verify(activationTokenRepository, times(1)).save(any(ActivationToken.class));
-        verify(emailService, times(1)).sendActivationEmail(eq("test@example.com"), eq("generatedToken"));
+        verify(emailOutboxService, times(1)).enqueueActivation(eq("test@example.com"), eq("generatedToken"), isNull());
+        verify(emailService, never()).sendActivationEmails(any());
+    }
+
+    @Test
+    void testAddUser_ShouldProcessThePictureBeforeTheTransaction() throws Exception {
+        BufferedImage testImage = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(testImage, "jpg", baos);
+        String hash = "cd".repeat(32);
+        userMock.setPicture_user(Base64.getEncoder().encodeToString(baos.toByteArray()));
+        when(picturePipeline.process(baos.toByteArray())).thenReturn(hash);
+        when(userRepository.save(any(User.class))).thenReturn(userMock);
+        when(emailService.generateActivationToken()).thenReturn("generatedToken");
+
+        userService.addUser(userMock);
+
+        assertEquals(hash, userMock.getPicture_hash());
+        InOrder inOrder = inOrder(picturePipeline, transactionManager, userRepository);
+        inOrder.verify(picturePipeline).process(baos.toByteArray());
+        inOrder.verify(transactionManager).getTransaction(any());
+        inOrder.verify(userRepository).save(userMock);
+        inOrder.verify(transactionManager).commit(any());
     }
 
     @Test
@@ -153,14 +195,14 @@ class UserServiceTest {
     }
 
     @Test
-    void testAddUser_ShouldThrowRuntimeException_WhenFailedToSendEmail() throws MessagingException {
+    void testAddUser_ShouldNotDependOnTheMailServer() {
         userMock.setRole_user(roleMock);
         when(roleServiceDB.getRoleById(roleMock.getId_role())).thenReturn(Optional.of(roleMock));
         when(userRepository.save(any(User.class))).thenReturn(userMock);
         when(emailService.generateActivationToken()).thenReturn("generatedToken");
-        doThrow(new MessagingException("Email error")).when(emailService).sendActivationEmail(anyString(), anyString());
+        lenient().when(emailService.sendActivationEmails(any())).thenThrow(new MailSendException("Email error"));
 
-        assertThrows(RuntimeException.class, () -> userService.addUser(userMock));
+        assertEquals(userMock, userService.addUser(userMock));
         verify(userRepository, times(1)).save(any(User.class));
         verify(activationTokenRepository, times(1)).save(any(ActivationToken.class));
     }
@@ -192,6 +234,25 @@ class UserServiceTest {
         assertEquals(roleMock, result.getRole_user());
         verify(userRepository, times(1)).findById(1);
         verify(userRepository, times(1)).save(userMock);
+        verify(tokenVersions).revoke(1);
+    }
+
+    @Test
+    void testUpdateUser_ShouldKeepTokens_WhenRoleAndEmailAreUnchanged() {
+        userMock.setRole_user(roleMock);
+        userMock.setActivated(true);
+        User newUserData = new User();
+        newUserData.setName_user("Johnny");
+        newUserData.setLastname_user("Doe");
+        newUserData.setEmail("test@example.com");
+        newUserData.setActivated(true);
+
+        when(userRepository.findById(1)).thenReturn(Optional.of(userMock));
+        when(userRepository.save(any(User.class))).thenReturn(userMock);
+
+        userService.updateUser(newUserData, 1);
+
+        verify(tokenVersions, never()).revoke(anyInt());
     }
 
     @Test
@@ -212,6 +273,7 @@ class UserServiceTest {
 
         assertFalse(userMock.getActivated());
         verify(userRepository, times(1)).save(userMock);
+        verify(tokenVersions).revoke(1);
     }
 
     @Test
@@ -240,10 +302,15 @@ class UserServiceTest {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         ImageIO.write(testImage, "jpg", baos);
         String base64Image = Base64.getEncoder().encodeToString(baos.toByteArray());
+        String hash = "ab".repeat(32);
+        userMock.setPicture_user(base64Image);
+        when(picturePipeline.process(baos.toByteArray())).thenReturn(hash);
 
         userService.updateProfilePicture(1, base64Image);
 
-        assertNotNull(userMock.getPicture_user());
+        assertEquals(hash, userMock.getPicture_hash());
+        assertNull(userMock.getPicture_user());
+        assertEquals("/pictures/" + hash, userMock.getPicture_url());
         verify(userRepository, times(1)).save(userMock);
     }
 
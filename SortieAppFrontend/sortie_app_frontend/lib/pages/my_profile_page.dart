@@ -18,6 +18,8 @@ class MyProfile extends StatefulWidget {
 class _MyProfileState extends State<MyProfile> {
   Map<String, dynamic>? userData;
   bool isLoading = true;
+  // En-têtes pour charger la photo de profil
+  Map<String, String>? pictureHeaders;
 
   @override
   void initState() {
@@ -37,6 +39,7 @@ class _MyProfileState extends State<MyProfile> {
       if (response.statusCode == 200) {
         setState(() {
           userData = json.decode(response.body);
+          pictureHeaders = getPictureHeaders(header);
           isLoading = false;
         });
       } else {
@@ -81,9 +84,8 @@ class _MyProfileState extends State<MyProfile> {
       );
 
       if (response.statusCode == 200) {
-        setState(() {
-          userData!['picture_user'] = base64Image;
-        });
+        // The picture is stored under a new URL: reload the profile to get it
+        await fetchUserProfile();
       } else {
         throw Exception('Failed to update profile picture: ${response.statusCode}');
       }
@@ -205,15 +207,10 @@ class _MyProfileState extends State<MyProfile> {
   }
 
   ImageProvider _getProfileImage() {
-    final String? pictureUser = userData?['picture_user'];
+    final String? pictureUrl = getPictureUrl(userData?['picture_url']);
 
-    if (pictureUser != null && pictureUser.isNotEmpty) {
-      try {
-        final Uint8List imageBytes = base64Decode(pictureUser);
-        return MemoryImage(imageBytes);
-      } catch (e) {
-        print('Invalid Base64 image, using default: $e');
-      }
+    if (pictureUrl != null) {
+      return NetworkImage(pictureUrl, headers: pictureHeaders);
     }
 
     return const AssetImage('assets/images/default_profile.jpg');
@@ -16,6 +16,7 @@ class QRResultPage extends StatefulWidget {
 class _QRResultPageState extends State<QRResultPage> {
   Map<String, dynamic>? userAutorisationData; // Pour stocker les données
   bool isLoading = true; // Indique si les données sont en cours de chargement
+  Map<String, String>? pictureHeaders; // En-têtes pour charger la photo
 
   @override
   void initState() {
@@ -32,6 +33,7 @@ class _QRResultPageState extends State<QRResultPage> {
       if (response.statusCode == 200) {
         setState(() {
           userAutorisationData = json.decode(response.body);
+          pictureHeaders = getPictureHeaders(header);
           isLoading = false;
         });
       } else {
@@ -76,7 +78,7 @@ class _QRResultPageState extends State<QRResultPage> {
     // Extraire les données de l'objet renvoyé
     final user = userAutorisationData!['user'];
     final canGo = userAutorisationData!['canGo'];
-    final profilePicture = user['picture_user'];
+    final profilePicture = getPictureUrl(user['picture_url'], size: 160);
 
     return Scaffold(
       appBar: AppBar(
@@ -87,10 +89,10 @@ class _QRResultPageState extends State<QRResultPage> {
         child: Column(
           mainAxisAlignment: MainAxisAlignment.center,
           children: [
-            if (profilePicture != null && profilePicture.isNotEmpty)
+            if (profilePicture != null)
               CircleAvatar(
                 radius: 50,
-                backgroundImage: MemoryImage(base64Decode(profilePicture)),
+                backgroundImage: NetworkImage(profilePicture, headers: pictureHeaders),
               )
             else
               const CircleAvatar(
@@ -17,6 +17,8 @@ class StudentDetailPage extends StatefulWidget {
 class _StudentDetailPageState extends State<StudentDetailPage> {
   Map<String, dynamic>? studentDetails;
   bool isLoading = true;
+  // En-têtes pour charger la photo de l'étudiant
+  Map<String, String>? pictureHeaders;
   late String uri;
   List autorisations = [];
   List ShowedAutorisations = [];
@@ -42,6 +44,7 @@ class _StudentDetailPageState extends State<StudentDetailPage> {
       if (response.statusCode == 200) {
         setState(() {
           studentDetails = json.decode(response.body);
+          pictureHeaders = getPictureHeaders(header);
           isLoading = false;
         });
       } else {
@@ -95,9 +98,9 @@ class _StudentDetailPageState extends State<StudentDetailPage> {
             Center(
               child: CircleAvatar(
                 radius: 80,
-                backgroundImage: studentDetails!['picture_user'] == null
+                backgroundImage: getPictureUrl(studentDetails!['picture_url']) == null
                     ? const AssetImage('assets/default_profile_pic.png')
-                    : MemoryImage(base64Decode(studentDetails!['picture_user'])),
+                    : NetworkImage(getPictureUrl(studentDetails!['picture_url'], size: 160)!, headers: pictureHeaders) as ImageProvider,
               ),
             ),
             const SizedBox(height: 20),
@@ -132,4 +135,4 @@ class _StudentDetailPageState extends State<StudentDetailPage> {
       ),
     );
   }
-}
\ No newline at end of file
+}
\ No newline at end of file
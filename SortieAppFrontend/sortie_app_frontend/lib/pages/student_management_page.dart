@@ -54,6 +54,8 @@ class _StudentManagementScreenState extends State<StudentManagementScreen> {
   int? studentRoleId;
   // School ID of the connected user
   int? _schoolId;
+  // Headers used to load the users' pictures
+  Map<String, String>? pictureHeaders;
 
   // Used to store the user input from the search bar
   String searchQuery = "";
@@ -131,6 +133,7 @@ class _StudentManagementScreenState extends State<StudentManagementScreen> {
           setState(() {
             users = activeUsers;
             filteredUsers = activeUsers;
+            pictureHeaders = getPictureHeaders(header);
             _schoolId = schoolId;
           });
         } else {
@@ -593,12 +596,9 @@ class _StudentManagementScreenState extends State<StudentManagementScreen> {
                 final roleName =
                     user['role_user']?['name_role'] ?? 'Unknown Role';
 
-                // Extract the user's base64-encoded image
-                final String? base64Image = user['picture_user'];
-                // Convert base64 to Uint8List if present
-                Uint8List? imageBytes = (base64Image != null && base64Image.trim().isNotEmpty)
-                    ? base64Decode(base64Image)
-                    : null;
+                // URL of the user's picture, served by the backend picture store
+                final String? imageUrl = getPictureUrl(user['picture_url']);
+                final String? thumbnailUrl = getPictureUrl(user['picture_url'], size: 64);
 
                 return ListTile(
                   // Tapping the image leads to a dialog showing a bigger picture
@@ -611,9 +611,10 @@ class _StudentManagementScreenState extends State<StudentManagementScreen> {
                             child: Column(
                               mainAxisSize: MainAxisSize.min,
                               children: [
-                                imageBytes != null
-                                    ? Image.memory(
-                                  imageBytes,
+                                imageUrl != null
+                                    ? Image.network(
+                                  imageUrl,
+                                  headers: pictureHeaders,
                                   fit: BoxFit.cover,
                                 )
                                     : Image.asset(
@@ -632,9 +633,10 @@ class _StudentManagementScreenState extends State<StudentManagementScreen> {
                         },
                       );
                     },
-                    child: imageBytes != null
-                        ? Image.memory(
-                      imageBytes,
+                    child: thumbnailUrl != null
+                        ? Image.network(
+                      thumbnailUrl,
+                      headers: pictureHeaders,
                       width: 50,
                       height: 50,
                       fit: BoxFit.cover,
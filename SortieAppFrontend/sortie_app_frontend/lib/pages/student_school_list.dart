@@ -48,6 +48,8 @@ class StudentListScreen extends StatefulWidget {
 class _StudentListScreen extends State<StudentListScreen> {
   List students = [];
   bool isLoading = true;
+  // En-têtes pour charger les photos des étudiants
+  Map<String, String>? pictureHeaders;
 
   @override
   void initState() {
@@ -82,6 +84,7 @@ class _StudentListScreen extends State<StudentListScreen> {
         if (studentsResponse.statusCode == 200) {
           setState(() {
             students = json.decode(studentsResponse.body);
+            pictureHeaders = getPictureHeaders(header);
             isLoading = false;
           });
         } else {
@@ -123,7 +126,9 @@ class _StudentListScreen extends State<StudentListScreen> {
                 );
               },
               leading: CircleAvatar(
-                backgroundImage: NetworkImage('data:image/png;base64,${student['picture_user']}'),
+                backgroundImage: getPictureUrl(student['picture_url']) != null
+                    ? NetworkImage(getPictureUrl(student['picture_url'], size: 64)!, headers: pictureHeaders)
+                    : null,
               ),
             ),
           );
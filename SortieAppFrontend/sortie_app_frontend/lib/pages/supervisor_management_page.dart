@@ -58,6 +58,8 @@ class _SupervisorsManagementScreenState
   String searchQuery = "";
   // School ID of the connected user
   int? _schoolId;
+  // Headers used to load the users' pictures
+  Map<String, String>? pictureHeaders;
 
   @override
   void initState() {
@@ -134,6 +136,7 @@ class _SupervisorsManagementScreenState
           setState(() {
             users = activeSupervisors;
             filteredUsers = activeSupervisors;
+            pictureHeaders = getPictureHeaders(header);
             _schoolId = schoolId;
           });
         } else {
@@ -592,13 +595,9 @@ class _SupervisorsManagementScreenState
                 // Retrieve the role name or default to 'Unknown Role'
                 final roleName = user['role_user']?['name_role'] ?? 'Unknown Role';
 
-                // Retrieve base64-encoded image if available
-                final String? base64Image = user['picture_user'];
-                // Decode base64 into Uint8List, or keep null if no valid picture
-                Uint8List? imageBytes =
-                (base64Image != null && base64Image.trim().isNotEmpty)
-                    ? base64Decode(base64Image)
-                    : null;
+                // URL of the user's picture, served by the backend picture store
+                final String? imageUrl = getPictureUrl(user['picture_url']);
+                final String? thumbnailUrl = getPictureUrl(user['picture_url'], size: 64);
 
                 return ListTile(
                   // Tapping on the image to display a larger version in a dialog
@@ -611,9 +610,10 @@ class _SupervisorsManagementScreenState
                             child: Column(
                               mainAxisSize: MainAxisSize.min,
                               children: [
-                                imageBytes != null
-                                    ? Image.memory(
-                                  imageBytes,
+                                imageUrl != null
+                                    ? Image.network(
+                                  imageUrl,
+                                  headers: pictureHeaders,
                                   fit: BoxFit.cover,
                                 )
                                     : Image.asset(
@@ -632,9 +632,10 @@ class _SupervisorsManagementScreenState
                         },
                       );
                     },
-                    child: imageBytes != null
-                        ? Image.memory(
-                      imageBytes,
+                    child: thumbnailUrl != null
+                        ? Image.network(
+                      thumbnailUrl,
+                      headers: pictureHeaders,
                       width: 50,
                       height: 50,
                       fit: BoxFit.cover,
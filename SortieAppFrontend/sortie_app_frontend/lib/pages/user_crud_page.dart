@@ -58,6 +58,9 @@ class _UserListScreenState extends State<UserListScreen> {
   List filteredUsers = [];
   String searchQuery = "";
 
+  // Headers used to load the users' pictures
+  Map<String, String>? pictureHeaders;
+
   @override
   void initState() {
     super.initState();
@@ -76,6 +79,7 @@ class _UserListScreenState extends State<UserListScreen> {
         setState(() {
           users = json.decode(response.body);
           filteredUsers = users;
+          pictureHeaders = getPictureHeaders(header);
         });
       } else {
         throw Exception('Failed to load users');
@@ -600,10 +604,9 @@ class _UserListScreenState extends State<UserListScreen> {
                 final isActive = user['activated'] == true;
                 final schoolName = user['school_user']?['name_school'] ?? 'No School';
 
-                final String? base64Image = user['picture_user'];
-                Uint8List? imageBytes = (base64Image != null && base64Image.trim().isNotEmpty)
-                    ? base64Decode(base64Image)
-                    : null;
+                // URL of the user's picture, served by the backend picture store
+                final String? imageUrl = getPictureUrl(user['picture_url']);
+                final String? thumbnailUrl = getPictureUrl(user['picture_url'], size: 64);
 
                 return ListTile(
                   leading: GestureDetector(
@@ -615,9 +618,10 @@ class _UserListScreenState extends State<UserListScreen> {
                             child: Column(
                               mainAxisSize: MainAxisSize.min,
                               children: [
-                                imageBytes != null
-                                    ? Image.memory(
-                                  imageBytes,
+                                imageUrl != null
+                                    ? Image.network(
+                                  imageUrl,
+                                  headers: pictureHeaders,
                                   fit: BoxFit.cover,
                                 )
                                     : Image.asset(
@@ -636,9 +640,10 @@ class _UserListScreenState extends State<UserListScreen> {
                         },
                       );
                     },
-                    child: imageBytes != null
-                        ? Image.memory(
-                      imageBytes,
+                    child: thumbnailUrl != null
+                        ? Image.network(
+                      thumbnailUrl,
+                      headers: pictureHeaders,
                       width: 50,
                       height: 50,
                       fit: BoxFit.cover,
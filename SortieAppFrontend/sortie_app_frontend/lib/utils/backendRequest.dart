@@ -7,6 +7,24 @@ String getBackendUrl() {
   return kIsWeb ? 'http://localhost:8081' : 'http://10.0.2.2:8081';
 }
 
+/// Retourne l'URL complète de la photo d'un utilisateur à partir de son `picture_url`,
+/// ou null s'il n'en a pas. [size] demande une miniature (64 ou 160 pixels)
+String? getPictureUrl(String? pictureUrl, {int? size}) {
+  if (pictureUrl == null || pictureUrl.isEmpty) {
+    return null;
+  }
+  if (!pictureUrl.startsWith('/')) {
+    return pictureUrl;
+  }
+  return size != null ? '${getBackendUrl()}$pictureUrl?size=$size' : '${getBackendUrl()}$pictureUrl';
+}
+
+/// En-têtes à donner à `Image.network` / `NetworkImage` pour charger une photo :
+/// les photos du backend demandent le token, comme les autres requêtes
+Map<String, String> getPictureHeaders(Map<String, String> header) {
+  return {'Authorization': header['Authorization']!};
+}
+
 Future<Map<String, String>> getHeader() async {
   String? accessToken = await getAccesToken();
 
@@ -80,4 +98,4 @@ Future<String?> refreshToken() async {
     // Gestion des erreurs de rafraîchissement
     throw Exception("Failed to refresh token");
   }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -3,12 +3,27 @@ import 'package:jwt_decoder/jwt_decoder.dart';
 import 'package:sortie_app_frontend/utils/tokenUtils.dart';
 
 
+/// Codes des rôles du claim "rol" des tokens (voir RoleCode côté backend)
+const Map<String, String> roleAuthorities = {
+  "AD": "ROLE_ADMIN",
+  "LA": "ROLE_LOCAL_ADMIN",
+  "RE": "ROLE_RESPONSIBLE",
+  "SU": "ROLE_SUPERVISOR",
+  "ST": "ROLE_STUDENT",
+};
+
 Future<void> redirectHome() async {
   final accesToken= await getAccesToken();
 
   if(accesToken != null) {
     Map<String, dynamic> decodedToken = JwtDecoder.decode(accesToken);
     String authority = "";
+    // Les tokens compacts portent le code du rôle dans "rol", les anciens la liste "roles"
+    if (decodedToken["rol"] is String) {
+      decodedToken["roles"] = [
+        {"authority": roleAuthorities[decodedToken["rol"]] ?? "ROLE_${decodedToken["rol"]}"}
+      ];
+    }
     if (decodedToken.containsKey("roles") && decodedToken["roles"] is List &&
         decodedToken["roles"].isNotEmpty) {
       var roles = decodedToken["roles"] as List;